@@ -10,6 +10,12 @@
 // Header from toxcore.
 #include <tox/av.h>
 
+#include "util/audio_mixer.h"
+
+#include <memory>
+#include <mutex>
+#include <vector>
+
 #ifndef SUBSYSTEM
 #define SUBSYSTEM TOXAV
 #define CLASS     ToxAv
@@ -21,7 +27,50 @@ namespace av
 {
   namespace proto = im::tox::tox4j::av::proto;
 
-  using Events = proto::AvEvents;
+  struct Events
+  {
+    // Events for toxavIterate, serialised as a protobuf message.
+    proto::AvEvents proto;
+    // Event kinds (AvEvents field numbers) the Java side wants, as set by
+    // tox4jSetEventMask. Callbacks for other events return immediately.
+    uint32_t mask = ~0u;
+    // Conference mixer, if one was started with tox4jMixerStart. Received
+    // audio of its participants is mixed natively in toxavIterate.
+    std::unique_ptr<audio_mixer> mixer;
+    // Generation of the last mixer started. The other mixer functions take
+    // the generation tox4jMixerStart returned and only act on the mixer if it
+    // matches, so that a replaced AudioMixer can't affect its successor.
+    uint32_t mixer_generation = 0;
+    // Friends whose calls finished or failed since the last toxavIterate.
+    // Toxcore reports call states from tox_iterate, which only holds the Tox
+    // instance lock, so the call state callback can't touch the mixer. It
+    // records the friend here, and toxavIterate removes them from the mixer
+    // under the ToxAV instance lock.
+    std::mutex ended_calls_lock;
+    std::vector<uint32_t> ended_calls;
+
+    bool
+    wants (int kind) const
+    {
+      return (mask & (1u << kind)) != 0;
+    }
+
+    void
+    end_call (uint32_t friend_number)
+    {
+      std::lock_guard<std::mutex> lock (ended_calls_lock);
+      ended_calls.push_back (friend_number);
+    }
+
+    std::vector<uint32_t>
+    take_ended_calls ()
+    {
+      std::vector<uint32_t> ended;
+      std::lock_guard<std::mutex> lock (ended_calls_lock);
+      ended.swap (ended_calls);
+      return ended;
+    }
+  };
 
   extern ToxInstances<tox::av_ptr, std::unique_ptr<Events>> instances;
 }
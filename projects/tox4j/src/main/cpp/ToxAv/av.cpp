@@ -1,9 +1,48 @@
 #include "ToxAv.h"
+#include "../ToxCore/ToxCore.h"
+#include "util/yuv_convert.h"
 
 #ifdef TOXAV_VERSION_MAJOR
 
 using namespace av;
 
+
+namespace
+{
+  // Converted frames are kept per thread, so that sending from several
+  // threads neither allocates nor needs a lock.
+  thread_local yuv::i420_frame converted;
+
+  // Ordinals of im.tox.tox4j.av.enums.ToxavPixelFormat.
+  enum class pixel_format : jint
+  {
+    RGBA,
+    NV12,
+  };
+
+  /**
+   * The address of a plane of `rows` rows of `row_bytes` bytes, starting at
+   * `offset` in a direct buffer, or null if the plane doesn't fit.
+   */
+  uint8_t const *
+  direct_plane (JNIEnv *env, jobject buffer, jlong offset, jint stride, std::size_t row_bytes, std::size_t rows)
+  {
+    if (!buffer || offset < 0 || stride < 0 || std::size_t (stride) < row_bytes)
+      return nullptr;
+    auto address = static_cast<uint8_t const *> (env->GetDirectBufferAddress (buffer));
+    jlong const capacity = env->GetDirectBufferCapacity (buffer);
+    if (!address || (rows > 0 && offset + jlong (stride) * jlong (rows - 1) + jlong (row_bytes) > capacity))
+      return nullptr;
+    return address + offset;
+  }
+
+  bool
+  valid_size (jint width, jint height)
+  {
+    return width > 0 && height > 0 && width <= UINT16_MAX && height <= UINT16_MAX;
+  }
+}
+
 /*
  * Class:     im_tox_tox4j_impl_ToxAvJni
  * Method:    toxavIterationInterval
@@ -12,8 +51,56 @@ using namespace av;
 TOX_METHOD (jint, IterationInterval,
   jint instanceNumber)
 {
-  return instances.with_instance_noerr (env, instanceNumber,
-    toxav_iteration_interval);
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *av, Events &events) -> jint
+      {
+        LogEntry log_entry (instanceNumber, toxav_iteration_interval, av);
+        jint interval = log_entry.print_result (toxav_iteration_interval, av);
+        if (events.mixer)
+          {
+            // Wake up in time for the next mix.
+            auto until_mix = events.mixer->until_next (audio_mixer::clock::now ());
+            interval = std::min<jint> (interval, std::chrono::duration_cast<std::chrono::milliseconds> (until_mix).count ());
+          }
+        return interval;
+      }
+  );
+}
+
+/**
+ * Run toxav_iterate and the mixer, then return the collected events. The
+ * instance must be locked.
+ */
+static jbyteArray
+iterate (JNIEnv *env, jint instanceNumber, ToxAV *av, Events &events)
+{
+  LogEntry log_entry (instanceNumber, toxav_iterate, av);
+
+  log_entry.print_result (toxav_iterate, av);
+
+  // Calls that ended since the last iteration leave the mixer here, under the
+  // ToxAV instance lock, before the next mix.
+  for (uint32_t friend_number : events.take_ended_calls ())
+    if (events.mixer)
+      events.mixer->remove_participant (friend_number);
+
+  // Mix and send the conference audio without crossing into Java.
+  if (events.mixer)
+    events.mixer->tick (audio_mixer::clock::now (),
+      [av] (uint32_t friend_number, int16_t const *pcm, std::size_t sample_count, uint8_t channels, uint32_t sampling_rate)
+        {
+          TOXAV_ERR_SEND_FRAME error;
+          return toxav_audio_send_frame (av, friend_number, pcm, sample_count, channels, sampling_rate, &error);
+        });
+
+  if (events.proto.ByteSize () == 0)
+    return nullptr;
+
+  std::vector<char> buffer (events.proto.ByteSize ());
+  events.proto.SerializeToArray (buffer.data (), buffer.size ());
+  events.proto.Clear ();
+
+  return toJavaArray (env, buffer);
 }
 
 /*
@@ -25,19 +112,35 @@ TOX_METHOD (jbyteArray, Iterate,
   jint instanceNumber)
 {
   return instances.with_instance (env, instanceNumber,
-    [=] (ToxAV *av, Events &events) -> jbyteArray
+    [=] (ToxAV *av, Events &events)
       {
-        LogEntry log_entry (instanceNumber, toxav_iterate, av);
-
-        log_entry.print_result (toxav_iterate, av);
-        if (events.ByteSize () == 0)
-          return nullptr;
-
-        std::vector<char> buffer (events.ByteSize ());
-        events.SerializeToArray (buffer.data (), buffer.size ());
-        events.Clear ();
+        return iterate (env, instanceNumber, av, events);
+      }
+  );
+}
 
-        return toJavaArray (env, buffer);
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jIterateExclusive
+ * Signature: (II)[B
+ */
+JAVA_METHOD (jbyteArray, tox4jIterateExclusive,
+  jint instanceNumber, jint toxInstanceNumber)
+{
+  // Toxav shares the Messenger of its Tox instance, and tox_iterate runs the
+  // call state handlers that write to the events of this instance. Holding the
+  // Tox instance lock keeps toxav_iterate from running concurrently with
+  // tox_iterate on another thread. The locks are taken in the same order as
+  // in toxavNew: the Tox instance first, then the ToxAV instance.
+  return core::instances.with_instance (env, toxInstanceNumber,
+    [=] (Tox *, core::Events &)
+      {
+        return instances.with_instance (env, instanceNumber,
+          [=] (ToxAV *av, Events &events)
+            {
+              return iterate (env, instanceNumber, av, events);
+            }
+        );
       }
   );
 }
@@ -116,6 +219,31 @@ TOX_METHOD (void, AudioSendFrame,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jAudioSendFrameDirect
+ * Signature: (IILjava/nio/ShortBuffer;IIIII)V
+ */
+JAVA_METHOD (void, tox4jAudioSendFrameDirect,
+  jint instanceNumber, jint friendNumber, jobject pcm, jint offset, jint length, jint sampleCount, jint channels, jint samplingRate)
+{
+  tox4j_assert (sampleCount >= 0);
+  tox4j_assert (channels >= 0);
+  tox4j_assert (channels <= 255);
+  tox4j_assert (samplingRate >= 0);
+
+  // The buffer is in native byte order, so its samples can be passed to toxav in place.
+  auto samples = static_cast<int16_t const *> (env->GetDirectBufferAddress (pcm));
+  jlong const capacity = env->GetDirectBufferCapacity (pcm);
+  if (!samples || offset < 0 || length < 0 || jlong (offset) + length > capacity ||
+      length != sampleCount * channels)
+    return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+
+  return instances.with_instance_ign (env, instanceNumber,
+    toxav_audio_send_frame, friendNumber, samples + offset, sampleCount, channels, samplingRate
+  );
+}
+
 /*
  * Class:     im_tox_tox4j_impl_ToxAvJni
  * Method:    toxavVideoSendFrame
@@ -139,4 +267,87 @@ TOX_METHOD (void, VideoSendFrame,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jVideoSendFrameStrided
+ * Signature: (IIIILjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)V
+ */
+JAVA_METHOD (void, tox4jVideoSendFrameStrided,
+  jint instanceNumber, jint friendNumber, jint width, jint height,
+  jobject y, jint yOffset, jint yStride,
+  jobject u, jint uOffset, jint uStride,
+  jobject v, jint vOffset, jint vStride)
+{
+  if (!valid_size (width, height))
+    return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+
+  std::size_t const luma_width = width;
+  std::size_t const chroma_width = width / 2;
+  uint8_t const *yData = direct_plane (env, y, yOffset, yStride, luma_width, height);
+  uint8_t const *uData = direct_plane (env, u, uOffset, uStride, chroma_width, height / 2);
+  uint8_t const *vData = direct_plane (env, v, vOffset, vStride, chroma_width, height / 2);
+  if (!yData || !uData || !vData)
+    return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+
+  // Tightly packed planes are passed in place. Others are packed first.
+  if (std::size_t (yStride) != luma_width ||
+      std::size_t (uStride) != chroma_width ||
+      std::size_t (vStride) != chroma_width)
+    {
+      converted.resize (width, height);
+      yuv::copy_plane (yData, yStride, converted.y, luma_width, height);
+      yuv::copy_plane (uData, uStride, converted.u, chroma_width, height / 2);
+      yuv::copy_plane (vData, vStride, converted.v, chroma_width, height / 2);
+      yData = converted.y;
+      uData = converted.u;
+      vData = converted.v;
+    }
+
+  return instances.with_instance_ign (env, instanceNumber,
+    toxav_video_send_frame, friendNumber, width, height, yData, uData, vData
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jVideoSendFrameConvert
+ * Signature: (IIIIILjava/nio/ByteBuffer;II)V
+ */
+JAVA_METHOD (void, tox4jVideoSendFrameConvert,
+  jint instanceNumber, jint friendNumber, jint width, jint height, jint format, jobject data, jint offset, jint stride)
+{
+  if (!valid_size (width, height))
+    return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+
+  // The frame is converted before taking the instance lock, so that iterate
+  // is not held up by the conversion.
+  converted.resize (width, height);
+  switch (pixel_format (format))
+    {
+    case pixel_format::RGBA:
+      {
+        uint8_t const *rgba = direct_plane (env, data, offset, stride, std::size_t (width) * 4, height);
+        if (!rgba)
+          return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+        yuv::rgba_to_i420 (rgba, stride, width, height, converted.y, converted.u, converted.v);
+        break;
+      }
+    case pixel_format::NV12:
+      {
+        uint8_t const *luma = direct_plane (env, data, offset, stride, width, height);
+        uint8_t const *chroma = direct_plane (env, data, offset + jlong (stride) * height, stride, width / 2 * 2, height / 2);
+        if (!luma || !chroma)
+          return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+        yuv::nv12_to_i420 (luma, stride, chroma, stride, width, height, converted.y, converted.u, converted.v);
+        break;
+      }
+    default:
+      return throw_tox_exception<ToxAV> (env, TOXAV_ERR_SEND_FRAME_INVALID);
+    }
+
+  return instances.with_instance_ign (env, instanceNumber,
+    toxav_video_send_frame, friendNumber, width, height, converted.y, converted.u, converted.v
+  );
+}
+
 #endif
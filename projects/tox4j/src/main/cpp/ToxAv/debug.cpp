@@ -34,7 +34,7 @@ void
 print_arg<av::Events *> (protolog::Value &value, av::Events *events)
 {
   if (events != nullptr)
-    value.set_string ("<av::Events[" + std::to_string (events->ByteSize ()) + "]>");
+    value.set_string ("<av::Events[" + std::to_string (events->proto.ByteSize ()) + "]>");
   else
     value.set_string ("<null>");
 }
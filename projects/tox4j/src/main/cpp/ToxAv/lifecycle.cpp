@@ -9,7 +9,10 @@ using namespace av;
 static void
 tox4j_call_cb (uint32_t friend_number, bool audio_enabled, bool video_enabled, Events *events)
 {
-  auto msg = events->add_call ();
+  if (!events->wants (proto::AvEvents::kCallFieldNumber))
+    return;
+
+  auto msg = events->proto.add_call ();
   msg->set_friend_number (friend_number);
   msg->set_audio_enabled (audio_enabled);
   msg->set_video_enabled (video_enabled);
@@ -19,7 +22,13 @@ tox4j_call_cb (uint32_t friend_number, bool audio_enabled, bool video_enabled, E
 static void
 tox4j_call_state_cb (uint32_t friend_number, uint32_t state, Events *events)
 {
-  auto msg = events->add_call_state ();
+  if (state & (TOXAV_FRIEND_CALL_STATE_FINISHED | TOXAV_FRIEND_CALL_STATE_ERROR))
+    events->end_call (friend_number);
+
+  if (!events->wants (proto::AvEvents::kCallStateFieldNumber))
+    return;
+
+  auto msg = events->proto.add_call_state ();
   msg->set_friend_number (friend_number);
 
   using proto::CallState;
@@ -42,7 +51,10 @@ tox4j_bit_rate_status_cb (uint32_t friend_number,
                           uint32_t video_bit_rate,
                           Events *events)
 {
-  auto msg = events->add_bit_rate_status ();
+  if (!events->wants (proto::AvEvents::kBitRateStatusFieldNumber))
+    return;
+
+  auto msg = events->proto.add_bit_rate_status ();
   msg->set_friend_number (friend_number);
   msg->set_audio_bit_rate (audio_bit_rate);
   msg->set_video_bit_rate (video_bit_rate);
@@ -57,7 +69,13 @@ tox4j_audio_receive_frame_cb (uint32_t friend_number,
                               uint32_t sampling_rate,
                               Events *events)
 {
-  auto msg = events->add_audio_receive_frame ();
+  if (events->mixer)
+    events->mixer->push (friend_number, pcm, sample_count, channels, sampling_rate);
+
+  if (!events->wants (proto::AvEvents::kAudioReceiveFrameFieldNumber))
+    return;
+
+  auto msg = events->proto.add_audio_receive_frame ();
   msg->set_friend_number (friend_number);
 
   std::vector<uint8_t> pcm_bytes;
@@ -85,7 +103,10 @@ tox4j_video_receive_frame_cb (uint32_t friend_number,
   assert (ystride < 0 == ustride < 0);
   assert (ystride < 0 == vstride < 0);
 
-  auto msg = events->add_video_receive_frame ();
+  if (!events->wants (proto::AvEvents::kVideoReceiveFrameFieldNumber))
+    return;
+
+  auto msg = events->proto.add_video_receive_frame ();
   msg->set_friend_number (friend_number);
   msg->set_width (width);
   msg->set_height (height);
@@ -186,6 +207,22 @@ TOX_METHOD (void, Finalize,
   instances.finalize (env, instanceNumber);
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jSetEventMask
+ * Signature: (II)V
+ */
+JAVA_METHOD (void, tox4jSetEventMask,
+  jint instanceNumber, jint mask)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        events.mask = mask;
+      }
+  );
+}
+
 /*
  * Class:     im_tox_tox4j_impl_jni_ToxAvJni
  * Method:    invokeBitRateStatus
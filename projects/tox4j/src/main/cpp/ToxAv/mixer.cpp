@@ -0,0 +1,119 @@
+#include "ToxAv.h"
+
+#ifdef TOXAV_VERSION_MAJOR
+
+using namespace av;
+
+/**
+ * The attached mixer, if it is the one of the given generation.
+ */
+static audio_mixer *
+current_mixer (Events &events, jint mixerId)
+{
+  if (static_cast<jint> (events.mixer_generation) != mixerId)
+    return nullptr;
+  return events.mixer.get ();
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jMixerStart
+ * Signature: (IIIII)I
+ */
+JAVA_METHOD (jint, tox4jMixerStart,
+  jint instanceNumber, jint samplingRate, jint channels, jint frameMillis, jint jitterFrames)
+{
+  tox4j_assert (samplingRate > 0);
+  tox4j_assert (channels == 1 || channels == 2);
+  tox4j_assert (frameMillis > 0);
+  tox4j_assert (jitterFrames > 0);
+
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        events.mixer = std::make_unique<audio_mixer> (samplingRate, channels, frameMillis, jitterFrames);
+        return static_cast<jint> (++events.mixer_generation);
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jMixerStop
+ * Signature: (II)V
+ */
+JAVA_METHOD (void, tox4jMixerStop,
+  jint instanceNumber, jint mixerId)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        if (current_mixer (events, mixerId))
+          events.mixer.reset ();
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jMixerAddParticipant
+ * Signature: (III)V
+ */
+JAVA_METHOD (void, tox4jMixerAddParticipant,
+  jint instanceNumber, jint mixerId, jint friendNumber)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        audio_mixer *mixer = current_mixer (events, mixerId);
+        if (!mixer)
+          return throw_illegal_state_exception (env, instanceNumber, "The mixer was stopped or replaced");
+        mixer->add_participant (friendNumber);
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jMixerRemoveParticipant
+ * Signature: (III)V
+ */
+JAVA_METHOD (void, tox4jMixerRemoveParticipant,
+  jint instanceNumber, jint mixerId, jint friendNumber)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        if (audio_mixer *mixer = current_mixer (events, mixerId))
+          mixer->remove_participant (friendNumber);
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxAvJni
+ * Method:    tox4jMixerStats
+ * Signature: (II)[J
+ */
+JAVA_METHOD (jlongArray, tox4jMixerStats,
+  jint instanceNumber, jint mixerId)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (ToxAV *, Events &events)
+      {
+        std::vector<jlong> stats (5);
+        if (audio_mixer *mixer = current_mixer (events, mixerId))
+          {
+            auto const &counters = mixer->stats ();
+            stats[0] = mixer->participant_count ();
+            stats[1] = counters.mixes;
+            stats[2] = counters.underruns;
+            stats[3] = counters.overflows;
+            stats[4] = counters.send_errors;
+          }
+        return toJavaArray (env, stats);
+      }
+  );
+}
+
+#endif
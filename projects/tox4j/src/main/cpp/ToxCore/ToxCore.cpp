@@ -10,6 +10,12 @@ void
 reference_symbols_core ()
 {
   int tox_finalize; // For Java only.
+  int tox_iterate_many; // For Java only.
+  int tox_friends_add_norequest; // For Java only.
+  int tox_friends_delete; // For Java only.
+  int tox_friend_get_public_keys; // For Java only.
+  int tox_friend_snapshot; // For Java only.
+  int tox_friend_send_message_broadcast; // For Java only.
 
 #define JAVA_METHOD_REF(NAME)  unused (JAVA_METHOD_NAME (NAME));
 #define CXX_FUNCTION_REF(NAME) unused (NAME);
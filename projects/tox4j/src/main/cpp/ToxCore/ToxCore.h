@@ -4,6 +4,12 @@
 // Protobuf classes.
 #include "Core.pb.h"
 
+// Flat event records.
+#include "util/event_buffer.h"
+
+// Presence event coalescing.
+#include "util/event_coalescer.h"
+
 // JNI declarations from javah.
 #include "im_tox_tox4j_impl_jni_ToxCoreJni.h"
 
@@ -21,7 +27,27 @@ namespace core
 {
   namespace proto = im::tox::tox4j::core::proto;
 
-  using Events = proto::CoreEvents;
+  struct Events
+  {
+    // Events for toxIterate, serialised as a protobuf message.
+    proto::CoreEvents proto;
+    // Events for tox4jIterateFlat, written as flat records.
+    event_buffer flat;
+    // Whether the callbacks write to flat instead of proto.
+    bool use_flat = false;
+    // Event kinds (CoreEvents field numbers) the Java side wants, as set by
+    // tox4jSetEventMask. Callbacks for other events return immediately.
+    uint32_t mask = ~0u;
+    // Friend state updates held back until the coalescing window has passed,
+    // as set by tox4jSetCoalesceWindow.
+    event_coalescer coalesce;
+
+    bool
+    wants (int kind) const
+    {
+      return (mask & (1u << kind)) != 0;
+    }
+  };
 
   extern ToxInstances<tox::core_ptr, std::unique_ptr<Events>> instances;
 }
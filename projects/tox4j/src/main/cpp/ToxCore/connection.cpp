@@ -1,5 +1,8 @@
 #include "ToxCore.h"
 
+#include <algorithm>
+#include <limits>
+
 #ifdef TOX_VERSION_MAJOR
 
 using namespace core;
@@ -105,16 +108,169 @@ TOX_METHOD (jbyteArray, Iterate,
         LogEntry log_entry (instanceNumber, tox_iterate, tox);
 
         log_entry.print_result (tox_iterate, tox);
-        if (events.ByteSize () == 0)
+        events.coalesce.tick ();
+        if (events.proto.ByteSize () == 0)
           return nullptr;
 
-        std::vector<char> buffer (events.ByteSize ());
-        events.SerializeToArray (buffer.data (), buffer.size ());
-        events.Clear ();
+        std::vector<char> buffer (events.proto.ByteSize ());
+        events.proto.SerializeToArray (buffer.data (), buffer.size ());
+        events.proto.Clear ();
 
         return toJavaArray (env, buffer);
       }
   );
 }
 
+/**
+ * Write the flat event records into a Java direct buffer.
+ *
+ * If tox is non-null, tox_iterate is called while the buffer is attached, so
+ * that the callbacks write into it directly.
+ *
+ * Returns the number of bytes written, or its bitwise complement if records
+ * are left over that did not fit into the buffer.
+ */
+static jint
+write_flat_events (JNIEnv *env, jint instanceNumber, Tox *tox, Events &events, jobject buffer)
+{
+  auto data = static_cast<uint8_t *> (env->GetDirectBufferAddress (buffer));
+  tox4j_assert (data != nullptr);
+
+  events.use_flat = true;
+  events.flat.attach (data, env->GetDirectBufferCapacity (buffer));
+  if (tox != nullptr)
+    {
+      LogEntry log_entry (instanceNumber, tox_iterate, tox);
+      log_entry.print_result (tox_iterate, tox);
+      events.coalesce.tick ();
+    }
+  jint size = events.flat.detach ();
+
+  return events.flat.has_pending () ? ~size : size;
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxIterateMany
+ * Signature: ([ILjava/nio/ByteBuffer;)I
+ *
+ * Iterate several instances and write their flat event records into a single
+ * buffer. The buffer starts with the minimum iteration interval of all
+ * instances, followed by one section per instance that produced events. Each
+ * section is the instance number and the size of its records, followed by the
+ * records.
+ *
+ * Returns the number of bytes written, or its bitwise complement if any
+ * instance has records left over that did not fit into the buffer. Those are
+ * written in the next call.
+ *
+ * Instances that can't be iterated, because they were killed or their number
+ * is invalid, are skipped without an exception. Throwing would discard the
+ * sections already written for the other instances, whose records have been
+ * taken out of their event buffers.
+ */
+TOX_METHOD (jint, IterateMany,
+  jintArray instanceNumbers, jobject buffer)
+{
+  std::size_t const section_header_size = 2 * sizeof (jint);
+
+  auto data = static_cast<uint8_t *> (env->GetDirectBufferAddress (buffer));
+  tox4j_assert (data != nullptr);
+  std::size_t const capacity = env->GetDirectBufferCapacity (buffer);
+  tox4j_assert (capacity >= sizeof (jint));
+
+  jint interval = std::numeric_limits<jint>::max ();
+  std::size_t size = sizeof interval;
+  bool pending = false;
+
+  IntArray instance_numbers (env, instanceNumbers);
+  for (std::size_t i = 0; i < instance_numbers.size (); i++)
+    {
+      jint const instanceNumber = instance_numbers.data ()[i];
+      jint const section_size = instances.with_instance (env, instanceNumber,
+        [&] (Tox *tox, Events &events) -> jint
+          {
+            // If not even the section header fits, keep all records pending.
+            if (capacity - size < section_header_size)
+              events.flat.attach (nullptr, 0);
+            else
+              events.flat.attach (data + size + section_header_size, capacity - size - section_header_size);
+            events.use_flat = true;
+
+            LogEntry log_entry (instanceNumber, tox_iterate, tox);
+            log_entry.print_result (tox_iterate, tox);
+            events.coalesce.tick ();
+
+            interval = std::min<jint> (interval, tox_iteration_interval (tox));
+            pending |= events.flat.has_pending ();
+            return events.flat.detach ();
+          }
+      );
+      if (env->ExceptionCheck ())
+        {
+          env->ExceptionClear ();
+          continue;
+        }
+
+      if (section_size != 0)
+        {
+          std::memcpy (data + size, &instanceNumber, sizeof instanceNumber);
+          std::memcpy (data + size + sizeof instanceNumber, &section_size, sizeof section_size);
+          size += section_header_size + section_size;
+        }
+    }
+
+  std::memcpy (data, &interval, sizeof interval);
+  jint const written = size;
+  return pending ? ~written : written;
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jIterateFlat
+ * Signature: (ILjava/nio/ByteBuffer;)I
+ */
+JAVA_METHOD (jint, tox4jIterateFlat,
+  jint instanceNumber, jobject buffer)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *tox, Events &events)
+      {
+        return write_flat_events (env, instanceNumber, tox, events, buffer);
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jFlushFlat
+ * Signature: (ILjava/nio/ByteBuffer;)I
+ */
+JAVA_METHOD (jint, tox4jFlushFlat,
+  jint instanceNumber, jobject buffer)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *, Events &events)
+      {
+        return write_flat_events (env, instanceNumber, nullptr, events, buffer);
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jEnableFlat
+ * Signature: (I)V
+ */
+JAVA_METHOD (void, tox4jEnableFlat,
+  jint instanceNumber)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *, Events &events)
+      {
+        events.use_flat = true;
+      }
+  );
+}
+
 #endif
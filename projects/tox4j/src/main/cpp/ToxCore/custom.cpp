@@ -33,4 +33,32 @@ TOX_METHOD (void, FriendSendLosslessPacket,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jFriendSendLossyPacketDirect
+ * Signature: (IILjava/nio/ByteBuffer;II)V
+ */
+JAVA_METHOD (void, tox4jFriendSendLossyPacketDirect,
+  jint instanceNumber, jint friendNumber, jobject packet, jint offset, jint length)
+{
+  DirectByteBuffer const packetData (env, packet, offset, length);
+  return instances.with_instance_ign (env, instanceNumber,
+    tox_friend_send_lossy_packet, friendNumber, packetData.data (), packetData.size ()
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jFriendSendLosslessPacketDirect
+ * Signature: (IILjava/nio/ByteBuffer;II)V
+ */
+JAVA_METHOD (void, tox4jFriendSendLosslessPacketDirect,
+  jint instanceNumber, jint friendNumber, jobject packet, jint offset, jint length)
+{
+  DirectByteBuffer const packetData (env, packet, offset, length);
+  return instances.with_instance_ign (env, instanceNumber,
+    tox_friend_send_lossless_packet, friendNumber, packetData.data (), packetData.size ()
+  );
+}
+
 #endif
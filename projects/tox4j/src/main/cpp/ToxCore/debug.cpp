@@ -44,7 +44,7 @@ void
 print_arg<core::Events *> (protolog::Value &value, core::Events *events)
 {
   if (events != nullptr)
-    value.set_string ("<core::Events[" + std::to_string (events->ByteSize ()) + "]>");
+    value.set_string ("<core::Events[" + std::to_string (events->proto.ByteSize ()) + "]>");
   else
     value.set_string ("<null>");
 }
@@ -67,6 +67,20 @@ TOX_METHOD (void, FileSendChunk,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jFileSendChunkDirect
+ * Signature: (IIIJLjava/nio/ByteBuffer;II)V
+ */
+JAVA_METHOD (void, tox4jFileSendChunkDirect,
+  jint instanceNumber, jint friendNumber, jint fileNumber, jlong position, jobject chunk, jint offset, jint length)
+{
+  DirectByteBuffer const chunkData (env, chunk, offset, length);
+  return instances.with_instance_ign (env, instanceNumber,
+    tox_file_send_chunk, friendNumber, fileNumber, position, chunkData.data (), chunkData.size ()
+  );
+}
+
 /*
  * Class:     im_tox_tox4j_impl_ToxCoreJni
  * Method:    toxFileGetFileId
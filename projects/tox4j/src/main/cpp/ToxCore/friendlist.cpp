@@ -46,8 +46,19 @@ TOX_METHOD (jint, FriendAddNorequest,
 TOX_METHOD (void, FriendDelete,
   jint instanceNumber, jint friendNumber)
 {
-  return instances.with_instance_ign (env, instanceNumber,
-    tox_friend_delete, friendNumber
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *tox, Events &events)
+      {
+        LogEntry log_entry (instanceNumber, tox_friend_delete, tox, friendNumber);
+        return ::with_error_handling<Tox> (log_entry, env,
+          [&events, friendNumber] (bool)
+            {
+              // Updates held back for the friend must not outlive it.
+              events.coalesce.drop (friendNumber);
+            },
+          tox_friend_delete, tox, friendNumber
+        );
+      }
   );
 }
 
@@ -101,4 +112,160 @@ TOX_METHOD (jintArray, SelfGetFriendList,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxFriendsAddNorequest
+ * Signature: (I[B[Lim/tox/tox4j/core/exceptions/ToxFriendAddException$Code;)[I
+ *
+ * Add one friend per public key in the concatenated publicKeys array, with the
+ * instance locked once. The error code of each item is stored in errors
+ * instead of being thrown.
+ */
+TOX_METHOD (jintArray, FriendsAddNorequest,
+  jint instanceNumber, jbyteArray publicKeys, jobjectArray errors)
+{
+  ByteArray public_keys (env, publicKeys);
+  tox4j_assert (public_keys.size () % TOX_PUBLIC_KEY_SIZE == 0);
+  jsize const count = public_keys.size () / TOX_PUBLIC_KEY_SIZE;
+  tox4j_assert (env->GetArrayLength (errors) == count);
+
+  std::vector<uint32_t> friend_numbers (count, UINT32_MAX);
+  instances.with_instance (env, instanceNumber,
+    [&] (Tox *tox, Events &)
+      {
+        for (jsize i = 0; i < count && !env->ExceptionCheck (); i++)
+          {
+            uint8_t const *public_key = public_keys.data () + i * TOX_PUBLIC_KEY_SIZE;
+            TOX_ERR_FRIEND_ADD error;
+            LogEntry log_entry (instanceNumber, tox_friend_add_norequest, tox, public_key);
+            friend_numbers[i] = log_entry.print_result (tox_friend_add_norequest, tox, public_key, &error);
+            set_error_code<Tox> (env, errors, i, error);
+          }
+      }
+  );
+
+  if (env->ExceptionCheck ())
+    return nullptr;
+  return toJavaArray (env, friend_numbers);
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxFriendsDelete
+ * Signature: (I[I[Lim/tox/tox4j/core/exceptions/ToxFriendDeleteException$Code;)V
+ *
+ * Delete the friends with the instance locked once. The error code of each item
+ * is stored in errors instead of being thrown.
+ */
+TOX_METHOD (void, FriendsDelete,
+  jint instanceNumber, jintArray friendNumbers, jobjectArray errors)
+{
+  IntArray friend_numbers (env, friendNumbers);
+  jsize const count = friend_numbers.size ();
+  tox4j_assert (env->GetArrayLength (errors) == count);
+
+  return instances.with_instance (env, instanceNumber,
+    [&] (Tox *tox, Events &events)
+      {
+        for (jsize i = 0; i < count && !env->ExceptionCheck (); i++)
+          {
+            uint32_t const friend_number = friend_numbers.data ()[i];
+            TOX_ERR_FRIEND_DELETE error;
+            LogEntry log_entry (instanceNumber, tox_friend_delete, tox, friend_number);
+            log_entry.print_result (tox_friend_delete, tox, friend_number, &error);
+            if (set_error_code<Tox> (env, errors, i, error))
+              events.coalesce.drop (friend_number);
+          }
+      }
+  );
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxFriendGetPublicKeys
+ * Signature: (I[I[Lim/tox/tox4j/core/exceptions/ToxFriendGetPublicKeyException$Code;)[B
+ *
+ * Get the public keys of the friends, concatenated into one array, with the
+ * instance locked once. The keys of failed items are left zero. The error code
+ * of each item is stored in errors instead of being thrown.
+ */
+TOX_METHOD (jbyteArray, FriendGetPublicKeys,
+  jint instanceNumber, jintArray friendNumbers, jobjectArray errors)
+{
+  IntArray friend_numbers (env, friendNumbers);
+  jsize const count = friend_numbers.size ();
+  tox4j_assert (env->GetArrayLength (errors) == count);
+
+  std::vector<uint8_t> public_keys (count * TOX_PUBLIC_KEY_SIZE);
+  instances.with_instance (env, instanceNumber,
+    [&] (Tox *tox, Events &)
+      {
+        for (jsize i = 0; i < count && !env->ExceptionCheck (); i++)
+          {
+            uint32_t const friend_number = friend_numbers.data ()[i];
+            uint8_t *public_key = public_keys.data () + i * TOX_PUBLIC_KEY_SIZE;
+            TOX_ERR_FRIEND_GET_PUBLIC_KEY error;
+            LogEntry log_entry (instanceNumber, tox_friend_get_public_key, tox, friend_number, public_key);
+            log_entry.print_result (tox_friend_get_public_key, tox, friend_number, public_key, &error);
+            set_error_code<Tox> (env, errors, i, error);
+          }
+      }
+  );
+
+  if (env->ExceptionCheck ())
+    return nullptr;
+  return toJavaArray (env, public_keys);
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxFriendSnapshot
+ * Signature: (I)[Ljava/lang/Object;
+ *
+ * Get the friend numbers, public keys, connection statuses, user statuses and
+ * last online times of all friends at once. The result is an array of these
+ * five columns: int[], byte[] (the concatenated keys), int[], int[], long[].
+ */
+TOX_METHOD (jobjectArray, FriendSnapshot,
+  jint instanceNumber)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox const *tox, Events &) -> jobjectArray
+      {
+        std::vector<uint32_t> friend_numbers (tox_self_get_friend_list_size (tox));
+        tox_self_get_friend_list (tox, friend_numbers.data ());
+
+        std::size_t const count = friend_numbers.size ();
+        std::vector<uint8_t> public_keys (count * TOX_PUBLIC_KEY_SIZE);
+        std::vector<jint> connection_statuses (count);
+        std::vector<jint> statuses (count);
+        std::vector<jlong> last_online (count);
+
+        // The friends were just taken from the friend list, so these calls
+        // can't fail.
+        for (std::size_t i = 0; i < count; i++)
+          {
+            uint32_t const friend_number = friend_numbers[i];
+            tox_friend_get_public_key (tox, friend_number, public_keys.data () + i * TOX_PUBLIC_KEY_SIZE, nullptr);
+            connection_statuses[i] = enum_ordinal (env, tox_friend_get_connection_status (tox, friend_number, nullptr));
+            statuses[i] = enum_ordinal (env, tox_friend_get_status (tox, friend_number, nullptr));
+            last_online[i] = tox_friend_get_last_online (tox, friend_number, nullptr);
+          }
+
+        jobject const columns[] = {
+          toJavaArray (env, friend_numbers),
+          toJavaArray (env, public_keys),
+          toJavaArray (env, connection_statuses),
+          toJavaArray (env, statuses),
+          toJavaArray (env, last_online),
+        };
+
+        jobjectArray snapshot = env->NewObjectArray (sizeof columns / sizeof *columns, env->FindClass ("java/lang/Object"), nullptr);
+        for (jsize i = 0; i < jsize (sizeof columns / sizeof *columns); i++)
+          env->SetObjectArrayElement (snapshot, i, columns[i]);
+        return snapshot;
+      }
+  );
+}
+
 #endif
@@ -27,16 +27,28 @@ JAVA_METHOD_REF (toxFriendExists)
 CXX_FUNCTION_REF (tox_friend_exists)
 JAVA_METHOD_REF (toxFriendGetPublicKey)
 CXX_FUNCTION_REF (tox_friend_get_public_key)
+JAVA_METHOD_REF (toxFriendGetPublicKeys)
+CXX_FUNCTION_REF (tox_friend_get_public_keys)
 JAVA_METHOD_REF (toxFriendSendLosslessPacket)
 CXX_FUNCTION_REF (tox_friend_send_lossless_packet)
 JAVA_METHOD_REF (toxFriendSendLossyPacket)
 CXX_FUNCTION_REF (tox_friend_send_lossy_packet)
 JAVA_METHOD_REF (toxFriendSendMessage)
 CXX_FUNCTION_REF (tox_friend_send_message)
+JAVA_METHOD_REF (toxFriendSendMessageBroadcast)
+CXX_FUNCTION_REF (tox_friend_send_message_broadcast)
+JAVA_METHOD_REF (toxFriendSnapshot)
+CXX_FUNCTION_REF (tox_friend_snapshot)
+JAVA_METHOD_REF (toxFriendsAddNorequest)
+CXX_FUNCTION_REF (tox_friends_add_norequest)
+JAVA_METHOD_REF (toxFriendsDelete)
+CXX_FUNCTION_REF (tox_friends_delete)
 JAVA_METHOD_REF (toxGetSavedata)
 CXX_FUNCTION_REF (tox_get_savedata)
 JAVA_METHOD_REF (toxIterate)
 CXX_FUNCTION_REF (tox_iterate)
+JAVA_METHOD_REF (toxIterateMany)
+CXX_FUNCTION_REF (tox_iterate_many)
 JAVA_METHOD_REF (toxIterationInterval)
 CXX_FUNCTION_REF (tox_iteration_interval)
 JAVA_METHOD_REF (toxKill)
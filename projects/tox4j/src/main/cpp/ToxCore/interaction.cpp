@@ -35,4 +35,59 @@ TOX_METHOD (jint, FriendSendMessage,
   );
 }
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    toxFriendSendMessageBroadcast
+ * Signature: (I[III[B[Lim/tox/tox4j/core/exceptions/ToxFriendSendMessageException$Code;)[I
+ *
+ * Send the same message to each friend, with the message copied and the
+ * instance locked once. Returns the message ID of each send. The error code of
+ * each item is stored in errors instead of being thrown.
+ */
+TOX_METHOD (jintArray, FriendSendMessageBroadcast,
+  jint instanceNumber, jintArray friendNumbers, jint messageType, jint timeDelta, jbyteArray message, jobjectArray errors)
+{
+  IntArray friend_numbers (env, friendNumbers);
+  jsize const count = friend_numbers.size ();
+  tox4j_assert (env->GetArrayLength (errors) == count);
+
+  ByteArray const message_array (env, message);
+  TOX_MESSAGE_TYPE const type = enum_value<TOX_MESSAGE_TYPE> (env, messageType);
+
+  std::vector<uint32_t> message_ids (count);
+  instances.with_instance (env, instanceNumber,
+    [&] (Tox *tox, Events &)
+      {
+        for (jsize i = 0; i < count && !env->ExceptionCheck (); i++)
+          {
+            uint32_t const friend_number = friend_numbers.data ()[i];
+            TOX_ERR_FRIEND_SEND_MESSAGE error;
+            LogEntry log_entry (instanceNumber, tox_friend_send_message, tox, friend_number, type, message_array.data (), message_array.size ());
+            message_ids[i] = log_entry.print_result (tox_friend_send_message, tox, friend_number, type, message_array.data (), message_array.size (), &error);
+            set_error_code<Tox> (env, errors, i, error);
+          }
+      }
+  );
+
+  if (env->ExceptionCheck ())
+    return nullptr;
+  return toJavaArray (env, message_ids);
+}
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jFriendSendMessageDirect
+ * Signature: (IIIILjava/nio/ByteBuffer;II)I
+ */
+JAVA_METHOD (jint, tox4jFriendSendMessageDirect,
+  jint instanceNumber, jint friendNumber, jint messageType, jint timeDelta, jobject message, jint offset, jint length)
+{
+  DirectByteBuffer const message_buffer (env, message, offset, length);
+
+  return instances.with_instance_err (env, instanceNumber,
+    identity,
+    tox_friend_send_message, friendNumber, enum_value<TOX_MESSAGE_TYPE> (env, messageType), message_buffer.data (), message_buffer.size ()
+  );
+}
+
 #endif
@@ -5,89 +5,219 @@
 using namespace core;
 
 
-template<typename Message>
-static void
-set_connection_status (Message &msg, TOX_CONNECTION connection_status)
+static proto::Connection::Type
+connection_status_value (TOX_CONNECTION connection_status)
 {
   using proto::Connection;
   switch (connection_status)
     {
-    case TOX_CONNECTION_NONE:
-      msg->set_connection_status (Connection::NONE);
-      break;
-    case TOX_CONNECTION_TCP:
-      msg->set_connection_status (Connection::TCP);
-      break;
-    case TOX_CONNECTION_UDP:
-      msg->set_connection_status (Connection::UDP);
-      break;
+    case TOX_CONNECTION_NONE: return Connection::NONE;
+    case TOX_CONNECTION_TCP:  return Connection::TCP;
+    case TOX_CONNECTION_UDP:  return Connection::UDP;
+    }
+  assert (!"Invalid TOX_CONNECTION value");
+  return Connection::NONE;
+}
+
+static proto::UserStatus::Type
+user_status_value (TOX_USER_STATUS status)
+{
+  using proto::UserStatus;
+  switch (status)
+    {
+    case TOX_USER_STATUS_NONE: return UserStatus::NONE;
+    case TOX_USER_STATUS_AWAY: return UserStatus::AWAY;
+    case TOX_USER_STATUS_BUSY: return UserStatus::BUSY;
+    }
+  assert (!"Invalid TOX_USER_STATUS value");
+  return UserStatus::NONE;
+}
+
+static proto::MessageType::Type
+message_type_value (TOX_MESSAGE_TYPE type)
+{
+  using proto::MessageType;
+  switch (type)
+    {
+    case TOX_MESSAGE_TYPE_NORMAL: return MessageType::NORMAL;
+    case TOX_MESSAGE_TYPE_ACTION: return MessageType::ACTION;
+    }
+  assert (!"Invalid TOX_MESSAGE_TYPE value");
+  return MessageType::NORMAL;
+}
+
+static proto::FileControl::Type
+file_control_value (TOX_FILE_CONTROL control)
+{
+  using proto::FileControl;
+  switch (control)
+    {
+    case TOX_FILE_CONTROL_RESUME: return FileControl::RESUME;
+    case TOX_FILE_CONTROL_PAUSE:  return FileControl::PAUSE;
+    case TOX_FILE_CONTROL_CANCEL: return FileControl::CANCEL;
     }
+  assert (!"Invalid TOX_FILE_CONTROL value");
+  return FileControl::RESUME;
 }
 
+
+/*
+ * Each callback first checks the event mask and then either appends a message
+ * to the protobuf event list or writes a flat record with the same fields in
+ * the same order. Flat records and the event mask use the CoreEvents field
+ * numbers as event kinds, and flat records use the protobuf enum values for
+ * enums.
+ *
+ * With coalescing enabled, friend state updates (name, status message, status,
+ * connection status and typing) are held back in the event_coalescer, and all
+ * other friend events first emit the friend's pending updates.
+ */
+
 static void
 tox4j_self_connection_status_cb (TOX_CONNECTION connection_status, Events *events)
 {
-  auto msg = events->add_self_connection_status ();
-  set_connection_status (msg, connection_status);
+  if (!events->wants (proto::CoreEvents::kSelfConnectionStatusFieldNumber))
+    return;
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kSelfConnectionStatusFieldNumber,
+      int32_t (connection_status_value (connection_status)));
+
+  auto msg = events->proto.add_self_connection_status ();
+  msg->set_connection_status (connection_status_value (connection_status));
 }
 
 static void
-tox4j_friend_name_cb (uint32_t friend_number, uint8_t const *name, size_t length, Events *events)
+emit_friend_name (uint32_t friend_number, uint8_t const *name, size_t length, Events *events)
 {
-  auto msg = events->add_friend_name ();
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendNameFieldNumber,
+      friend_number, event_bytes { name, length });
+
+  auto msg = events->proto.add_friend_name ();
   msg->set_friend_number (friend_number);
   msg->set_name (name, length);
 }
 
 static void
-tox4j_friend_status_message_cb (uint32_t friend_number, uint8_t const *message, size_t length, Events *events)
+tox4j_friend_name_cb (uint32_t friend_number, uint8_t const *name, size_t length, Events *events)
 {
-  auto msg = events->add_friend_status_message ();
-  msg->set_friend_number (friend_number);
-  msg->set_message (message, length);
+  if (!events->wants (proto::CoreEvents::kFriendNameFieldNumber))
+    return;
+  if (events->coalesce.enabled ())
+    {
+      std::vector<uint8_t> const copy (name, name + length);
+      return events->coalesce.put (proto::CoreEvents::kFriendNameFieldNumber, friend_number,
+        [=] { emit_friend_name (friend_number, copy.data (), copy.size (), events); });
+    }
+  emit_friend_name (friend_number, name, length, events);
 }
 
 static void
-tox4j_friend_status_cb (uint32_t friend_number, TOX_USER_STATUS status, Events *events)
+emit_friend_status_message (uint32_t friend_number, uint8_t const *message, size_t length, Events *events)
 {
-  auto msg = events->add_friend_status ();
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendStatusMessageFieldNumber,
+      friend_number, event_bytes { message, length });
+
+  auto msg = events->proto.add_friend_status_message ();
   msg->set_friend_number (friend_number);
+  msg->set_message (message, length);
+}
 
-  using proto::UserStatus;
-  switch (status)
+static void
+tox4j_friend_status_message_cb (uint32_t friend_number, uint8_t const *message, size_t length, Events *events)
+{
+  if (!events->wants (proto::CoreEvents::kFriendStatusMessageFieldNumber))
+    return;
+  if (events->coalesce.enabled ())
     {
-    case TOX_USER_STATUS_NONE:
-      msg->set_status (UserStatus::NONE);
-      break;
-    case TOX_USER_STATUS_AWAY:
-      msg->set_status (UserStatus::AWAY);
-      break;
-    case TOX_USER_STATUS_BUSY:
-      msg->set_status (UserStatus::BUSY);
-      break;
+      std::vector<uint8_t> const copy (message, message + length);
+      return events->coalesce.put (proto::CoreEvents::kFriendStatusMessageFieldNumber, friend_number,
+        [=] { emit_friend_status_message (friend_number, copy.data (), copy.size (), events); });
     }
+  emit_friend_status_message (friend_number, message, length, events);
 }
 
 static void
-tox4j_friend_connection_status_cb (uint32_t friend_number, TOX_CONNECTION connection_status, Events *events)
+emit_friend_status (uint32_t friend_number, TOX_USER_STATUS status, Events *events)
 {
-  auto msg = events->add_friend_connection_status ();
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendStatusFieldNumber,
+      friend_number, int32_t (user_status_value (status)));
+
+  auto msg = events->proto.add_friend_status ();
   msg->set_friend_number (friend_number);
-  set_connection_status (msg, connection_status);
+  msg->set_status (user_status_value (status));
 }
 
 static void
-tox4j_friend_typing_cb (uint32_t friend_number, bool is_typing, Events *events)
+tox4j_friend_status_cb (uint32_t friend_number, TOX_USER_STATUS status, Events *events)
 {
-  auto msg = events->add_friend_typing ();
+  if (!events->wants (proto::CoreEvents::kFriendStatusFieldNumber))
+    return;
+  if (events->coalesce.enabled ())
+    return events->coalesce.put (proto::CoreEvents::kFriendStatusFieldNumber, friend_number,
+      [=] { emit_friend_status (friend_number, status, events); });
+  emit_friend_status (friend_number, status, events);
+}
+
+static void
+emit_friend_connection_status (uint32_t friend_number, TOX_CONNECTION connection_status, Events *events)
+{
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendConnectionStatusFieldNumber,
+      friend_number, int32_t (connection_status_value (connection_status)));
+
+  auto msg = events->proto.add_friend_connection_status ();
+  msg->set_friend_number (friend_number);
+  msg->set_connection_status (connection_status_value (connection_status));
+}
+
+static void
+tox4j_friend_connection_status_cb (uint32_t friend_number, TOX_CONNECTION connection_status, Events *events)
+{
+  if (!events->wants (proto::CoreEvents::kFriendConnectionStatusFieldNumber))
+    return;
+  if (events->coalesce.enabled ())
+    return events->coalesce.put (proto::CoreEvents::kFriendConnectionStatusFieldNumber, friend_number,
+      [=] { emit_friend_connection_status (friend_number, connection_status, events); });
+  emit_friend_connection_status (friend_number, connection_status, events);
+}
+
+static void
+emit_friend_typing (uint32_t friend_number, bool is_typing, Events *events)
+{
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendTypingFieldNumber,
+      friend_number, is_typing);
+
+  auto msg = events->proto.add_friend_typing ();
   msg->set_friend_number (friend_number);
   msg->set_is_typing (is_typing);
 }
 
+static void
+tox4j_friend_typing_cb (uint32_t friend_number, bool is_typing, Events *events)
+{
+  if (!events->wants (proto::CoreEvents::kFriendTypingFieldNumber))
+    return;
+  if (events->coalesce.enabled ())
+    return events->coalesce.put (proto::CoreEvents::kFriendTypingFieldNumber, friend_number,
+      [=] { emit_friend_typing (friend_number, is_typing, events); });
+  emit_friend_typing (friend_number, is_typing, events);
+}
+
 static void
 tox4j_friend_read_receipt_cb (uint32_t friend_number, uint32_t message_id, Events *events)
 {
-  auto msg = events->add_friend_read_receipt ();
+  if (!events->wants (proto::CoreEvents::kFriendReadReceiptFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendReadReceiptFieldNumber,
+      friend_number, message_id);
+
+  auto msg = events->proto.add_friend_read_receipt ();
   msg->set_friend_number (friend_number);
   msg->set_message_id (message_id);
 }
@@ -95,7 +225,13 @@ tox4j_friend_read_receipt_cb (uint32_t friend_number, uint32_t message_id, Event
 static void
 tox4j_friend_request_cb (uint8_t const *public_key, /*uint32_t time_delta, */ uint8_t const *message, size_t length, Events *events)
 {
-  auto msg = events->add_friend_request ();
+  if (!events->wants (proto::CoreEvents::kFriendRequestFieldNumber))
+    return;
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendRequestFieldNumber,
+      event_bytes { public_key, TOX_PUBLIC_KEY_SIZE }, int32_t (0), event_bytes { message, length });
+
+  auto msg = events->proto.add_friend_request ();
   msg->set_public_key (public_key, TOX_PUBLIC_KEY_SIZE);
   msg->set_time_delta (0);
   msg->set_message (message, length);
@@ -104,20 +240,16 @@ tox4j_friend_request_cb (uint8_t const *public_key, /*uint32_t time_delta, */ ui
 static void
 tox4j_friend_message_cb (uint32_t friend_number, TOX_MESSAGE_TYPE type, /*uint32_t time_delta, */ uint8_t const *message, size_t length, Events *events)
 {
-  auto msg = events->add_friend_message ();
-  msg->set_friend_number (friend_number);
-
-  using proto::MessageType;
-  switch (type)
-    {
-    case TOX_MESSAGE_TYPE_NORMAL:
-      msg->set_type (MessageType::NORMAL);
-      break;
-    case TOX_MESSAGE_TYPE_ACTION:
-      msg->set_type (MessageType::ACTION);
-      break;
-    }
+  if (!events->wants (proto::CoreEvents::kFriendMessageFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendMessageFieldNumber,
+      friend_number, int32_t (message_type_value (type)), int32_t (0), event_bytes { message, length });
 
+  auto msg = events->proto.add_friend_message ();
+  msg->set_friend_number (friend_number);
+  msg->set_type (message_type_value (type));
   msg->set_time_delta (0);
   msg->set_message (message, length);
 }
@@ -125,29 +257,30 @@ tox4j_friend_message_cb (uint32_t friend_number, TOX_MESSAGE_TYPE type, /*uint32
 static void
 tox4j_file_recv_control_cb (uint32_t friend_number, uint32_t file_number, TOX_FILE_CONTROL control, Events *events)
 {
-  auto msg = events->add_file_recv_control ();
+  if (!events->wants (proto::CoreEvents::kFileRecvControlFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFileRecvControlFieldNumber,
+      friend_number, file_number, int32_t (file_control_value (control)));
+
+  auto msg = events->proto.add_file_recv_control ();
   msg->set_friend_number (friend_number);
   msg->set_file_number (file_number);
-
-  using proto::FileControl;
-  switch (control)
-    {
-    case TOX_FILE_CONTROL_RESUME:
-      msg->set_control (FileControl::RESUME);
-      break;
-    case TOX_FILE_CONTROL_PAUSE:
-      msg->set_control (FileControl::PAUSE);
-      break;
-    case TOX_FILE_CONTROL_CANCEL:
-      msg->set_control (FileControl::CANCEL);
-      break;
-    }
+  msg->set_control (file_control_value (control));
 }
 
 static void
 tox4j_file_chunk_request_cb (uint32_t friend_number, uint32_t file_number, uint64_t position, size_t length, Events *events)
 {
-  auto msg = events->add_file_chunk_request ();
+  if (!events->wants (proto::CoreEvents::kFileChunkRequestFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFileChunkRequestFieldNumber,
+      friend_number, file_number, position, uint32_t (length));
+
+  auto msg = events->proto.add_file_chunk_request ();
   msg->set_friend_number (friend_number);
   msg->set_file_number (file_number);
   msg->set_position (position);
@@ -157,7 +290,14 @@ tox4j_file_chunk_request_cb (uint32_t friend_number, uint32_t file_number, uint6
 static void
 tox4j_file_recv_cb (uint32_t friend_number, uint32_t file_number, uint32_t kind, uint64_t file_size, uint8_t const *filename, size_t filename_length, Events *events)
 {
-  auto msg = events->add_file_recv ();
+  if (!events->wants (proto::CoreEvents::kFileRecvFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFileRecvFieldNumber,
+      friend_number, file_number, kind, file_size, event_bytes { filename, filename_length });
+
+  auto msg = events->proto.add_file_recv ();
   msg->set_friend_number (friend_number);
   msg->set_file_number (file_number);
   msg->set_kind (kind);
@@ -168,7 +308,14 @@ tox4j_file_recv_cb (uint32_t friend_number, uint32_t file_number, uint32_t kind,
 static void
 tox4j_file_recv_chunk_cb (uint32_t friend_number, uint32_t file_number, uint64_t position, uint8_t const *data, size_t length, Events *events)
 {
-  auto msg = events->add_file_recv_chunk ();
+  if (!events->wants (proto::CoreEvents::kFileRecvChunkFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFileRecvChunkFieldNumber,
+      friend_number, file_number, position, event_bytes { data, length });
+
+  auto msg = events->proto.add_file_recv_chunk ();
   msg->set_friend_number (friend_number);
   msg->set_file_number (file_number);
   msg->set_position (position);
@@ -178,7 +325,14 @@ tox4j_file_recv_chunk_cb (uint32_t friend_number, uint32_t file_number, uint64_t
 static void
 tox4j_friend_lossy_packet_cb (uint32_t friend_number, uint8_t const *data, size_t length, Events *events)
 {
-  auto msg = events->add_friend_lossy_packet ();
+  if (!events->wants (proto::CoreEvents::kFriendLossyPacketFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendLossyPacketFieldNumber,
+      friend_number, event_bytes { data, length });
+
+  auto msg = events->proto.add_friend_lossy_packet ();
   msg->set_friend_number (friend_number);
   msg->set_data (data, length);
 }
@@ -186,7 +340,14 @@ tox4j_friend_lossy_packet_cb (uint32_t friend_number, uint8_t const *data, size_
 static void
 tox4j_friend_lossless_packet_cb (uint32_t friend_number, uint8_t const *data, size_t length, Events *events)
 {
-  auto msg = events->add_friend_lossless_packet ();
+  if (!events->wants (proto::CoreEvents::kFriendLosslessPacketFieldNumber))
+    return;
+  events->coalesce.flush (friend_number);
+  if (events->use_flat)
+    return events->flat.write (proto::CoreEvents::kFriendLosslessPacketFieldNumber,
+      friend_number, event_bytes { data, length });
+
+  auto msg = events->proto.add_friend_lossless_packet ();
   msg->set_friend_number (friend_number);
   msg->set_data (data, length);
 }
@@ -221,6 +382,48 @@ tox_finalize ()
 }
 
 
+static void
+tox_iterate_many ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
+static void
+tox_friends_add_norequest ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
+static void
+tox_friends_delete ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
+static void
+tox_friend_get_public_keys ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
+static void
+tox_friend_snapshot ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
+static void
+tox_friend_send_message_broadcast ()
+{
+  assert (!"This function is only here for register_funcs and should never be called.");
+}
+
+
 REGISTER_FUNCS (
 #define JAVA_METHOD_REF(x)
 #define CXX_FUNCTION_REF(func)  REGISTER_FUNC (func),
@@ -350,6 +553,44 @@ TOX_METHOD (jbyteArray, GetSavedata,
 }
 
 
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jSetEventMask
+ * Signature: (II)V
+ */
+JAVA_METHOD (void, tox4jSetEventMask,
+  jint instanceNumber, jint mask)
+{
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *, Events &events)
+      {
+        events.mask = mask;
+      }
+  );
+}
+
+
+/*
+ * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
+ * Method:    tox4jSetCoalesceWindow
+ * Signature: (II)V
+ */
+JAVA_METHOD (void, tox4jSetCoalesceWindow,
+  jint instanceNumber, jint iterations)
+{
+  tox4j_assert (iterations >= 0);
+  return instances.with_instance (env, instanceNumber,
+    [=] (Tox *, Events &events)
+      {
+        // Updates held back so far are emitted with the next iteration.
+        if (iterations == 0)
+          events.coalesce.flush ();
+        events.coalesce.window = iterations;
+      }
+  );
+}
+
+
 /*
  * Class:     im_tox_tox4j_impl_jni_ToxCoreJni
  * Method:    invokeSelfConnectionStatus
@@ -161,6 +161,49 @@ throw_tox_exception (JNIEnv *env, ErrorType error)
 }
 
 
+/**
+ * Store the Java enum value for a Tox error code in an array, for batch
+ * functions that report errors per item instead of throwing on the first one.
+ * Nothing is stored for the OK code, so its element stays null. Unknown error
+ * codes throw an IllegalStateException.
+ *
+ * Returns true if the error code was OK.
+ */
+template<typename Object, typename ErrorType>
+bool
+set_error_code (JNIEnv *env, jobjectArray errors, jsize index, ErrorType error)
+{
+  ErrorHandling result = handle_error_enum<ErrorType> (error);
+  switch (result.result)
+    {
+    case ErrorHandling::SUCCESS:
+      return true;
+    case ErrorHandling::FAILURE:
+      {
+        jobject code = tox_exception_code (env,
+          module_name<Object>,
+          exn_prefix<Object>,
+          method_name<ErrorType>,
+          result.error
+        );
+        if (code)
+          {
+            env->SetObjectArrayElement (errors, index, code);
+            env->DeleteLocalRef (code);
+          }
+        return false;
+      }
+    case ErrorHandling::UNHANDLED:
+      throw_illegal_state_exception (env, error, "Unknown error code");
+      return false;
+    }
+
+  // If this happens, there is a programming error or memory corruption.
+  throw_illegal_state_exception (env, error, "Memory corruption or cosmic rays");
+  return false;
+}
+
+
 /**
  * Calls a tox function that has an error code as last parameter. It captures
  * the error and throws an appropriate Java exception for that error code if
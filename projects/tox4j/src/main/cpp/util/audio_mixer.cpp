@@ -0,0 +1,220 @@
+#include "util/audio_mixer.h"
+
+#include <algorithm>
+#include <cstring>
+
+
+audio_mixer::audio_mixer (uint32_t sampling_rate, uint8_t channels, uint32_t frame_millis, std::size_t jitter_frames)
+  : sampling_rate (sampling_rate)
+  , channels (channels)
+  , period (std::chrono::milliseconds (frame_millis))
+  , frame_size (std::size_t (sampling_rate) * frame_millis / 1000 * channels)
+  , capacity (frame_size * std::max<std::size_t> (jitter_frames, 1))
+  , prefill (frame_size * ((std::max<std::size_t> (jitter_frames, 1) + 1) / 2))
+  , total (frame_size)
+  , out (frame_size)
+{
+}
+
+
+void
+audio_mixer::add_participant (uint32_t friend_number)
+{
+  participant &p = participants[friend_number];
+  p.ring.resize (capacity);
+  p.frame.resize (frame_size);
+}
+
+
+void
+audio_mixer::remove_participant (uint32_t friend_number)
+{
+  participants.erase (friend_number);
+  if (participants.empty ())
+    running = false;
+}
+
+
+void
+audio_mixer::resample (int16_t const *pcm, std::size_t sample_count,
+                       uint8_t in_channels, uint32_t in_rate)
+{
+  std::size_t const out_count = sample_count * sampling_rate / in_rate;
+  converted.resize (out_count * channels);
+
+  if (in_rate == sampling_rate && in_channels == channels)
+    {
+      std::copy (pcm, pcm + sample_count * channels, converted.begin ());
+      return;
+    }
+
+  for (std::size_t i = 0; i < out_count; i++)
+    {
+      // Position of this output sample in the input, as index and fraction
+      // of in_rate / sampling_rate.
+      uint64_t const position = uint64_t (i) * in_rate;
+      std::size_t const index = position / sampling_rate;
+      int32_t const fraction = position % sampling_rate;
+      std::size_t const next = std::min (index + 1, sample_count - 1);
+
+      for (uint8_t c = 0; c < channels; c++)
+        {
+          int32_t a, b;
+          if (in_channels == channels)
+            {
+              a = pcm[index * in_channels + c];
+              b = pcm[next * in_channels + c];
+            }
+          else if (channels == 1)
+            {
+              // Down-mix to mono by averaging all input channels.
+              a = b = 0;
+              for (uint8_t k = 0; k < in_channels; k++)
+                {
+                  a += pcm[index * in_channels + k];
+                  b += pcm[next * in_channels + k];
+                }
+              a /= in_channels;
+              b /= in_channels;
+            }
+          else
+            {
+              // Up-mix by repeating the last input channel.
+              uint8_t const k = std::min<uint8_t> (c, in_channels - 1);
+              a = pcm[index * in_channels + k];
+              b = pcm[next * in_channels + k];
+            }
+          converted[i * channels + c] = int16_t (a + int64_t (b - a) * fraction / int64_t (sampling_rate));
+        }
+    }
+}
+
+
+bool
+audio_mixer::push (uint32_t friend_number,
+                   int16_t const *pcm, std::size_t sample_count,
+                   uint8_t in_channels, uint32_t in_rate)
+{
+  auto found = participants.find (friend_number);
+  if (found == participants.end ())
+    return false;
+  if (sample_count == 0 || in_channels == 0 || in_rate == 0)
+    return true;
+
+  participant &p = found->second;
+  resample (pcm, sample_count, in_channels, in_rate);
+
+  std::size_t length = converted.size ();
+  int16_t const *data = converted.data ();
+  if (length > capacity)
+    {
+      // Only the newest samples fit.
+      data += length - capacity;
+      length = capacity;
+    }
+  if (p.count + length > capacity)
+    {
+      std::size_t const dropped = p.count + length - capacity;
+      p.head = (p.head + dropped) % capacity;
+      p.count -= dropped;
+      counters.overflows++;
+    }
+
+  std::size_t const tail = (p.head + p.count) % capacity;
+  std::size_t const first = std::min (length, capacity - tail);
+  std::copy (data, data + first, p.ring.begin () + tail);
+  std::copy (data + first, data + length, p.ring.begin ());
+  p.count += length;
+  return true;
+}
+
+
+void
+audio_mixer::take_frame (participant &p)
+{
+  if (!p.primed && p.count >= prefill)
+    p.primed = true;
+
+  if (!p.primed || p.count < frame_size)
+    {
+      if (p.primed)
+        {
+          counters.underruns++;
+          p.primed = false;
+        }
+      std::fill (p.frame.begin (), p.frame.end (), 0);
+      return;
+    }
+
+  std::size_t const first = std::min (frame_size, capacity - p.head);
+  std::copy (p.ring.begin () + p.head, p.ring.begin () + p.head + first, p.frame.begin ());
+  std::copy (p.ring.begin (), p.ring.begin () + (frame_size - first), p.frame.begin () + first);
+  p.head = (p.head + frame_size) % capacity;
+  p.count -= frame_size;
+}
+
+
+void
+audio_mixer::mix (sender const &send)
+{
+  std::fill (total.begin (), total.end (), 0);
+  for (auto &entry : participants)
+    {
+      participant &p = entry.second;
+      take_frame (p);
+      int16_t const *__restrict frame = p.frame.data ();
+      int32_t *__restrict sum = total.data ();
+      for (std::size_t i = 0; i < frame_size; i++)
+        sum[i] += frame[i];
+    }
+
+  for (auto &entry : participants)
+    {
+      int16_t const *__restrict frame = entry.second.frame.data ();
+      int32_t const *__restrict sum = total.data ();
+      int16_t *__restrict mixed = out.data ();
+      for (std::size_t i = 0; i < frame_size; i++)
+        mixed[i] = int16_t (std::min (std::max (sum[i] - frame[i], int32_t (INT16_MIN)), int32_t (INT16_MAX)));
+
+      if (!send (entry.first, out.data (), frame_size / channels, channels, sampling_rate))
+        counters.send_errors++;
+    }
+
+  counters.mixes++;
+}
+
+
+audio_mixer::clock::duration
+audio_mixer::tick (clock::time_point now, sender const &send)
+{
+  if (participants.empty ())
+    return period;
+
+  if (!running)
+    {
+      running = true;
+      next_mix = now;
+    }
+
+  // If the mixer fell far behind, e.g. because iterate was not called for a
+  // while, skip the missed periods instead of sending a burst of mixes.
+  if (now - next_mix > period * 4)
+    next_mix = now;
+
+  while (now >= next_mix)
+    {
+      mix (send);
+      next_mix += period;
+    }
+
+  return next_mix - now;
+}
+
+
+audio_mixer::clock::duration
+audio_mixer::until_next (clock::time_point now) const
+{
+  if (!running)
+    return period;
+  return std::max (next_mix - now, clock::duration::zero ());
+}
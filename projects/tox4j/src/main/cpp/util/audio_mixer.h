@@ -0,0 +1,119 @@
+#pragma once
+
+#include <chrono>
+#include <cstddef>
+#include <cstdint>
+#include <functional>
+#include <map>
+#include <vector>
+
+
+/**
+ * Mixes the audio of the participants of a conference, so that each of them
+ * receives the sum of everyone else.
+ *
+ * Received frames are converted to the mixer's sampling rate and channel
+ * count with linear interpolation and stored in a small jitter buffer per
+ * participant. Every frame period, one frame is taken from each buffer, all
+ * frames are summed once, and each participant's mix is the sum minus their
+ * own frame, saturated to 16 bits. A participant whose buffer runs dry
+ * contributes silence until it has been refilled to half its capacity; a
+ * participant whose buffer overflows loses its oldest samples, which bounds
+ * the added latency.
+ *
+ * The mixer is not thread-safe. ToxAv only uses it under the ToxAV instance
+ * lock. Participants whose calls end are removed in toxavIterate, not in the
+ * call state callback, which runs under the Tox instance lock.
+ */
+struct audio_mixer
+{
+  typedef std::chrono::steady_clock clock;
+
+  /**
+   * Sends a mix to a participant. Returns false if sending failed.
+   */
+  typedef std::function<bool (uint32_t friend_number,
+                              int16_t const *pcm,
+                              std::size_t sample_count,
+                              uint8_t channels,
+                              uint32_t sampling_rate)> sender;
+
+  struct statistics
+  {
+    // Number of frame periods mixed.
+    uint64_t mixes = 0;
+    // Number of times a participant's jitter buffer ran dry.
+    uint64_t underruns = 0;
+    // Number of received frames that overflowed a jitter buffer.
+    uint64_t overflows = 0;
+    // Number of mixes that could not be sent.
+    uint64_t send_errors = 0;
+  };
+
+  audio_mixer (uint32_t sampling_rate, uint8_t channels, uint32_t frame_millis, std::size_t jitter_frames);
+
+  void add_participant (uint32_t friend_number);
+  void remove_participant (uint32_t friend_number);
+  std::size_t participant_count () const { return participants.size (); }
+
+  /**
+   * Store a received frame. Returns false if the friend is not a participant.
+   */
+  bool push (uint32_t friend_number,
+             int16_t const *pcm, std::size_t sample_count,
+             uint8_t channels, uint32_t sampling_rate);
+
+  /**
+   * Mix one frame period and send each participant their mix.
+   */
+  void mix (sender const &send);
+
+  /**
+   * Mix all frame periods that are due at `now`. Returns the time until the
+   * next one.
+   */
+  clock::duration tick (clock::time_point now, sender const &send);
+
+  /**
+   * The time from `now` until the next frame period is due.
+   */
+  clock::duration until_next (clock::time_point now) const;
+
+  statistics const &stats () const { return counters; }
+
+private:
+  struct participant
+  {
+    // Ring buffer of interleaved samples in the mixer's format.
+    std::vector<int16_t> ring;
+    std::size_t head = 0;
+    std::size_t count = 0;
+    // Whether the participant is contributing, i.e. was filled after its
+    // last underrun.
+    bool primed = false;
+    // The frame taken from the ring for the current mix.
+    std::vector<int16_t> frame;
+  };
+
+  void resample (int16_t const *pcm, std::size_t sample_count,
+                 uint8_t channels, uint32_t sampling_rate);
+  void take_frame (participant &p);
+
+  uint32_t const sampling_rate;
+  uint8_t const channels;
+  clock::duration const period;
+  // Interleaved samples per frame.
+  std::size_t const frame_size;
+  std::size_t const capacity;
+  std::size_t const prefill;
+
+  std::map<uint32_t, participant> participants;
+
+  std::vector<int16_t> converted;
+  std::vector<int32_t> total;
+  std::vector<int16_t> out;
+
+  bool running = false;
+  clock::time_point next_mix;
+  statistics counters;
+};
@@ -0,0 +1,167 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <cstring>
+#include <type_traits>
+#include <vector>
+
+
+/**
+ * A byte array field in an event record. It is written as a 32 bit length
+ * followed by the bytes.
+ */
+struct event_bytes
+{
+  uint8_t const *data;
+  std::size_t size;
+};
+
+
+/**
+ * Writer for flat event records, as read by FlatEventReader on the Java side.
+ *
+ * A record consists of a 32 bit event kind, a 32 bit payload size and the
+ * payload fields. All integers are written in native byte order, booleans are
+ * a single byte, and byte arrays are written as event_bytes.
+ *
+ * During an iteration, a direct ByteBuffer owned by Java is attached and
+ * records are written straight into it. Records produced while no buffer is
+ * attached or that don't fit into the remaining space are kept in a pending
+ * list and copied to the front of the next attached buffer, so that the
+ * original order of events is kept.
+ */
+struct event_buffer
+{
+  static std::size_t const header_size = 2 * sizeof (uint32_t);
+
+  /**
+   * Attach a Java direct buffer and move as many pending records as fit into
+   * it.
+   */
+  void
+  attach (uint8_t *data, std::size_t capacity)
+  {
+    target = data;
+    target_capacity = capacity;
+    target_size = 0;
+
+    std::size_t flushed = 0;
+    while (flushed < pending.size ())
+      {
+        std::size_t record_size = header_size + payload_size (&pending[flushed]);
+        if (record_size > target_capacity - target_size)
+          break;
+        std::memcpy (target + target_size, &pending[flushed], record_size);
+        target_size += record_size;
+        flushed += record_size;
+      }
+    pending.erase (pending.begin (), pending.begin () + flushed);
+  }
+
+  /**
+   * Detach the Java buffer.
+   *
+   * @return the number of bytes written to it.
+   */
+  std::size_t
+  detach ()
+  {
+    std::size_t size = target_size;
+    target = nullptr;
+    target_capacity = 0;
+    target_size = 0;
+    return size;
+  }
+
+  /**
+   * Whether there are records left that have not been written to a Java
+   * buffer, yet.
+   */
+  bool
+  has_pending () const
+  {
+    return !pending.empty ();
+  }
+
+  /**
+   * Append a record with the passed event kind and fields.
+   */
+  template<typename ...Fields>
+  void
+  write (uint32_t kind, Fields ...fields)
+  {
+    std::size_t const sizes[] = { 0, field_size (fields)... };
+    std::size_t payload = 0;
+    for (std::size_t size : sizes)
+      payload += size;
+
+    uint8_t *out = reserve (header_size + payload);
+    out = put (out, kind);
+    out = put (out, static_cast<uint32_t> (payload));
+
+    using expand = int[];
+    (void) expand { 0, (out = put (out, fields), 0)... };
+  }
+
+private:
+  uint8_t *target = nullptr;
+  std::size_t target_capacity = 0;
+  std::size_t target_size = 0;
+
+  std::vector<uint8_t> pending;
+
+  static uint32_t
+  payload_size (uint8_t const *record)
+  {
+    uint32_t size;
+    std::memcpy (&size, record + sizeof (uint32_t), sizeof size);
+    return size;
+  }
+
+  uint8_t *
+  reserve (std::size_t size)
+  {
+    if (pending.empty () && target != nullptr && size <= target_capacity - target_size)
+      {
+        uint8_t *out = target + target_size;
+        target_size += size;
+        return out;
+      }
+
+    std::size_t offset = pending.size ();
+    pending.resize (offset + size);
+    return &pending[offset];
+  }
+
+  template<typename T>
+  static std::size_t
+  field_size (T)
+  {
+    static_assert (std::is_arithmetic<T>::value, "Event fields must be integers, booleans or byte arrays");
+    return sizeof (T);
+  }
+
+  static std::size_t
+  field_size (event_bytes bytes)
+  {
+    return sizeof (uint32_t) + bytes.size;
+  }
+
+  template<typename T>
+  static uint8_t *
+  put (uint8_t *out, T value)
+  {
+    std::memcpy (out, &value, sizeof value);
+    return out + sizeof value;
+  }
+
+  static uint8_t *
+  put (uint8_t *out, event_bytes bytes)
+  {
+    out = put (out, static_cast<uint32_t> (bytes.size));
+    if (bytes.size != 0)
+      std::memcpy (out, bytes.data, bytes.size);
+    return out + bytes.size;
+  }
+};
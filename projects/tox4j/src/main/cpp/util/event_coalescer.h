@@ -0,0 +1,137 @@
+#pragma once
+
+#include <algorithm>
+#include <cstdint>
+#include <functional>
+#include <limits>
+#include <map>
+#include <utility>
+#include <vector>
+
+
+/**
+ * Holds back idempotent state updates, such as a friend's name or connection
+ * status, so that only the latest value per friend and event kind is emitted.
+ *
+ * An update is stored as a function that emits the event. Storing another
+ * update with the same kind and friend replaces it. Pending updates are
+ * emitted after a configurable number of iterations, or earlier for a single
+ * friend, when an event for that friend arrives that must not be coalesced.
+ * This keeps the relative order of a friend's state updates and its other
+ * events intact.
+ */
+struct event_coalescer
+{
+  /**
+   * Number of iterations to hold updates back. 0 disables coalescing.
+   */
+  uint32_t window = 0;
+
+  bool
+  enabled () const
+  {
+    return window != 0;
+  }
+
+  /**
+   * Replace the pending update of the given kind for a friend.
+   */
+  void
+  put (int kind, uint32_t friend_number, std::function<void ()> emit)
+  {
+    pending[key (friend_number, kind)] = update { next_sequence++, std::move (emit) };
+  }
+
+  /**
+   * Emit all pending updates for a friend, in the order of their last change.
+   */
+  void
+  flush (uint32_t friend_number)
+  {
+    if (pending.empty ())
+      return;
+    auto range = friend_range (friend_number);
+    emit (range.first, range.second);
+  }
+
+  /**
+   * Discard all pending updates for a friend, for instance when the friend is
+   * deleted, so that they are not delivered for a friend that no longer
+   * exists, or for a new friend that reuses its number.
+   */
+  void
+  drop (uint32_t friend_number)
+  {
+    if (pending.empty ())
+      return;
+    auto range = friend_range (friend_number);
+    pending.erase (range.first, range.second);
+  }
+
+  /**
+   * Emit all pending updates, in the order of their last change.
+   */
+  void
+  flush ()
+  {
+    emit (pending.begin (), pending.end ());
+    iterations = 0;
+  }
+
+  /**
+   * Count an iteration and emit all pending updates if the window has passed.
+   */
+  void
+  tick ()
+  {
+    if (pending.empty ())
+      return;
+    if (++iterations >= window)
+      flush ();
+  }
+
+private:
+  typedef std::pair<uint32_t, int> key_type;
+
+  struct update
+  {
+    uint64_t sequence;
+    std::function<void ()> emit;
+  };
+
+  typedef std::map<key_type, update>::iterator iterator;
+
+  std::map<key_type, update> pending;
+  uint64_t next_sequence = 0;
+  uint32_t iterations = 0;
+
+  static key_type
+  key (uint32_t friend_number, int kind)
+  {
+    return key_type (friend_number, kind);
+  }
+
+  std::pair<iterator, iterator>
+  friend_range (uint32_t friend_number)
+  {
+    auto first = pending.lower_bound (key (friend_number, 0));
+    auto last = pending.lower_bound (key (friend_number + 1, 0));
+    if (friend_number == std::numeric_limits<uint32_t>::max ())
+      last = pending.end ();
+    return std::make_pair (first, last);
+  }
+
+  void
+  emit (iterator first, iterator last)
+  {
+    std::vector<update> updates;
+    for (auto it = first; it != last; ++it)
+      updates.push_back (std::move (it->second));
+    pending.erase (first, last);
+
+    std::sort (updates.begin (), updates.end (),
+      [] (update const &a, update const &b) { return a.sequence < b.sequence; });
+    for (update const &u : updates)
+      u.emit ();
+  }
+};
@@ -47,8 +47,8 @@ throw_illegal_state_exception (JNIEnv *env, jint instance_number, std::string co
 }
 
 
-void
-throw_tox_exception (JNIEnv *env, char const *module, char const *prefix, char const *method, char const *code)
+static std::string
+exception_class_name (char const *module, char const *prefix, char const *method)
 {
   std::string className = "im/tox/tox4j/";
   className += module;
@@ -56,6 +56,32 @@ throw_tox_exception (JNIEnv *env, char const *module, char const *prefix, char c
   className += prefix;
   className += method;
   className += "Exception";
+  return className;
+}
+
+
+jobject
+tox_exception_code (JNIEnv *env, char const *module, char const *prefix, char const *method, char const *code)
+{
+  std::string enumName = exception_class_name (module, prefix, method) + "$Code";
+  jclass enumClass = env->FindClass (enumName.c_str ());
+  if (!enumClass)
+    return nullptr;
+
+  std::string fieldSig = "L" + enumName + ";";
+  jfieldID field = env->GetStaticFieldID (enumClass, code, fieldSig.c_str ());
+  // If the field does not exist, a NoSuchFieldError is pending. The class
+  // reference is released either way.
+  jobject enumCode = field ? env->GetStaticObjectField (enumClass, field) : nullptr;
+  env->DeleteLocalRef (enumClass);
+  return enumCode;
+}
+
+
+void
+throw_tox_exception (JNIEnv *env, char const *module, char const *prefix, char const *method, char const *code)
+{
+  std::string className = exception_class_name (module, prefix, method);
 
   jclass exceptionClass = env->FindClass (className.c_str ());
   if (!exceptionClass)
@@ -11,6 +11,7 @@ void throw_tox_killed_exception (JNIEnv *env, jint instance_number, char const *
 void throw_illegal_state_exception (JNIEnv *env, jint instance_number, char const *message);
 void throw_illegal_state_exception (JNIEnv *env, jint instance_number, std::string const &message);
 void throw_tox_exception (JNIEnv *env, char const *module, char const *prefix, char const *method, char const *code);
+jobject tox_exception_code (JNIEnv *env, char const *module, char const *prefix, char const *method, char const *code);
 
 
 PP_NORETURN void tox4j_fatal_error (JNIEnv *env, char const *message);
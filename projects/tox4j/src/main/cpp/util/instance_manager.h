@@ -1,8 +1,8 @@
 #pragma once
 
-#include <algorithm>
+#include <atomic>
 #include <cassert>
-#include <deque>
+#include <cstdint>
 #include <memory>
 #include <mutex>
 #include <vector>
@@ -20,6 +20,19 @@
  * them up. Instance numbers returned by add() are used to access and delete
  * instances. Instance numbers may be reused after finalize() is called on them.
  * The finalize() function may not be called before kill(). The kill() function
+ *
+ * An instance number holds the index of the instance's slot (plus 1) in its
+ * low bits and the slot's generation in its high bits. Finalising an instance
+ * increments its slot's generation, so that instance numbers of finalised
+ * instances are detected even after their slot has been reused. A slot whose
+ * generation would wrap around is retired instead of reused, so a stale number
+ * never becomes valid again. With 2^20 slots of 2^11 generations each, over
+ * two billion instances can be created before the manager runs out of slots.
+ *
+ * Slots are allocated in fixed size chunks that are never moved or freed while
+ * the manager exists. Looking up a slot is wait-free: it takes no lock, only
+ * the slot's own lock is held while calling into the instance. The manager lock
+ * is only taken by add() and finalize().
  */
 template<typename ObjectP, typename EventsP>
 class instance_manager
@@ -46,66 +59,87 @@ private:
       assert (!object_p == !events_p);
       return object_p != nullptr;
     }
+  };
 
+  /**
+   * An instance together with its lock and generation. Both the pointers and
+   * the generation are only accessed with the lock held.
+   */
+  struct slot
+  {
+    std::mutex lock;
+    instance_pointers pointers;
+    uint32_t generation = 0;
+    // Set when the generation wrapped around. The slot is never used again.
+    bool retired = false;
+  };
 
-    /**
-     * Contains the actual pointer/reference to the instance_pointers data.
-     * This is used so we can unlock the instance_manager after getting the
-     * instance and before calling the function in with_instance, which may take
-     * a long time and would unnecessarily block the manager during its execution.
-     */
-    struct locked
-    {
-      Object *object;
-      Events *events;
-      std::unique_lock<std::mutex> lock;
+  // Number of instance number bits holding the slot number. The remaining bits,
+  // except for the sign bit, hold the generation.
+  static std::size_t const slot_bits = 20;
+  static std::size_t const generation_bits = 31 - slot_bits;
+  static jint const slot_mask = (1 << slot_bits) - 1;
+  static uint32_t const generation_mask = (1u << generation_bits) - 1;
+
+  // Slot number 0 is never used, so that instance number 0 is the null instance.
+  static std::size_t const max_slots = (1 << slot_bits) - 1;
+
+  static std::size_t const chunk_bits = 10;
+  static std::size_t const chunk_size = 1 << chunk_bits;
+  static std::size_t const max_chunks = (max_slots + chunk_size - 1) / chunk_size;
+
+  // Allocated on demand by add(). A chunk is written before the slot_count
+  // increment that makes its first slot visible, so lookups can read it
+  // without synchronisation.
+  std::unique_ptr<slot[]> chunks[max_chunks];
+  // Number of slots ever handed out. Published by add() for lookups.
+  std::atomic<std::size_t> slot_count { 0 };
+
+  // Contains slot indices of finalised instances.
+  std::vector<std::size_t> freelist;
+  // Guards freelist and slot allocation.
+  std::mutex mutex;
 
-      explicit operator bool () const
-      {
-        // These come and go hand in hand.
-        assert (!object == !events);
-        return object != nullptr;
-      }
-    };
-
-    /**
-     * Copies the pointers together with their lock into a single object without
-     * pointers or references into the instance_pointers object, which may be
-     * moved when its containing vector reallocates.
-     */
-    locked
-    get (std::unique_lock<std::mutex> lock) const
-    {
-      return {
-        object_p.get (),
-        events_p.get (),
-        std::move (lock),
-      };
-    }
-  };
 
-  // The instances and locks lists are always equal in size (class invariant).
-  std::vector<instance_pointers> instances;
-  // Locks are managed separately so we can use trivial move semantics to destroy
-  // and reassign instance_pairs. A deque is used so we don't need an additional
-  // indirection that vector<unique_ptr<mutex>> would have.
-  std::deque<std::mutex> locks;
+  static std::size_t
+  slot_number (jint instanceNumber)
+  {
+    return instanceNumber & slot_mask;
+  }
 
-  // Contains indices (+1) into the instances/locks lists of finalised objects.
-  std::vector<jint> freelist;
-  // The global lock for the instance manager.
-  std::mutex mutex;
+  static uint32_t
+  generation_of (jint instanceNumber)
+  {
+    return static_cast<uint32_t> (instanceNumber) >> slot_bits;
+  }
 
+  static jint
+  make_instance_number (std::size_t index, uint32_t generation)
+  {
+    return static_cast<jint> ((generation << slot_bits) | (index + 1));
+  }
 
-  bool
-  check_instance_number (JNIEnv *env, jint instanceNumber, bool allow_zero)
+  slot &
+  slot_at (std::size_t index) const
+  {
+    return chunks[index >> chunk_bits][index & (chunk_size - 1)];
+  }
+
+
+  /**
+   * Find the slot an instance number refers to, without taking any lock.
+   * Throws an IllegalStateException and returns nullptr if the number can not
+   * refer to any slot handed out so far.
+   */
+  slot *
+  find_slot (JNIEnv *env, jint instanceNumber, bool allow_zero) const
   {
     if (instanceNumber < 0)
       {
         throw_illegal_state_exception (env, instanceNumber,
           "instance number out of range"
         );
-        return false;
+        return nullptr;
       }
 
     // This can happen when an exception is thrown from the constructor, giving this object
@@ -117,19 +151,30 @@ private:
             "function called on null instance"
           );
         // Null instances are OK, but should still not be processed.
-        return false;
+        return nullptr;
       }
 
-    if (static_cast<std::size_t> (instanceNumber) > instances.size ())
+    std::size_t const number = slot_number (instanceNumber);
+    if (number == 0 || number > slot_count.load (std::memory_order_acquire))
       {
         throw_illegal_state_exception (env, instanceNumber,
           "function called on invalid instance"
         );
-        return false;
+        return nullptr;
       }
 
-    // An instance should never be on this list twice.
-    if (std::find (freelist.begin (), freelist.end (), instanceNumber) != freelist.end ())
+    return &slot_at (number - 1);
+  }
+
+
+  /**
+   * Check that the instance number belongs to the current generation of its
+   * slot. The slot must be locked.
+   */
+  static bool
+  check_generation (JNIEnv *env, jint instanceNumber, slot const &instance)
+  {
+    if (instance.retired || generation_of (instanceNumber) != instance.generation)
       {
         throw_illegal_state_exception (env, instanceNumber,
           "accessed instance thought to be garbage collected"
@@ -157,42 +202,48 @@ public:
   jint
   add (JNIEnv *env, ObjectP object_p, EventsP events_p)
   {
-    // The manager is locked for the entire duration of this function. No access
-    // or mutation may happen during an add, because we might reallocate and
-    // move objects here.
+    // Lookups don't take this lock. They only see the new slot after it has
+    // been fully initialised.
     std::lock_guard<std::mutex> lock (mutex);
 
     tox4j_assert (object_p);
     tox4j_assert (events_p);
 
-    instance_pointers instance_p = {
-      std::move (object_p),
-      std::move (events_p),
-    };
+    std::size_t const count = slot_count.load (std::memory_order_relaxed);
+    std::size_t index = count;
 
-    // If there are free objects we can reuse..
+    // If there are free slots, use the last one that became unreachable (it
+    // will most likely be in cache). Otherwise, add a new one.
     if (!freelist.empty ())
       {
-        // ..use the last object that became unreachable (it will most likely be in cache).
-        jint instanceNumber = freelist.back ();
-        freelist.pop_back ();    // Remove it from the free list.
-
-        // The null instance should never be on the freelist.
-        tox4j_assert (instanceNumber >= 1);
-        // All instances on the freelist should be empty.
-        tox4j_assert (!instances[instanceNumber - 1]);
-
-        instances[instanceNumber - 1] = std::move (instance_p);
-
-        return instanceNumber;
+        index = freelist.back ();
+        freelist.pop_back ();
       }
+    else if (count == max_slots)
+      {
+        throw_illegal_state_exception (env, 0,
+          "too many instances"
+        );
+        return 0;
+      }
+    else if (!chunks[index >> chunk_bits])
+      chunks[index >> chunk_bits].reset (new slot[chunk_size]);
+
+    slot &instance = slot_at (index);
+    {
+      std::lock_guard<std::mutex> instance_lock (instance.lock);
+      // All slots on the freelist should be empty.
+      tox4j_assert (!instance.pointers);
+      instance.pointers = {
+        std::move (object_p),
+        std::move (events_p),
+      };
+    }
 
-    // Otherwise, add a new one.
-    instances.push_back (std::move (instance_p));
-    locks.emplace_back ();
+    if (index == count)
+      slot_count.store (count + 1, std::memory_order_release);
 
-    tox4j_assert (instances.size () == locks.size ());
-    return instances.size ();
+    return make_instance_number (index, instance.generation);
   }
 
 
@@ -205,43 +256,44 @@ public:
   void
   kill (JNIEnv *env, jint instanceNumber)
   {
-    // Lock the manager, since we're going to access the lists while add() might
-    // be modifying them.
-    std::lock_guard<std::mutex> lock (mutex);
-
-    if (!check_instance_number (env, instanceNumber, true))
+    slot *instance = find_slot (env, instanceNumber, true);
+    if (!instance)
       return;
 
-    // Lock before moving the pointers out.
-    std::lock_guard<std::mutex> instance_lock (locks[instanceNumber - 1]);
+    std::lock_guard<std::mutex> instance_lock (instance->lock);
+    if (!check_generation (env, instanceNumber, *instance))
+      return;
 
     // The instance destructor is called inside the critical section entered above.
-    auto dying = std::move (instances[instanceNumber - 1]);
+    auto dying = std::move (instance->pointers);
   }
 
 
   /**
-   * Add the instance number to the freelist, making it a candidate for reuse.
+   * Add the instance's slot to the freelist, making it a candidate for reuse.
    *
    * The kill function *must* be called before calling this function (otherwise,
    * undefined behaviour).
    * This function is *not* idempotent. It will throw a Java exception if it's
-   * called twice on the same instance number (given there was no add in between
-   * that returned that instance number).
+   * called twice on the same instance number.
    */
   void
   finalize (JNIEnv *env, jint instanceNumber)
   {
-    // Lock the manager, since we're going to access the lists while add() might
-    // be modifying them.
+    // Lock the manager, since we're going to modify the freelist.
     std::lock_guard<std::mutex> lock (mutex);
 
     // Don't throw on null instances, but also don't put it on the freelist.
-    if (!check_instance_number (env, instanceNumber, true))
+    slot *instance = find_slot (env, instanceNumber, true);
+    if (!instance)
+      return;
+
+    std::lock_guard<std::mutex> instance_lock (instance->lock);
+    if (!check_generation (env, instanceNumber, *instance))
       return;
 
     // The C++ side should already have been killed.
-    if (instances[instanceNumber - 1])
+    if (instance->pointers)
       {
         throw_illegal_state_exception (env, instanceNumber,
           "Leaked Tox instance #" + std::to_string (instanceNumber)
@@ -249,8 +301,14 @@ public:
         return;
       }
 
-    tox4j_assert (instanceNumber != 0);
-    freelist.push_back (instanceNumber);
+    // From now on, this instance number is stale, even after the slot is reused.
+    instance->generation = (instance->generation + 1) & generation_mask;
+    // Reusing the slot now would make the numbers of its first generation
+    // valid again.
+    if (instance->generation == 0)
+      instance->retired = true;
+    else
+      freelist.push_back (slot_number (instanceNumber) - 1);
   }
 
 
@@ -259,10 +317,10 @@ public:
    * callable type and accept an Object* and an Events&. The result of the
    * function call is returned by with_instance.
    *
-   * For the duration of the call to Func, the instance will be locked, and the
-   * manager will be unlocked. This means that multiple concurrent calls to a
-   * single instance are not possible, but multiple concurrent calls to different
-   * instances is permitted.
+   * For the duration of the call to Func, the instance will be locked. This
+   * means that multiple concurrent calls to a single instance are not possible,
+   * but multiple concurrent calls to different instances is permitted. Finding
+   * the instance takes no other lock.
    */
   template<typename Func>
   auto
@@ -270,32 +328,24 @@ public:
   {
     typedef typename std::result_of<Func (Object *, Events &)>::type return_type;
 
-    // After this object is initialised, it is independent of the pointers'
-    // memory location in the manager.
-    auto instance = [this, env, instanceNumber]
-      {
-        // Lock the instance manager only while accessing the list.
-        std::lock_guard<std::mutex> lock (mutex);
-
-        if (!check_instance_number (env, instanceNumber, false))
-          return typename instance_pointers::locked { };
+    slot *instance = find_slot (env, instanceNumber, false);
+    if (!instance)
+      return return_type ();
 
-        // Lock the instance, get the pointers out of the instance vector, and
-        // unlock the manager (by lock_guard's destructor).
-        return instances[instanceNumber - 1].get (std::unique_lock<std::mutex> (locks[instanceNumber - 1]));
-      } ();
+    // After this function returns, the lock will be destroyed, unlocking the
+    // instance.
+    std::lock_guard<std::mutex> instance_lock (instance->lock);
+    if (!check_generation (env, instanceNumber, *instance))
+      return return_type ();
 
-    if (!instance)
+    if (!instance->pointers)
       {
-        if (!env->ExceptionCheck ())
-          throw_tox_killed_exception (env, instanceNumber,
-            "function called on killed tox instance"
-          );
+        throw_tox_killed_exception (env, instanceNumber,
+          "function called on killed tox instance"
+        );
         return return_type ();
       }
 
-    // After this function returns, the unique_lock in the instance object will
-    // be destroyed, unlocking the instance.
-    return func (instance.object, *instance.events);
+    return func (instance->pointers.object_p.get (), *instance->pointers.events_p);
   }
 };
@@ -81,6 +81,41 @@ using FloatArray   = make_c_array<jfloat  , float   , jfloatArray  , &JNIEnv::Ge
 using DoubleArray  = make_c_array<jdouble , double  , jdoubleArray , &JNIEnv::GetDoubleArrayElements , &JNIEnv::ReleaseDoubleArrayElements >;
 
 
+/*****************************************************************************
+ *
+ * A slice of a Java direct ByteBuffer as C++ array.
+ *
+ *****************************************************************************/
+
+struct DirectByteBuffer
+{
+  DirectByteBuffer (JNIEnv *env, jobject buffer, jint offset, jint length)
+    : bytes (nullptr)
+    , count (0)
+  {
+    if (!buffer)
+      return;
+    auto address = static_cast<uint8_t const *> (env->GetDirectBufferAddress (buffer));
+    jlong const capacity = env->GetDirectBufferCapacity (buffer);
+    // Slices outside the buffer are passed on as null, which the tox functions report as error.
+    if (address && offset >= 0 && length >= 0 && jlong (offset) + length <= capacity)
+      {
+        bytes = address + offset;
+        count = length;
+      }
+  }
+
+  uint8_t const *data () const { return bytes; }
+
+  size_t size () const { return count; }
+  bool empty () const { return size () == 0; }
+
+private:
+  uint8_t const *bytes;
+  size_t count;
+};
+
+
 /*****************************************************************************
  *
  * C++ arrays as Java arrays.
@@ -0,0 +1,109 @@
+#include "util/yuv_convert.h"
+
+#include <cstring>
+
+using namespace yuv;
+
+
+void
+i420_frame::resize (std::size_t width, std::size_t height)
+{
+  std::size_t const luma = width * height;
+  std::size_t const chroma = (width / 2) * (height / 2);
+  if (storage.size () < luma + 2 * chroma)
+    storage.resize (luma + 2 * chroma);
+
+  y = storage.data ();
+  u = y + luma;
+  v = u + chroma;
+}
+
+
+void
+yuv::copy_plane (uint8_t const *src, std::size_t src_stride,
+                 uint8_t *dst, std::size_t width, std::size_t height)
+{
+  if (src_stride == width)
+    {
+      std::memcpy (dst, src, width * height);
+      return;
+    }
+
+  for (std::size_t row = 0; row < height; row++)
+    std::memcpy (dst + row * width, src + row * src_stride, width);
+}
+
+
+static inline uint8_t
+luma (int r, int g, int b)
+{
+  return uint8_t (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+}
+
+static inline uint8_t
+chroma_u (int r, int g, int b)
+{
+  return uint8_t (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+}
+
+static inline uint8_t
+chroma_v (int r, int g, int b)
+{
+  return uint8_t (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+}
+
+
+void
+yuv::rgba_to_i420 (uint8_t const *rgba, std::size_t stride,
+                   std::size_t width, std::size_t height,
+                   uint8_t *y, uint8_t *u, uint8_t *v)
+{
+  for (std::size_t row = 0; row < height; row++)
+    {
+      uint8_t const *__restrict src = rgba + row * stride;
+      uint8_t *__restrict dst = y + row * width;
+      for (std::size_t x = 0; x < width; x++)
+        dst[x] = luma (src[4 * x], src[4 * x + 1], src[4 * x + 2]);
+    }
+
+  std::size_t const chroma_width = width / 2;
+  for (std::size_t row = 0; row < height / 2; row++)
+    {
+      uint8_t const *__restrict top = rgba + 2 * row * stride;
+      uint8_t const *__restrict bottom = top + stride;
+      uint8_t *__restrict dst_u = u + row * chroma_width;
+      uint8_t *__restrict dst_v = v + row * chroma_width;
+      for (std::size_t x = 0; x < chroma_width; x++)
+        {
+          // Sum the 2x2 block, then divide by 4 with rounding.
+          int const r = (top[8 * x    ] + top[8 * x + 4] + bottom[8 * x    ] + bottom[8 * x + 4] + 2) >> 2;
+          int const g = (top[8 * x + 1] + top[8 * x + 5] + bottom[8 * x + 1] + bottom[8 * x + 5] + 2) >> 2;
+          int const b = (top[8 * x + 2] + top[8 * x + 6] + bottom[8 * x + 2] + bottom[8 * x + 6] + 2) >> 2;
+          dst_u[x] = chroma_u (r, g, b);
+          dst_v[x] = chroma_v (r, g, b);
+        }
+    }
+}
+
+
+void
+yuv::nv12_to_i420 (uint8_t const *y_src, std::size_t y_stride,
+                   uint8_t const *uv_src, std::size_t uv_stride,
+                   std::size_t width, std::size_t height,
+                   uint8_t *y, uint8_t *u, uint8_t *v)
+{
+  copy_plane (y_src, y_stride, y, width, height);
+
+  std::size_t const chroma_width = width / 2;
+  for (std::size_t row = 0; row < height / 2; row++)
+    {
+      uint8_t const *__restrict src = uv_src + row * uv_stride;
+      uint8_t *__restrict dst_u = u + row * chroma_width;
+      uint8_t *__restrict dst_v = v + row * chroma_width;
+      for (std::size_t x = 0; x < chroma_width; x++)
+        {
+          dst_u[x] = src[2 * x];
+          dst_v[x] = src[2 * x + 1];
+        }
+    }
+}
@@ -0,0 +1,58 @@
+#pragma once
+
+#include <cstddef>
+#include <cstdint>
+#include <vector>
+
+
+/**
+ * Conversion of captured video frames to the tightly packed I420 layout that
+ * toxav_video_send_frame expects: a Y plane of width * height bytes, followed
+ * by U and V planes of (width / 2) * (height / 2) bytes each.
+ *
+ * The loops work on whole rows with plain integer arithmetic and no
+ * branches, so that the compiler can vectorise them. Colours are converted
+ * with the BT.601 limited range coefficients that the VPX encoder assumes.
+ */
+namespace yuv
+{
+  /**
+   * Storage for a converted frame. The buffer only grows, so converting
+   * frames of the same size again does not allocate.
+   */
+  struct i420_frame
+  {
+    uint8_t *y = nullptr;
+    uint8_t *u = nullptr;
+    uint8_t *v = nullptr;
+
+    void resize (std::size_t width, std::size_t height);
+
+  private:
+    std::vector<uint8_t> storage;
+  };
+
+  /**
+   * Copy `height` rows of `width` bytes from a plane with row stride
+   * `src_stride` into a tightly packed plane.
+   */
+  void copy_plane (uint8_t const *src, std::size_t src_stride,
+                   uint8_t *dst, std::size_t width, std::size_t height);
+
+  /**
+   * Convert packed 8-bit RGBA pixels with row stride `stride` in bytes.
+   * Chroma is the average of each 2x2 block.
+   */
+  void rgba_to_i420 (uint8_t const *rgba, std::size_t stride,
+                     std::size_t width, std::size_t height,
+                     uint8_t *y, uint8_t *u, uint8_t *v);
+
+  /**
+   * Convert NV12: a Y plane followed by a plane of interleaved U and V
+   * samples, each with its own row stride.
+   */
+  void nv12_to_i420 (uint8_t const *y_src, std::size_t y_stride,
+                     uint8_t const *uv_src, std::size_t uv_stride,
+                     std::size_t width, std::size_t height,
+                     uint8_t *y, uint8_t *u, uint8_t *v);
+}
@@ -1,9 +1,10 @@
 package im.tox.tox4j.av
 
 import java.io.Closeable
+import java.nio.{ByteBuffer, ShortBuffer}
 
 import im.tox.tox4j.av.callbacks._
-import im.tox.tox4j.av.enums.ToxavCallControl
+import im.tox.tox4j.av.enums.{ToxavCallControl, ToxavPixelFormat}
 import im.tox.tox4j.av.exceptions._
 import im.tox.tox4j.core.ToxCore
 import org.jetbrains.annotations.NotNull
@@ -128,6 +129,22 @@ trait ToxAv[ToxCoreState] extends Closeable {
   @throws[ToxavSendFrameException]
   def audioSendFrame(friendNumber: Int, @NotNull pcm: Array[Short], sampleCount: Int, channels: Int, samplingRate: Int): Unit
 
+  /**
+   * The same as [[audioSendFrame]] with a short array, but with the samples between the buffer's position and limit.
+   *
+   * Direct buffers in native byte order are read in place by the native code. Other buffers are copied into a direct
+   * buffer kept for the call, so steady-state sending does not allocate. After the frame was sent, the buffer's
+   * position is advanced to its limit.
+   *
+   * @param friendNumber The friend number of the friend to which to send an audio frame.
+   * @param pcm A buffer with exactly sample_count * channels samples between its position and limit.
+   * @param sampleCount Number of samples in this frame.
+   * @param channels Number of audio channels.
+   * @param samplingRate Audio sampling rate used in this frame.
+   */
+  @throws[ToxavSendFrameException]
+  def audioSendFrame(friendNumber: Int, @NotNull pcm: ShortBuffer, sampleCount: Int, channels: Int, samplingRate: Int): Unit
+
   /**
    * Send a video frame to a friend.
    *
@@ -149,11 +166,70 @@ trait ToxAv[ToxCoreState] extends Closeable {
     @NotNull y: Array[Byte], @NotNull u: Array[Byte], @NotNull v: Array[Byte]
   ): Unit
 
+  /**
+   * Send a video frame with planes that may have padding at the end of each row.
+   *
+   * The planes are read in place from direct buffers, starting at each buffer's position, which is not changed.
+   * Each row starts `stride` bytes after the previous one. Frames whose strides are the plane widths are passed to the
+   * encoder without copying; others are packed natively first.
+   *
+   * @param friendNumber The friend number of the friend to which to send a video frame.
+   * @param width Width of the frame in pixels.
+   * @param height Height of the frame in pixels.
+   * @param y Direct buffer with the Y plane: height rows of width bytes.
+   * @param u Direct buffer with the U plane: height/2 rows of width/2 bytes.
+   * @param v Direct buffer with the V plane: height/2 rows of width/2 bytes.
+   * @param yStride Distance in bytes between the rows of the Y plane.
+   * @param uStride Distance in bytes between the rows of the U plane.
+   * @param vStride Distance in bytes between the rows of the V plane.
+   */
+  @throws[ToxavSendFrameException]
+  // scalastyle:ignore parameter.number
+  def videoSendFrame(
+    friendNumber: Int,
+    width: Int, height: Int,
+    @NotNull y: ByteBuffer, @NotNull u: ByteBuffer, @NotNull v: ByteBuffer,
+    yStride: Int, uStride: Int, vStride: Int
+  ): Unit
+
+  /**
+   * Send a video frame in a capture format, converting it to I420 natively.
+   *
+   * The frame is read in place from a direct buffer, starting at its position, which is not changed. The conversion
+   * happens before the instance is locked, so it does not delay [[iterate]].
+   *
+   * @param friendNumber The friend number of the friend to which to send a video frame.
+   * @param width Width of the frame in pixels.
+   * @param height Height of the frame in pixels.
+   * @param format The layout of the frame.
+   * @param data Direct buffer with the frame.
+   * @param stride Distance in bytes between the rows of the frame, or of each plane for planar formats.
+   */
+  @throws[ToxavSendFrameException]
+  def videoSendFrame(
+    friendNumber: Int,
+    width: Int, height: Int,
+    @NotNull format: ToxavPixelFormat, @NotNull data: ByteBuffer, stride: Int
+  ): Unit
+
   /**
    * Set the A/V event handler.
    *
+   * This also sets the event mask to the events the handler overrides, as determined by [[ToxAvEventMask.of]].
+   *
    * @param handler An event handler capable of handling all Tox A/V events.
    */
   def callback(@NotNull handler: ToxAvEventListener[ToxCoreState]): Unit
 
+  /**
+   * Select which events are collected for the A/V event handler.
+   *
+   * Events not in the mask are dropped as soon as they occur. In particular, masking out audio or video frames avoids
+   * copying the frame data. The mask can be changed at any time and takes effect for subsequent events. It is reset
+   * by [[callback]].
+   *
+   * @param mask A combination of [[ToxAvEventMask]] values.
+   */
+  def setEventMask(mask: Int): Unit
+
 }
@@ -0,0 +1,57 @@
+package im.tox.tox4j.av
+
+import java.nio.ByteBuffer
+
+/**
+ * A received video frame, with its planes in buffers owned by a [[VideoFramePool]].
+ *
+ * The planes are laid out as in [[callbacks.VideoReceiveFrameCallback.videoReceiveFrame]]: each plane buffer holds
+ * max(plane width, abs(stride)) * plane height bytes between its position and limit, and negative strides mean the
+ * image is bottom-up.
+ *
+ * The frame object and its buffers are reused for later frames from the same friend once the frame is released.
+ * After calling [[release]], neither the frame nor its buffers may be used any more.
+ *
+ * @param friendNumber The friend number of the friend who sent the frame.
+ */
+final class VideoFrame private[av] (pool: VideoFramePool, val friendNumber: Int) {
+
+  private[av] var width = 0 // scalastyle:ignore var.field
+  private[av] var height = 0 // scalastyle:ignore var.field
+  private[av] var yStride = 0 // scalastyle:ignore var.field
+  private[av] var uStride = 0 // scalastyle:ignore var.field
+  private[av] var vStride = 0 // scalastyle:ignore var.field
+
+  private[av] var y = VideoFramePool.EmptyPlane // scalastyle:ignore var.field
+  private[av] var u = VideoFramePool.EmptyPlane // scalastyle:ignore var.field
+  private[av] var v = VideoFramePool.EmptyPlane // scalastyle:ignore var.field
+
+  /**
+   * Whether the frame was returned to its pool and not acquired again since. Only accessed while holding the pool's lock.
+   */
+  private[av] var released = false // scalastyle:ignore var.field
+
+  /** Width of the frame in pixels. */
+  def getWidth: Int = width
+  /** Height of the frame in pixels. */
+  def getHeight: Int = height
+  /** Stride of the Y plane. */
+  def getYStride: Int = yStride
+  /** Stride of the U plane. */
+  def getUStride: Int = uStride
+  /** Stride of the V plane. */
+  def getVStride: Int = vStride
+  /** The Y plane. */
+  def getY: ByteBuffer = y
+  /** The U plane. */
+  def getU: ByteBuffer = u
+  /** The V plane. */
+  def getV: ByteBuffer = v
+
+  /**
+   * Return the frame to its pool, so that its buffers can receive the next frame. Releasing a frame more than once
+   * has no further effect.
+   */
+  def release(): Unit = pool.release(this)
+
+}
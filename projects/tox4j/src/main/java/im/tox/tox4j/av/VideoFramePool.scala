@@ -0,0 +1,104 @@
+package im.tox.tox4j.av
+
+import java.nio.ByteBuffer
+
+import scala.collection.mutable
+
+object VideoFramePool {
+
+  private[av] val EmptyPlane = ByteBuffer.allocateDirect(0)
+
+  /**
+   * By default, plane buffers are direct, so that they can be passed to native code such as renderers without copying.
+   */
+  val DirectAllocator: Int => ByteBuffer = ByteBuffer.allocateDirect
+
+  /**
+   * A buffer with `size` bytes between its position and limit, reusing `current` if it is large enough.
+   */
+  private def plane(current: ByteBuffer, size: Int, allocate: Int => ByteBuffer): ByteBuffer = {
+    val buffer = if (current.capacity >= size) current else allocate(size)
+    buffer.clear()
+    buffer.limit(size)
+    buffer
+  }
+
+}
+
+/**
+ * Reusable buffers for received video frames, kept per friend.
+ *
+ * [[acquire]] hands out a released frame of the same friend if there is one, and allocates a new frame otherwise. A
+ * reused frame keeps its plane buffers unless the new frame's planes don't fit, which only happens when the friend's
+ * resolution grows. In steady state, a listener that releases each frame before the next one arrives receives all
+ * frames of a call in the same three buffers. Frames that are never released are simply left to the garbage collector.
+ *
+ * All methods are synchronised, so frames can be released from another thread, e.g. a renderer.
+ *
+ * @param allocate Allocates plane buffers of a given capacity. Callers can supply their own allocator, e.g. to place
+ *                 frames in memory shared with a renderer.
+ */
+final class VideoFramePool(allocate: Int => ByteBuffer = VideoFramePool.DirectAllocator) {
+
+  import VideoFramePool._
+
+  private val released = new mutable.LongMap[List[VideoFrame]]
+
+  /**
+   * Take a frame for a friend and size its planes. The plane buffers' positions are 0 and their limits are the plane
+   * sizes; their contents are undefined until the caller fills them.
+   */
+  // scalastyle:ignore parameter.number
+  def acquire(
+    friendNumber: Int,
+    width: Int, height: Int,
+    yStride: Int, uStride: Int, vStride: Int,
+    ySize: Int, uSize: Int, vSize: Int
+  ): VideoFrame = {
+    val frame = synchronized {
+      released.getOrElseUpdate(friendNumber, Nil) match {
+        case reused :: rest =>
+          released(friendNumber) = rest
+          reused.released = false
+          reused
+        case Nil =>
+          new VideoFrame(this, friendNumber)
+      }
+    }
+    frame.width = width
+    frame.height = height
+    frame.yStride = yStride
+    frame.uStride = uStride
+    frame.vStride = vStride
+    frame.y = plane(frame.y, ySize, allocate)
+    frame.u = plane(frame.u, uSize, allocate)
+    frame.v = plane(frame.v, vSize, allocate)
+    frame
+  }
+
+  /**
+   * A frame released twice would be handed out to two listeners at once, so only the first release returns it.
+   */
+  private[av] def release(frame: VideoFrame): Unit = synchronized {
+    if (!frame.released) {
+      frame.released = true
+      released.get(frame.friendNumber) foreach { frames =>
+        released(frame.friendNumber) = frame :: frames
+      }
+    }
+  }
+
+  /**
+   * Drop the released frames of a friend, for instance when a call ends. Frames still held by the listener are
+   * discarded when they are released.
+   */
+  def clear(friendNumber: Int): Unit = synchronized {
+    released.remove(friendNumber)
+  }
+
+  /**
+   * The number of released frames held for reuse.
+   */
+  def size: Int = synchronized(released.values.map(_.size).sum)
+
+}
@@ -0,0 +1,30 @@
+package im.tox.tox4j.av.callbacks
+
+import java.nio.ShortBuffer
+
+import org.jetbrains.annotations.NotNull
+
+/**
+ * Allocation-free variant of [[AudioReceiveFrameCallback]].
+ *
+ * Event listeners can opt in to this callback by mixing it into their [[ToxAvEventListener]]. For those listeners,
+ * audio frames are passed as a read-only view of the received samples instead of a freshly allocated short array, and
+ * the array variant of [[AudioReceiveFrameCallback.audioReceiveFrame]] is not called.
+ */
+trait AudioReceiveFrameBufferCallback[ToxCoreState] {
+  /**
+   * The same as [[AudioReceiveFrameCallback.audioReceiveFrame]], but with the samples in a [[ShortBuffer]].
+   *
+   * The buffer's contents are only valid for the duration of this call. Its position and limit delimit the samples
+   * (sample_count * channels elements). Implementations that need the samples afterwards must copy them, e.g. into a
+   * mixing buffer, before returning.
+   *
+   * @param friendNumber The friend number of the friend who sent an audio frame.
+   * @param pcm A read-only buffer containing the audio samples between its position and limit.
+   * @param channels Number of audio channels.
+   * @param samplingRate Sampling rate used in this frame.
+   */
+  def audioReceiveFrame(
+    friendNumber: Int, @NotNull pcm: ShortBuffer, channels: Int, samplingRate: Int
+  )(state: ToxCoreState): ToxCoreState = state
+}
@@ -0,0 +1,52 @@
+package im.tox.tox4j.av.callbacks
+
+import im.tox.tox4j.core.callbacks.ListenerCallbacks
+
+/**
+ * Event kinds for [[im.tox.tox4j.av.ToxAv.setEventMask]].
+ *
+ * Each bit selects the events of one of the callback interfaces [[ToxAvEventListener]] is composed of. Masks can be
+ * combined with `|`.
+ */
+object ToxAvEventMask {
+
+  val Empty = 0
+
+  val Call = 1 << 1
+  val CallState = 1 << 2
+  val BitRateStatus = 1 << 3
+  val AudioReceiveFrame = 1 << 4
+  val VideoReceiveFrame = 1 << 5
+
+  private val callbacks = Seq[(Int, Class[_])](
+    Call -> classOf[CallCallback[_]],
+    CallState -> classOf[CallStateCallback[_]],
+    BitRateStatus -> classOf[BitRateStatusCallback[_]],
+    AudioReceiveFrame -> classOf[AudioReceiveFrameCallback[_]],
+    AudioReceiveFrame -> classOf[AudioReceiveFrameBufferCallback[_]],
+    VideoReceiveFrame -> classOf[VideoReceiveFrameCallback[_]],
+    VideoReceiveFrame -> classOf[VideoReceiveFrameBufferCallback[_]]
+  )
+
+  val All = callbacks.map(_._1).foldLeft(Empty)(_ | _)
+
+  /**
+   * Infer the events a listener handles from the callback methods it overrides.
+   *
+   * A callback counts as unhandled if the listener inherits its implementation from [[ToxAvEventAdapter]], which
+   * ignores the event. Listeners that implement [[ToxAvEventListener]] directly are assumed to handle all events.
+   * Opt-in callbacks like the buffer variants only count if the listener overrides them, see
+   * [[im.tox.tox4j.core.callbacks.ListenerCallbacks]].
+   *
+   * @param listener The event listener to inspect.
+   * @return The combination of masks for all events the listener handles.
+   */
+  def of(listener: ToxAvEventListener[_]): Int = {
+    callbacks.foldLeft(Empty) {
+      case (mask, (bit, callback)) =>
+        val handled = ListenerCallbacks.handles(listener, callback, classOf[ToxAvEventAdapter[_]], classOf[ToxAvEventListener[_]])
+        if (handled) mask | bit else mask
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package im.tox.tox4j.av.callbacks
+
+import im.tox.tox4j.av.{VideoFrame, VideoFramePool}
+import org.jetbrains.annotations.NotNull
+
+/**
+ * Allocation-free variant of [[VideoReceiveFrameCallback]].
+ *
+ * Event listeners can opt in to this callback by mixing it into their [[ToxAvEventListener]]. For those listeners,
+ * the planes of received video frames are copied into buffers from the listener's [[videoFramePool]] instead of three
+ * freshly allocated byte arrays, and the array variant of [[VideoReceiveFrameCallback.videoReceiveFrame]] is not
+ * called.
+ */
+trait VideoReceiveFrameBufferCallback[ToxCoreState] {
+  /**
+   * The pool received frames are taken from. The frames of a friend are dropped from it when their call ends.
+   */
+  def videoFramePool: VideoFramePool
+
+  /**
+   * The same as [[VideoReceiveFrameCallback.videoReceiveFrame]], but with the frame in pooled buffers.
+   *
+   * The frame stays valid until the listener calls [[VideoFrame.release]], which may happen after this call returns,
+   * e.g. on a rendering thread. Frames should be released as soon as possible, so that their buffers can be reused.
+   *
+   * @param frame The received frame with its dimensions, strides and planes.
+   */
+  def videoReceiveFrame(@NotNull frame: VideoFrame)(state: ToxCoreState): ToxCoreState = {
+    frame.release()
+    state
+  }
+}
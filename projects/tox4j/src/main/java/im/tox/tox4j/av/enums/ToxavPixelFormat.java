@@ -0,0 +1,18 @@
+package im.tox.tox4j.av.enums;
+
+/**
+ * Layouts of captured video frames that can be converted to I420 when sending.
+ */
+public enum ToxavPixelFormat {
+  /**
+   * Packed 8-bit red, green, blue and alpha samples, 4 bytes per pixel. The
+   * alpha channel is ignored.
+   */
+  RGBA,
+
+  /**
+   * A plane of 8-bit Y samples, followed by a plane of interleaved U and V
+   * samples with half the width and height, using the same row stride.
+   */
+  NV12,
+}
@@ -0,0 +1,41 @@
+package im.tox.tox4j.core
+
+/**
+ * The outcome of a batch operation such as [[ToxCore.addFriendsNorequest]], one element per input item, in input order.
+ *
+ * A batch does not stop at the first failing item. Each item either succeeded with a value, or failed with the error
+ * code that its single-item counterpart would have thrown as exception.
+ *
+ * @param values The value of each item. For failed items, the value is unspecified.
+ * @param errors The error code of each failed item, or [[None]] for items that succeeded.
+ * @tparam A The value type.
+ * @tparam Code The error code type of the corresponding exception.
+ */
+final case class ToxBatchResult[+A, +Code](values: IndexedSeq[A], errors: IndexedSeq[Option[Code]]) {
+  require(values.length == errors.length, "There must be one error entry per value")
+
+  /**
+   * The number of items in the batch.
+   */
+  def size: Int = values.length
+
+  /**
+   * True if every item in the batch succeeded.
+   */
+  def isSuccess: Boolean = errors.forall(_.isEmpty)
+
+  /**
+   * The outcome of a single item: its error code on the left, or its value on the right.
+   */
+  def apply(index: Int): Either[Code, A] = errors(index).toLeft(values(index))
+
+  /**
+   * The index and error code of each failed item.
+   */
+  def failures: IndexedSeq[(Int, Code)] = {
+    errors.zipWithIndex.collect {
+      case (Some(code), index) => (index, code)
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package im.tox.tox4j.core
 
 import java.io.Closeable
+import java.nio.ByteBuffer
 
 import im.tox.tox4j.core.callbacks._
 import im.tox.tox4j.core.enums.{ToxFileControl, ToxMessageType, ToxUserStatus}
@@ -271,6 +272,19 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[IllegalArgumentException]("if the Public Key was not the right length.")
   def addFriendNorequest(@NotNull publicKey: Array[Byte]): Int
 
+  /**
+   * Add several friends without sending friend requests, in a single call.
+   *
+   * The same as calling [[addFriendNorequest]] for each public key, in order, but instead of throwing on the first
+   * failure, the error code of each key is returned in the result. This is much faster than a loop for large friend
+   * lists.
+   *
+   * @param publicKeys the Public Keys to add as friends ([[ToxCoreConstants.PublicKeySize]] bytes each).
+   * @return the new friend number or the error code of each key.
+   */
+  @throws[IllegalArgumentException]("if any Public Key was not the right length.")
+  def addFriendsNorequest(@NotNull publicKeys: Array[Array[Byte]]): ToxBatchResult[Int, ToxFriendAddException.Code]
+
   /**
    * Remove a friend from the friend list.
    *
@@ -283,6 +297,17 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFriendDeleteException]
   def deleteFriend(friendNumber: Int): Unit
 
+  /**
+   * Remove several friends from the friend list, in a single call.
+   *
+   * The same as calling [[deleteFriend]] for each friend number, in order, but instead of throwing on the first
+   * failure, the error code of each friend is returned in the result.
+   *
+   * @param friendNumbers the friend numbers to delete.
+   * @return the error code of each friend number.
+   */
+  def deleteFriends(@NotNull friendNumbers: Array[Int]): ToxBatchResult[Unit, ToxFriendDeleteException.Code]
+
   /**
    * Gets the friend number for the specified Public Key.
    *
@@ -302,6 +327,18 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFriendGetPublicKeyException]
   def getFriendPublicKey(friendNumber: Int): Array[Byte]
 
+  /**
+   * Gets the Public Keys of several friends, in a single call.
+   *
+   * The same as calling [[getFriendPublicKey]] for each friend number, but instead of throwing on the first failure,
+   * the error code of each friend is returned in the result.
+   *
+   * @param friendNumbers the friend numbers.
+   * @return the Public Key or the error code of each friend number.
+   */
+  @NotNull
+  def getFriendPublicKeys(@NotNull friendNumbers: Array[Int]): ToxBatchResult[Array[Byte], ToxFriendGetPublicKeyException.Code]
+
   /**
    * Checks whether a friend with the specified friend number exists.
    *
@@ -325,6 +362,17 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @NotNull
   def getFriendList: Array[Int]
 
+  /**
+   * Get the state of all friends in a single call.
+   *
+   * This returns the same friend numbers as [[getFriendList]], together with each friend's Public Key, connection
+   * status, user status and last online time. The state is taken at once, so it is consistent across friends.
+   *
+   * @return a snapshot of all friends, empty if there are no friends.
+   */
+  @NotNull
+  def friendSnapshot: ToxFriendSnapshot
+
   /**
    * Tell friend number whether or not we are currently typing.
    *
@@ -364,6 +412,42 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFriendSendMessageException]
   def friendSendMessage(friendNumber: Int, @NotNull messageType: ToxMessageType, timeDelta: Int, @NotNull message: Array[Byte]): Int
 
+  /**
+   * Send a text chat message to an online friend, reading the message from a buffer.
+   *
+   * The same as the byte array overload, but sends the bytes between the buffer's position and its limit. Direct
+   * buffers are passed to the native library without copying. On success, the buffer's position is advanced to its
+   * limit.
+   *
+   * @param friendNumber The friend number of the friend to send the message to.
+   * @param messageType Message type (normal, action, ...).
+   * @param timeDelta The time between composition (user created the message) and calling this function.
+   * @param message The message text.
+   * @return the message ID.
+   */
+  @throws[ToxFriendSendMessageException]
+  def friendSendMessage(friendNumber: Int, @NotNull messageType: ToxMessageType, timeDelta: Int, @NotNull message: ByteBuffer): Int
+
+  /**
+   * Send the same text chat message to several friends, in a single call.
+   *
+   * The same as calling [[friendSendMessage]] for each friend number, but the message is passed to the native library
+   * only once, and instead of throwing on the first failure, the error code of each friend is returned in the result.
+   *
+   * @param friendNumbers The friend numbers of the friends to send the message to.
+   * @param messageType Message type (normal, action, ...).
+   * @param timeDelta The time between composition (user created the message) and calling this function.
+   * @param message The message text.
+   * @return the message ID or the error code of each friend number.
+   */
+  @NotNull
+  def friendSendMessageBroadcast(
+      @NotNull friendNumbers: Array[Int],
+      @NotNull messageType: ToxMessageType,
+      timeDelta: Int,
+      @NotNull message: Array[Byte]
+  ): ToxBatchResult[Int, ToxFriendSendMessageException.Code]
+
   /**
    * Sends a file control command to a friend for a given file transfer.
    *
@@ -472,6 +556,22 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFileSendChunkException]
   def fileSendChunk(friendNumber: Int, fileNumber: Int, position: Long, @NotNull data: Array[Byte]): Unit
 
+  /**
+   * Send a chunk of file data to a friend, reading the chunk from a buffer.
+   *
+   * The same as the byte array overload, but sends the bytes between the buffer's position and its limit. Direct
+   * buffers are passed to the native library without copying, so a file can be sent from a mapped file or a reused
+   * direct buffer without allocating a byte array per chunk. On success, the buffer's position is advanced to its
+   * limit.
+   *
+   * @param friendNumber The friend number of the receiving friend for this file.
+   * @param fileNumber The file transfer identifier returned by [[fileSend]].
+   * @param position The file or stream position from which the friend should continue writing.
+   * @param data The chunk data.
+   */
+  @throws[ToxFileSendChunkException]
+  def fileSendChunk(friendNumber: Int, fileNumber: Int, position: Long, @NotNull data: ByteBuffer): Unit
+
   /**
    * Send a custom lossy packet to a friend.
    *
@@ -491,6 +591,19 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFriendCustomPacketException]
   def friendSendLossyPacket(friendNumber: Int, @NotNull data: Array[Byte]): Unit
 
+  /**
+   * Send a custom lossy packet to a friend, reading the packet from a buffer.
+   *
+   * The same as the byte array overload, but sends the bytes between the buffer's position and its limit. Direct
+   * buffers are passed to the native library without copying. On success, the buffer's position is advanced to its
+   * limit.
+   *
+   * @param friendNumber The friend number of the friend this lossy packet should be sent to.
+   * @param data A buffer containing the packet data including packet id.
+   */
+  @throws[ToxFriendCustomPacketException]
+  def friendSendLossyPacket(friendNumber: Int, @NotNull data: ByteBuffer): Unit
+
   /**
    * Send a custom lossless packet to a friend.
    *
@@ -506,11 +619,36 @@ trait ToxCore[ToxCoreState] extends Closeable {
   @throws[ToxFriendCustomPacketException]
   def friendSendLosslessPacket(friendNumber: Int, @NotNull data: Array[Byte]): Unit
 
+  /**
+   * Send a custom lossless packet to a friend, reading the packet from a buffer.
+   *
+   * The same as the byte array overload, but sends the bytes between the buffer's position and its limit. Direct
+   * buffers are passed to the native library without copying. On success, the buffer's position is advanced to its
+   * limit.
+   *
+   * @param friendNumber The friend number of the friend this lossless packet should be sent to.
+   * @param data A buffer containing the packet data including packet id.
+   */
+  @throws[ToxFriendCustomPacketException]
+  def friendSendLosslessPacket(friendNumber: Int, @NotNull data: ByteBuffer): Unit
+
   /**
    * Register the core event handler.
    *
+   * This also sets the event mask to the events the handler overrides, as determined by [[ToxEventMask.of]].
+   *
    * @param handler An event handler capable of handling all Tox events.
    */
   def callback(@NotNull handler: ToxEventListener[ToxCoreState]): Unit
 
+  /**
+   * Select which events are collected for the event handler.
+   *
+   * Events not in the mask are dropped as soon as they occur, before any work is done to pass them to the handler.
+   * The mask can be changed at any time and takes effect for subsequent events. It is reset by [[callback]].
+   *
+   * @param mask A combination of [[ToxEventMask]] values.
+   */
+  def setEventMask(mask: Int): Unit
+
 }
@@ -0,0 +1,55 @@
+package im.tox.tox4j.core
+
+import im.tox.tox4j.core.enums.{ToxConnection, ToxUserStatus}
+
+/**
+ * The state of all friends at one point in time, as returned by [[ToxCore.friendSnapshot]].
+ *
+ * The state is stored in columns: one primitive array per field, with one element per friend. The element at index i
+ * of each column belongs to the friend with the friend number `friendNumbers(i)`. Use the accessor methods for single
+ * values, or the columns directly to process all friends without creating an object per friend.
+ *
+ * The arrays are owned by the snapshot and must not be modified.
+ *
+ * @param friendNumbers The friend numbers, in the order of [[ToxCore.getFriendList]].
+ * @param publicKeys The Public Keys of all friends, concatenated. Each key is [[ToxCoreConstants.PublicKeySize]] bytes.
+ * @param connectionStatuses The [[ToxConnection]] ordinals.
+ * @param statuses The [[ToxUserStatus]] ordinals.
+ * @param lastOnline The time each friend was last seen online, in seconds since the epoch.
+ */
+final class ToxFriendSnapshot(
+    val friendNumbers: Array[Int],
+    val publicKeys: Array[Byte],
+    val connectionStatuses: Array[Int],
+    val statuses: Array[Int],
+    val lastOnline: Array[Long]
+) {
+  require(publicKeys.length == friendNumbers.length * ToxCoreConstants.PublicKeySize)
+  require(connectionStatuses.length == friendNumbers.length)
+  require(statuses.length == friendNumbers.length)
+  require(lastOnline.length == friendNumbers.length)
+
+  /**
+   * The number of friends in the snapshot.
+   */
+  def size: Int = friendNumbers.length
+
+  /**
+   * A copy of the Public Key of the friend at the given index.
+   */
+  def publicKey(index: Int): Array[Byte] = {
+    val offset = index * ToxCoreConstants.PublicKeySize
+    java.util.Arrays.copyOfRange(publicKeys, offset, offset + ToxCoreConstants.PublicKeySize)
+  }
+
+  /**
+   * The connection status of the friend at the given index.
+   */
+  def connectionStatus(index: Int): ToxConnection = ToxConnection.values()(connectionStatuses(index))
+
+  /**
+   * The user status of the friend at the given index.
+   */
+  def status(index: Int): ToxUserStatus = ToxUserStatus.values()(statuses(index))
+
+}
@@ -0,0 +1,30 @@
+package im.tox.tox4j.core.callbacks
+
+import java.nio.ByteBuffer
+
+import org.jetbrains.annotations.NotNull
+
+/**
+ * Allocation-free variant of [[FileRecvChunkCallback]].
+ *
+ * Event listeners can opt in to this callback by mixing it into their [[ToxEventListener]]. For those listeners, file
+ * chunks are passed as a read-only view of the received data instead of a freshly allocated byte array, and the
+ * byte array variant of [[FileRecvChunkCallback.fileRecvChunk]] is not called.
+ */
+trait FileRecvChunkBufferCallback[ToxCoreState] {
+  /**
+   * The same as [[FileRecvChunkCallback.fileRecvChunk]], but with the chunk data in a [[ByteBuffer]].
+   *
+   * The buffer's contents are only valid for the duration of this call. Its position and limit delimit the chunk, and
+   * the buffer object itself may be reused for the next chunk. Implementations that need the data afterwards must
+   * copy it, e.g. by writing it to a file channel before returning.
+   *
+   * @param friendNumber The friend number of the friend who is sending the file.
+   * @param fileNumber The friend-specific file number the data received is associated with.
+   * @param position The file position of the first byte in data.
+   * @param data A read-only buffer containing the received chunk between its position and limit.
+   */
+  def fileRecvChunk(
+    friendNumber: Int, fileNumber: Int, position: Long, @NotNull data: ByteBuffer
+  )(state: ToxCoreState): ToxCoreState = state
+}
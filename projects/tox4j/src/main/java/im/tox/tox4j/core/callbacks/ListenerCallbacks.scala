@@ -0,0 +1,75 @@
+package im.tox.tox4j.core.callbacks
+
+import java.io.{ByteArrayOutputStream, InputStream}
+import java.lang.reflect.Method
+
+import scala.annotation.tailrec
+
+/**
+ * Finds out which callbacks of an event listener do something, for [[ToxEventMask.of]] and
+ * [[im.tox.tox4j.av.callbacks.ToxAvEventMask.of]].
+ */
+private[tox4j] object ListenerCallbacks {
+
+  /**
+   * Whether a listener handles the events of a callback interface.
+   *
+   * A callback counts as unhandled if the listener inherits its implementation from the adapter, which ignores the
+   * event. The callbacks the listener interface is composed of count as handled otherwise, so that listeners
+   * implementing it directly handle all events. Opt-in callbacks that are not part of the listener interface must also
+   * be implemented by the listener itself. Inheriting their default implementation from the callback trait does not
+   * count.
+   *
+   * @param listener The event listener to inspect.
+   * @param callback The callback interface.
+   * @param adapter The adapter class ignoring all events.
+   * @param listenerInterface The interface composed of the callbacks that are not opt-in.
+   */
+  def handles(listener: AnyRef, callback: Class[_], adapter: Class[_], listenerInterface: Class[_]): Boolean = {
+    callback.isInstance(listener) && callback.getDeclaredMethods.exists { method =>
+      val implementation = listener.getClass.getMethod(method.getName, method.getParameterTypes: _*)
+      implementation.getDeclaringClass != adapter &&
+        (callback.isAssignableFrom(listenerInterface) || !isTraitDefault(callback, implementation))
+    }
+  }
+
+  /**
+   * Whether a method is the default implementation of a callback trait.
+   *
+   * The default is either a method of the trait itself, or, as Scala 2.11 compiles it, a forwarder to the trait's
+   * implementation class generated in the first class that mixes the trait in. Forwarders look like any other method
+   * to reflection, so the class file of the declaring class is searched for a reference to the implementation class.
+   * Overrides calling the trait's implementation through `super` are taken for the default as well.
+   */
+  private def isTraitDefault(callback: Class[_], method: Method): Boolean = {
+    val owner = method.getDeclaringClass
+    owner == callback || classFile(owner).exists { bytes =>
+      new String(bytes, "ISO-8859-1").contains(callback.getName.replace('.', '/') + "$class")
+    }
+  }
+
+  private def classFile(clazz: Class[_]): Option[Array[Byte]] = {
+    for {
+      loader <- Option(clazz.getClassLoader)
+      input <- Option(loader.getResourceAsStream(clazz.getName.replace('.', '/') + ".class"))
+    } yield {
+      try {
+        readAll(input, new ByteArrayOutputStream, new Array[Byte](4096))
+      } finally {
+        input.close()
+      }
+    }
+  }
+
+  @tailrec
+  private def readAll(input: InputStream, output: ByteArrayOutputStream, buffer: Array[Byte]): Array[Byte] = {
+    val count = input.read(buffer)
+    if (count == -1) {
+      output.toByteArray
+    } else {
+      output.write(buffer, 0, count)
+      readAll(input, output, buffer)
+    }
+  }
+
+}
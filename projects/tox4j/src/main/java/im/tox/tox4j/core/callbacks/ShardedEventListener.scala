@@ -0,0 +1,100 @@
+package im.tox.tox4j.core.callbacks
+
+import java.io.Closeable
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, ExecutorService, Executors, ThreadFactory, TimeUnit}
+
+import im.tox.tox4j.ToxImplBase.tryAndLog
+
+/**
+ * Dispatches events to a [[ToxEventListener]] in parallel, on a fixed set of single-threaded lanes.
+ *
+ * Events concerning a friend ([[ToxFriendEvent]]) are sharded by friend number onto `friendLanes` lanes, so all events
+ * of one friend are handled in order, on the same lane. Events that don't concern a friend, such as
+ * [[ToxCoreEvent.SelfConnectionStatus]] and [[ToxCoreEvent.FriendRequest]], go to a separate global lane.
+ *
+ * The state-threading listener contract is kept per lane: each lane has its own state, created by `initialState` with
+ * the lane index, and threads it through the listener calls on that lane. The lane states can be read with [[states]].
+ * The state passed to iterate is returned unchanged.
+ *
+ * Register this object as the instance's event listener. The iterate thread only hands events to the lanes.
+ *
+ * @param listener The listener to call on the lanes. It must be safe to call from several threads at once.
+ * @param friendLanes Number of lanes for friend events.
+ * @param initialState Creates the initial state of the lane with the given index. The global lane has index
+ *                     `friendLanes`.
+ */
+final class ShardedEventListener[ToxCoreState](
+    listener: ToxEventListener[ToxCoreState],
+    friendLanes: Int,
+    initialState: Int => ToxCoreState
+) extends ToxCoreEvent.Collector[ToxCoreState] with Closeable {
+  require(friendLanes > 0, "At least one friend lane is required")
+
+  private final class Lane(index: Int) {
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory {
+      override def newThread(runnable: Runnable): Thread = {
+        val thread = new Thread(runnable, "tox-event-lane-" + index)
+        thread.setDaemon(true)
+        thread
+      }
+    })
+
+    // Only accessed on the lane's thread.
+    private var state = initialState(index) // scalastyle:ignore var.field
+
+    def dispatch(event: ToxCoreEvent): Unit = {
+      executor.execute(new Runnable {
+        override def run(): Unit = {
+          state = tryAndLog(fatal = false, state, listener)(l => s => event.dispatch(l)(s))
+        }
+      })
+    }
+
+    def currentState: ToxCoreState = {
+      executor.submit(new Callable[ToxCoreState] {
+        override def call(): ToxCoreState = state
+      }).get
+    }
+
+    def close(): Unit = {
+      executor.shutdown()
+      executor.awaitTermination(Long.MaxValue, TimeUnit.NANOSECONDS)
+    }
+  }
+
+  private val lanes = (0 to friendLanes).map(new Lane(_))
+  private val globalLane = lanes(friendLanes)
+
+  private val dispatched = new AtomicInteger
+
+  /**
+   * The lane index the events of a friend are dispatched on.
+   */
+  def laneOf(friendNumber: Int): Int = Math.abs(friendNumber % friendLanes)
+
+  protected override def handle(event: ToxCoreEvent): Unit = {
+    dispatched.incrementAndGet()
+    event match {
+      case friendEvent: ToxFriendEvent => lanes(laneOf(friendEvent.friendNumber)).dispatch(event)
+      case _                           => globalLane.dispatch(event)
+    }
+  }
+
+  /**
+   * The number of events handed to the lanes so far.
+   */
+  def eventCount: Int = dispatched.get
+
+  /**
+   * Wait until all events dispatched so far have been handled and return the state of each lane. The last element is
+   * the state of the global lane.
+   */
+  def states: Seq[ToxCoreState] = lanes.map(_.currentState)
+
+  /**
+   * Handle all remaining events and stop the lane threads.
+   */
+  override def close(): Unit = lanes.foreach(_.close())
+
+}
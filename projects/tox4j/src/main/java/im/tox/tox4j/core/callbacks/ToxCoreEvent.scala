@@ -0,0 +1,123 @@
+package im.tox.tox4j.core.callbacks
+
+import im.tox.tox4j.core.enums.{ToxConnection, ToxFileControl, ToxMessageType, ToxUserStatus}
+
+/**
+ * A [[ToxEventListener]] callback invocation as a value. Each event carries the callback's arguments and can be passed
+ * back to a listener with [[dispatch]].
+ */
+sealed trait ToxCoreEvent {
+  /**
+   * Call the corresponding method on a listener.
+   */
+  def dispatch[ToxCoreState](listener: ToxEventListener[ToxCoreState])(state: ToxCoreState): ToxCoreState
+
+  /**
+   * Whether this event may be dropped under load without breaking protocol state, e.g. a lossy custom packet.
+   */
+  def isLossy: Boolean = false
+}
+
+/**
+ * An event concerning a single friend.
+ */
+sealed trait ToxFriendEvent extends ToxCoreEvent {
+  def friendNumber: Int
+}
+
+// scalastyle:off line.size.limit
+object ToxCoreEvent {
+
+  final case class SelfConnectionStatus(connectionStatus: ToxConnection) extends ToxCoreEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.selfConnectionStatus(connectionStatus)(state)
+  }
+
+  final case class FileRecvControl(friendNumber: Int, fileNumber: Int, control: ToxFileControl) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.fileRecvControl(friendNumber, fileNumber, control)(state)
+  }
+
+  final case class FileRecv(friendNumber: Int, fileNumber: Int, kind: Int, fileSize: Long, filename: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.fileRecv(friendNumber, fileNumber, kind, fileSize, filename)(state)
+  }
+
+  final case class FileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.fileRecvChunk(friendNumber, fileNumber, position, data)(state)
+  }
+
+  final case class FileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.fileChunkRequest(friendNumber, fileNumber, position, length)(state)
+  }
+
+  final case class FriendConnectionStatus(friendNumber: Int, connectionStatus: ToxConnection) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendConnectionStatus(friendNumber, connectionStatus)(state)
+  }
+
+  final case class FriendMessage(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendMessage(friendNumber, messageType, timeDelta, message)(state)
+  }
+
+  final case class FriendName(friendNumber: Int, name: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendName(friendNumber, name)(state)
+  }
+
+  final case class FriendRequest(publicKey: Array[Byte], timeDelta: Int, message: Array[Byte]) extends ToxCoreEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendRequest(publicKey, timeDelta, message)(state)
+  }
+
+  final case class FriendStatus(friendNumber: Int, status: ToxUserStatus) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendStatus(friendNumber, status)(state)
+  }
+
+  final case class FriendStatusMessage(friendNumber: Int, message: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendStatusMessage(friendNumber, message)(state)
+  }
+
+  final case class FriendTyping(friendNumber: Int, isTyping: Boolean) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendTyping(friendNumber, isTyping)(state)
+  }
+
+  final case class FriendLosslessPacket(friendNumber: Int, data: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendLosslessPacket(friendNumber, data)(state)
+  }
+
+  final case class FriendLossyPacket(friendNumber: Int, data: Array[Byte]) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendLossyPacket(friendNumber, data)(state)
+    override def isLossy: Boolean = true
+  }
+
+  final case class FriendReadReceipt(friendNumber: Int, messageId: Int) extends ToxFriendEvent {
+    override def dispatch[S](listener: ToxEventListener[S])(state: S): S = listener.friendReadReceipt(friendNumber, messageId)(state)
+  }
+
+  /**
+   * A [[ToxEventListener]] that turns every callback into a [[ToxCoreEvent]] and passes it to `handle`. The state is
+   * passed through unchanged.
+   */
+  abstract class Collector[ToxCoreState] extends ToxEventListener[ToxCoreState] {
+
+    protected def handle(event: ToxCoreEvent): Unit
+
+    private def collect(event: ToxCoreEvent)(state: ToxCoreState): ToxCoreState = {
+      handle(event)
+      state
+    }
+
+    override def selfConnectionStatus(connectionStatus: ToxConnection)(state: ToxCoreState): ToxCoreState = collect(SelfConnectionStatus(connectionStatus))(state)
+    override def fileRecvControl(friendNumber: Int, fileNumber: Int, control: ToxFileControl)(state: ToxCoreState): ToxCoreState = collect(FileRecvControl(friendNumber, fileNumber, control))(state)
+    override def fileRecv(friendNumber: Int, fileNumber: Int, kind: Int, fileSize: Long, filename: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FileRecv(friendNumber, fileNumber, kind, fileSize, filename))(state)
+    override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FileRecvChunk(friendNumber, fileNumber, position, data))(state)
+    override def fileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int)(state: ToxCoreState): ToxCoreState = collect(FileChunkRequest(friendNumber, fileNumber, position, length))(state)
+    override def friendConnectionStatus(friendNumber: Int, connectionStatus: ToxConnection)(state: ToxCoreState): ToxCoreState = collect(FriendConnectionStatus(friendNumber, connectionStatus))(state)
+    override def friendMessage(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendMessage(friendNumber, messageType, timeDelta, message))(state)
+    override def friendName(friendNumber: Int, name: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendName(friendNumber, name))(state)
+    override def friendRequest(publicKey: Array[Byte], timeDelta: Int, message: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendRequest(publicKey, timeDelta, message))(state)
+    override def friendStatus(friendNumber: Int, status: ToxUserStatus)(state: ToxCoreState): ToxCoreState = collect(FriendStatus(friendNumber, status))(state)
+    override def friendStatusMessage(friendNumber: Int, message: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendStatusMessage(friendNumber, message))(state)
+    override def friendTyping(friendNumber: Int, isTyping: Boolean)(state: ToxCoreState): ToxCoreState = collect(FriendTyping(friendNumber, isTyping))(state)
+    override def friendLosslessPacket(friendNumber: Int, data: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendLosslessPacket(friendNumber, data))(state)
+    override def friendLossyPacket(friendNumber: Int, data: Array[Byte])(state: ToxCoreState): ToxCoreState = collect(FriendLossyPacket(friendNumber, data))(state)
+    override def friendReadReceipt(friendNumber: Int, messageId: Int)(state: ToxCoreState): ToxCoreState = collect(FriendReadReceipt(friendNumber, messageId))(state)
+  }
+
+}
+// scalastyle:on line.size.limit
@@ -0,0 +1,69 @@
+package im.tox.tox4j.core.callbacks
+
+/**
+ * Event kinds for [[im.tox.tox4j.core.ToxCore.setEventMask]].
+ *
+ * Each bit selects the events of one of the callback interfaces [[ToxEventListener]] is composed of. Masks can be
+ * combined with `|`.
+ */
+object ToxEventMask {
+
+  val Empty = 0
+
+  val SelfConnectionStatus = 1 << 1
+  val FriendName = 1 << 2
+  val FriendStatusMessage = 1 << 3
+  val FriendStatus = 1 << 4
+  val FriendConnectionStatus = 1 << 5
+  val FriendTyping = 1 << 6
+  val FriendReadReceipt = 1 << 7
+  val FriendRequest = 1 << 8
+  val FriendMessage = 1 << 9
+  val FileRecvControl = 1 << 10
+  val FileChunkRequest = 1 << 11
+  val FileRecv = 1 << 12
+  val FileRecvChunk = 1 << 13
+  val FriendLossyPacket = 1 << 14
+  val FriendLosslessPacket = 1 << 15
+
+  private val callbacks = Seq[(Int, Class[_])](
+    SelfConnectionStatus -> classOf[SelfConnectionStatusCallback[_]],
+    FriendName -> classOf[FriendNameCallback[_]],
+    FriendStatusMessage -> classOf[FriendStatusMessageCallback[_]],
+    FriendStatus -> classOf[FriendStatusCallback[_]],
+    FriendConnectionStatus -> classOf[FriendConnectionStatusCallback[_]],
+    FriendTyping -> classOf[FriendTypingCallback[_]],
+    FriendReadReceipt -> classOf[FriendReadReceiptCallback[_]],
+    FriendRequest -> classOf[FriendRequestCallback[_]],
+    FriendMessage -> classOf[FriendMessageCallback[_]],
+    FileRecvControl -> classOf[FileRecvControlCallback[_]],
+    FileChunkRequest -> classOf[FileChunkRequestCallback[_]],
+    FileRecv -> classOf[FileRecvCallback[_]],
+    FileRecvChunk -> classOf[FileRecvChunkCallback[_]],
+    FileRecvChunk -> classOf[FileRecvChunkBufferCallback[_]],
+    FriendLossyPacket -> classOf[FriendLossyPacketCallback[_]],
+    FriendLosslessPacket -> classOf[FriendLosslessPacketCallback[_]]
+  )
+
+  val All = callbacks.map(_._1).foldLeft(Empty)(_ | _)
+
+  /**
+   * Infer the events a listener handles from the callback methods it overrides.
+   *
+   * A callback counts as unhandled if the listener inherits its implementation from [[ToxEventAdapter]], which ignores
+   * the event. Listeners that implement [[ToxEventListener]] directly are assumed to handle all events.
+   * Opt-in callbacks like [[FileRecvChunkBufferCallback]] only count if the listener overrides them, see
+   * [[ListenerCallbacks]].
+   *
+   * @param listener The event listener to inspect.
+   * @return The combination of masks for all events the listener handles.
+   */
+  def of(listener: ToxEventListener[_]): Int = {
+    callbacks.foldLeft(Empty) {
+      case (mask, (bit, callback)) =>
+        val handled = ListenerCallbacks.handles(listener, callback, classOf[ToxEventAdapter[_]], classOf[ToxEventListener[_]])
+        if (handled) mask | bit else mask
+    }
+  }
+
+}
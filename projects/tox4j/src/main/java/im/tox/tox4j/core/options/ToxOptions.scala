@@ -32,6 +32,16 @@ import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
  * @param tcpPort The port to use for the TCP server. If 0, the tcp server is disabled.
  * @param saveData Optional serialised instance data from [[ToxCore.load]] or secret key from [[ToxCore.getSecretKey]].
  * @param fatalErrors Whether exceptions in [[ToxCore.iterate]] should abort the iteration.
+ * @param flatEvents Whether [[ToxCore.iterate]] should receive events as flat records in a direct buffer instead of
+ *                   as a serialised protobuf message. The flat format avoids the intermediate protobuf objects and
+ *                   copies; the listener callbacks are the same for both.
+ * @param coalesceWindow Number of iterations for which friend state updates (name, status message, status, connection
+ *                       status and typing) are held back, so that only the latest value per friend is delivered. Any
+ *                       other event for the same friend, such as a message, delivers the pending updates first. 0
+ *                       disables coalescing. Messages, file transfers and packets are never coalesced.
+ * @param friendKeyIndex Whether [[ToxCore.friendByPublicKey]] should look up friends in an index kept on the Java side
+ *                       instead of scanning the native friend list. The index is filled from the friend list when the
+ *                       instance is created and updated by the methods that add and delete friends.
  */
 final case class ToxOptions(
     ipv6Enabled: Boolean = true,
@@ -41,11 +51,15 @@ final case class ToxOptions(
     endPort: Int = ToxCoreConstants.DefaultEndPort,
     tcpPort: Int = ToxCoreConstants.DefaultTcpPort,
     saveData: SaveDataOptions = SaveDataOptions.None,
-    fatalErrors: Boolean = true
+    fatalErrors: Boolean = true,
+    flatEvents: Boolean = false,
+    coalesceWindow: Int = 0,
+    friendKeyIndex: Boolean = false
 ) {
   private def requireValidPort(name: String, port: Int): Unit = {
     require(port >= 0 && port <= 65535, s"$name port should be a valid 16 bit positive integer")
   }
+  require(coalesceWindow >= 0, s"coalesceWindow ($coalesceWindow) should not be negative")
   require(startPort <= endPort, s"startPort ($startPort) should not be greater than endPort ($endPort)")
   requireValidPort("Start", startPort)
   requireValidPort("End", endPort)
@@ -0,0 +1,316 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{ConcurrentLinkedQueue, ExecutorService, Executors, ThreadFactory}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.exceptions.ToxFileSendChunkException
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+import scala.util.{Failure, Success, Try}
+
+object AsyncFileSender {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Default number of chunks read ahead of the last request of a sequential transfer.
+   */
+  val DefaultReadAhead = 32
+
+  /**
+   * Default maximum number of reads submitted to the I/O threads at a time, over all transfers.
+   */
+  val DefaultMaxReadsInFlight = 256
+
+  /**
+   * Size of the pooled read buffers. Toxcore requests chunks of less than 1.5 KiB, so this fits any request.
+   */
+  private val ChunkBufferSize = 2048
+
+  /**
+   * A chunk that was requested or is read ahead. The I/O thread stores the outcome of the read in `result`.
+   */
+  private[filetransfer] final class ChunkRead(val position: Long, val length: Int) {
+    @volatile var result: Option[Try[ByteBuffer]] = None // scalastyle:ignore var.field
+    var submitted = false // scalastyle:ignore var.field
+  }
+
+  private[filetransfer] final class Transfer(val channel: FileChannel, val closeChannel: Boolean) {
+    val size = channel.size
+
+    /**
+     * The requested chunks that have not been sent, yet, in request order.
+     */
+    val requests = new mutable.Queue[ChunkRead]
+
+    /**
+     * Chunks read ahead of the requests, by position.
+     */
+    val readAhead = new mutable.LongMap[ChunkRead]
+
+    /**
+     * The position following the last requested chunk.
+     */
+    var nextPosition = 0L // scalastyle:ignore var.field
+  }
+
+  @tailrec
+  private def readFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Unit = {
+    if (buffer.hasRemaining && channel.read(buffer, position + buffer.position) != -1) {
+      readFully(channel, buffer, position)
+    }
+  }
+
+}
+
+/**
+ * Serves outgoing file transfers with reads on a pool of I/O threads, so that slow disks don't block the iterate thread.
+ *
+ * [[fileChunkRequest]] only records the request and submits a read; it never blocks. When a transfer requests chunks
+ * sequentially, the next `readAhead` chunks of the same length are read before they are requested. Completed chunks
+ * are sent by [[flush]], which should be called on the iterate thread after each iterate. Toxcore expects the chunks
+ * of a transfer in the order it requested them, so a chunk whose read completed early waits for the chunks requested
+ * before it.
+ *
+ * At most `maxReadsInFlight` reads are submitted at a time. Requests that find the limit reached are submitted by a
+ * later [[flush]], and no reads are started ahead while the limit is reached. Chunks are read into pooled direct
+ * buffers, which the [[ByteBuffer]] overload of [[ToxCore.fileSendChunk]] passes to toxcore without copying.
+ *
+ * Toxcore requests each chunk only once. A chunk it rejects with [[ToxFileSendChunkException.Code.SENDQ]] stays at the
+ * head of its transfer's queue and is sent again by the next [[flush]], before the chunks requested after it. Chunks
+ * rejected with other errors are dropped. A request at a position other than the end of the previous one, as when the
+ * receiver resumed the transfer with [[ToxCore.fileSeek]], discards the chunks read ahead. Like [[FileSender]], the
+ * owner calls [[flush]] after each iterate, or uses [[iterate]], and forwards chunk requests, file control events and
+ * disconnections.
+ *
+ * @param tox The instance to send the files with.
+ * @param ioThreads The number of I/O threads.
+ * @param readAhead The number of chunks to read ahead of sequential requests.
+ * @param maxReadsInFlight The maximum number of reads submitted to the I/O threads at a time.
+ */
+final class AsyncFileSender[ToxCoreState](
+    tox: ToxCore[ToxCoreState],
+    ioThreads: Int = 2,
+    readAhead: Int = AsyncFileSender.DefaultReadAhead,
+    maxReadsInFlight: Int = AsyncFileSender.DefaultMaxReadsInFlight
+) extends OutgoingTransferRegistry[ToxCoreState, AsyncFileSender.Transfer](tox) {
+  require(ioThreads > 0, "At least one I/O thread is required")
+  require(readAhead >= 0, s"Read-ahead ($readAhead) should not be negative")
+  require(maxReadsInFlight > 0, "At least one read must be allowed in flight")
+
+  import AsyncFileSender._
+
+  private val executor: ExecutorService = Executors.newFixedThreadPool(ioThreads, new ThreadFactory {
+    private val count = new AtomicInteger
+    override def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "tox-file-reader-" + count.getAndIncrement)
+      thread.setDaemon(true)
+      thread
+    }
+  })
+
+  private val buffers = new ConcurrentLinkedQueue[ByteBuffer]
+
+  private val readsInFlight = new AtomicInteger
+  private val retries = new AtomicLong
+  private val reads = new AtomicLong
+  private val readAheadHits = new AtomicLong
+  private val totalReadNanos = new AtomicLong
+  private val maxReadNanos = new AtomicLong
+
+  protected override def newTransfer(channel: FileChannel, closeChannel: Boolean): Transfer = {
+    new Transfer(channel, closeChannel)
+  }
+
+  /**
+   * Record a chunk request and submit its read, unless the chunk was read ahead.
+   *
+   * @return true if the request belonged to a transfer served by this sender.
+   */
+  override def fileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int): Boolean = synchronized {
+    val key = TransferKey(friendNumber, fileNumber)
+    transfers.get(key) match {
+      case Some(transfer) =>
+        if (length == 0) {
+          release(key, s"File $fileNumber complete")
+        } else {
+          request(transfer, position, Math.max(0L, Math.min(length.toLong, transfer.size - position)).toInt)
+        }
+        true
+      case None =>
+        false
+    }
+  }
+
+  private def request(transfer: Transfer, position: Long, length: Int): Unit = {
+    if (position != transfer.nextPosition) {
+      // The transfer was resumed elsewhere. The requested chunks are still due, but none of the chunks read ahead is.
+      transfer.readAhead.values.foreach(recycle)
+      transfer.readAhead.clear()
+    }
+
+    val chunk = transfer.readAhead.remove(position) match {
+      case Some(readAheadChunk) if readAheadChunk.length == length =>
+        readAheadHits.incrementAndGet()
+        readAheadChunk
+      case _ =>
+        new ChunkRead(position, length)
+    }
+    transfer.requests += chunk
+    transfer.nextPosition = position + length
+    submit(transfer, chunk)
+
+    if (chunk.submitted) {
+      startReadAhead(transfer, length)
+    }
+  }
+
+  private def startReadAhead(transfer: Transfer, length: Int): Unit = {
+    (0 until readAhead) foreach { i =>
+      val position = transfer.nextPosition + i.toLong * length
+      if (position < transfer.size && !transfer.readAhead.contains(position) && readsInFlight.get < maxReadsInFlight) {
+        val chunk = new ChunkRead(position, Math.min(length.toLong, transfer.size - position).toInt)
+        transfer.readAhead(position) = chunk
+        submit(transfer, chunk)
+      }
+    }
+  }
+
+  private def submit(transfer: Transfer, chunk: ChunkRead): Unit = {
+    if (!chunk.submitted && readsInFlight.get < maxReadsInFlight) {
+      readsInFlight.incrementAndGet()
+      chunk.submitted = true
+      val submitTime = System.nanoTime
+      executor.execute(new Runnable {
+        override def run(): Unit = {
+          val buffer = takeBuffer(chunk.length)
+          chunk.result = Some(Try {
+            readFully(transfer.channel, buffer, chunk.position)
+            buffer.flip()
+            buffer
+          })
+          recordRead(System.nanoTime - submitTime)
+        }
+      })
+    }
+  }
+
+  private def takeBuffer(length: Int): ByteBuffer = {
+    val pooled = if (length <= ChunkBufferSize) Option(buffers.poll()) else None
+    val buffer = pooled.getOrElse(ByteBuffer.allocateDirect(Math.max(length, ChunkBufferSize)))
+    buffer.clear()
+    buffer.limit(length)
+    buffer
+  }
+
+  private def recycle(chunk: ChunkRead): Unit = {
+    chunk.result.foreach(_.foreach { buffer =>
+      if (buffer.capacity == ChunkBufferSize) {
+        buffers.add(buffer)
+      }
+    })
+  }
+
+  private def recordRead(nanos: Long): Unit = {
+    readsInFlight.decrementAndGet()
+    reads.incrementAndGet()
+    totalReadNanos.addAndGet(nanos)
+    updateMax(nanos)
+  }
+
+  @tailrec
+  private def updateMax(value: Long): Unit = {
+    val current = maxReadNanos.get
+    if (value > current && !maxReadNanos.compareAndSet(current, value)) {
+      updateMax(value)
+    }
+  }
+
+  /**
+   * Send the completed chunks of each transfer, in request order, and submit reads that were held back by the limit.
+   */
+  override def flush(): Unit = synchronized {
+    transfers.toList foreach {
+      case (key, transfer) =>
+        transfer.requests.foreach(submit(transfer, _))
+        sendCompleted(key, transfer)
+    }
+  }
+
+  @tailrec
+  private def sendCompleted(key: Long, transfer: Transfer): Unit = {
+    transfer.requests.headOption.flatMap(_.result) match {
+      case Some(Success(buffer)) =>
+        if (trySend(key, transfer.requests.head.position, buffer)) {
+          recycle(transfer.requests.dequeue())
+          sendCompleted(key, transfer)
+        }
+      case Some(Failure(e)) =>
+        logger.error(s"Cancelling file transfer ${TransferKey.fileNumber(key)}: reading the file failed", e)
+        cancel(TransferKey.friendNumber(key), TransferKey.fileNumber(key))
+      case None =>
+    }
+  }
+
+  /**
+   * Send a chunk. A rejected chunk's buffer is left unchanged, so it can be sent again.
+   *
+   * @return true if the chunk is done with, because it was sent or dropped, false if it should be tried again later.
+   */
+  private def trySend(key: Long, position: Long, data: ByteBuffer): Boolean = {
+    val friendNumber = TransferKey.friendNumber(key)
+    val fileNumber = TransferKey.fileNumber(key)
+    try {
+      tox.fileSendChunk(friendNumber, fileNumber, position, data)
+      true
+    } catch {
+      case e: ToxFileSendChunkException if e.code == ToxFileSendChunkException.Code.SENDQ =>
+        retries.incrementAndGet()
+        false
+      case e: ToxFileSendChunkException =>
+        logger.debug(s"Chunk at $position of file $fileNumber for friend $friendNumber dropped: ${e.getMessage}")
+        true
+    }
+  }
+
+  /**
+   * Release all transfers and stop the I/O threads.
+   */
+  override def close(): Unit = synchronized {
+    super.close()
+    executor.shutdown()
+  }
+
+  /**
+   * The current queue depth and read statistics.
+   */
+  def metrics: AsyncFileSenderMetrics = synchronized {
+    AsyncFileSenderMetrics(
+      transfers.values.map(_.requests.size).sum,
+      readsInFlight.get,
+      retries.get,
+      reads.get,
+      readAheadHits.get,
+      totalReadNanos.get,
+      maxReadNanos.get
+    )
+  }
+
+  /**
+   * Chunks still being read are not recycled; their buffers are left to the garbage collector.
+   */
+  protected override def released(transfer: Transfer, reason: String): Unit = {
+    transfer.requests.foreach(recycle)
+    transfer.readAhead.values.foreach(recycle)
+    if (transfer.closeChannel) {
+      transfer.channel.close()
+    }
+  }
+
+}
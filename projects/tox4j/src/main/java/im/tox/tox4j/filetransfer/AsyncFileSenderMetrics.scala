@@ -0,0 +1,24 @@
+package im.tox.tox4j.filetransfer
+
+/**
+ * Snapshot of the state and history of an [[AsyncFileSender]].
+ *
+ * @param pendingRequests The number of chunk requests that have not been answered, yet.
+ * @param readsInFlight The number of reads submitted to the I/O threads that have not completed, yet.
+ * @param retries The number of times toxcore rejected a chunk because its send queue was full.
+ * @param reads The number of completed reads.
+ * @param readAheadHits The number of chunk requests answered by a read that was started before the request arrived.
+ * @param totalReadNanos Sum of the time spent in reads, from submitting them to their completion.
+ * @param maxReadNanos The longest read.
+ */
+final case class AsyncFileSenderMetrics(
+    pendingRequests: Int,
+    readsInFlight: Int,
+    retries: Long,
+    reads: Long,
+    readAheadHits: Long,
+    totalReadNanos: Long,
+    maxReadNanos: Long
+) {
+  def meanReadNanos: Long = if (reads == 0) 0 else totalReadNanos / reads
+}
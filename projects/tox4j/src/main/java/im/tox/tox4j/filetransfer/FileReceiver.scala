@@ -0,0 +1,295 @@
+package im.tox.tox4j.filetransfer
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Path, StandardOpenOption}
+import java.util.concurrent.{CancellationException, ConcurrentLinkedQueue, ExecutorService, Executors, ThreadFactory}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.enums.ToxFileControl
+import im.tox.tox4j.core.exceptions.{ToxFileControlException, ToxFileGetException, ToxFileSeekException}
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.concurrent.{Future, Promise}
+import scala.util.{Failure, Try}
+
+object FileReceiver {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Default size of the batches of consecutive chunks written at once.
+   */
+  val DefaultBatchSize = 256 * 1024
+
+  /**
+   * @param fileSize The announced file size, or -1 if unknown.
+   * @param fileId The file ID the transfer is recorded under in the receiver's journal, if it has one.
+   * @param end The position the transfer was resumed at.
+   */
+  private[filetransfer] final class Transfer(
+      val path: Path,
+      val channel: FileChannel,
+      val fileSize: Long,
+      val fileId: Option[Array[Byte]],
+      var end: Long // scalastyle:ignore var.field
+  ) {
+    val completion = Promise[Path]()
+
+    /**
+     * The chunks received since the last write, and the file position of the first one.
+     */
+    var batch: Option[ByteBuffer] = None // scalastyle:ignore var.field
+    var batchPosition = 0L // scalastyle:ignore var.field
+
+    /**
+     * Set by the writer thread if a write failed. The transfer is cancelled on the next chunk.
+     */
+    @volatile var failure: Option[Throwable] = None // scalastyle:ignore var.field
+  }
+
+  @tailrec
+  private[filetransfer] def writeFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Unit = {
+    if (buffer.hasRemaining) {
+      val written = channel.write(buffer, position)
+      writeFully(channel, buffer, position + written)
+    }
+  }
+
+}
+
+/**
+ * Writes incoming file transfers to files, on a separate writer thread.
+ *
+ * [[accept]] opens the target file, truncates or extends it to the announced file size, so that later writes don't need
+ * to grow it, and resumes the transfer. A transfer of unknown size is truncated to the end of the received data when it
+ * completes. Received chunks are copied into a batch buffer. Consecutive chunks are collected in the
+ * same batch, and a full batch, or a chunk at a position that doesn't continue the batch, for instance after
+ * [[ToxCore.fileSeek]], hands the batch to the writer thread. The writer writes each batch with one positional
+ * [[FileChannel.write]]. The file is only synced to disk once, when the final empty chunk arrives, after which the
+ * future returned by [[accept]] completes.
+ *
+ * With a [[TransferJournal]], the receiver records each written batch under the file ID of the transfer, and [[accept]]
+ * resumes from the first byte the journal has no record of, so that a transfer interrupted by a restart continues where
+ * it stopped. The journal entry is removed when the transfer completes.
+ *
+ * For the least copying, forward the [[ByteBuffer]] variant of the chunk event from a listener implementing
+ * [[im.tox.tox4j.core.callbacks.FileRecvChunkBufferCallback]]. The chunk then goes from the native receive buffer into
+ * a direct batch buffer and from there into the page cache, without a byte array in between.
+ *
+ * Like [[FileSender]], the owner forwards chunk events, file control events and disconnections. All methods are
+ * synchronised.
+ *
+ * @param tox The instance the files are received with.
+ * @param batchSize The maximum number of bytes written at once.
+ * @param journal The journal to record received ranges in and to resume transfers from.
+ */
+final class FileReceiver[ToxCoreState](
+    tox: ToxCore[ToxCoreState],
+    batchSize: Int = FileReceiver.DefaultBatchSize,
+    journal: Option[TransferJournal] = None
+) extends TransferRegistry[ToxCoreState, FileReceiver.Transfer](tox) {
+  require(batchSize > 0, s"Batch size ($batchSize) should be positive")
+
+  import FileReceiver._
+
+  private val writer: ExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory {
+    override def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "tox-file-writer")
+      thread.setDaemon(true)
+      thread
+    }
+  })
+
+  private val buffers = new ConcurrentLinkedQueue[ByteBuffer]
+
+  /**
+   * Accept an incoming file transfer and write it to a file. Existing contents of the file before the resume position
+   * are kept, so that a transfer can be resumed into a partially received file. Contents past the end of the transfer
+   * are removed.
+   *
+   * @param friendNumber The friend number of the friend who is sending the file.
+   * @param fileNumber The friend-specific file number of the transfer.
+   * @param path The file to write to. It is created if it doesn't exist.
+   * @param fileSize The size announced in the file receive event, or -1 if unknown.
+   * @param position The position to resume the transfer from. If the journal has a record of the file up to a later
+   *                 position, that position is used instead. If not 0, [[ToxCore.fileSeek]] is sent before resuming.
+   * @return a future that completes with the path when the transfer is complete and the file is synced to disk, or
+   *         fails if the transfer is cancelled or writing fails.
+   */
+  @throws[IOException]
+  @throws[ToxFileGetException]
+  @throws[ToxFileSeekException]
+  @throws[ToxFileControlException]
+  def accept(friendNumber: Int, fileNumber: Int, path: Path, fileSize: Long, position: Long = 0): Future[Path] = synchronized {
+    val fileId = journal.map(_ => tox.getFileFileId(friendNumber, fileNumber))
+    val recorded = for (journal <- journal; fileId <- fileId) yield {
+      // Toxcore only seeks to positions inside the file, so a completely recorded file is resumed at its last byte.
+      val recordedPosition = journal.resumePosition(fileId)
+      if (fileSize > 0) Math.min(recordedPosition, fileSize - 1) else recordedPosition
+    }
+    val resumePosition = recorded.fold(position)(Math.max(position, _))
+
+    val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+    val started = Try {
+      if (fileSize >= 0) {
+        // Drop the tail of a longer existing file, which the transfer would not overwrite.
+        channel.truncate(fileSize)
+      }
+      if (channel.size < fileSize) {
+        // Extend the file to its final size up front, so that the writes of the transfer don't change its length.
+        writeFully(channel, ByteBuffer.allocate(1), fileSize - 1)
+      }
+      if (resumePosition != 0) {
+        tox.fileSeek(friendNumber, fileNumber, resumePosition)
+      }
+      tox.fileControl(friendNumber, fileNumber, ToxFileControl.RESUME)
+    }
+    started.failed.foreach(_ => channel.close())
+    started.get
+
+    val transfer = new Transfer(path, channel, fileSize, fileId, resumePosition)
+    transfers(TransferKey(friendNumber, fileNumber)) = transfer
+    transfer.completion.future
+  }
+
+  /**
+   * Store a received chunk.
+   *
+   * @return true if the chunk belonged to a transfer accepted by this receiver.
+   */
+  def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer): Boolean = synchronized {
+    val key = TransferKey(friendNumber, fileNumber)
+    transfers.get(key) match {
+      case Some(transfer) =>
+        transfer.failure match {
+          case Some(_) =>
+            cancel(friendNumber, fileNumber)
+          case None if !data.hasRemaining =>
+            complete(key, transfer)
+          case None =>
+            append(transfer, position, data)
+        }
+        true
+      case None =>
+        false
+    }
+  }
+
+  /**
+   * Store a received chunk from the byte array variant of the chunk event.
+   */
+  def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte]): Boolean = {
+    fileRecvChunk(friendNumber, fileNumber, position, ByteBuffer.wrap(data))
+  }
+
+  private def append(transfer: Transfer, position: Long, data: ByteBuffer): Unit = {
+    transfer.end = Math.max(transfer.end, position + data.remaining)
+    val batch = transfer.batch match {
+      case Some(current) if position == transfer.batchPosition + current.position && current.remaining >= data.remaining =>
+        current
+      case _ =>
+        submitBatch(transfer)
+        val next = takeBuffer(data.remaining)
+        transfer.batch = Some(next)
+        transfer.batchPosition = position
+        next
+    }
+    batch.put(data)
+    if (!batch.hasRemaining) {
+      submitBatch(transfer)
+    }
+  }
+
+  private def takeBuffer(length: Int): ByteBuffer = {
+    val pooled = if (length <= batchSize) Option(buffers.poll()) else None
+    val buffer = pooled.getOrElse(ByteBuffer.allocateDirect(Math.max(length, batchSize)))
+    buffer.clear()
+    buffer
+  }
+
+  /**
+   * Hand the current batch to the writer thread.
+   */
+  private def submitBatch(transfer: Transfer): Unit = {
+    transfer.batch foreach { batch =>
+      batch.flip()
+      val position = transfer.batchPosition
+      transfer.batch = None
+      writer.execute(new Runnable {
+        override def run(): Unit = {
+          if (transfer.failure.isEmpty) {
+            val length = batch.remaining
+            transfer.failure = Try(writeFully(transfer.channel, batch, position)).failed.toOption
+            if (transfer.failure.isEmpty) {
+              journalled(transfer)(_.record(_, position, position + length))
+            }
+          }
+          if (batch.capacity == batchSize) {
+            buffers.add(batch)
+          }
+        }
+      })
+    }
+  }
+
+  /**
+   * Write the last batch, sync the file and close it on the writer thread, then complete the transfer's future. A
+   * transfer of unknown size is truncated to its last received byte first.
+   */
+  private def complete(key: Long, transfer: Transfer): Unit = {
+    submitBatch(transfer)
+    transfers.remove(key)
+    writer.execute(new Runnable {
+      override def run(): Unit = {
+        val synced = transfer.failure.fold(Try {
+          if (transfer.fileSize < 0) {
+            transfer.channel.truncate(transfer.end)
+          }
+          transfer.channel.force(true)
+        })(Failure(_))
+        val closed = synced.flatMap(_ => Try(transfer.channel.close()))
+        if (closed.isSuccess) {
+          journalled(transfer)(_.remove(_))
+        }
+        transfer.completion.complete(closed.map(_ => transfer.path))
+      }
+    })
+  }
+
+  /**
+   * Update the journal entry of a transfer. The journal is only an aid for resuming, so failing to update it is logged
+   * and does not affect the transfer.
+   */
+  private def journalled(transfer: Transfer)(update: (TransferJournal, Array[Byte]) => Unit): Unit = {
+    for (journal <- journal; fileId <- transfer.fileId) {
+      Try(update(journal, fileId)).failed foreach { e =>
+        logger.warn(s"Updating the transfer journal for ${transfer.path} failed", e)
+      }
+    }
+  }
+
+  /**
+   * Close the file on the writer thread, after the batches already submitted, and fail the transfer's future.
+   */
+  protected override def released(transfer: Transfer, reason: String): Unit = {
+    writer.execute(new Runnable {
+      override def run(): Unit = {
+        Try(transfer.channel.close())
+        transfer.completion.failure(transfer.failure.getOrElse(new CancellationException(reason)))
+      }
+    })
+  }
+
+  /**
+   * Release all transfers and stop the writer thread after it has written the batches already submitted.
+   */
+  override def close(): Unit = synchronized {
+    super.close()
+    writer.shutdown()
+  }
+
+}
@@ -0,0 +1,216 @@
+package im.tox.tox4j.filetransfer
+
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.{ByteBuffer, MappedByteBuffer}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.enums.ToxFileControl
+import im.tox.tox4j.core.exceptions.{ToxFileControlException, ToxFileSendChunkException}
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+
+object FileSender {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Default size of the part of a file that is mapped into memory at a time.
+   */
+  val DefaultMappingSize = 64 * 1024 * 1024
+
+  /**
+   * Mappings start at multiples of this, so that they are aligned to pages on all common platforms.
+   */
+  private val PageSize = 4096
+
+  /**
+   * A requested chunk that has not been sent, yet.
+   */
+  private[filetransfer] final case class ChunkRequest(position: Long, length: Int)
+
+  private[filetransfer] final class Transfer(val channel: FileChannel, val closeChannel: Boolean) {
+
+    val size = channel.size
+
+    /**
+     * Requested chunks toxcore did not accept, yet, in request order.
+     */
+    val pending = new mutable.Queue[ChunkRequest]
+
+    private var mapping: Option[MappedByteBuffer] = None // scalastyle:ignore var.field
+    private var mappingStart = 0L // scalastyle:ignore var.field
+
+    /**
+     * The mapped bytes from `position` to `position + length`, between the position and limit of the returned buffer.
+     * The current mapping is reused if it contains the range. Otherwise, a new mapping starting at the page containing
+     * `position` replaces it.
+     */
+    @throws[IOException]
+    def chunk(position: Long, length: Int, mappingSize: Int): ByteBuffer = {
+      val buffer = mapping match {
+        case Some(mapped) if position >= mappingStart && position + length <= mappingStart + mapped.capacity =>
+          mapped
+        case _ =>
+          val start = position - position % PageSize
+          val mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(mappingSize, size - start))
+          mapping = Some(mapped)
+          mappingStart = start
+          mapped
+      }
+      val offset = (position - mappingStart).toInt
+      buffer.clear()
+      buffer.position(offset)
+      buffer.limit(offset + length)
+      buffer
+    }
+
+    /**
+     * Drop the current mapping, so that its address space can be reclaimed.
+     */
+    def unmap(): Unit = {
+      mapping = None
+    }
+
+  }
+
+}
+
+/**
+ * Serves outgoing file transfers from memory-mapped files.
+ *
+ * Each registered transfer answers chunk requests with a view of a [[MappedByteBuffer]]. Mapped buffers are direct
+ * buffers, so the [[ByteBuffer]] overload of [[ToxCore.fileSendChunk]] passes the mapped memory to toxcore without
+ * copying it into a byte array first. At most `mappingSize` bytes of a file are mapped at a time. Requests outside the
+ * mapped part, for instance after the receiver used [[ToxCore.fileSeek]] to resume a transfer, move the mapping.
+ *
+ * Toxcore requests each chunk only once. A chunk it rejects with [[ToxFileSendChunkException.Code.SENDQ]] stays
+ * pending, together with the chunks requested after it, and is sent again by the next [[flush]]. Chunks rejected with
+ * other errors are dropped. The mapping of a paused transfer is dropped until the next chunk request. A transfer is
+ * released when its last chunk was requested, when either side cancels it, or when the friend disconnects. Channels
+ * opened by [[send]] are closed on release; channels passed to [[register]] are left to the caller.
+ *
+ * The sender needs to be driven by its owner, who calls [[flush]] after each [[ToxCore.iterate]], or uses [[iterate]]
+ * instead, and forwards the [[im.tox.tox4j.core.callbacks.FileChunkRequestCallback.fileChunkRequest]] and
+ * [[im.tox.tox4j.core.callbacks.FileRecvControlCallback.fileRecvControl]] events and disconnections to it. All
+ * methods are synchronised.
+ *
+ * @param tox The instance to send the files with.
+ * @param mappingSize The maximum number of bytes of a file mapped at a time.
+ */
+final class FileSender[ToxCoreState](tox: ToxCore[ToxCoreState], mappingSize: Int = FileSender.DefaultMappingSize)
+    extends OutgoingTransferRegistry[ToxCoreState, FileSender.Transfer](tox) {
+  require(mappingSize >= 2 * FileSender.PageSize, s"Mapping size ($mappingSize) should be at least two pages")
+
+  import FileSender._
+
+  protected override def newTransfer(channel: FileChannel, closeChannel: Boolean): Transfer = {
+    new Transfer(channel, closeChannel)
+  }
+
+  /**
+   * Answer a chunk request.
+   *
+   * @return true if the request belonged to a transfer served by this sender.
+   */
+  override def fileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int): Boolean = synchronized {
+    val key = TransferKey(friendNumber, fileNumber)
+    transfers.get(key) match {
+      case Some(transfer) =>
+        if (length == 0) {
+          release(key, s"File $fileNumber complete")
+        } else {
+          transfer.pending += ChunkRequest(position, length)
+          sendPending(friendNumber, fileNumber, transfer)
+        }
+        true
+      case None =>
+        false
+    }
+  }
+
+  /**
+   * Send the pending chunks of a transfer in order, until toxcore's send queue is full.
+   */
+  @tailrec
+  private def sendPending(friendNumber: Int, fileNumber: Int, transfer: Transfer): Unit = {
+    transfer.pending.headOption match {
+      case Some(request) =>
+        if (trySend(friendNumber, fileNumber, transfer, request)) {
+          transfer.pending.dequeue()
+          sendPending(friendNumber, fileNumber, transfer)
+        }
+      case None =>
+    }
+  }
+
+  /**
+   * Send a chunk.
+   *
+   * @return true if the chunk is done with, because it was sent or dropped, false if it should be tried again later.
+   */
+  private def trySend(friendNumber: Int, fileNumber: Int, transfer: Transfer, request: ChunkRequest): Boolean = {
+    val ChunkRequest(position, length) = request
+    val available = Math.max(0L, Math.min(length.toLong, transfer.size - position)).toInt
+    try {
+      tox.fileSendChunk(friendNumber, fileNumber, position, transfer.chunk(position, available, mappingSize))
+      true
+    } catch {
+      case e: ToxFileSendChunkException if e.code == ToxFileSendChunkException.Code.SENDQ =>
+        false
+      case e: ToxFileSendChunkException =>
+        logger.debug(s"Chunk at $position of file $fileNumber for friend $friendNumber dropped: ${e.getMessage}")
+        true
+      case e: IOException =>
+        logger.error(s"Cancelling file $fileNumber for friend $friendNumber: mapping the file failed", e)
+        cancel(friendNumber, fileNumber)
+        false
+    }
+  }
+
+  override def flush(): Unit = synchronized {
+    transfers.toList foreach {
+      case (key, transfer) =>
+        sendPending(TransferKey.friendNumber(key), TransferKey.fileNumber(key), transfer)
+    }
+  }
+
+  protected override def controlled(transfer: Transfer, control: ToxFileControl): Unit = {
+    if (control == ToxFileControl.PAUSE) {
+      transfer.unmap()
+    }
+  }
+
+  /**
+   * Pause a transfer.
+   */
+  @throws[ToxFileControlException]
+  def pause(friendNumber: Int, fileNumber: Int): Unit = synchronized {
+    tox.fileControl(friendNumber, fileNumber, ToxFileControl.PAUSE)
+    transfers.get(TransferKey(friendNumber, fileNumber)).foreach(_.unmap())
+  }
+
+  /**
+   * Resume a transfer paused with [[pause]].
+   */
+  @throws[ToxFileControlException]
+  def resume(friendNumber: Int, fileNumber: Int): Unit = {
+    tox.fileControl(friendNumber, fileNumber, ToxFileControl.RESUME)
+  }
+
+  /**
+   * The number of chunks waiting to be sent again, over all transfers.
+   */
+  def pendingChunks: Int = synchronized(transfers.values.map(_.pending.size).sum)
+
+  protected override def released(transfer: Transfer, reason: String): Unit = {
+    transfer.unmap()
+    if (transfer.closeChannel) {
+      transfer.channel.close()
+    }
+  }
+
+}
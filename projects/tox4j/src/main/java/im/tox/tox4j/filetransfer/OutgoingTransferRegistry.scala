@@ -0,0 +1,75 @@
+package im.tox.tox4j.filetransfer
+
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.{Path, StandardOpenOption}
+
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.exceptions.ToxFileSendException
+
+import scala.util.Try
+
+/**
+ * The outgoing transfers of a sender, served from file channels. Adds starting and registering transfers and driving
+ * the sender from the iterate loop to [[TransferRegistry]].
+ *
+ * @param tox The instance to send the files with.
+ */
+private[filetransfer] abstract class OutgoingTransferRegistry[ToxCoreState, Transfer](tox: ToxCore[ToxCoreState])
+    extends TransferRegistry[ToxCoreState, Transfer](tox) {
+
+  /**
+   * @param closeChannel Whether releasing the transfer closes the channel.
+   */
+  protected def newTransfer(channel: FileChannel, closeChannel: Boolean): Transfer
+
+  /**
+   * Start sending a file.
+   *
+   * @param friendNumber The friend number of the friend the file send request should be sent to.
+   * @param kind The meaning of the file to be sent.
+   * @param path The file to send. It is opened for reading and closed when the transfer is released.
+   * @param fileId A file identifier of length [[im.tox.tox4j.core.ToxCoreConstants.FileIdLength]] or null.
+   * @param filename Name of the file.
+   * @return the file number of the new transfer.
+   */
+  @throws[IOException]
+  @throws[ToxFileSendException]
+  def send(friendNumber: Int, kind: Int, path: Path, fileId: Array[Byte], filename: Array[Byte]): Int = synchronized {
+    val channel = FileChannel.open(path, StandardOpenOption.READ)
+    val fileNumber = Try(tox.fileSend(friendNumber, kind, channel.size, fileId, filename))
+    fileNumber.failed.foreach(_ => channel.close())
+    transfers(TransferKey(friendNumber, fileNumber.get)) = newTransfer(channel, closeChannel = true)
+    fileNumber.get
+  }
+
+  /**
+   * Serve an existing outgoing transfer from a channel. The channel's size must be the file size the transfer was
+   * started with. The channel is left open when the transfer is released.
+   */
+  def register(friendNumber: Int, fileNumber: Int, channel: FileChannel): Unit = synchronized {
+    transfers(TransferKey(friendNumber, fileNumber)) = newTransfer(channel, closeChannel = false)
+  }
+
+  /**
+   * Forward a chunk request. A request of length 0 completes the transfer and releases it.
+   *
+   * @return true if the request belonged to a transfer served by this sender.
+   */
+  def fileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int): Boolean
+
+  /**
+   * Send the chunks that are ready, including the ones toxcore rejected earlier because its send queue was full.
+   */
+  def flush(): Unit
+
+  /**
+   * Iterate the instance and [[flush]] afterwards.
+   */
+  def iterate(state: ToxCoreState): ToxCoreState = {
+    val nextState = tox.iterate(state)
+    flush()
+    nextState
+  }
+
+}
@@ -0,0 +1,81 @@
+package im.tox.tox4j.filetransfer
+
+import scala.annotation.tailrec
+
+/**
+ * A set of byte positions, stored as sorted, disjoint, non-adjacent half-open ranges.
+ *
+ * The ranges are kept in two parallel long arrays, so a transfer received in order takes a single range, and adding to
+ * it needs neither allocation nor boxing. This class is not thread-safe.
+ */
+private[filetransfer] final class RangeSet {
+
+  private var starts = Array.ofDim[Long](4) // scalastyle:ignore var.field
+  private var ends = Array.ofDim[Long](4) // scalastyle:ignore var.field
+  private var count = 0 // scalastyle:ignore var.field
+
+  /**
+   * The number of ranges.
+   */
+  def size: Int = count
+
+  /**
+   * The ranges as (start, end) pairs, in ascending order.
+   */
+  def ranges: Seq[(Long, Long)] = (0 until count).map(i => (starts(i), ends(i)))
+
+  /**
+   * The first position not in the set, counting from 0.
+   */
+  def firstMissing: Long = if (count > 0 && starts(0) == 0) ends(0) else 0
+
+  /**
+   * The first index in `0 until count` whose value in `array` is at least `key`, or `count` if there is none.
+   */
+  @tailrec
+  private def lowerBound(array: Array[Long], key: Long, low: Int = 0, high: Int = count): Int = {
+    if (low == high) {
+      low
+    } else {
+      val mid = (low + high) >>> 1
+      if (array(mid) < key) {
+        lowerBound(array, key, mid + 1, high)
+      } else {
+        lowerBound(array, key, low, mid)
+      }
+    }
+  }
+
+  /**
+   * Add the positions from `start` to `end`, exclusive, merging the ranges they overlap or touch.
+   */
+  def add(start: Long, end: Long): Unit = {
+    if (start < end) {
+      // The ranges from first to last, exclusive, overlap or touch the new one.
+      val first = lowerBound(ends, start)
+      val last = lowerBound(starts, end + 1)
+      if (first == last) {
+        insert(first, start, end)
+      } else {
+        starts(first) = Math.min(start, starts(first))
+        ends(first) = Math.max(end, ends(last - 1))
+        System.arraycopy(starts, last, starts, first + 1, count - last)
+        System.arraycopy(ends, last, ends, first + 1, count - last)
+        count -= last - first - 1
+      }
+    }
+  }
+
+  private def insert(index: Int, start: Long, end: Long): Unit = {
+    if (count == starts.length) {
+      starts = java.util.Arrays.copyOf(starts, count * 2)
+      ends = java.util.Arrays.copyOf(ends, count * 2)
+    }
+    System.arraycopy(starts, index, starts, index + 1, count - index)
+    System.arraycopy(ends, index, ends, index + 1, count - index)
+    starts(index) = start
+    ends(index) = end
+    count += 1
+  }
+
+}
@@ -0,0 +1,169 @@
+package im.tox.tox4j.filetransfer
+
+import java.io.{Closeable, IOException}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Path, StandardCopyOption, StandardOpenOption}
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+
+object TransferJournal {
+
+  /**
+   * A record is the start and end of a received range, as two big-endian longs.
+   */
+  private val RecordSize = 16
+
+  /**
+   * The journal of a file is rewritten with its merged ranges when it has this many more records than ranges.
+   */
+  private val CompactionSlack = 256
+
+  private final class Entry(val channel: FileChannel, val ranges: RangeSet) {
+    var records = 0 // scalastyle:ignore var.field
+  }
+
+  /**
+   * The name of the journal of a file, the file ID in hexadecimal.
+   */
+  def fileName(fileId: Array[Byte]): String = {
+    fileId.map(byte => f"${byte & 0xff}%02x").mkString + ".ranges"
+  }
+
+  @tailrec
+  private def readFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Unit = {
+    if (buffer.hasRemaining) {
+      val read = channel.read(buffer, position)
+      if (read > 0) {
+        readFully(channel, buffer, position + read)
+      }
+    }
+  }
+
+  private def encode(ranges: Seq[(Long, Long)]): ByteBuffer = {
+    val buffer = ByteBuffer.allocate(ranges.size * RecordSize)
+    ranges foreach {
+      case (start, end) =>
+        buffer.putLong(start).putLong(end)
+    }
+    buffer.flip()
+    buffer
+  }
+
+}
+
+/**
+ * Records which parts of incoming files have been received, so that transfers can be resumed after a restart.
+ *
+ * Toxcore identifies a file across restarts by its file ID, see [[im.tox.tox4j.core.ToxCore.getFileFileId]]. The
+ * journal keeps one small file per file ID in `directory`, containing the received ranges as a log of (start, end)
+ * records. Each [[record]] appends one record, so the journal is flushed incrementally and a crash loses at most the
+ * last record. When the log grows well beyond the number of distinct ranges, it is replaced by the merged ranges.
+ * Records are not synced to disk, so the journal survives the application ending, not the system crashing.
+ *
+ * [[FileReceiver]] consults the journal when accepting a transfer, seeks to [[resumePosition]] and records each write.
+ * All methods are synchronised.
+ *
+ * @param directory The directory the journal files are kept in. It must exist.
+ */
+final class TransferJournal(directory: Path) extends Closeable {
+
+  import TransferJournal._
+
+  private val entries = new mutable.HashMap[String, Entry]
+
+  @throws[IOException]
+  private def entry(fileId: Array[Byte]): Entry = {
+    val name = fileName(fileId)
+    entries.getOrElseUpdate(name, load(directory.resolve(name)))
+  }
+
+  /**
+   * Open the journal of a file and read the ranges recorded so far. A partially written last record is dropped.
+   */
+  @throws[IOException]
+  private def load(path: Path): Entry = {
+    val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+    val entry = new Entry(channel, new RangeSet)
+    val buffer = ByteBuffer.allocate((channel.size / RecordSize * RecordSize).toInt)
+    readFully(channel, buffer, 0)
+    buffer.flip()
+    channel.truncate(buffer.limit)
+    (0 until buffer.limit / RecordSize) foreach { _ =>
+      entry.ranges.add(buffer.getLong, buffer.getLong)
+      entry.records += 1
+    }
+    entry
+  }
+
+  /**
+   * Replace the log of a file by its merged ranges. The new log is written next to the old one and moved over it, so
+   * that a crash leaves either of them intact.
+   */
+  @throws[IOException]
+  private def compact(fileId: Array[Byte], entry: Entry): Unit = {
+    val name = fileName(fileId)
+    val temporary = directory.resolve(name + ".tmp")
+    val channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)
+    try {
+      FileReceiver.writeFully(channel, encode(entry.ranges.ranges), 0)
+      channel.force(false)
+    } finally {
+      channel.close()
+    }
+    entry.channel.close()
+    entries.remove(name)
+    Files.move(temporary, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+  }
+
+  /**
+   * The ranges of a file recorded as received, as sorted, disjoint (start, end) pairs with exclusive ends.
+   */
+  @throws[IOException]
+  def receivedRanges(fileId: Array[Byte]): Seq[(Long, Long)] = synchronized {
+    entry(fileId).ranges.ranges
+  }
+
+  /**
+   * The first position of a file not recorded as received. A transfer of the file can resume here.
+   */
+  @throws[IOException]
+  def resumePosition(fileId: Array[Byte]): Long = synchronized {
+    entry(fileId).ranges.firstMissing
+  }
+
+  /**
+   * Record that the bytes of a file from `start` to `end`, exclusive, have been received and written.
+   */
+  @throws[IOException]
+  def record(fileId: Array[Byte], start: Long, end: Long): Unit = synchronized {
+    val current = entry(fileId)
+    FileReceiver.writeFully(current.channel, encode(Seq((start, end))), current.records.toLong * RecordSize)
+    current.records += 1
+    current.ranges.add(start, end)
+    if (current.records > current.ranges.size + CompactionSlack) {
+      compact(fileId, current)
+    }
+  }
+
+  /**
+   * Forget a file, for instance when it has been received completely.
+   */
+  @throws[IOException]
+  def remove(fileId: Array[Byte]): Unit = synchronized {
+    val name = fileName(fileId)
+    entries.remove(name).foreach(_.channel.close())
+    Files.deleteIfExists(directory.resolve(name))
+  }
+
+  /**
+   * Close the open journal files. The journal can still be used afterwards; files are reopened on demand.
+   */
+  override def close(): Unit = synchronized {
+    entries.values.foreach(_.channel.close())
+    entries.clear()
+  }
+
+}
@@ -0,0 +1,17 @@
+package im.tox.tox4j.filetransfer
+
+/**
+ * File numbers are only unique per friend, so the file transfer components identify a transfer by both numbers, packed
+ * into a long for use as key of a primitive map.
+ */
+private[filetransfer] object TransferKey {
+
+  def apply(friendNumber: Int, fileNumber: Int): Long = {
+    (friendNumber.toLong << 32) | (fileNumber & 0xffffffffL)
+  }
+
+  def friendNumber(key: Long): Int = (key >>> 32).toInt
+
+  def fileNumber(key: Long): Int = key.toInt
+
+}
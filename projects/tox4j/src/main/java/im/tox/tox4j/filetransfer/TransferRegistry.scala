@@ -0,0 +1,106 @@
+package im.tox.tox4j.filetransfer
+
+import java.io.Closeable
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.enums.ToxFileControl
+import im.tox.tox4j.core.exceptions.ToxFileControlException
+import org.slf4j.LoggerFactory
+
+import scala.collection.mutable
+
+private[filetransfer] object TransferRegistry {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+}
+
+/**
+ * The transfers of a file transfer component, by friend and file number, see [[TransferKey]].
+ *
+ * This is the part all file transfer components have in common: cancelling transfers from either side, dropping the
+ * transfers of a disconnected friend and releasing everything on [[close]]. Subclasses free the resources of a transfer
+ * in [[released]], and may react to the other file control commands in [[controlled]].
+ * All methods are synchronised on the component.
+ *
+ * @param tox The instance the transfers belong to.
+ */
+private[filetransfer] abstract class TransferRegistry[ToxCoreState, Transfer](tox: ToxCore[ToxCoreState])
+    extends Closeable {
+
+  protected val transfers = new mutable.LongMap[Transfer]
+
+  /**
+   * Free the resources of a transfer that was removed from the registry.
+   *
+   * @param reason Why the transfer was released.
+   */
+  protected def released(transfer: Transfer, reason: String): Unit
+
+  /**
+   * React to a file control command other than [[ToxFileControl.CANCEL]] from the friend.
+   */
+  protected def controlled(transfer: Transfer, control: ToxFileControl): Unit = ()
+
+  protected final def release(key: Long, reason: String): Unit = {
+    transfers.remove(key).foreach(released(_, reason))
+  }
+
+  /**
+   * Handle a file control command from the friend. A cancelled transfer is released.
+   *
+   * @return true if the command belonged to a transfer of this component.
+   */
+  def fileRecvControl(friendNumber: Int, fileNumber: Int, control: ToxFileControl): Boolean = synchronized {
+    val key = TransferKey(friendNumber, fileNumber)
+    transfers.get(key) match {
+      case Some(transfer) =>
+        if (control == ToxFileControl.CANCEL) {
+          release(key, s"File $fileNumber cancelled by friend $friendNumber")
+        } else {
+          controlled(transfer, control)
+        }
+        true
+      case None =>
+        false
+    }
+  }
+
+  /**
+   * Cancel a transfer and release it. The transfer is released even if the friend could not be told.
+   */
+  def cancel(friendNumber: Int, fileNumber: Int): Unit = synchronized {
+    try {
+      tox.fileControl(friendNumber, fileNumber, ToxFileControl.CANCEL)
+    } catch {
+      case e: ToxFileControlException =>
+        TransferRegistry.logger.debug(s"Cancelling file $fileNumber of friend $friendNumber: ${e.getMessage}")
+    }
+    release(TransferKey(friendNumber, fileNumber), s"File $fileNumber cancelled")
+  }
+
+  /**
+   * Release all transfers with a friend. Toxcore ends all transfers when the connection to the friend is lost.
+   */
+  def friendDisconnected(friendNumber: Int): Unit = synchronized {
+    transfers.keys.filter(TransferKey.friendNumber(_) == friendNumber).toList foreach { key =>
+      release(key, s"Friend $friendNumber disconnected")
+    }
+  }
+
+  /**
+   * Release all transfers.
+   */
+  override def close(): Unit = synchronized {
+    transfers.keys.toList foreach { key =>
+      release(key, getClass.getSimpleName + " closed")
+    }
+  }
+
+  /**
+   * The number of transfers currently handled.
+   */
+  def size: Int = synchronized(transfers.size)
+
+}
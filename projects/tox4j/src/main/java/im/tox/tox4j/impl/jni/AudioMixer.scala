@@ -0,0 +1,81 @@
+package im.tox.tox4j.impl.jni
+
+import java.io.Closeable
+
+object AudioMixer {
+
+  /**
+   * The sampling rate of the Opus encoder in toxav, so that mixes are sent without another resampling step.
+   */
+  val DefaultSamplingRate = 48000
+
+  val DefaultFrameMillis = 20
+
+  /**
+   * Enough to absorb the usual network jitter of a few frames, while adding at most 60 ms of latency.
+   */
+  val DefaultJitterFrames = 3
+
+}
+
+/**
+ * A native conference mixer attached to a [[ToxAvImpl]] instance.
+ *
+ * Each participant receives the sum of the audio of all other participants. The mixing happens entirely in native
+ * code, inside [[ToxAvImpl.iterate]]: received frames of participants go into a jitter buffer per participant,
+ * converted to the mixer's sampling rate and channel count, and every frame period, the mixes are computed with
+ * saturating addition and passed to toxav_audio_send_frame. No audio crosses into Java, so the event mask can exclude
+ * [[im.tox.tox4j.av.callbacks.ToxAvEventMask.AudioReceiveFrame]] if the application doesn't need the frames itself.
+ *
+ * [[ToxAvImpl.iterationInterval]] accounts for the mixer, so an event loop that sleeps for it wakes up in time for
+ * each mix. Participants are removed automatically when their call finishes or fails. Only one mixer can be attached
+ * to an instance at a time; creating another replaces it. A replaced mixer is inert: closing it leaves its successor
+ * attached, its metrics are zero, and adding participants to it throws [[IllegalStateException]].
+ *
+ * @param av The A/V session whose calls are mixed.
+ * @param samplingRate The sampling rate of the mixes.
+ * @param channels The channel count of the mixes, 1 or 2.
+ * @param frameMillis The duration of a mixed frame. Valid values are 10, 20, 40 and 60.
+ * @param jitterFrames The capacity of each participant's jitter buffer in frames.
+ */
+final class AudioMixer(
+    av: ToxAvImpl[_],
+    samplingRate: Int = AudioMixer.DefaultSamplingRate,
+    channels: Int = 1,
+    frameMillis: Int = AudioMixer.DefaultFrameMillis,
+    jitterFrames: Int = AudioMixer.DefaultJitterFrames
+) extends Closeable {
+  require(channels == 1 || channels == 2, s"Channel count ($channels) should be 1 or 2")
+  require(Seq(10, 20, 40, 60).contains(frameMillis), s"Frame duration ($frameMillis ms) is not supported by toxav")
+  require(samplingRate > 0 && samplingRate * frameMillis % 1000 == 0, s"Sampling rate ($samplingRate) should give whole frames")
+  require(jitterFrames > 0, s"Jitter buffer size ($jitterFrames) should be positive")
+
+  /**
+   * Identifies this mixer to the native side, so that calls on a replaced mixer don't reach its successor.
+   */
+  private val mixerId = ToxAvJni.tox4jMixerStart(av.instanceNumber, samplingRate, channels, frameMillis, jitterFrames)
+
+  /**
+   * Start mixing a friend's call. The call should be active with audio in both directions.
+   */
+  def addParticipant(friendNumber: Int): Unit =
+    ToxAvJni.tox4jMixerAddParticipant(av.instanceNumber, mixerId, friendNumber)
+
+  /**
+   * Stop mixing a friend's call.
+   */
+  def removeParticipant(friendNumber: Int): Unit =
+    ToxAvJni.tox4jMixerRemoveParticipant(av.instanceNumber, mixerId, friendNumber)
+
+  def metrics: AudioMixerMetrics = {
+    val Array(participants, mixes, underruns, overflows, sendErrors) = ToxAvJni.tox4jMixerStats(av.instanceNumber, mixerId)
+    AudioMixerMetrics(participants.toInt, mixes, underruns, overflows, sendErrors)
+  }
+
+  /**
+   * Detach the mixer from the A/V session, unless another mixer has replaced it.
+   */
+  override def close(): Unit =
+    ToxAvJni.tox4jMixerStop(av.instanceNumber, mixerId)
+
+}
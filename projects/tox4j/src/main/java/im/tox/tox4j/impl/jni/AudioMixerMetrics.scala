@@ -0,0 +1,20 @@
+package im.tox.tox4j.impl.jni
+
+/**
+ * Snapshot of the state and history of an [[AudioMixer]].
+ *
+ * @param participants The number of friends currently mixed.
+ * @param mixes The number of frame periods mixed.
+ * @param underruns The number of times a participant's jitter buffer ran dry, so that they contributed silence.
+ * @param overflows The number of received frames that did not fit into a participant's jitter buffer.
+ * @param sendErrors The number of mixes toxav did not accept, e.g. because the friend's call was not active yet.
+ */
+final case class AudioMixerMetrics(
+    participants: Int,
+    mixes: Long,
+    underruns: Long,
+    overflows: Long,
+    sendErrors: Long
+) {
+  def underrunRate: Double = if (mixes == 0 || participants == 0) 0 else underruns.toDouble / (mixes * participants)
+}
@@ -1,5 +1,6 @@
 package im.tox.tox4j.impl.jni
 
+import java.nio.{ByteBuffer, ByteOrder, ShortBuffer}
 import java.util
 
 import com.google.protobuf.ByteString
@@ -8,15 +9,16 @@ import im.tox.tox4j.OptimisedIdOps._
 import im.tox.tox4j.ToxImplBase.tryAndLog
 import im.tox.tox4j.av.ToxAv
 import im.tox.tox4j.av.callbacks._
-import im.tox.tox4j.av.enums.{ToxavCallControl, ToxavFriendCallState}
+import im.tox.tox4j.av.enums.{ToxavCallControl, ToxavFriendCallState, ToxavPixelFormat}
 import im.tox.tox4j.av.exceptions._
 import im.tox.tox4j.av.proto.Av._
 import im.tox.tox4j.core.ToxCore
-import im.tox.tox4j.impl.jni.ToxAvImpl.{convert, logger}
+import im.tox.tox4j.impl.jni.ToxAvImpl.{convert, directSamples, logger}
 import org.jetbrains.annotations.NotNull
 import org.slf4j.LoggerFactory
 
 import scala.annotation.tailrec
+import scala.collection.mutable
 import scala.util.control.NonFatal
 
 private object ToxAvImpl {
@@ -49,6 +51,17 @@ private object ToxAvImpl {
     }
   }
 
+  /**
+   * A direct buffer in native byte order for at least `length` samples, reusing `current` if it is large enough.
+   */
+  private def directSamples(current: Option[ShortBuffer], length: Int): ShortBuffer = {
+    val buffer = current.filter(_.capacity >= length).getOrElse {
+      ByteBuffer.allocateDirect(length * 2).order(ByteOrder.nativeOrder).asShortBuffer
+    }
+    buffer.clear()
+    buffer
+  }
+
 }
 
 /**
@@ -60,12 +73,37 @@ private object ToxAvImpl {
 @throws[ToxavNewException]("If there was already an A/V session.")
 final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCoreState]) extends ToxAv[ToxCoreState] {
 
-  private val instanceNumber = ToxAvJni.toxavNew(tox.instanceNumber)
+  /**
+   * This field has package visibility for [[AudioMixer]].
+   */
+  private[jni] val instanceNumber = ToxAvJni.toxavNew(tox.instanceNumber)
 
   private val onClose = tox.addOnCloseCallback(close)
 
   private var eventListener: ToxAvEventListener[ToxCoreState] = new ToxAvEventAdapter[ToxCoreState] // scalastyle:ignore var.field
 
+  /**
+   * Set to the [[eventListener]] if it opted in to receiving audio frames as [[ShortBuffer]].
+   */
+  private var audioBufferListener: Option[AudioReceiveFrameBufferCallback[ToxCoreState]] = None // scalastyle:ignore var.field
+
+  /**
+   * Set to the [[eventListener]] if it opted in to receiving video frames in pooled buffers.
+   */
+  private var videoBufferListener: Option[VideoReceiveFrameBufferCallback[ToxCoreState]] = None // scalastyle:ignore var.field
+
+  /**
+   * Per-call direct buffers that [[audioSendFrame]] copies samples into if they are not in a direct buffer already.
+   * A call's buffer is released when the call ends.
+   */
+  private val audioSendBuffers = new mutable.LongMap[ShortBuffer]
+
+  /**
+   * The events the listener asked for. Call state events are always collected natively, because ending calls release
+   * their per-call buffers, but they are only passed to the listener if this mask includes them.
+   */
+  @volatile private var eventMask = ToxAvEventMask.All // scalastyle:ignore var.field
+
   @SuppressWarnings(Array("org.brianmckenna.wartremover.warts.AsInstanceOf"))
   override def create(tox: ToxCore[ToxCoreState]): ToxAv[ToxCoreState] = {
     try {
@@ -79,6 +117,7 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
   override def close(): Unit = {
     tox.removeOnCloseCallback(onClose)
     ToxAvJni.toxavKill(instanceNumber)
+    audioSendBuffers.synchronized(audioSendBuffers.clear())
   }
 
   protected override def finalize(): Unit = {
@@ -105,10 +144,18 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
   private def dispatchCallState(callState: Seq[CallState])(state: ToxCoreState): ToxCoreState = {
     callState.foldLeft(state) {
       case (state, CallState(friendNumber, callState)) =>
-        tryAndLog(tox.options.fatalErrors, state, eventListener)(_.callState(
-          friendNumber,
-          util.Arrays.asList(callState.map(convert): _*)
-        ))
+        if (callState.contains(CallState.Kind.FINISHED) || callState.contains(CallState.Kind.ERROR)) {
+          audioSendBuffers.synchronized(audioSendBuffers.remove(friendNumber))
+          videoBufferListener.foreach(_.videoFramePool.clear(friendNumber))
+        }
+        if ((eventMask & ToxAvEventMask.CallState) != 0) {
+          tryAndLog(tox.options.fatalErrors, state, eventListener)(_.callState(
+            friendNumber,
+            util.Arrays.asList(callState.map(convert): _*)
+          ))
+        } else {
+          state
+        }
     }
   }
 
@@ -130,6 +177,25 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
     shortArray
   }
 
+  private def audioReceiveFrame(frame: AudioReceiveFrame)(state: ToxCoreState): ToxCoreState = {
+    audioBufferListener match {
+      case Some(listener) =>
+        listener.audioReceiveFrame(
+          frame.friendNumber,
+          frame.pcm.asReadOnlyByteBuffer.asShortBuffer,
+          frame.channels,
+          frame.samplingRate
+        )(state)
+      case None =>
+        eventListener.audioReceiveFrame(
+          frame.friendNumber,
+          toShortArray(frame.pcm),
+          frame.channels,
+          frame.samplingRate
+        )(state)
+    }
+  }
+
   @tailrec
   private def dispatchAudioReceiveFrame(audioReceiveFrame: Seq[AudioReceiveFrame])(state: ToxCoreState): ToxCoreState = {
     if (audioReceiveFrame.isEmpty) {
@@ -139,24 +205,14 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
       val nextState =
         if (!tox.options.fatalErrors) {
           try {
-            eventListener.audioReceiveFrame(
-              thisFrame.friendNumber,
-              toShortArray(thisFrame.pcm),
-              thisFrame.channels,
-              thisFrame.samplingRate
-            )(state)
+            audioReceiveFrame(thisFrame)(state)
           } catch {
             case NonFatal(e) =>
               logger.warn("Exception caught while executing audioReceiveFrame", e)
               state
           }
         } else {
-          eventListener.audioReceiveFrame(
-            thisFrame.friendNumber,
-            toShortArray(thisFrame.pcm),
-            thisFrame.channels,
-            thisFrame.samplingRate
-          )(state)
+          audioReceiveFrame(thisFrame)(state)
         }
       dispatchAudioReceiveFrame(audioReceiveFrame.tail)(nextState)
     }
@@ -166,17 +222,33 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
   private def dispatchVideoReceiveFrame(videoReceiveFrame: Seq[VideoReceiveFrame])(state: ToxCoreState): ToxCoreState = {
     videoReceiveFrame.foldLeft(state) {
       case (state, VideoReceiveFrame(friendNumber, width, height, y, u, v, yStride, uStride, vStride)) =>
-        tryAndLog(tox.options.fatalErrors, state, eventListener)(_.videoReceiveFrame(
-          friendNumber,
-          width,
-          height,
-          y.toByteArray,
-          u.toByteArray,
-          v.toByteArray,
-          yStride,
-          uStride,
-          vStride
-        ))
+        videoBufferListener match {
+          case Some(listener) =>
+            tryAndLog(tox.options.fatalErrors, state, listener) { handler =>
+              val frame = handler.videoFramePool.acquire(
+                friendNumber,
+                width, height,
+                yStride, uStride, vStride,
+                y.size, u.size, v.size
+              )
+              y.copyTo(frame.getY.duplicate)
+              u.copyTo(frame.getU.duplicate)
+              v.copyTo(frame.getV.duplicate)
+              handler.videoReceiveFrame(frame)
+            }
+          case None =>
+            tryAndLog(tox.options.fatalErrors, state, eventListener)(_.videoReceiveFrame(
+              friendNumber,
+              width,
+              height,
+              y.toByteArray,
+              u.toByteArray,
+              v.toByteArray,
+              yStride,
+              uStride,
+              vStride
+            ))
+        }
     }
   }
 
@@ -189,9 +261,19 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
       |> dispatchVideoReceiveFrame(events.videoReceiveFrame))
   }
 
+  override def iterate(state: ToxCoreState): ToxCoreState =
+    dispatchEventData(state, ToxAvJni.toxavIterate(instanceNumber))
+
+  /**
+   * Like [[iterate]], but holds the lock of the Tox instance while toxav iterates. This makes it safe to iterate the
+   * A/V session on a different thread than the Tox instance, as [[im.tox.tox4j.scheduler.ToxAvRunner]] does. Event
+   * listeners are called after the locks are released, so a slow listener of either instance does not hold up the other.
+   */
+  def iterateExclusive(state: ToxCoreState): ToxCoreState =
+    dispatchEventData(state, ToxAvJni.tox4jIterateExclusive(instanceNumber, tox.instanceNumber))
+
   @SuppressWarnings(Array("org.brianmckenna.wartremover.warts.Null"))
-  override def iterate(state: ToxCoreState): ToxCoreState = {
-    val eventData = ToxAvJni.toxavIterate(instanceNumber)
+  private def dispatchEventData(state: ToxCoreState, eventData: Array[Byte]): ToxCoreState = {
     if (eventData != null) { // scalastyle:ignore null
       val events = AvEvents.parseFrom(eventData)
       dispatchEvents(state, events)
@@ -223,12 +305,69 @@ final class ToxAvImpl[ToxCoreState](@NotNull private val tox: ToxCoreImpl[ToxCor
   override def audioSendFrame(friendNumber: Int, pcm: Array[Short], sampleCount: Int, channels: Int, samplingRate: Int): Unit =
     ToxAvJni.toxavAudioSendFrame(instanceNumber, friendNumber, pcm, sampleCount, channels, samplingRate)
 
+  @throws[ToxavSendFrameException]
+  override def audioSendFrame(friendNumber: Int, pcm: ShortBuffer, sampleCount: Int, channels: Int, samplingRate: Int): Unit = {
+    if (pcm.isDirect && pcm.order == ByteOrder.nativeOrder) {
+      ToxAvJni.tox4jAudioSendFrameDirect(
+        instanceNumber, friendNumber, pcm, pcm.position, pcm.remaining, sampleCount, channels, samplingRate
+      )
+    } else if (pcm.hasArray && pcm.arrayOffset + pcm.position == 0 && pcm.remaining == pcm.array.length) {
+      ToxAvJni.toxavAudioSendFrame(instanceNumber, friendNumber, pcm.array, sampleCount, channels, samplingRate)
+    } else {
+      audioSendBuffers.synchronized {
+        val samples = directSamples(audioSendBuffers.get(friendNumber), pcm.remaining)
+        audioSendBuffers(friendNumber) = samples
+        samples.put(pcm.duplicate)
+        ToxAvJni.tox4jAudioSendFrameDirect(
+          instanceNumber, friendNumber, samples, 0, pcm.remaining, sampleCount, channels, samplingRate
+        )
+      }
+    }
+    pcm.position(pcm.limit)
+  }
+
   @throws[ToxavSendFrameException]
   override def videoSendFrame(friendNumber: Int, width: Int, height: Int, y: Array[Byte], u: Array[Byte], v: Array[Byte]): Unit =
     ToxAvJni.toxavVideoSendFrame(instanceNumber, friendNumber, width, height, y, u, v)
 
+  @throws[ToxavSendFrameException]
+  // scalastyle:ignore parameter.number
+  override def videoSendFrame(
+    friendNumber: Int,
+    width: Int, height: Int,
+    y: ByteBuffer, u: ByteBuffer, v: ByteBuffer,
+    yStride: Int, uStride: Int, vStride: Int
+  ): Unit = {
+    ToxAvJni.tox4jVideoSendFrameStrided(
+      instanceNumber,
+      friendNumber,
+      width, height,
+      y, y.position, yStride,
+      u, u.position, uStride,
+      v, v.position, vStride
+    )
+  }
+
+  @throws[ToxavSendFrameException]
+  override def videoSendFrame(friendNumber: Int, width: Int, height: Int, format: ToxavPixelFormat, data: ByteBuffer, stride: Int): Unit =
+    ToxAvJni.tox4jVideoSendFrameConvert(instanceNumber, friendNumber, width, height, format.ordinal, data, data.position, stride)
+
   override def callback(handler: ToxAvEventListener[ToxCoreState]): Unit = {
     this.eventListener = handler
+    this.audioBufferListener = handler match {
+      case listener: AudioReceiveFrameBufferCallback[ToxCoreState @unchecked] => Some(listener)
+      case _ => None
+    }
+    this.videoBufferListener = handler match {
+      case listener: VideoReceiveFrameBufferCallback[ToxCoreState @unchecked] => Some(listener)
+      case _ => None
+    }
+    setEventMask(ToxAvEventMask.of(handler))
+  }
+
+  override def setEventMask(mask: Int): Unit = {
+    eventMask = mask
+    ToxAvJni.tox4jSetEventMask(instanceNumber, mask | ToxAvEventMask.CallState)
   }
 
   def invokeAudioReceiveFrame(friendNumber: Int, pcm: Array[Short], channels: Int, samplingRate: Int): Unit =
@@ -4,6 +4,9 @@ import im.tox.tox4j.av.exceptions.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
 @SuppressWarnings({"checkstyle:emptylineseparator", "checkstyle:linelength"})
 public final class ToxAvJni {
 
@@ -17,6 +20,8 @@ public final class ToxAvJni {
   static native int toxavIterationInterval(int instanceNumber);
   @Nullable
   static native byte[] toxavIterate(int instanceNumber);
+  @Nullable
+  static native byte[] tox4jIterateExclusive(int instanceNumber, int toxInstanceNumber);
   static native void toxavCall(int instanceNumber, int friendNumber, int audioBitRate, int videoBitRate) throws ToxavCallException;
   static native void toxavAnswer(int instanceNumber, int friendNumber, int audioBitRate, int videoBitRate) throws ToxavAnswerException;
   static native void toxavCallControl(int instanceNumber, int friendNumber, int control) throws ToxavCallControlException;
@@ -28,6 +33,12 @@ public final class ToxAvJni {
       @NotNull short[] pcm, int sampleCount, int channels, int samplingRate
   ) throws ToxavSendFrameException;
 
+  static native void tox4jAudioSendFrameDirect(
+      int instanceNumber,
+      int friendNumber,
+      @NotNull ShortBuffer pcm, int offset, int length, int sampleCount, int channels, int samplingRate
+  ) throws ToxavSendFrameException;
+
   @SuppressWarnings("checkstyle:parametername")
   static native void toxavVideoSendFrame(
       int instanceNumber,
@@ -36,6 +47,30 @@ public final class ToxAvJni {
       @NotNull byte[] y, @NotNull byte[] u, @NotNull byte[] v
   ) throws ToxavSendFrameException;
 
+  @SuppressWarnings("checkstyle:parametername")
+  static native void tox4jVideoSendFrameStrided(
+      int instanceNumber,
+      int friendNumber,
+      int width, int height,
+      @NotNull ByteBuffer y, int yOffset, int yStride,
+      @NotNull ByteBuffer u, int uOffset, int uStride,
+      @NotNull ByteBuffer v, int vOffset, int vStride
+  ) throws ToxavSendFrameException;
+
+  static native void tox4jVideoSendFrameConvert(
+      int instanceNumber,
+      int friendNumber,
+      int width, int height,
+      int format, @NotNull ByteBuffer data, int offset, int stride
+  ) throws ToxavSendFrameException;
+
+  static native int tox4jMixerStart(int instanceNumber, int samplingRate, int channels, int frameMillis, int jitterFrames);
+  static native void tox4jMixerStop(int instanceNumber, int mixerId);
+  static native void tox4jMixerAddParticipant(int instanceNumber, int mixerId, int friendNumber);
+  static native void tox4jMixerRemoveParticipant(int instanceNumber, int mixerId, int friendNumber);
+  @NotNull
+  static native long[] tox4jMixerStats(int instanceNumber, int mixerId);
+
   static native void invokeAudioReceiveFrame(int instanceNumber, int friendNumber, short[] pcm, int channels, int samplingRate);
   static native void invokeBitRateStatus(int instanceNumber, int friendNumber, int audioBitRate, int videoBitRate);
   static native void invokeCall(int instanceNumber, int friendNumber, boolean audioEnabled, boolean videoEnabled);
@@ -49,4 +84,6 @@ public final class ToxAvJni {
       int yStride, int uStride, int vStride
   );
 
+  static native void tox4jSetEventMask(int instanceNumber, int mask);
+
 }
@@ -0,0 +1,123 @@
+package im.tox.tox4j.impl.jni
+
+import im.tox.tox4j.impl.jni.internal.{Event, FlatEventReader}
+
+import scala.annotation.tailrec
+
+private object ToxCoreGroup {
+  /**
+   * Size of the minimum iteration interval at the start of the buffer.
+   */
+  private val BufferHeaderSize = 4
+
+  /**
+   * Size of the instance number and section size preceding each instance's records.
+   */
+  private val SectionHeaderSize = 8
+}
+
+/**
+ * Runs the event loops of a group of [[ToxCoreImpl]] instances with a single JNI call per iteration.
+ *
+ * Each [[iterate]] call iterates all members in native code and collects their events into one shared direct buffer,
+ * in sections tagged with the instance number. The events are then dispatched to each member's event listener, in the
+ * order the members were added, threading a single state value through all of them.
+ *
+ * All members must be created with [[im.tox.tox4j.core.options.ToxOptions.flatEvents]] enabled. Members are removed
+ * from the group when they are closed. Members that were killed without being closed, e.g. by their finaliser, are
+ * skipped, and the other members' events are still dispatched. Instances in a group should not be iterated
+ * individually at the same time.
+ *
+ * This class is not thread-safe.
+ */
+final class ToxCoreGroup[ToxCoreState] {
+
+  private val events = new FlatEventReader(FlatEventReader.DefaultCapacity)
+
+  private var members = Vector.empty[(ToxCoreImpl[ToxCoreState], Event.Id)] // scalastyle:ignore var.field
+  private var membersByInstance = Map.empty[Int, ToxCoreImpl[ToxCoreState]] // scalastyle:ignore var.field
+  private var instanceNumbers = Array.empty[Int] // scalastyle:ignore var.field
+
+  private var interval = 0 // scalastyle:ignore var.field
+
+  /**
+   * Add an instance to the group.
+   *
+   * @param tox An open instance using the flat event transport.
+   */
+  def add(tox: ToxCoreImpl[ToxCoreState]): Unit = {
+    require(tox.options.flatEvents, "Group members must use the flat event transport")
+    require(!membersByInstance.contains(tox.instanceNumber), "Instance is already in this group")
+    val onClose = tox.addOnCloseCallback(() => drop(tox))
+    members :+= ((tox, onClose))
+    updateIndex()
+  }
+
+  /**
+   * Remove an instance from the group. It can then be iterated on its own again.
+   */
+  def remove(tox: ToxCoreImpl[ToxCoreState]): Unit = {
+    members.find(_._1 eq tox) foreach {
+      case (_, onClose) =>
+        tox.removeOnCloseCallback(onClose)
+        drop(tox)
+    }
+  }
+
+  def size: Int = members.size
+
+  /**
+   * The minimum [[ToxCoreImpl.iterationInterval]] of all members, as of the last [[iterate]] call.
+   */
+  def iterationInterval: Int = interval
+
+  /**
+   * Iterate all members and dispatch their events.
+   *
+   * @param state The state passed through all members' event listeners.
+   * @return The state after the last event was dispatched.
+   */
+  def iterate(state: ToxCoreState): ToxCoreState = {
+    if (instanceNumbers.isEmpty) {
+      state
+    } else {
+      val result = ToxCoreJni.toxIterateMany(instanceNumbers, events.data)
+      val end = if (result < 0) ~result else result
+      interval = events.data.getInt(0)
+      val nextState = dispatchSections(ToxCoreGroup.BufferHeaderSize, end, state)
+      if (result < 0) {
+        // Some records did not fit. Native code keeps them for the next iteration, so we only need more space.
+        events.grow()
+      }
+      nextState
+    }
+  }
+
+  @tailrec
+  private def dispatchSections(offset: Int, end: Int, state: ToxCoreState): ToxCoreState = {
+    if (offset >= end) {
+      state
+    } else {
+      val instanceNumber = events.data.getInt(offset)
+      val start = offset + ToxCoreGroup.SectionHeaderSize
+      val sectionEnd = start + events.data.getInt(offset + ToxCoreGroup.SectionHeaderSize / 2)
+      events.window(start, sectionEnd)
+      val nextState = membersByInstance.get(instanceNumber) match {
+        case Some(tox) => tox.dispatchFlatRecords(events, state)
+        case None      => state
+      }
+      dispatchSections(sectionEnd, end, nextState)
+    }
+  }
+
+  private def drop(tox: ToxCoreImpl[ToxCoreState]): Unit = {
+    members = members.filterNot(_._1 eq tox)
+    updateIndex()
+  }
+
+  private def updateIndex(): Unit = {
+    membersByInstance = members.map { case (tox, _) => tox.instanceNumber -> tox }.toMap
+    instanceNumbers = members.map(_._1.instanceNumber).toArray
+  }
+
+}
@@ -1,5 +1,7 @@
 package im.tox.tox4j.impl.jni
 
+import java.nio.ByteBuffer
+
 import com.typesafe.scalalogging.Logger
 import im.tox.tox4j.OptimisedIdOps._
 import im.tox.tox4j.ToxImplBase.tryAndLog
@@ -8,18 +10,41 @@ import im.tox.tox4j.core.enums.{ToxConnection, ToxFileControl, ToxMessageType, T
 import im.tox.tox4j.core.exceptions._
 import im.tox.tox4j.core.options.ToxOptions
 import im.tox.tox4j.core.proto.Core._
-import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
-import im.tox.tox4j.impl.jni.ToxCoreImpl.{convert, logger}
-import im.tox.tox4j.impl.jni.internal.Event
+import im.tox.tox4j.core.{ToxBatchResult, ToxCore, ToxCoreConstants, ToxFriendSnapshot}
+import im.tox.tox4j.impl.jni.ToxCoreImpl.{FlatEventKind, convert, logger}
+import im.tox.tox4j.impl.jni.internal.{Event, FlatEventReader, FriendKeyIndex}
 import org.jetbrains.annotations.{NotNull, Nullable}
 import org.slf4j.LoggerFactory
 
+import scala.annotation.tailrec
+
 // scalastyle:off null
 @SuppressWarnings(Array("org.brianmckenna.wartremover.warts.Null"))
 private object ToxCoreImpl {
 
   private val logger = Logger(LoggerFactory.getLogger(getClass))
 
+  /**
+   * Event kinds in flat event records. These are the field numbers of the corresponding event lists in [[CoreEvents]].
+   */
+  private object FlatEventKind {
+    final val SelfConnectionStatus = 1
+    final val FriendName = 2
+    final val FriendStatusMessage = 3
+    final val FriendStatus = 4
+    final val FriendConnectionStatus = 5
+    final val FriendTyping = 6
+    final val FriendReadReceipt = 7
+    final val FriendRequest = 8
+    final val FriendMessage = 9
+    final val FileRecvControl = 10
+    final val FileChunkRequest = 11
+    final val FileRecv = 12
+    final val FileRecvChunk = 13
+    final val FriendLossyPacket = 14
+    final val FriendLosslessPacket = 15
+  }
+
   @throws[ToxBootstrapException]
   private def checkBootstrapArguments(port: Int, @Nullable publicKey: Array[Byte]): Unit = {
     if (port < 0) {
@@ -91,6 +116,39 @@ private object ToxCoreImpl {
     }
   }
 
+  /**
+   * Pass the bytes between a buffer's position and its limit to a send function. Direct buffers are passed to `direct`
+   * with the offset and length of those bytes, so the native code can read them in place. Other buffers are passed to
+   * `array` as a byte array, which is only copied if the buffer's backing array doesn't hold exactly those bytes.
+   *
+   * If the send function returns normally, the buffer's position is advanced to its limit. A null buffer is passed to
+   * `array` as null array, so that it results in the same exception as the byte array overload.
+   */
+  private def sendBuffer[R](@Nullable data: ByteBuffer)(direct: (ByteBuffer, Int, Int) => R)(array: Array[Byte] => R): R = {
+    if (data eq null) {
+      array(null)
+    } else {
+      val result =
+        if (data.isDirect) {
+          direct(data, data.position, data.remaining)
+        } else {
+          array(remainingBytes(data))
+        }
+      data.position(data.limit)
+      result
+    }
+  }
+
+  private def remainingBytes(data: ByteBuffer): Array[Byte] = {
+    if (data.hasArray && data.arrayOffset + data.position == 0 && data.remaining == data.array.length) {
+      data.array
+    } else {
+      val bytes = Array.ofDim[Byte](data.remaining)
+      data.duplicate.get(bytes)
+      bytes
+    }
+  }
+
 }
 
 /**
@@ -106,6 +164,11 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
 
   private var eventListener: ToxEventListener[ToxCoreState] = new ToxEventAdapter // scalastyle:ignore var.field
 
+  /**
+   * Set to the [[eventListener]] if it opted in to receiving file chunks as [[java.nio.ByteBuffer]].
+   */
+  private var chunkBufferListener: Option[FileRecvChunkBufferCallback[ToxCoreState]] = None // scalastyle:ignore var.field
+
   /**
    * This field has package visibility for [[ToxAvImpl]].
    */
@@ -123,6 +186,40 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
       options.saveData.data.toArray
     )
 
+  /**
+   * Receives the flat event records if [[ToxOptions.flatEvents]] is enabled. The buffer is allocated on first use.
+   */
+  private lazy val flatEvents = new FlatEventReader(FlatEventReader.DefaultCapacity)
+
+  if (options.flatEvents) {
+    ToxCoreJni.tox4jEnableFlat(instanceNumber)
+  }
+  if (options.coalesceWindow != 0) {
+    ToxCoreJni.tox4jSetCoalesceWindow(instanceNumber, options.coalesceWindow)
+  }
+
+  /**
+   * Maps Public Keys to friend numbers for [[friendByPublicKey]] if [[ToxOptions.friendKeyIndex]] is enabled. It is
+   * filled from the friend list here and kept up to date by the methods that add and delete friends.
+   */
+  private val friendKeyIndex =
+    if (options.friendKeyIndex) {
+      Some(makeFriendKeyIndex())
+    } else {
+      None
+    }
+
+  private def makeFriendKeyIndex(): FriendKeyIndex = {
+    val index = new FriendKeyIndex
+    val friendNumbers = ToxCoreJni.toxSelfGetFriendList(instanceNumber)
+    val errors = Array.ofDim[ToxFriendGetPublicKeyException.Code](friendNumbers.length)
+    val publicKeys = ToxCoreJni.toxFriendGetPublicKeys(instanceNumber, friendNumbers, errors)
+    friendNumbers.indices foreach { i =>
+      index.put(publicKeys, i * ToxCoreConstants.PublicKeySize, friendNumbers(i))
+    }
+    index
+  }
+
   /**
    * Add an onClose callback. This event is invoked just before the instance is closed.
    */
@@ -311,12 +408,22 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
   private def dispatchFileRecvChunk(fileRecvChunk: Seq[FileRecvChunk])(state: ToxCoreState): ToxCoreState = {
     fileRecvChunk.foldLeft(state) {
       case (state, FileRecvChunk(friendNumber, fileNumber, position, data)) =>
-        tryAndLog(options.fatalErrors, state, eventListener)(_.fileRecvChunk(
-          friendNumber,
-          fileNumber,
-          position,
-          data.toByteArray
-        ))
+        chunkBufferListener match {
+          case Some(listener) =>
+            tryAndLog(options.fatalErrors, state, listener)(_.fileRecvChunk(
+              friendNumber,
+              fileNumber,
+              position,
+              data.asReadOnlyByteBuffer
+            ))
+          case None =>
+            tryAndLog(options.fatalErrors, state, eventListener)(_.fileRecvChunk(
+              friendNumber,
+              fileNumber,
+              position,
+              data.toByteArray
+            ))
+        }
     }
   }
 
@@ -359,10 +466,97 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
       |> dispatchFriendLosslessPacket(events.friendLosslessPacket))
   }
 
+  private def dispatchFlatFileRecvChunk(event: FlatEventReader)(state: ToxCoreState): ToxCoreState = {
+    chunkBufferListener match {
+      case Some(listener) =>
+        tryAndLog(options.fatalErrors, state, listener)(_.fileRecvChunk(event.readInt(), event.readInt(), event.readLong(), event.readBuffer()))
+      case None =>
+        tryAndLog(options.fatalErrors, state, eventListener)(_.fileRecvChunk(event.readInt(), event.readInt(), event.readLong(), event.readBytes()))
+    }
+  }
+
+  // scalastyle:off line.size.limit
+  private def dispatchFlatEvent(kind: Int, event: FlatEventReader)(state: ToxCoreState): ToxCoreState = { // scalastyle:ignore cyclomatic.complexity
+    val handle = tryAndLog(options.fatalErrors, state, eventListener) _
+    kind match {
+      case FlatEventKind.SelfConnectionStatus =>
+        handle(_.selfConnectionStatus(convert(Connection.Type.fromValue(event.readInt()))))
+      case FlatEventKind.FriendName =>
+        handle(_.friendName(event.readInt(), event.readBytes()))
+      case FlatEventKind.FriendStatusMessage =>
+        handle(_.friendStatusMessage(event.readInt(), event.readBytes()))
+      case FlatEventKind.FriendStatus =>
+        handle(_.friendStatus(event.readInt(), convert(UserStatus.Type.fromValue(event.readInt()))))
+      case FlatEventKind.FriendConnectionStatus =>
+        handle(_.friendConnectionStatus(event.readInt(), convert(Connection.Type.fromValue(event.readInt()))))
+      case FlatEventKind.FriendTyping =>
+        handle(_.friendTyping(event.readInt(), event.readBoolean()))
+      case FlatEventKind.FriendReadReceipt =>
+        handle(_.friendReadReceipt(event.readInt(), event.readInt()))
+      case FlatEventKind.FriendRequest =>
+        handle(_.friendRequest(event.readBytes(), event.readInt(), event.readBytes()))
+      case FlatEventKind.FriendMessage =>
+        handle(_.friendMessage(event.readInt(), convert(MessageType.Type.fromValue(event.readInt())), event.readInt(), event.readBytes()))
+      case FlatEventKind.FileRecvControl =>
+        handle(_.fileRecvControl(event.readInt(), event.readInt(), convert(FileControl.Type.fromValue(event.readInt()))))
+      case FlatEventKind.FileChunkRequest =>
+        handle(_.fileChunkRequest(event.readInt(), event.readInt(), event.readLong(), event.readInt()))
+      case FlatEventKind.FileRecv =>
+        handle(_.fileRecv(event.readInt(), event.readInt(), event.readInt(), event.readLong(), event.readBytes()))
+      case FlatEventKind.FileRecvChunk =>
+        dispatchFlatFileRecvChunk(event)(state)
+      case FlatEventKind.FriendLossyPacket =>
+        handle(_.friendLossyPacket(event.readInt(), event.readBytes()))
+      case FlatEventKind.FriendLosslessPacket =>
+        handle(_.friendLosslessPacket(event.readInt(), event.readBytes()))
+      case _ =>
+        logger.warn(s"Unknown flat event kind $kind")
+        state
+    }
+  }
+  // scalastyle:on line.size.limit
+
+  /**
+   * Dispatch all records in the current window of the reader. This method has package visibility for
+   * [[ToxCoreGroup]], which reads the records of many instances from a shared buffer.
+   */
+  @tailrec
+  private[jni] def dispatchFlatRecords(events: FlatEventReader, state: ToxCoreState): ToxCoreState = {
+    val kind = events.next()
+    if (kind == FlatEventReader.End) {
+      state
+    } else {
+      dispatchFlatRecords(events, dispatchFlatEvent(kind, events)(state))
+    }
+  }
+
+  /**
+   * Dispatch the records written by [[ToxCoreJni.tox4jIterateFlat]] or [[ToxCoreJni.tox4jFlushFlat]].
+   *
+   * A negative result is the bitwise complement of the number of bytes written and means that more records were
+   * produced than fit into the buffer. The remaining records are kept in native code in order, so after dispatching
+   * the ones we have, the buffer grows and we fetch the rest.
+   */
+  @tailrec
+  private def dispatchFlatEvents(result: Int, state: ToxCoreState): ToxCoreState = {
+    flatEvents.reset(if (result < 0) ~result else result)
+    val nextState = dispatchFlatRecords(flatEvents, state)
+    if (result < 0) {
+      flatEvents.grow()
+      dispatchFlatEvents(ToxCoreJni.tox4jFlushFlat(instanceNumber, flatEvents.data), nextState)
+    } else {
+      nextState
+    }
+  }
+
   override def iterate(state: ToxCoreState): ToxCoreState = {
-    Option(ToxCoreJni.toxIterate(instanceNumber))
-      .map(CoreEvents.parseFrom)
-      .foldLeft(state)(dispatchEvents)
+    if (options.flatEvents) {
+      dispatchFlatEvents(ToxCoreJni.tox4jIterateFlat(instanceNumber, flatEvents.data), state)
+    } else {
+      Option(ToxCoreJni.toxIterate(instanceNumber))
+        .map(CoreEvents.parseFrom)
+        .foldLeft(state)(dispatchEvents)
+    }
   }
 
   override def getPublicKey: Array[Byte] =
@@ -406,33 +600,116 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
   @throws[ToxFriendAddException]
   override def addFriend(address: Array[Byte], message: Array[Byte]): Int = {
     ToxCoreImpl.checkLength("Friend Address", address, ToxCoreConstants.AddressSize)
-    ToxCoreJni.toxFriendAdd(instanceNumber, address, message)
+    val friendNumber = ToxCoreJni.toxFriendAdd(instanceNumber, address, message)
+    // The Address starts with the Public Key.
+    friendKeyIndex.foreach(_.put(address, 0, friendNumber))
+    friendNumber
   }
 
   @throws[ToxFriendAddException]
   override def addFriendNorequest(publicKey: Array[Byte]): Int = {
     ToxCoreImpl.checkLength("Public Key", publicKey, ToxCoreConstants.PublicKeySize)
-    ToxCoreJni.toxFriendAddNorequest(instanceNumber, publicKey)
+    val friendNumber = ToxCoreJni.toxFriendAddNorequest(instanceNumber, publicKey)
+    friendKeyIndex.foreach(_.put(publicKey, 0, friendNumber))
+    friendNumber
+  }
+
+  override def addFriendsNorequest(publicKeys: Array[Array[Byte]]): ToxBatchResult[Int, ToxFriendAddException.Code] = {
+    publicKeys.foreach(ToxCoreImpl.checkLength("Public Key", _, ToxCoreConstants.PublicKeySize))
+
+    // Null keys are not passed to the native code. They fail with the same code as in addFriendNorequest.
+    val present = publicKeys.indices.filter(index => Option(publicKeys(index)).isDefined)
+    val packed = Array.ofDim[Byte](present.length * ToxCoreConstants.PublicKeySize)
+    present.zipWithIndex foreach {
+      case (index, i) =>
+        System.arraycopy(publicKeys(index), 0, packed, i * ToxCoreConstants.PublicKeySize, ToxCoreConstants.PublicKeySize)
+    }
+
+    val errors = Array.ofDim[ToxFriendAddException.Code](present.length)
+    val friendNumbers = ToxCoreJni.toxFriendsAddNorequest(instanceNumber, packed, errors)
+
+    val allFriendNumbers = Array.fill(publicKeys.length)(-1)
+    val allErrors = Array.fill[Option[ToxFriendAddException.Code]](publicKeys.length)(Some(ToxFriendAddException.Code.NULL))
+    present.zipWithIndex foreach {
+      case (index, i) =>
+        allFriendNumbers(index) = friendNumbers(i)
+        allErrors(index) = Option(errors(i))
+    }
+
+    friendKeyIndex foreach { friendIndex =>
+      present.indices foreach { i =>
+        if (allErrors(present(i)).isEmpty) {
+          friendIndex.put(packed, i * ToxCoreConstants.PublicKeySize, friendNumbers(i))
+        }
+      }
+    }
+
+    ToxBatchResult[Int, ToxFriendAddException.Code](allFriendNumbers, allErrors)
   }
 
   @throws[ToxFriendDeleteException]
-  override def deleteFriend(friendNumber: Int): Unit =
+  override def deleteFriend(friendNumber: Int): Unit = {
     ToxCoreJni.toxFriendDelete(instanceNumber, friendNumber)
+    friendKeyIndex.foreach(_.remove(friendNumber))
+  }
+
+  override def deleteFriends(friendNumbers: Array[Int]): ToxBatchResult[Unit, ToxFriendDeleteException.Code] = {
+    val errors = Array.ofDim[ToxFriendDeleteException.Code](friendNumbers.length)
+    ToxCoreJni.toxFriendsDelete(instanceNumber, friendNumbers, errors)
+    val result = ToxBatchResult[Unit, ToxFriendDeleteException.Code](friendNumbers.map(_ => ()), errors.map(Option(_)))
+    friendKeyIndex foreach { index =>
+      friendNumbers.indices foreach { i =>
+        if (result.errors(i).isEmpty) {
+          index.remove(friendNumbers(i))
+        }
+      }
+    }
+    result
+  }
 
   @throws[ToxFriendByPublicKeyException]
-  override def friendByPublicKey(publicKey: Array[Byte]): Int =
-    ToxCoreJni.toxFriendByPublicKey(instanceNumber, publicKey)
+  override def friendByPublicKey(publicKey: Array[Byte]): Int = {
+    friendKeyIndex match {
+      case Some(index) =>
+        // Keys missing from the index, and invalid keys, go to the native code, which throws the right exception.
+        val friendNumber = index.get(publicKey)
+        if (friendNumber != FriendKeyIndex.NotFound) {
+          friendNumber
+        } else {
+          ToxCoreJni.toxFriendByPublicKey(instanceNumber, publicKey)
+        }
+      case None =>
+        ToxCoreJni.toxFriendByPublicKey(instanceNumber, publicKey)
+    }
+  }
 
   @throws[ToxFriendGetPublicKeyException]
   override def getFriendPublicKey(friendNumber: Int): Array[Byte] =
     ToxCoreJni.toxFriendGetPublicKey(instanceNumber, friendNumber)
 
+  override def getFriendPublicKeys(friendNumbers: Array[Int]): ToxBatchResult[Array[Byte], ToxFriendGetPublicKeyException.Code] = {
+    val errors = Array.ofDim[ToxFriendGetPublicKeyException.Code](friendNumbers.length)
+    val packed = ToxCoreJni.toxFriendGetPublicKeys(instanceNumber, friendNumbers, errors)
+    val publicKeys = friendNumbers.indices map { i =>
+      java.util.Arrays.copyOfRange(packed, i * ToxCoreConstants.PublicKeySize, (i + 1) * ToxCoreConstants.PublicKeySize)
+    }
+    ToxBatchResult[Array[Byte], ToxFriendGetPublicKeyException.Code](publicKeys, errors.map(Option(_)))
+  }
+
   override def friendExists(friendNumber: Int): Boolean =
     ToxCoreJni.toxFriendExists(instanceNumber, friendNumber)
 
   override def getFriendList: Array[Int] =
     ToxCoreJni.toxSelfGetFriendList(instanceNumber)
 
+  override def friendSnapshot: ToxFriendSnapshot = {
+    ToxCoreJni.toxFriendSnapshot(instanceNumber) match {
+      case Array(friendNumbers: Array[Int], publicKeys: Array[Byte], connectionStatuses: Array[Int], statuses: Array[Int],
+        lastOnline: Array[Long]) =>
+        new ToxFriendSnapshot(friendNumbers, publicKeys, connectionStatuses, statuses, lastOnline)
+    }
+  }
+
   @throws[ToxSetTypingException]
   override def setTyping(friendNumber: Int, typing: Boolean): Unit =
     ToxCoreJni.toxSelfSetTyping(instanceNumber, friendNumber, typing)
@@ -441,6 +718,28 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
   override def friendSendMessage(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: Array[Byte]): Int =
     ToxCoreJni.toxFriendSendMessage(instanceNumber, friendNumber, messageType.ordinal, timeDelta, message)
 
+  @throws[ToxFriendSendMessageException]
+  override def friendSendMessage(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: ByteBuffer): Int = {
+    ToxCoreImpl.sendBuffer(message) {
+      ToxCoreJni.tox4jFriendSendMessageDirect(instanceNumber, friendNumber, messageType.ordinal, timeDelta, _, _, _)
+    } {
+      ToxCoreJni.toxFriendSendMessage(instanceNumber, friendNumber, messageType.ordinal, timeDelta, _)
+    }
+  }
+
+  override def friendSendMessageBroadcast(
+      friendNumbers: Array[Int],
+      messageType: ToxMessageType,
+      timeDelta: Int,
+      message: Array[Byte]
+  ): ToxBatchResult[Int, ToxFriendSendMessageException.Code] = {
+    val errors = Array.ofDim[ToxFriendSendMessageException.Code](friendNumbers.length)
+    val messageIds = ToxCoreJni.toxFriendSendMessageBroadcast(
+      instanceNumber, friendNumbers, messageType.ordinal, timeDelta, message, errors
+    )
+    ToxBatchResult[Int, ToxFriendSendMessageException.Code](messageIds, errors.map(Option(_)))
+  }
+
   @throws[ToxFileControlException]
   override def fileControl(friendNumber: Int, fileNumber: Int, control: ToxFileControl): Unit =
     ToxCoreJni.toxFileControl(instanceNumber, friendNumber, fileNumber, control.ordinal)
@@ -457,6 +756,15 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
   override def fileSendChunk(friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte]): Unit =
     ToxCoreJni.toxFileSendChunk(instanceNumber, friendNumber, fileNumber, position, data)
 
+  @throws[ToxFileSendChunkException]
+  override def fileSendChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer): Unit = {
+    ToxCoreImpl.sendBuffer(data) {
+      ToxCoreJni.tox4jFileSendChunkDirect(instanceNumber, friendNumber, fileNumber, position, _, _, _)
+    } {
+      ToxCoreJni.toxFileSendChunk(instanceNumber, friendNumber, fileNumber, position, _)
+    }
+  }
+
   @throws[ToxFileGetException]
   override def getFileFileId(friendNumber: Int, fileNumber: Int): Array[Byte] =
     ToxCoreJni.toxFileGetFileId(instanceNumber, friendNumber, fileNumber)
@@ -465,14 +773,40 @@ final class ToxCoreImpl[ToxCoreState](@NotNull val options: ToxOptions) extends
   override def friendSendLossyPacket(friendNumber: Int, data: Array[Byte]): Unit =
     ToxCoreJni.toxFriendSendLossyPacket(instanceNumber, friendNumber, data)
 
+  @throws[ToxFriendCustomPacketException]
+  override def friendSendLossyPacket(friendNumber: Int, data: ByteBuffer): Unit = {
+    ToxCoreImpl.sendBuffer(data) {
+      ToxCoreJni.tox4jFriendSendLossyPacketDirect(instanceNumber, friendNumber, _, _, _)
+    } {
+      ToxCoreJni.toxFriendSendLossyPacket(instanceNumber, friendNumber, _)
+    }
+  }
+
   @throws[ToxFriendCustomPacketException]
   override def friendSendLosslessPacket(friendNumber: Int, data: Array[Byte]): Unit =
     ToxCoreJni.toxFriendSendLosslessPacket(instanceNumber, friendNumber, data)
 
+  @throws[ToxFriendCustomPacketException]
+  override def friendSendLosslessPacket(friendNumber: Int, data: ByteBuffer): Unit = {
+    ToxCoreImpl.sendBuffer(data) {
+      ToxCoreJni.tox4jFriendSendLosslessPacketDirect(instanceNumber, friendNumber, _, _, _)
+    } {
+      ToxCoreJni.toxFriendSendLosslessPacket(instanceNumber, friendNumber, _)
+    }
+  }
+
   override def callback(handler: ToxEventListener[ToxCoreState]): Unit = {
     this.eventListener = handler
+    this.chunkBufferListener = handler match {
+      case listener: FileRecvChunkBufferCallback[ToxCoreState @unchecked] => Some(listener)
+      case _ => None
+    }
+    setEventMask(ToxEventMask.of(handler))
   }
 
+  override def setEventMask(mask: Int): Unit =
+    ToxCoreJni.tox4jSetEventMask(instanceNumber, mask)
+
   def invokeFriendName(friendNumber: Int, @NotNull name: Array[Byte]): Unit =
     ToxCoreJni.invokeFriendName(instanceNumber, friendNumber, name)
   def invokeFriendStatusMessage(friendNumber: Int, @NotNull message: Array[Byte]): Unit =
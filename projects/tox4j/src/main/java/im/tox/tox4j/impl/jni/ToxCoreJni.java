@@ -4,6 +4,8 @@ import im.tox.tox4j.core.exceptions.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+
 @SuppressWarnings({"checkstyle:emptylineseparator", "checkstyle:linelength"})
 public final class ToxCoreJni {
 
@@ -38,6 +40,7 @@ public final class ToxCoreJni {
   static native int toxIterationInterval(int instanceNumber);
   @Nullable
   static native byte[] toxIterate(int instanceNumber);
+  static native int toxIterateMany(@NotNull int[] instanceNumbers, @NotNull ByteBuffer buffer);
   @NotNull
   static native byte[] toxSelfGetPublicKey(int instanceNumber);
   @NotNull
@@ -63,12 +66,21 @@ public final class ToxCoreJni {
   static native int toxFriendByPublicKey(int instanceNumber, @NotNull byte[] publicKey) throws ToxFriendByPublicKeyException;
   @NotNull
   static native byte[] toxFriendGetPublicKey(int instanceNumber, int friendNumber) throws ToxFriendGetPublicKeyException;
+  @NotNull
+  static native int[] toxFriendsAddNorequest(int instanceNumber, @NotNull byte[] publicKeys, @NotNull ToxFriendAddException.Code[] errors);
+  static native void toxFriendsDelete(int instanceNumber, @NotNull int[] friendNumbers, @NotNull ToxFriendDeleteException.Code[] errors);
+  @NotNull
+  static native byte[] toxFriendGetPublicKeys(int instanceNumber, @NotNull int[] friendNumbers, @NotNull ToxFriendGetPublicKeyException.Code[] errors);
   @AutoGenerated
   static native boolean toxFriendExists(int instanceNumber, int friendNumber);
   @NotNull
   static native int[] toxSelfGetFriendList(int instanceNumber);
+  @NotNull
+  static native Object[] toxFriendSnapshot(int instanceNumber);
   static native void toxSelfSetTyping(int instanceNumber, int friendNumber, boolean typing) throws ToxSetTypingException;
   static native int toxFriendSendMessage(int instanceNumber, int friendNumber, int type, int timeDelta, @NotNull byte[] message) throws ToxFriendSendMessageException;
+  @NotNull
+  static native int[] toxFriendSendMessageBroadcast(int instanceNumber, @NotNull int[] friendNumbers, int type, int timeDelta, byte[] message, @NotNull ToxFriendSendMessageException.Code[] errors);
   static native void toxFileControl(int instanceNumber, int friendNumber, int fileNumber, int control) throws ToxFileControlException;
   static native void toxFileSeek(int instanceNumber, int friendNumber, int fileNumber, long position) throws ToxFileSeekException;
   static native int toxFileSend(int instanceNumber, int friendNumber, int kind, long fileSize, @NotNull byte[] fileId, @NotNull byte[] filename) throws ToxFileSendException;
@@ -99,4 +111,15 @@ public final class ToxCoreJni {
   static native void tox4jSetMaxLogSize(int maxSize);
   static native int tox4jGetMaxLogSize();
 
+  static native void tox4jSetEventMask(int instanceNumber, int mask);
+  static native void tox4jSetCoalesceWindow(int instanceNumber, int iterations);
+  static native void tox4jEnableFlat(int instanceNumber);
+  static native int tox4jIterateFlat(int instanceNumber, @NotNull ByteBuffer buffer);
+  static native int tox4jFlushFlat(int instanceNumber, @NotNull ByteBuffer buffer);
+
+  static native int tox4jFriendSendMessageDirect(int instanceNumber, int friendNumber, int type, int timeDelta, @NotNull ByteBuffer message, int offset, int length) throws ToxFriendSendMessageException;
+  static native void tox4jFileSendChunkDirect(int instanceNumber, int friendNumber, int fileNumber, long position, @NotNull ByteBuffer data, int offset, int length) throws ToxFileSendChunkException;
+  static native void tox4jFriendSendLossyPacketDirect(int instanceNumber, int friendNumber, @NotNull ByteBuffer data, int offset, int length) throws ToxFriendCustomPacketException;
+  static native void tox4jFriendSendLosslessPacketDirect(int instanceNumber, int friendNumber, @NotNull ByteBuffer data, int offset, int length) throws ToxFriendCustomPacketException;
+
 }
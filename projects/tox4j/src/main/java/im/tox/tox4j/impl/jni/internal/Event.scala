@@ -31,6 +31,10 @@ private[jni] object Event {
  * This is a collection of nullary functions returning `Unit` (`() => Unit)`) and is itself also a nullary function
  * returning unit. It can be used to implement events where one can register multiple handlers and selectively
  * unregister them.
+ *
+ * Registering and unregistering are synchronised, so handlers can be removed from other threads, e.g. by an event loop
+ * that ends while the instance is being closed. [[apply]] calls the handlers registered when it starts, so handlers may
+ * unregister themselves or others while it runs.
  */
 private[jni] final class Event extends (() => Unit) {
   private val callbacks = new ArrayBuffer[() => Unit]
@@ -44,7 +48,7 @@ private[jni] final class Event extends (() => Unit) {
    * @param callback A [[Runnable]] instance to be called.
    * @return An [[Event.Id]] that can be used to [[apply]] the callback again.
    */
-  def +=(callback: () => Unit): Event.Id = {
+  def +=(callback: () => Unit): Event.Id = synchronized {
     callbacks += callback
     new Event.IdImpl(callbacks.size - 1)
   }
@@ -58,7 +62,7 @@ private[jni] final class Event extends (() => Unit) {
    *
    * @param id The callback id object.
    */
-  def -=(id: Event.Id): Unit = {
+  def -=(id: Event.Id): Unit = synchronized {
     val index = id.value
     if (index != Event.InvalidIndex) {
       id.reset()
@@ -78,5 +82,5 @@ private[jni] final class Event extends (() => Unit) {
   /**
    * Invoke all callbacks.
    */
-  override def apply(): Unit = callbacks.foreach(_())
+  override def apply(): Unit = synchronized(callbacks.toList).foreach(_())
 }
@@ -0,0 +1,114 @@
+package im.tox.tox4j.impl.jni.internal
+
+import java.nio.{ByteBuffer, ByteOrder}
+
+private[jni] object FlatEventReader {
+  /**
+   * Returned by [[FlatEventReader.next]] when all records have been read. Event kinds are protobuf field numbers, so
+   * they are never 0.
+   */
+  val End = 0
+
+  /**
+   * Initial buffer size. This is enough for a few dozen full-size file chunks or messages per iteration.
+   */
+  val DefaultCapacity = 64 * 1024
+
+  private def allocate(capacity: Int): ByteBuffer = {
+    ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder)
+  }
+}
+
+/**
+ * Flyweight reader for the flat event records written by the native event_buffer.
+ *
+ * The reader owns a direct [[ByteBuffer]] that native code writes into during an iteration. After the native call
+ * returns, [[reset]] or [[window]] selects the written records, and [[next]] moves from one record to the next. The field
+ * accessors read the payload of the current record and must be called in the order the native code wrote the fields.
+ *
+ * A record is a 32 bit event kind, a 32 bit payload size and the payload. Integers are in native byte order, booleans
+ * are a single byte, and byte arrays are a 32 bit length followed by the bytes.
+ *
+ * @param initialCapacity The initial size of the direct buffer in bytes.
+ */
+private[jni] final class FlatEventReader(initialCapacity: Int) {
+
+  private var buffer = FlatEventReader.allocate(initialCapacity) // scalastyle:ignore var.field
+  private var view = buffer.asReadOnlyBuffer() // scalastyle:ignore var.field
+  private var recordEnd = 0 // scalastyle:ignore var.field
+  private var end = 0 // scalastyle:ignore var.field
+
+  /**
+   * The direct buffer native code should write the records into.
+   */
+  def data: ByteBuffer = buffer
+
+  /**
+   * Make the first `size` bytes of the buffer readable, starting at the first record.
+   */
+  def reset(size: Int): Unit = {
+    window(0, size)
+  }
+
+  /**
+   * Restrict reading to the records between the byte offsets `start` and `end`. This is used to read the records of one
+   * instance from a buffer shared by several instances.
+   */
+  def window(start: Int, end: Int): Unit = {
+    this.recordEnd = start
+    this.end = end
+  }
+
+  /**
+   * Replace the buffer with one twice as large. The contents of the old buffer are discarded.
+   */
+  def grow(): Unit = {
+    buffer = FlatEventReader.allocate(buffer.capacity * 2)
+    view = buffer.asReadOnlyBuffer()
+    window(0, 0)
+  }
+
+  /**
+   * Move to the next record, skipping any unread fields of the current one.
+   *
+   * @return The event kind of the next record or [[FlatEventReader.End]] if there are no more records.
+   */
+  def next(): Int = {
+    if (recordEnd < end) {
+      buffer.position(recordEnd)
+      val kind = buffer.getInt
+      val size = buffer.getInt
+      recordEnd = buffer.position + size
+      kind
+    } else {
+      FlatEventReader.End
+    }
+  }
+
+  def readInt(): Int = buffer.getInt
+  def readLong(): Long = buffer.getLong
+  def readBoolean(): Boolean = buffer.get != 0
+
+  def readBytes(): Array[Byte] = {
+    val bytes = Array.ofDim[Byte](buffer.getInt)
+    buffer.get(bytes)
+    bytes
+  }
+
+  /**
+   * Read a byte array field without copying it.
+   *
+   * @return A read-only view of the underlying buffer whose position and limit delimit the byte array. The same view
+   *         object is returned on every call, so it is only valid until the next call to this method.
+   */
+  def readBuffer(): ByteBuffer = {
+    val length = buffer.getInt
+    val start = buffer.position
+    buffer.position(start + length)
+    view.clear()
+    view.position(start)
+    view.limit(start + length)
+    view
+  }
+
+}
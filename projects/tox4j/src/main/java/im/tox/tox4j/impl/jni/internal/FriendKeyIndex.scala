@@ -0,0 +1,175 @@
+package im.tox.tox4j.impl.jni.internal
+
+import im.tox.tox4j.core.ToxCoreConstants
+
+import scala.annotation.tailrec
+
+private[jni] object FriendKeyIndex {
+  /**
+   * Returned by [[FriendKeyIndex.get]] for keys that are not in the index. Also marks empty slots. Friend numbers are
+   * never negative.
+   */
+  val NotFound = -1
+
+  private val KeySize = ToxCoreConstants.PublicKeySize
+
+  private val InitialCapacity = 16
+
+  private def emptySlots(capacity: Int): Array[Int] = Array.fill(capacity)(NotFound)
+}
+
+/**
+ * Maps Public Keys to friend numbers, for looking up friends without a native call.
+ *
+ * This is an open addressing hash table with linear probing. The keys are stored inline in a single byte array and the
+ * friend numbers in an int array, so neither lookups nor insertions box values or create objects per entry, and keys
+ * are compared by content. Public Keys are uniformly distributed, so their first bytes serve as hash code. Entries are
+ * removed by friend number, with backward shift deletion, so the table never fills up with deleted markers.
+ *
+ * The index is only as correct as the calls that maintain it: every friend added to or deleted from the Tox instance
+ * must be passed to [[put]] or [[remove]]. All methods are synchronised, so the index can be used from any thread.
+ */
+private[jni] final class FriendKeyIndex {
+
+  import FriendKeyIndex._
+
+  private var keys = Array.ofDim[Byte](InitialCapacity * KeySize) // scalastyle:ignore var.field
+  private var values = emptySlots(InitialCapacity) // scalastyle:ignore var.field
+  private var count = 0 // scalastyle:ignore var.field
+
+  /**
+   * The slot of each friend number, so that [[remove]] does not need the key.
+   */
+  private var slots = emptySlots(InitialCapacity) // scalastyle:ignore var.field
+
+  private def mask: Int = values.length - 1
+
+  private def hash(key: Array[Byte], offset: Int): Int = {
+    val h = (key(offset) & 0xff) | (key(offset + 1) & 0xff) << 8 | (key(offset + 2) & 0xff) << 16 | key(offset + 3) << 24
+    h ^ (h >>> 16)
+  }
+
+  @tailrec
+  private def keyEquals(slot: Int, key: Array[Byte], offset: Int, i: Int = 0): Boolean = {
+    i == KeySize || keys(slot * KeySize + i) == key(offset + i) && keyEquals(slot, key, offset, i + 1)
+  }
+
+  /**
+   * The slot holding the key, or the empty slot it would be inserted into.
+   */
+  @tailrec
+  private def find(key: Array[Byte], offset: Int, slot: Int): Int = {
+    if (values(slot) == NotFound || keyEquals(slot, key, offset)) {
+      slot
+    } else {
+      find(key, offset, (slot + 1) & mask)
+    }
+  }
+
+  private def setSlot(friendNumber: Int, slot: Int): Unit = {
+    if (friendNumber >= slots.length) {
+      val grown = emptySlots(Math.max(friendNumber + 1, slots.length * 2))
+      System.arraycopy(slots, 0, grown, 0, slots.length)
+      slots = grown
+    }
+    slots(friendNumber) = slot
+  }
+
+  private def move(from: Int, to: Int): Unit = {
+    System.arraycopy(keys, from * KeySize, keys, to * KeySize, KeySize)
+    values(to) = values(from)
+    values(from) = NotFound
+    slots(values(to)) = to
+  }
+
+  /**
+   * After the slot `hole` was emptied, move the following entries of its probe run back into the hole, if it lies on
+   * their probe path, so that lookups for them still succeed.
+   */
+  @tailrec
+  private def shiftBack(hole: Int, slot: Int): Unit = {
+    if (values(slot) != NotFound) {
+      val ideal = hash(keys, slot * KeySize) & mask
+      if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+        move(slot, hole)
+        shiftBack(slot, (slot + 1) & mask)
+      } else {
+        shiftBack(hole, (slot + 1) & mask)
+      }
+    }
+  }
+
+  private def insert(key: Array[Byte], offset: Int, friendNumber: Int): Unit = {
+    val slot = find(key, offset, hash(key, offset) & mask)
+    if (values(slot) == NotFound) {
+      System.arraycopy(key, offset, keys, slot * KeySize, KeySize)
+      count += 1
+    } else {
+      slots(values(slot)) = NotFound
+    }
+    values(slot) = friendNumber
+    setSlot(friendNumber, slot)
+  }
+
+  private def resize(capacity: Int): Unit = {
+    val oldKeys = keys
+    val oldValues = values
+    keys = Array.ofDim[Byte](capacity * KeySize)
+    values = emptySlots(capacity)
+    java.util.Arrays.fill(slots, NotFound)
+    count = 0
+    oldValues.indices foreach { slot =>
+      if (oldValues(slot) != NotFound) {
+        insert(oldKeys, slot * KeySize, oldValues(slot))
+      }
+    }
+  }
+
+  /**
+   * The number of friends in the index.
+   */
+  def size: Int = synchronized(count)
+
+  /**
+   * Look up the friend number of a Public Key.
+   *
+   * @return the friend number, or [[FriendKeyIndex.NotFound]] if the key is not in the index or is not a valid key.
+   */
+  @SuppressWarnings(Array("org.brianmckenna.wartremover.warts.Null"))
+  def get(publicKey: Array[Byte]): Int = synchronized {
+    if (publicKey == null || publicKey.length != KeySize) { // scalastyle:ignore null
+      NotFound
+    } else {
+      values(find(publicKey, 0, hash(publicKey, 0) & mask))
+    }
+  }
+
+  /**
+   * Add a friend, or change the friend number of a key that is already in the index.
+   *
+   * @param publicKey An array containing the Public Key.
+   * @param offset The position of the key in the array.
+   * @param friendNumber The friend number of the key.
+   */
+  def put(publicKey: Array[Byte], offset: Int, friendNumber: Int): Unit = synchronized {
+    require(friendNumber >= 0, s"Friend number ($friendNumber) should not be negative")
+    insert(publicKey, offset, friendNumber)
+    if (count * 2 > values.length) {
+      resize(values.length * 2)
+    }
+  }
+
+  /**
+   * Remove a friend. Friend numbers that are not in the index are ignored.
+   */
+  def remove(friendNumber: Int): Unit = synchronized {
+    if (friendNumber >= 0 && friendNumber < slots.length && slots(friendNumber) != NotFound) {
+      val slot = slots(friendNumber)
+      slots(friendNumber) = NotFound
+      values(slot) = NotFound
+      count -= 1
+      shiftBack(slot, (slot + 1) & mask)
+    }
+  }
+
+}
@@ -0,0 +1,248 @@
+package im.tox.tox4j.messaging
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.enums.{ToxConnection, ToxMessageType}
+import im.tox.tox4j.core.exceptions.ToxFriendSendMessageException
+import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+
+object OutboundMessageQueue {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  private final class Piece(val messageType: ToxMessageType, val timeDelta: Int, val data: Array[Byte])
+
+  /**
+   * The key of a sent message in the map of pending read receipts. Message IDs are only unique per friend.
+   */
+  private def receiptKey(friendNumber: Int, messageId: Int): Long = {
+    (friendNumber.toLong << 32) | (messageId & 0xffffffffL)
+  }
+
+  /**
+   * Split a message into pieces of at most `maxLength` bytes.
+   *
+   * Pieces are cut before the start of a UTF-8 sequence, so that each piece is valid UTF-8 if the message is. Only if
+   * no such position exists in a piece, it is cut at `maxLength` bytes.
+   */
+  def split(message: Array[Byte], maxLength: Int = ToxCoreConstants.MaxMessageLength): Seq[Array[Byte]] = {
+    require(maxLength > 0, s"Maximum piece length ($maxLength) should be positive")
+    split(message, maxLength, 0, Vector.empty)
+  }
+
+  @tailrec
+  private def split(message: Array[Byte], maxLength: Int, start: Int, pieces: Vector[Array[Byte]]): Vector[Array[Byte]] = {
+    if (message.length - start <= maxLength) {
+      pieces :+ java.util.Arrays.copyOfRange(message, start, message.length)
+    } else {
+      val end = pieceEnd(message, start, start + maxLength, start + maxLength)
+      split(message, maxLength, end, pieces :+ java.util.Arrays.copyOfRange(message, start, end))
+    }
+  }
+
+  /**
+   * Move the end of a piece back until it is not followed by a UTF-8 continuation byte, or use `maxEnd` if the whole
+   * piece consists of continuation bytes.
+   */
+  @tailrec
+  private def pieceEnd(message: Array[Byte], start: Int, end: Int, maxEnd: Int): Int = {
+    if (end == start) {
+      maxEnd
+    } else if ((message(end) & 0xc0) == 0x80) {
+      pieceEnd(message, start, end - 1, maxEnd)
+    } else {
+      end
+    }
+  }
+
+}
+
+/**
+ * Queues outgoing messages, so that sending does not fail when toxcore's send queue is full or the friend is offline.
+ *
+ * Messages longer than [[ToxCoreConstants.MaxMessageLength]] are split into several pieces, see
+ * [[OutboundMessageQueue.split]]. Each friend's pieces are sent in order. A piece that fails with
+ * [[ToxFriendSendMessageException.Code.SENDQ]] stays at the head of its friend's queue and is tried again on the next
+ * [[flush]]. Each flush tries each friend at most once after such a failure, so a full send queue does not make the
+ * flush spin. A piece that fails with [[ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED]] also stays queued,
+ * but the friend's queue is parked: flushes skip it until the friend's connection status changes. Pieces failing with
+ * any other error are dropped and counted in [[OutboundMessageQueueMetrics.failedMessages]].
+ *
+ * Sent pieces are remembered by friend number and message ID until their read receipt arrives, in a map keyed by
+ * primitive longs. The time between sending and receiving the receipt is recorded in the metrics.
+ *
+ * The queue needs to be driven by its owner:
+ *  - call [[flush]] after each [[ToxCore.iterate]], or use [[iterate]] instead;
+ *  - forward [[im.tox.tox4j.core.callbacks.FriendReadReceiptCallback.friendReadReceipt]] events to [[friendReadReceipt]];
+ *  - forward [[im.tox.tox4j.core.callbacks.FriendConnectionStatusCallback.friendConnectionStatus]] events to
+ *    [[friendConnectionStatus]], which resumes parked queues and gives up on the receipts of messages that were lost
+ *    with the connection. Without it, the pieces of a friend that was offline stay queued.
+ *
+ * All methods are synchronised, so messages can be queued from any thread.
+ *
+ * @param tox The instance to send the messages with.
+ * @param nanoTime The clock for measuring the time until a read receipt arrives.
+ */
+final class OutboundMessageQueue[ToxCoreState](tox: ToxCore[ToxCoreState], nanoTime: () => Long = () => System.nanoTime) {
+
+  import OutboundMessageQueue._
+
+  /**
+   * The queued pieces of each friend with at least one queued piece, in the order the friends were first queued for.
+   */
+  private val queues = new mutable.LinkedHashMap[Int, mutable.Queue[Piece]]
+
+  /**
+   * Friends whose queue is not flushed, because they were offline when it was last tried.
+   */
+  private val parked = new mutable.HashSet[Int]
+
+  /**
+   * The send time of each piece awaiting its read receipt, keyed by [[OutboundMessageQueue.receiptKey]].
+   */
+  private val awaitingReceipt = new mutable.LongMap[Long]
+
+  private var queuedMessages = 0 // scalastyle:ignore var.field
+  private var sentMessages = 0L // scalastyle:ignore var.field
+  private var retries = 0L // scalastyle:ignore var.field
+  private var offlineSends = 0L // scalastyle:ignore var.field
+  private var failedMessages = 0L // scalastyle:ignore var.field
+  private var lostReceipts = 0L // scalastyle:ignore var.field
+  private var receipts = 0L // scalastyle:ignore var.field
+  private var totalReceiptNanos = 0L // scalastyle:ignore var.field
+  private var maxReceiptNanos = 0L // scalastyle:ignore var.field
+
+  /**
+   * Queue a message for a friend. It is sent on the next [[flush]].
+   *
+   * @param friendNumber The friend number of the friend to send the message to.
+   * @param messageType Message type (normal, action, ...).
+   * @param timeDelta The time between composition (user created the message) and calling this function.
+   * @param message The message text. Must not be empty.
+   */
+  def send(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: Array[Byte]): Unit = synchronized {
+    require(message.nonEmpty, "Messages may not be empty")
+    val queue = queues.getOrElseUpdate(friendNumber, new mutable.Queue[Piece])
+    split(message) foreach { data =>
+      queue += new Piece(messageType, timeDelta, data)
+      queuedMessages += 1
+    }
+  }
+
+  /**
+   * Send as many queued pieces as toxcore accepts.
+   */
+  def flush(): Unit = synchronized {
+    queues.keys.filterNot(parked).toList foreach flushFriend
+  }
+
+  @tailrec
+  private def flushFriend(friendNumber: Int): Unit = {
+    queues.get(friendNumber) match {
+      case Some(queue) if queue.isEmpty =>
+        queues.remove(friendNumber)
+        parked.remove(friendNumber)
+      case Some(queue) =>
+        if (trySend(friendNumber, queue.head)) {
+          queue.dequeue()
+          queuedMessages -= 1
+          flushFriend(friendNumber)
+        }
+      case None =>
+    }
+  }
+
+  /**
+   * Send a piece.
+   *
+   * @return true if the piece is done with, because it was sent or dropped, false if it should be tried again later.
+   */
+  private def trySend(friendNumber: Int, piece: Piece): Boolean = {
+    try {
+      val messageId = tox.friendSendMessage(friendNumber, piece.messageType, piece.timeDelta, piece.data)
+      awaitingReceipt.update(receiptKey(friendNumber, messageId), nanoTime())
+      sentMessages += 1
+      true
+    } catch {
+      case e: ToxFriendSendMessageException if e.code == ToxFriendSendMessageException.Code.SENDQ =>
+        retries += 1
+        false
+      case e: ToxFriendSendMessageException if e.code == ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED =>
+        offlineSends += 1
+        parked += friendNumber
+        false
+      case e: ToxFriendSendMessageException =>
+        logger.warn(s"Dropping message piece for friend $friendNumber: ${e.getMessage}")
+        failedMessages += 1
+        true
+    }
+  }
+
+  /**
+   * Iterate the instance and send queued pieces afterwards.
+   */
+  def iterate(state: ToxCoreState): ToxCoreState = {
+    val nextState = tox.iterate(state)
+    flush()
+    nextState
+  }
+
+  /**
+   * Record the read receipt of a sent piece.
+   *
+   * @return true if the receipt belongs to a piece sent by this queue.
+   */
+  def friendReadReceipt(friendNumber: Int, messageId: Int): Boolean = synchronized {
+    awaitingReceipt.remove(receiptKey(friendNumber, messageId)) match {
+      case Some(sentNanos) =>
+        val elapsed = nanoTime() - sentNanos
+        receipts += 1
+        totalReceiptNanos += elapsed
+        maxReceiptNanos = Math.max(maxReceiptNanos, elapsed)
+        true
+      case None =>
+        false
+    }
+  }
+
+  /**
+   * Resume sending to a friend whose queue was parked. If the friend went offline, stop waiting for the read receipts
+   * of the pieces sent to it, because they were lost with the connection. Queued pieces that were not sent, yet, stay
+   * queued and are tried again on the next [[flush]].
+   */
+  def friendConnectionStatus(friendNumber: Int, connectionStatus: ToxConnection): Unit = synchronized {
+    parked.remove(friendNumber)
+    if (connectionStatus == ToxConnection.NONE) {
+      friendDisconnected(friendNumber)
+    }
+  }
+
+  private def friendDisconnected(friendNumber: Int): Unit = {
+    val lost = awaitingReceipt.keys.filter(key => (key >>> 32).toInt == friendNumber).toList
+    lost foreach awaitingReceipt.remove
+    lostReceipts += lost.length
+  }
+
+  /**
+   * The current queue depth and counters.
+   */
+  def metrics: OutboundMessageQueueMetrics = synchronized {
+    OutboundMessageQueueMetrics(
+      queuedMessages,
+      awaitingReceipt.size,
+      sentMessages,
+      retries,
+      offlineSends,
+      parked.size,
+      failedMessages,
+      lostReceipts,
+      receipts,
+      totalReceiptNanos,
+      maxReceiptNanos
+    )
+  }
+
+}
@@ -0,0 +1,32 @@
+package im.tox.tox4j.messaging
+
+/**
+ * Snapshot of the state and history of an [[OutboundMessageQueue]].
+ *
+ * @param queuedMessages The number of message pieces waiting to be sent.
+ * @param awaitingReceipt The number of sent message pieces whose read receipt has not arrived, yet.
+ * @param sentMessages The number of message pieces passed to toxcore.
+ * @param retries The number of sends that failed because toxcore's send queue was full, and will be tried again.
+ * @param offlineSends The number of sends that failed because the friend was offline. Each of them parked a queue.
+ * @param parkedFriends The number of friends whose queue waits for a connection status change.
+ * @param failedMessages The number of message pieces dropped because of a permanent error.
+ * @param lostReceipts The number of read receipts given up on because the friend went offline.
+ * @param receipts The number of read receipts received for sent message pieces.
+ * @param totalReceiptNanos Sum of the time between sending and receiving the read receipt over all receipts.
+ * @param maxReceiptNanos The longest time between sending and receiving the read receipt.
+ */
+final case class OutboundMessageQueueMetrics(
+    queuedMessages: Int,
+    awaitingReceipt: Int,
+    sentMessages: Long,
+    retries: Long,
+    offlineSends: Long,
+    parkedFriends: Int,
+    failedMessages: Long,
+    lostReceipts: Long,
+    receipts: Long,
+    totalReceiptNanos: Long,
+    maxReceiptNanos: Long
+) {
+  def meanReceiptNanos: Long = if (receipts == 0) 0 else totalReceiptNanos / receipts
+}
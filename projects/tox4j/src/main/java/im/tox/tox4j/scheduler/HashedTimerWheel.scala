@@ -0,0 +1,76 @@
+package im.tox.tox4j.scheduler
+
+import scala.annotation.tailrec
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Hashed timer wheel with a fixed tick duration.
+ *
+ * Time is divided into ticks of `tickNanos` nanoseconds, counted from `startNanos`. A timeout is stored in the slot its
+ * deadline tick hashes to, so adding a timeout is O(1). Timeouts further away than one revolution of the wheel share a
+ * slot with closer ones and are skipped until their tick comes up.
+ *
+ * This class is not thread-safe. It is owned by the timer thread of a [[ToxScheduler]].
+ *
+ * @param tickNanos Duration of one tick in nanoseconds.
+ * @param wheelSize Number of slots. Must be a power of two.
+ * @param startNanos The [[System.nanoTime]] value of tick 0.
+ */
+private[scheduler] final class HashedTimerWheel[A](tickNanos: Long, wheelSize: Int, startNanos: Long) {
+  require(tickNanos > 0, "Tick duration must be positive")
+  require(wheelSize > 0 && (wheelSize & (wheelSize - 1)) == 0, "Wheel size must be a power of two")
+
+  private final case class Timeout(tick: Long, value: A)
+
+  private val mask = wheelSize - 1
+  private val slots = Array.fill(wheelSize)(new ArrayBuffer[Timeout])
+
+  private var currentTick = 0L // scalastyle:ignore var.field
+  private var count = 0 // scalastyle:ignore var.field
+
+  /**
+   * The number of timeouts that have not expired, yet.
+   */
+  def size: Int = count
+
+  /**
+   * Add a timeout. Deadlines are rounded up to the next tick, so timeouts never expire early. Deadlines in the past
+   * expire on the next call to [[advance]].
+   */
+  def add(deadlineNanos: Long, value: A): Unit = {
+    val tick = Math.max(currentTick, (deadlineNanos - startNanos + tickNanos - 1) / tickNanos)
+    slots((tick & mask).toInt) += Timeout(tick, value)
+    count += 1
+  }
+
+  /**
+   * Expire all ticks up to and including the one containing `nowNanos`.
+   *
+   * @return The values of all expired timeouts, ordered by deadline tick.
+   */
+  def advance(nowNanos: Long): Seq[A] = {
+    expire((nowNanos - startNanos) / tickNanos, Vector.empty)
+  }
+
+  @tailrec
+  private def expire(lastTick: Long, expired: Vector[A]): Vector[A] = {
+    if (currentTick > lastTick) {
+      expired
+    } else {
+      val slot = slots((currentTick & mask).toInt)
+      val due =
+        if (slot.isEmpty) {
+          Vector.empty
+        } else {
+          val (due, later) = slot.partition(_.tick <= currentTick)
+          slot.clear()
+          slot ++= later
+          due.map(_.value)
+        }
+      count -= due.size
+      currentTick += 1
+      expire(lastTick, expired ++ due)
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+package im.tox.tox4j.scheduler
+
+import java.io.Closeable
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.av.callbacks.ToxAvEventListener
+import im.tox.tox4j.exceptions.ToxKilledException
+import im.tox.tox4j.impl.jni.ToxAvImpl
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.util.Try
+import scala.util.control.NonFatal
+
+object ToxAvRunner {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Delay before the next iteration if an iterate call threw an exception.
+   */
+  private val ErrorIntervalMillis = 50
+
+}
+
+/**
+ * Iterates a [[ToxAvImpl]] on a dedicated high-priority thread, independently of the thread iterating its Tox instance.
+ *
+ * Audio and video are decoded in toxav_iterate, so when the A/V session is iterated on the same thread as the Tox
+ * instance, a slow text message or file transfer listener delays decoding and the audio stutters. The runner's thread
+ * only iterates the A/V session and calls `listener`, at the cadence of [[ToxAvImpl.iterationInterval]]. It uses
+ * [[ToxAvImpl.iterateExclusive]], which holds the Tox instance's native lock while toxav iterates, so the Tox instance
+ * can keep being iterated on its own thread, e.g. by a [[ToxScheduler]] or [[ToxEventLoopRunner]]. The A/V session
+ * must not be iterated anywhere else.
+ *
+ * The loop stops when the A/V session or its Tox instance is closed, or when the runner is closed. [[metrics]] reports
+ * the jitter of the iterations as their lag: the time between the moment an iteration was due, one iteration interval
+ * after the previous one ended, and the moment it started.
+ *
+ * @param av The A/V session to iterate.
+ * @param listener Receives the A/V events on the runner's thread. It replaces the session's current listener.
+ * @param state The initial state passed to the listener.
+ * @param priority The priority of the runner's thread.
+ */
+final class ToxAvRunner[ToxCoreState](
+    av: ToxAvImpl[ToxCoreState],
+    listener: ToxAvEventListener[ToxCoreState],
+    state: ToxCoreState,
+    priority: Int = Thread.MAX_PRIORITY
+) extends Closeable {
+  require(Thread.MIN_PRIORITY <= priority && priority <= Thread.MAX_PRIORITY, s"Invalid thread priority: $priority")
+
+  private val recorder = new ToxSchedulerMetricsRecorder
+
+  @volatile private var running = true // scalastyle:ignore var.field
+
+  av.callback(listener)
+
+  private val thread = new Thread(new Runnable {
+    override def run(): Unit = loop(state, System.nanoTime)
+  }, "tox-av-iterate")
+  thread.setDaemon(true)
+  thread.setPriority(priority)
+  thread.start()
+
+  @tailrec
+  private def loop(state: ToxCoreState, deadline: Long): Unit = {
+    if (running) {
+      val start = System.nanoTime
+      val iterated = iterateSafely(state)
+      val end = System.nanoTime
+
+      recorder.record(Math.max(0, start - deadline), end - start)
+
+      iterated match {
+        case Some((nextState, millis)) =>
+          val next = end + TimeUnit.MILLISECONDS.toNanos(millis)
+          parkUntil(next)
+          loop(nextState, next)
+        case None =>
+          running = false
+      }
+    }
+  }
+
+  @tailrec
+  private def parkUntil(deadline: Long): Unit = {
+    val remaining = deadline - System.nanoTime
+    if (remaining > 0 && running) {
+      LockSupport.parkNanos(remaining)
+      parkUntil(deadline)
+    }
+  }
+
+  /**
+   * Other exceptions are retried after [[ToxAvRunner.ErrorIntervalMillis]], unless the A/V session can no longer be
+   * used, as when its instance was finalised and the native side rejects its instance number.
+   *
+   * @return The next state and the delay until the next iteration, or [[None]] if the A/V session was closed.
+   */
+  private def iterateSafely(state: ToxCoreState): Option[(ToxCoreState, Int)] = {
+    try {
+      val nextState = av.iterateExclusive(state)
+      Some((nextState, av.iterationInterval))
+    } catch {
+      case _: ToxKilledException =>
+        None
+      case NonFatal(e) if !isAlive =>
+        ToxAvRunner.logger.debug(s"Stopping: $av can no longer be iterated", e)
+        None
+      case NonFatal(e) =>
+        ToxAvRunner.logger.warn("Exception caught while iterating " + av, e)
+        Some((state, ToxAvRunner.ErrorIntervalMillis))
+    }
+  }
+
+  /**
+   * Whether the A/V session still accepts calls. Every native call checks the instance, and this is the cheapest one.
+   */
+  private def isAlive: Boolean = Try(av.iterationInterval).isSuccess
+
+  /**
+   * Whether the runner's thread is still iterating.
+   */
+  def isRunning: Boolean = running
+
+  /**
+   * Timing of all iterations so far. The lag is the jitter of the iteration interval.
+   */
+  def metrics: ToxSchedulerMetrics = recorder.snapshot
+
+  /**
+   * Stop iterating and wait for the running iteration to complete. Must not be called from the listener.
+   */
+  override def close(): Unit = {
+    running = false
+    LockSupport.unpark(thread)
+    thread.join()
+  }
+
+}
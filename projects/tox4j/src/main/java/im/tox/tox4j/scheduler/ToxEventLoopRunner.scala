@@ -0,0 +1,268 @@
+package im.tox.tox4j.scheduler
+
+import java.io.Closeable
+import java.util.concurrent.locks.LockSupport
+import java.util.concurrent.{Callable, ConcurrentHashMap, ExecutionException, ExecutorService, Executors, ThreadFactory, TimeUnit}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.av.ToxAv
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.exceptions.ToxKilledException
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.collection.JavaConverters._
+import scala.util.Try
+import scala.util.control.NonFatal
+
+// scalastyle:off null
+@SuppressWarnings(Array("org.brianmckenna.wartremover.warts.Null"))
+object ToxEventLoopRunner {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Delay before the next iteration of an instance whose iterate call threw an exception.
+   */
+  private val ErrorIntervalMillis = 50
+
+  /**
+   * A factory for virtual threads if the running JVM supports them (JDK 21 and later).
+   *
+   * Tox4j is compiled for older JVMs, so the factory is looked up by reflection.
+   */
+  lazy val virtualThreadFactory: Option[ThreadFactory] = {
+    Try {
+      // The builder's class is internal, so call factory() through the public Thread.Builder interface.
+      val builder = classOf[Thread].getMethod("ofVirtual").invoke(null)
+      Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder)
+    }.toOption collect {
+      case threadFactory: ThreadFactory => threadFactory
+    }
+  }
+
+  /**
+   * Platform daemon threads, used when virtual threads are not available.
+   */
+  def platformThreadFactory: ThreadFactory = new ThreadFactory {
+    override def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "tox-event-loop")
+      thread.setDaemon(true)
+      thread
+    }
+  }
+
+}
+
+/**
+ * Runs one event loop thread per [[ToxCore]] or [[ToxAv]] instance.
+ *
+ * Each loop calls iterate, sleeps for [[ToxCore.iterationInterval]] milliseconds and repeats until the instance is
+ * closed, its [[ToxScheduler.Task]] is cancelled, or the runner is closed. By default, the loops run on virtual threads
+ * when the JVM supports them, so that thousands of instances don't need thousands of platform threads.
+ *
+ * A virtual thread that blocks inside a JNI call pins its carrier thread. To avoid this, the native iterate calls can be
+ * isolated on a bounded pool of `nativeThreads` platform threads. The loop threads hand each call to that pool and wait
+ * for it, which unmounts a virtual thread instead of pinning it. With platform loop threads, the pool only adds
+ * overhead, so it is disabled by default in that case.
+ *
+ * Shutdown is structured: [[close]] stops all loops and waits for them and any running native calls to finish. No loop
+ * outlives the runner. [[ToxCoreImpl]] instances also stop their loop when they are closed, through
+ * [[ToxCoreImpl.addOnCloseCallback]]. The callback is removed again when the loop ends, so an instance can be added
+ * and stopped any number of times.
+ *
+ * @param threadFactory Creates the loop threads.
+ * @param nativeThreads Size of the pool running the native iterate calls, or 0 to call them on the loop threads.
+ */
+final class ToxEventLoopRunner(
+    threadFactory: ThreadFactory = ToxEventLoopRunner.virtualThreadFactory.getOrElse(ToxEventLoopRunner.platformThreadFactory),
+    nativeThreads: Int = ToxEventLoopRunner.virtualThreadFactory.fold(0)(_ => Runtime.getRuntime.availableProcessors)
+) extends Closeable {
+  require(nativeThreads >= 0, "Native thread count must not be negative")
+
+  private val nativePool: Option[ExecutorService] =
+    if (nativeThreads == 0) {
+      None
+    } else {
+      Some(Executors.newFixedThreadPool(nativeThreads, ToxEventLoopRunner.platformThreadFactory))
+    }
+
+  // Loop threads by the ToxCore or ToxAv object they iterate.
+  private val loops = new ConcurrentHashMap[AnyRef, Thread]
+
+  private val recorder = new ToxSchedulerMetricsRecorder
+
+  @volatile private var running = true // scalastyle:ignore var.field
+
+  private abstract class Loop(val key: AnyRef) extends Runnable {
+    val task = new ToxScheduler.Task
+
+    protected def iterate(): Unit
+    protected def iterationInterval: Int
+
+    /**
+     * Release what the loop registered on its instance. Called when the loop ends, or if it could not be started.
+     */
+    def finished(): Unit = ()
+
+    override def run(): Unit = {
+      try {
+        loop(System.nanoTime)
+      } finally {
+        loops.remove(key)
+        finished()
+      }
+    }
+
+    @tailrec
+    private def loop(deadline: Long): Unit = {
+      if (running && !task.isCancelled) {
+        val start = System.nanoTime
+        val interval = callNative()
+        val end = System.nanoTime
+
+        val lag = Math.max(0, start - deadline)
+        task.recorder.record(lag, end - start)
+        recorder.record(lag, end - start)
+
+        interval match {
+          case Some(millis) =>
+            val next = end + TimeUnit.MILLISECONDS.toNanos(millis)
+            parkUntil(next)
+            loop(next)
+          case None =>
+        }
+      }
+    }
+
+    @tailrec
+    private def parkUntil(deadline: Long): Unit = {
+      val remaining = deadline - System.nanoTime
+      if (remaining > 0 && running && !task.isCancelled) {
+        LockSupport.parkNanos(remaining)
+        parkUntil(deadline)
+      }
+    }
+
+    /**
+     * @return The delay until the next iteration, or [[None]] if the loop should stop.
+     */
+    private def callNative(): Option[Int] = {
+      nativePool match {
+        case None => iterateSafely()
+        case Some(pool) =>
+          try {
+            pool.submit(new Callable[Option[Int]] {
+              override def call(): Option[Int] = iterateSafely()
+            }).get
+          } catch {
+            case _: InterruptedException =>
+              None
+            case e: ExecutionException =>
+              ToxEventLoopRunner.logger.warn("Exception caught while iterating " + key, e.getCause)
+              Some(ToxEventLoopRunner.ErrorIntervalMillis)
+          }
+      }
+    }
+
+    private def iterateSafely(): Option[Int] = {
+      try {
+        iterate()
+        Some(iterationInterval)
+      } catch {
+        case _: ToxKilledException =>
+          None
+        case NonFatal(e) =>
+          ToxEventLoopRunner.logger.warn("Exception caught while iterating " + key, e)
+          Some(ToxEventLoopRunner.ErrorIntervalMillis)
+      }
+    }
+  }
+
+  private final class CoreLoop[ToxCoreState](tox: ToxCore[ToxCoreState], initial: ToxCoreState) extends Loop(tox) {
+    private var state = initial // scalastyle:ignore var.field
+    protected override def iterate(): Unit = state = tox.iterate(state)
+    protected override def iterationInterval: Int = tox.iterationInterval
+
+    // Only signal the loop here. It may be waiting for a native call that is closing this instance.
+    private val onClose = tox match {
+      case impl: ToxCoreImpl[_] => Some((impl, impl.addOnCloseCallback(() => stop(tox, task))))
+      case _                    => None
+    }
+
+    override def finished(): Unit = onClose.foreach {
+      case (impl, id) => impl.removeOnCloseCallback(id)
+    }
+  }
+
+  private final class AvLoop[ToxCoreState](av: ToxAv[ToxCoreState], initial: ToxCoreState) extends Loop(av) {
+    private var state = initial // scalastyle:ignore var.field
+    protected override def iterate(): Unit = state = av.iterate(state)
+    protected override def iterationInterval: Int = av.iterationInterval
+  }
+
+  /**
+   * Start an event loop for a [[ToxCore]] instance.
+   *
+   * @param tox An open instance that is not iterated anywhere else.
+   * @param state The initial state passed to the instance's event listener.
+   */
+  def add[ToxCoreState](tox: ToxCore[ToxCoreState], state: ToxCoreState): ToxScheduler.Task = {
+    start(new CoreLoop(tox, state))
+  }
+
+  /**
+   * Start an event loop for a [[ToxAv]] instance.
+   *
+   * @param av An open instance that is not iterated anywhere else.
+   * @param state The initial state passed to the instance's event listener.
+   */
+  def add[ToxCoreState](av: ToxAv[ToxCoreState], state: ToxCoreState): ToxScheduler.Task = {
+    start(new AvLoop(av, state))
+  }
+
+  private def start(loop: Loop): ToxScheduler.Task = {
+    val thread = threadFactory.newThread(loop)
+    val registered = Try {
+      require(running, "The runner has been closed")
+      require(Option(loops.putIfAbsent(loop.key, thread)).isEmpty, "Instance is already running")
+    }
+    if (registered.isFailure) {
+      loop.finished()
+    }
+    registered.get
+    thread.start()
+    loop.task
+  }
+
+  private def stop(key: AnyRef, task: ToxScheduler.Task): Unit = {
+    task.cancel()
+    Option(loops.get(key)).foreach(LockSupport.unpark)
+  }
+
+  /**
+   * The number of running event loops.
+   */
+  def size: Int = loops.size
+
+  /**
+   * Timing of all iterations so far.
+   */
+  def metrics: ToxSchedulerMetrics = recorder.snapshot
+
+  /**
+   * Stop all loops and wait for them to finish. Must not be called from an event listener.
+   */
+  override def close(): Unit = {
+    running = false
+    val threads = loops.values.asScala.toList
+    threads.foreach(LockSupport.unpark)
+    threads.foreach(_.join())
+    nativePool.foreach { pool =>
+      pool.shutdown()
+      pool.awaitTermination(Long.MaxValue, TimeUnit.NANOSECONDS)
+    }
+  }
+
+}
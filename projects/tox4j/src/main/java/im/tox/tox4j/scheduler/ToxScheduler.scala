@@ -0,0 +1,242 @@
+package im.tox.tox4j.scheduler
+
+import java.io.Closeable
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.LockSupport
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue, Executors, ThreadFactory, TimeUnit}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.av.ToxAv
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.exceptions.ToxKilledException
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.util.control.NonFatal
+
+object ToxScheduler {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  val DefaultTickMillis = 1
+  val DefaultWheelSize = 512
+
+  /**
+   * Delay before the next iteration of an instance whose iterate call threw an exception.
+   */
+  private val ErrorIntervalMillis = 50
+
+  /**
+   * Handle for an instance added to a [[ToxScheduler]].
+   */
+  final class Task private[scheduler] () {
+    @volatile private var cancelled = false // scalastyle:ignore var.field
+    private[scheduler] val recorder = new ToxSchedulerMetricsRecorder
+
+    /**
+     * Timing of this instance's iterations so far.
+     */
+    def metrics: ToxSchedulerMetrics = recorder.snapshot
+
+    def isCancelled: Boolean = cancelled
+
+    /**
+     * Stop iterating the instance. An iteration that is already running is completed. The instance is released when it
+     * is next due, after which it can be added to a scheduler again.
+     */
+    def cancel(): Unit = cancelled = true
+  }
+
+  private final class DaemonThreadFactory(prefix: String) extends ThreadFactory {
+    private val count = new AtomicInteger
+
+    override def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, prefix + "-" + count.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+
+}
+
+/**
+ * Drives the event loops of many [[ToxCore]] and [[ToxAv]] instances on a small, fixed pool of worker threads.
+ *
+ * After each iterate call, the instance's next iteration is scheduled [[ToxCore.iterationInterval]] milliseconds later
+ * on a hashed timer wheel. A single timer thread advances the wheel once per tick and hands the instances that are due
+ * to the worker threads. An instance is in exactly one place at a time: waiting to be added to the wheel, on the wheel,
+ * or being iterated. It is therefore never iterated concurrently with itself.
+ *
+ * Instances are dropped from the scheduler when they are closed or their [[ToxScheduler.Task]] is cancelled. The
+ * scheduler never closes instances itself.
+ *
+ * Each instance's state is threaded through its own iterate calls. Event listeners run on the worker threads, so
+ * listeners of different instances may run concurrently.
+ *
+ * @param threads Number of worker threads.
+ * @param tickMillis Resolution of the timer wheel in milliseconds.
+ * @param wheelSize Number of slots on the timer wheel. Must be a power of two.
+ */
+final class ToxScheduler(
+    threads: Int = Runtime.getRuntime.availableProcessors,
+    tickMillis: Int = ToxScheduler.DefaultTickMillis,
+    wheelSize: Int = ToxScheduler.DefaultWheelSize
+) extends Closeable {
+  require(threads > 0, "The scheduler needs at least one worker thread")
+  require(tickMillis > 0, "Tick duration must be positive")
+
+  private val tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis)
+
+  // Owned by the timer thread.
+  private val wheel = new HashedTimerWheel[Instance](tickNanos, wheelSize, System.nanoTime)
+
+  // Instances waiting to be put on the wheel, either new ones or ones that just finished an iteration.
+  private val additions = new ConcurrentLinkedQueue[Instance]
+
+  // The ToxCore and ToxAv objects currently owned by this scheduler, to prevent adding the same instance twice.
+  private val scheduled = Collections.newSetFromMap(new ConcurrentHashMap[AnyRef, java.lang.Boolean])
+
+  private val recorder = new ToxSchedulerMetricsRecorder
+
+  private val workers = Executors.newFixedThreadPool(threads, new ToxScheduler.DaemonThreadFactory("tox-scheduler-worker"))
+
+  @volatile private var running = true // scalastyle:ignore var.field
+
+  private val timer = new ToxScheduler.DaemonThreadFactory("tox-scheduler-timer").newThread(new Runnable {
+    override def run(): Unit = runTimer()
+  })
+  timer.start()
+
+  private abstract class Instance(val key: AnyRef) extends Runnable {
+    val task = new ToxScheduler.Task
+
+    // Only accessed by one thread at a time. Handing the instance over through the queue or the executor publishes it.
+    private var deadline = System.nanoTime // scalastyle:ignore var.field
+
+    def deadlineNanos: Long = deadline
+
+    protected def iterate(): Unit
+    protected def iterationInterval: Int
+
+    override def run(): Unit = {
+      if (task.isCancelled || !running) {
+        scheduled.remove(key)
+      } else {
+        val start = System.nanoTime
+        val interval = iterateSafely()
+        val end = System.nanoTime
+
+        val lag = Math.max(0, start - deadline)
+        task.recorder.record(lag, end - start)
+        recorder.record(lag, end - start)
+
+        interval match {
+          case Some(millis) =>
+            deadline = end + TimeUnit.MILLISECONDS.toNanos(millis)
+            additions.add(this)
+          case None =>
+            scheduled.remove(key)
+        }
+      }
+    }
+
+    /**
+     * @return The delay until the next iteration, or [[None]] if the instance was closed.
+     */
+    private def iterateSafely(): Option[Int] = {
+      try {
+        iterate()
+        Some(iterationInterval)
+      } catch {
+        case _: ToxKilledException =>
+          None
+        case NonFatal(e) =>
+          ToxScheduler.logger.warn("Exception caught while iterating " + key, e)
+          Some(ToxScheduler.ErrorIntervalMillis)
+      }
+    }
+  }
+
+  private final class CoreInstance[ToxCoreState](tox: ToxCore[ToxCoreState], initial: ToxCoreState) extends Instance(tox) {
+    private var state = initial // scalastyle:ignore var.field
+    protected override def iterate(): Unit = state = tox.iterate(state)
+    protected override def iterationInterval: Int = tox.iterationInterval
+  }
+
+  private final class AvInstance[ToxCoreState](av: ToxAv[ToxCoreState], initial: ToxCoreState) extends Instance(av) {
+    private var state = initial // scalastyle:ignore var.field
+    protected override def iterate(): Unit = state = av.iterate(state)
+    protected override def iterationInterval: Int = av.iterationInterval
+  }
+
+  /**
+   * Start iterating a [[ToxCore]] instance.
+   *
+   * @param tox An open instance that is not iterated anywhere else.
+   * @param state The initial state passed to the instance's event listener.
+   */
+  def add[ToxCoreState](tox: ToxCore[ToxCoreState], state: ToxCoreState): ToxScheduler.Task = {
+    schedule(new CoreInstance(tox, state))
+  }
+
+  /**
+   * Start iterating a [[ToxAv]] instance.
+   *
+   * @param av An open instance that is not iterated anywhere else.
+   * @param state The initial state passed to the instance's event listener.
+   */
+  def add[ToxCoreState](av: ToxAv[ToxCoreState], state: ToxCoreState): ToxScheduler.Task = {
+    schedule(new AvInstance(av, state))
+  }
+
+  private def schedule(instance: Instance): ToxScheduler.Task = {
+    require(running, "The scheduler has been closed")
+    require(scheduled.add(instance.key), "Instance is already scheduled")
+    additions.add(instance)
+    instance.task
+  }
+
+  /**
+   * The number of instances owned by this scheduler.
+   */
+  def size: Int = scheduled.size
+
+  /**
+   * Timing of all iterations so far.
+   */
+  def metrics: ToxSchedulerMetrics = recorder.snapshot
+
+  /**
+   * Stop the timer and wait for running iterations to complete. Must not be called from an event listener running on
+   * one of this scheduler's worker threads.
+   */
+  override def close(): Unit = {
+    running = false
+    timer.join()
+    workers.shutdown()
+    workers.awaitTermination(Long.MaxValue, TimeUnit.NANOSECONDS)
+    scheduled.clear()
+  }
+
+  @tailrec
+  private def runTimer(): Unit = {
+    if (running) {
+      addPending()
+      wheel.advance(System.nanoTime).foreach(workers.execute)
+      LockSupport.parkNanos(tickNanos)
+      runTimer()
+    }
+  }
+
+  @tailrec
+  private def addPending(): Unit = {
+    Option(additions.poll()) match {
+      case Some(instance) =>
+        wheel.add(instance.deadlineNanos, instance)
+        addPending()
+      case None =>
+    }
+  }
+
+}
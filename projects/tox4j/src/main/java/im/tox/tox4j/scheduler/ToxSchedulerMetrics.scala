@@ -0,0 +1,60 @@
+package im.tox.tox4j.scheduler
+
+import java.util.concurrent.atomic.AtomicLong
+
+import scala.annotation.tailrec
+
+/**
+ * Snapshot of the timing of [[ToxScheduler]] iterations, either for a single instance or for the whole scheduler. The
+ * same metrics are kept by [[ToxEventLoopRunner]] and [[ToxAvRunner]].
+ *
+ * @param iterations The number of iterate calls.
+ * @param totalLagNanos Sum of the scheduling lag over all iterations. The lag is the time between the moment an
+ *                      iteration was due and the moment a worker thread started it.
+ * @param maxLagNanos The largest scheduling lag seen.
+ * @param totalCostNanos Sum of the time spent in iterate calls.
+ * @param maxCostNanos The longest iterate call.
+ */
+final case class ToxSchedulerMetrics(
+    iterations: Long,
+    totalLagNanos: Long,
+    maxLagNanos: Long,
+    totalCostNanos: Long,
+    maxCostNanos: Long
+) {
+  def meanLagNanos: Long = if (iterations == 0) 0 else totalLagNanos / iterations
+  def meanCostNanos: Long = if (iterations == 0) 0 else totalCostNanos / iterations
+}
+
+/**
+ * Thread-safe accumulator for [[ToxSchedulerMetrics]].
+ */
+private[scheduler] final class ToxSchedulerMetricsRecorder {
+
+  private val iterations = new AtomicLong
+  private val totalLag = new AtomicLong
+  private val maxLag = new AtomicLong
+  private val totalCost = new AtomicLong
+  private val maxCost = new AtomicLong
+
+  def record(lagNanos: Long, costNanos: Long): Unit = {
+    iterations.incrementAndGet()
+    totalLag.addAndGet(lagNanos)
+    updateMax(maxLag, lagNanos)
+    totalCost.addAndGet(costNanos)
+    updateMax(maxCost, costNanos)
+  }
+
+  def snapshot: ToxSchedulerMetrics = {
+    ToxSchedulerMetrics(iterations.get, totalLag.get, maxLag.get, totalCost.get, maxCost.get)
+  }
+
+  @tailrec
+  private def updateMax(max: AtomicLong, value: Long): Unit = {
+    val current = max.get
+    if (value > current && !max.compareAndSet(current, value)) {
+      updateMax(max, value)
+    }
+  }
+
+}
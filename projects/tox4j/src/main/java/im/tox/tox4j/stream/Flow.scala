@@ -0,0 +1,38 @@
+package im.tox.tox4j.stream
+
+/**
+ * Reactive stream interfaces with the same shape and contract as `java.util.concurrent.Flow`.
+ *
+ * Tox4j is compiled for JVMs without `java.util.concurrent.Flow`, so the interfaces are repeated here. On newer JVMs, a
+ * [[Flow.Publisher]] can be exposed as a `java.util.concurrent.Flow.Publisher` by forwarding the four subscriber
+ * methods and the two subscription methods.
+ */
+object Flow {
+
+  trait Publisher[+T] {
+    /**
+     * Add a subscriber. Its [[Subscriber.onSubscribe]] is called before any other method.
+     */
+    def subscribe(subscriber: Subscriber[T]): Unit
+  }
+
+  trait Subscriber[-T] {
+    def onSubscribe(subscription: Subscription): Unit
+    def onNext(item: T): Unit
+    def onError(throwable: Throwable): Unit
+    def onComplete(): Unit
+  }
+
+  trait Subscription {
+    /**
+     * Allow the publisher to deliver up to `n` more items. Non-positive values fail the subscription.
+     */
+    def request(n: Long): Unit
+
+    /**
+     * Stop receiving items. Items already delivered may still be in flight.
+     */
+    def cancel(): Unit
+  }
+
+}
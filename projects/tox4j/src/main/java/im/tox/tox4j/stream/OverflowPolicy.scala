@@ -0,0 +1,25 @@
+package im.tox.tox4j.stream
+
+/**
+ * What a bounded event buffer does with a new event when it is full.
+ */
+sealed trait OverflowPolicy
+
+object OverflowPolicy {
+
+  /**
+   * Block the producing thread until the consumer has made room.
+   */
+  case object Block extends OverflowPolicy
+
+  /**
+   * Discard the oldest buffered event to make room for the new one.
+   */
+  case object DropOldest extends OverflowPolicy
+
+  /**
+   * Discard the new event if it is lossy, otherwise block like [[Block]].
+   */
+  case object DropLossy extends OverflowPolicy
+
+}
@@ -0,0 +1,239 @@
+package im.tox.tox4j.stream
+
+import java.io.Closeable
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
+import java.util.concurrent.locks.ReentrantLock
+import java.util.concurrent.{CopyOnWriteArrayList, Executor}
+
+import com.typesafe.scalalogging.Logger
+import im.tox.tox4j.core.callbacks.ToxCoreEvent
+import org.slf4j.LoggerFactory
+
+import scala.annotation.tailrec
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+object ToxEventPublisher {
+
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  val DefaultBufferSize = 1024
+
+}
+
+/**
+ * Exposes the events of a [[im.tox.tox4j.core.ToxCore]] instance as a [[Flow.Publisher]] of [[ToxCoreEvent]] values.
+ *
+ * Register the publisher as the instance's event listener. During iterate, each callback only appends an event to the
+ * buffer of every subscriber. Subscribers receive their events on `executor`, so slow consumers don't hold up the
+ * networking of the instance, as long as their buffer has room. What happens when a buffer is full is decided by the
+ * [[OverflowPolicy]].
+ *
+ * Each subscriber has its own buffer of `bufferSize` events. Events are delivered to a subscriber in the order they
+ * were produced, and never concurrently.
+ *
+ * @param executor Runs the delivery of events to subscribers.
+ * @param bufferSize Maximum number of undelivered events per subscriber.
+ * @param overflow What to do with a new event if a subscriber's buffer is full.
+ */
+final class ToxEventPublisher[ToxCoreState](
+    executor: Executor,
+    bufferSize: Int = ToxEventPublisher.DefaultBufferSize,
+    overflow: OverflowPolicy = OverflowPolicy.Block
+) extends ToxCoreEvent.Collector[ToxCoreState] with Flow.Publisher[ToxCoreEvent] with Closeable {
+  require(bufferSize > 0, "Buffer size must be positive")
+
+  private val subscriptions = new CopyOnWriteArrayList[BufferedSubscription]
+  private val droppedEvents = new AtomicLong
+
+  // Guards closed and adding to subscriptions, so that no subscriber misses its completion.
+  private val lock = new AnyRef
+  private var closed = false // scalastyle:ignore var.field
+
+  private final class BufferedSubscription(subscriber: Flow.Subscriber[ToxCoreEvent]) extends Flow.Subscription with Runnable {
+    private val bufferLock = new ReentrantLock
+    private val notFull = bufferLock.newCondition
+    private val buffer = new java.util.ArrayDeque[ToxCoreEvent](bufferSize)
+
+    private val demand = new AtomicLong
+    private val scheduled = new AtomicBoolean
+
+    @volatile private var cancelled = false // scalastyle:ignore var.field
+    @volatile private var completed = false // scalastyle:ignore var.field
+    @volatile private var error = Option.empty[Throwable] // scalastyle:ignore var.field
+
+    def offer(event: ToxCoreEvent): Unit = {
+      bufferLock.lock()
+      try {
+        enqueue(event)
+      } finally {
+        bufferLock.unlock()
+      }
+      schedule()
+    }
+
+    @tailrec
+    private def enqueue(event: ToxCoreEvent): Unit = {
+      if (!cancelled) {
+        if (buffer.size < bufferSize) {
+          buffer.add(event)
+        } else {
+          overflow match {
+            case OverflowPolicy.DropOldest =>
+              buffer.poll()
+              buffer.add(event)
+              droppedEvents.incrementAndGet()
+            case OverflowPolicy.DropLossy if event.isLossy =>
+              droppedEvents.incrementAndGet()
+            case OverflowPolicy.Block | OverflowPolicy.DropLossy =>
+              // Make sure the consumer is running before waiting for it.
+              schedule()
+              notFull.await()
+              enqueue(event)
+          }
+        }
+      }
+    }
+
+    private def poll(): Option[ToxCoreEvent] = {
+      bufferLock.lock()
+      try {
+        val event = Option(buffer.poll())
+        notFull.signal()
+        event
+      } finally {
+        bufferLock.unlock()
+      }
+    }
+
+    private def isEmpty: Boolean = {
+      bufferLock.lock()
+      try {
+        buffer.isEmpty
+      } finally {
+        bufferLock.unlock()
+      }
+    }
+
+    def complete(): Unit = {
+      completed = true
+      schedule()
+    }
+
+    override def request(n: Long): Unit = {
+      if (n <= 0) {
+        error = Some(new IllegalArgumentException(s"Requested non-positive number of events: $n"))
+      } else {
+        addDemand(n)
+      }
+      schedule()
+    }
+
+    /**
+     * Add to the demand, saturating at Long.MaxValue, which means unbounded demand.
+     */
+    @tailrec
+    private def addDemand(n: Long): Unit = {
+      val current = demand.get
+      val updated = if (current + n < 0) Long.MaxValue else current + n
+      if (!demand.compareAndSet(current, updated)) {
+        addDemand(n)
+      }
+    }
+
+    override def cancel(): Unit = {
+      cancelled = true
+      subscriptions.remove(this)
+      bufferLock.lock()
+      try {
+        buffer.clear()
+        notFull.signalAll()
+      } finally {
+        bufferLock.unlock()
+      }
+    }
+
+    private def schedule(): Unit = {
+      if (!cancelled && scheduled.compareAndSet(false, true)) {
+        executor.execute(this)
+      }
+    }
+
+    override def run(): Unit = {
+      drain()
+      scheduled.set(false)
+      // Events may have arrived after the drain loop found the buffer empty.
+      if (!cancelled && ((demand.get > 0 && !isEmpty) || (completed && isEmpty) || error.nonEmpty)) {
+        schedule()
+      }
+    }
+
+    @tailrec
+    private def drain(): Unit = {
+      if (!cancelled) {
+        error match {
+          case Some(e) =>
+            cancel()
+            subscriber.onError(e)
+          case None =>
+            val next = if (demand.get > 0) poll() else None
+            next match {
+              case Some(event) =>
+                demand.decrementAndGet()
+                deliver(event)
+                drain()
+              case None =>
+                if (completed && isEmpty) {
+                  cancel()
+                  subscriber.onComplete()
+                }
+            }
+        }
+      }
+    }
+
+    private def deliver(event: ToxCoreEvent): Unit = {
+      try {
+        subscriber.onNext(event)
+      } catch {
+        case NonFatal(e) =>
+          ToxEventPublisher.logger.warn("Exception caught in " + subscriber.getClass.getName + "; cancelling", e)
+          cancel()
+      }
+    }
+  }
+
+  /**
+   * The number of events discarded because a subscriber's buffer was full.
+   */
+  def dropped: Long = droppedEvents.get
+
+  override def subscribe(subscriber: Flow.Subscriber[ToxCoreEvent]): Unit = {
+    val subscription = new BufferedSubscription(subscriber)
+    subscriber.onSubscribe(subscription)
+    lock.synchronized {
+      if (closed) {
+        subscription.complete()
+      } else {
+        subscriptions.add(subscription)
+      }
+    }
+  }
+
+  protected override def handle(event: ToxCoreEvent): Unit = {
+    subscriptions.asScala.foreach(_.offer(event))
+  }
+
+  /**
+   * Complete all subscriptions after their buffered events have been delivered. Events produced after this call are
+   * discarded.
+   */
+  override def close(): Unit = {
+    lock.synchronized {
+      closed = true
+      subscriptions.asScala.foreach(_.complete())
+      subscriptions.clear()
+    }
+  }
+
+}
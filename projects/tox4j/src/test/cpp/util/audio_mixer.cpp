@@ -0,0 +1,138 @@
+#include "util/audio_mixer.h"
+
+#include <gtest/gtest.h>
+
+#include <map>
+#include <vector>
+
+
+namespace
+{
+  struct recorder
+  {
+    std::map<uint32_t, std::vector<int16_t>> mixes;
+
+    audio_mixer::sender
+    sender ()
+    {
+      return [this] (uint32_t friend_number, int16_t const *pcm, std::size_t sample_count, uint8_t channels, uint32_t)
+        {
+          mixes[friend_number].assign (pcm, pcm + sample_count * channels);
+          return true;
+        };
+    }
+  };
+}
+
+
+TEST (AudioMixer, EveryoneHearsEveryoneElse) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+  mixer.add_participant (2);
+  mixer.add_participant (3);
+
+  std::vector<int16_t> one (960, 1), two (960, 20), three (960, 300);
+  mixer.push (1, one.data (), 960, 1, 48000);
+  mixer.push (2, two.data (), 960, 1, 48000);
+  mixer.push (3, three.data (), 960, 1, 48000);
+
+  recorder sent;
+  mixer.mix (sent.sender ());
+  EXPECT_EQ (320, sent.mixes[1][0]);
+  EXPECT_EQ (301, sent.mixes[2][0]);
+  EXPECT_EQ (21, sent.mixes[3][959]);
+}
+
+
+TEST (AudioMixer, Saturates) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+  mixer.add_participant (2);
+  mixer.add_participant (3);
+
+  std::vector<int16_t> loud (960, 30000), quiet (960, -30000);
+  mixer.push (1, loud.data (), 960, 1, 48000);
+  mixer.push (2, loud.data (), 960, 1, 48000);
+  mixer.push (3, quiet.data (), 960, 1, 48000);
+
+  recorder sent;
+  mixer.mix (sent.sender ());
+  EXPECT_EQ (0, sent.mixes[1][0]);
+  EXPECT_EQ (INT16_MAX, sent.mixes[3][0]);
+}
+
+
+TEST (AudioMixer, ConvertsRateAndChannels) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+  mixer.add_participant (2);
+
+  // 20 ms of 16 kHz stereo.
+  std::vector<int16_t> stereo (320 * 2);
+  for (std::size_t i = 0; i < 320; i++)
+    {
+      stereo[2 * i] = 100;
+      stereo[2 * i + 1] = 300;
+    }
+  mixer.push (1, stereo.data (), 320, 2, 16000);
+
+  recorder sent;
+  mixer.mix (sent.sender ());
+  ASSERT_EQ (960u, sent.mixes[2].size ());
+  EXPECT_EQ (200, sent.mixes[2][0]);
+  EXPECT_EQ (200, sent.mixes[2][959]);
+}
+
+
+TEST (AudioMixer, UnderrunContributesSilence) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+  mixer.add_participant (2);
+
+  std::vector<int16_t> frame (960, 7);
+  mixer.push (1, frame.data (), 960, 1, 48000);
+
+  recorder sent;
+  mixer.mix (sent.sender ());
+  EXPECT_EQ (7, sent.mixes[2][0]);
+  mixer.mix (sent.sender ());
+  EXPECT_EQ (0, sent.mixes[2][0]);
+  EXPECT_EQ (1u, mixer.stats ().underruns);
+}
+
+
+TEST (AudioMixer, OverflowDropsOldestFrames) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+  mixer.add_participant (2);
+
+  for (int16_t value = 1; value <= 3; value++)
+    {
+      std::vector<int16_t> frame (960, value);
+      mixer.push (1, frame.data (), 960, 1, 48000);
+    }
+  EXPECT_EQ (1u, mixer.stats ().overflows);
+
+  recorder sent;
+  mixer.mix (sent.sender ());
+  EXPECT_EQ (2, sent.mixes[2][0]);
+}
+
+
+TEST (AudioMixer, IgnoresNonParticipants) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  std::vector<int16_t> frame (960);
+  EXPECT_FALSE (mixer.push (1, frame.data (), 960, 1, 48000));
+}
+
+
+TEST (AudioMixer, TickMixesDuePeriods) {
+  audio_mixer mixer (48000, 1, 20, 2);
+  mixer.add_participant (1);
+
+  recorder sent;
+  auto start = audio_mixer::clock::now ();
+  EXPECT_EQ (std::chrono::milliseconds (20), mixer.tick (start, sent.sender ()));
+  EXPECT_EQ (std::chrono::milliseconds (15), mixer.tick (start + std::chrono::milliseconds (45), sent.sender ()));
+  EXPECT_EQ (3u, mixer.stats ().mixes);
+}
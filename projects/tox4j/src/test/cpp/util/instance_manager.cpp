@@ -5,6 +5,11 @@
 
 #include "../mock_jni.h"
 
+#include <atomic>
+#include <set>
+#include <thread>
+#include <vector>
+
 
 static std::unique_ptr<int>
 make_int (int i)
@@ -67,3 +72,110 @@ TEST (InstanceManager, WithInstance) {
       }
   );
 }
+
+
+TEST (InstanceManager, FinalizeTwice) {
+  mock_jni *env = mock_jnienv ();
+
+  int_manager mgr;
+  jint id = mgr.add (env, make_int (1), make_int (2));
+  mgr.kill (env, id);
+  mgr.finalize (env, id);
+  ASSERT_TRUE (env->exn == nullptr);
+  mgr.finalize (env, id);
+  ASSERT_TRUE (env->exn != nullptr);
+}
+
+
+TEST (InstanceManager, ReuseInvalidatesOldNumber) {
+  mock_jni *env = mock_jnienv ();
+
+  int_manager mgr;
+  jint old_id = mgr.add (env, make_int (1), make_int (2));
+  mgr.kill (env, old_id);
+  mgr.finalize (env, old_id);
+
+  jint new_id = mgr.add (env, make_int (3), make_int (4));
+  ASSERT_GT (new_id, 0);
+  ASSERT_NE (new_id, old_id);
+
+  bool called = false;
+  mgr.with_instance (env, old_id,
+    [&] (int *, int &)
+      {
+        called = true;
+      }
+  );
+  ASSERT_FALSE (called);
+  ASSERT_TRUE (env->exn != nullptr);
+
+  mgr.with_instance (env, new_id,
+    [] (int *a, int &b)
+      {
+        ASSERT_EQ (*a, 3);
+        ASSERT_EQ (b, 4);
+      }
+  );
+}
+
+
+TEST (InstanceManager, RetireSlotWhenGenerationWraps) {
+  mock_jni *env = mock_jnienv ();
+
+  int_manager mgr;
+  jint const first_id = mgr.add (env, make_int (1), make_int (2));
+  jint const slot = first_id & 0xfffff;
+
+  // Reuse the slot until the manager stops handing it out.
+  std::set<jint> ids;
+  jint id = first_id;
+  while ((id & 0xfffff) == slot && ids.size () <= 2048)
+    {
+      ASSERT_TRUE (ids.insert (id).second);
+      mgr.kill (env, id);
+      mgr.finalize (env, id);
+      id = mgr.add (env, make_int (3), make_int (4));
+    }
+  ASSERT_EQ (ids.size (), 2048u);
+  ASSERT_TRUE (env->exn == nullptr);
+
+  // The numbers of the retired slot stay invalid.
+  bool called = false;
+  mgr.with_instance (env, first_id,
+    [&] (int *, int &)
+      {
+        called = true;
+      }
+  );
+  ASSERT_FALSE (called);
+  ASSERT_TRUE (env->exn != nullptr);
+}
+
+
+TEST (InstanceManager, ConcurrentWithInstance) {
+  mock_jni *env = mock_jnienv ();
+
+  int_manager mgr;
+  std::vector<jint> ids;
+  for (int i = 0; i < 2000; i++)
+    ids.push_back (mgr.add (env, make_int (i), make_int (i)));
+
+  std::atomic<long> sum (0);
+  std::vector<std::thread> threads;
+  for (int t = 0; t < 4; t++)
+    threads.emplace_back ([&]
+      {
+        for (jint id : ids)
+          mgr.with_instance (env, id,
+            [&] (int *a, int &)
+              {
+                sum += *a;
+              }
+          );
+      });
+  for (std::thread &thread : threads)
+    thread.join ();
+
+  ASSERT_EQ (sum, 4L * 1999 * 2000 / 2);
+  ASSERT_TRUE (env->exn == nullptr);
+}
@@ -0,0 +1,81 @@
+#include "util/yuv_convert.h"
+
+#include <gtest/gtest.h>
+
+#include <vector>
+
+
+TEST (YuvConvert, CopyPlaneDropsPadding) {
+  std::vector<uint8_t> src = {
+    1, 2, 3, 0,
+    4, 5, 6, 0,
+  };
+  std::vector<uint8_t> dst (6);
+  yuv::copy_plane (src.data (), 4, dst.data (), 3, 2);
+  EXPECT_EQ ((std::vector<uint8_t> { 1, 2, 3, 4, 5, 6 }), dst);
+}
+
+
+TEST (YuvConvert, RgbaWhiteAndBlack) {
+  // Two 2x2 blocks: white on the left, black on the right, with one pixel of
+  // padding per row.
+  std::vector<uint8_t> rgba = {
+    255, 255, 255, 255,  255, 255, 255, 255,  0, 0, 0, 255,  0, 0, 0, 255,  9, 9, 9, 9,
+    255, 255, 255, 255,  255, 255, 255, 255,  0, 0, 0, 255,  0, 0, 0, 255,  9, 9, 9, 9,
+  };
+  yuv::i420_frame frame;
+  frame.resize (4, 2);
+  yuv::rgba_to_i420 (rgba.data (), 20, 4, 2, frame.y, frame.u, frame.v);
+
+  EXPECT_EQ (235, frame.y[0]);
+  EXPECT_EQ (235, frame.y[5]);
+  EXPECT_EQ (16, frame.y[2]);
+  EXPECT_EQ (16, frame.y[7]);
+  EXPECT_EQ (128, frame.u[0]);
+  EXPECT_EQ (128, frame.v[0]);
+  EXPECT_EQ (128, frame.u[1]);
+  EXPECT_EQ (128, frame.v[1]);
+}
+
+
+TEST (YuvConvert, RgbaRedChroma) {
+  std::vector<uint8_t> rgba (2 * 2 * 4);
+  for (std::size_t i = 0; i < rgba.size (); i += 4)
+    rgba[i] = 255;
+  yuv::i420_frame frame;
+  frame.resize (2, 2);
+  yuv::rgba_to_i420 (rgba.data (), 8, 2, 2, frame.y, frame.u, frame.v);
+
+  EXPECT_EQ (82, frame.y[0]);
+  EXPECT_EQ (90, frame.u[0]);
+  EXPECT_EQ (240, frame.v[0]);
+}
+
+
+TEST (YuvConvert, Nv12Deinterleaves) {
+  std::vector<uint8_t> nv12 = {
+    1, 2, 3, 4,
+    5, 6, 7, 8,
+    10, 20, 11, 21,
+  };
+  yuv::i420_frame frame;
+  frame.resize (4, 2);
+  yuv::nv12_to_i420 (nv12.data (), 4, nv12.data () + 8, 4, 4, 2, frame.y, frame.u, frame.v);
+
+  EXPECT_EQ ((std::vector<uint8_t> { 1, 2, 3, 4, 5, 6, 7, 8 }), std::vector<uint8_t> (frame.y, frame.y + 8));
+  EXPECT_EQ (10, frame.u[0]);
+  EXPECT_EQ (11, frame.u[1]);
+  EXPECT_EQ (20, frame.v[0]);
+  EXPECT_EQ (21, frame.v[1]);
+}
+
+
+TEST (YuvConvert, ResizeKeepsStorageForSmallerFrames) {
+  yuv::i420_frame frame;
+  frame.resize (64, 48);
+  uint8_t *y = frame.y;
+  frame.resize (32, 24);
+  EXPECT_EQ (y, frame.y);
+  EXPECT_EQ (frame.y + 32 * 24, frame.u);
+  EXPECT_EQ (frame.u + 16 * 12, frame.v);
+}
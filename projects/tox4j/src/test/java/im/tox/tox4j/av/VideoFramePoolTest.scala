@@ -0,0 +1,91 @@
+package im.tox.tox4j.av
+
+import org.scalatest.FlatSpec
+
+final class VideoFramePoolTest extends FlatSpec {
+
+  private def acquire(pool: VideoFramePool, friendNumber: Int, width: Int, height: Int): VideoFrame = {
+    pool.acquire(friendNumber, width, height, width, width / 2, width / 2, width * height, width * height / 4, width * height / 4)
+  }
+
+  "acquire" should "size the planes to the frame" in {
+    val frame = acquire(new VideoFramePool, 0, 64, 48)
+    assert(frame.getWidth == 64)
+    assert(frame.getHeight == 48)
+    assert(frame.getY.isDirect)
+    assert(frame.getY.position == 0)
+    assert(frame.getY.remaining == 64 * 48)
+    assert(frame.getU.remaining == 64 * 48 / 4)
+    assert(frame.getV.remaining == 64 * 48 / 4)
+  }
+
+  it should "reuse a released frame and its buffers" in {
+    val pool = new VideoFramePool
+    val first = acquire(pool, 0, 64, 48)
+    val y = first.getY
+    first.release()
+    assert(pool.size == 1)
+
+    val second = acquire(pool, 0, 32, 24)
+    assert(second eq first)
+    assert(second.getY eq y)
+    assert(second.getY.remaining == 32 * 24)
+    assert(pool.size == 0)
+  }
+
+  it should "only allocate new buffers when the resolution grows" in {
+    val pool = new VideoFramePool
+    val first = acquire(pool, 0, 32, 24)
+    val y = first.getY
+    first.release()
+    assert(!(acquire(pool, 0, 64, 48).getY eq y))
+  }
+
+  it should "not share frames between friends" in {
+    val pool = new VideoFramePool
+    val frame = acquire(pool, 0, 64, 48)
+    frame.release()
+    assert(!(acquire(pool, 1, 64, 48) eq frame))
+    assert(acquire(pool, 0, 64, 48) eq frame)
+  }
+
+  it should "use the supplied allocator" in {
+    var allocated = 0
+    val pool = new VideoFramePool({ size =>
+      allocated += 1
+      java.nio.ByteBuffer.allocate(size)
+    })
+    assert(!acquire(pool, 0, 64, 48).getY.isDirect)
+    assert(allocated == 3)
+  }
+
+  "release" should "ignore a frame that was already released" in {
+    val pool = new VideoFramePool
+    val frame = acquire(pool, 0, 64, 48)
+    frame.release()
+    frame.release()
+    assert(pool.size == 1)
+    assert(acquire(pool, 0, 64, 48) eq frame)
+    assert(!(acquire(pool, 0, 64, 48) eq frame))
+  }
+
+  it should "return a reused frame again" in {
+    val pool = new VideoFramePool
+    val frame = acquire(pool, 0, 64, 48)
+    frame.release()
+    acquire(pool, 0, 64, 48).release()
+    assert(pool.size == 1)
+  }
+
+  "clear" should "drop the released frames of a friend" in {
+    val pool = new VideoFramePool
+    val frame = acquire(pool, 0, 64, 48)
+    val held = acquire(pool, 0, 64, 48)
+    frame.release()
+    pool.clear(0)
+    held.release()
+    assert(pool.size == 0)
+    assert(!(acquire(pool, 0, 64, 48) eq frame))
+  }
+
+}
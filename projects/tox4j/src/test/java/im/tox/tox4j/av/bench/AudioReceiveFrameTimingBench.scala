@@ -0,0 +1,54 @@
+package im.tox.tox4j.av.bench
+
+import java.nio.ShortBuffer
+
+import im.tox.tox4j.av.ToxAv
+import im.tox.tox4j.av.callbacks.{AudioReceiveFrameBufferCallback, ToxAvEventAdapter, ToxAvEventListener}
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.impl.jni.ToxAvImpl
+
+/**
+ * Compares receiving audio frames as a freshly allocated short array with receiving them as a [[ShortBuffer]] view of
+ * the event data. The frames are 20 ms of 48 kHz stereo audio.
+ */
+final class AudioReceiveFrameTimingBench extends TimingReport {
+
+  private val pcm = Array.ofDim[Short](960 * 2)
+
+  private object ArrayListener extends ToxAvEventAdapter[Unit] {
+    override def audioReceiveFrame(friendNumber: Int, pcm: Array[Short], channels: Int, samplingRate: Int)(state: Unit): Unit = {
+      assert(pcm.length == 960 * channels)
+    }
+  }
+
+  private object BufferListener extends ToxAvEventAdapter[Unit] with AudioReceiveFrameBufferCallback[Unit] {
+    override def audioReceiveFrame(friendNumber: Int, pcm: ShortBuffer, channels: Int, samplingRate: Int)(state: Unit): Unit = {
+      assert(pcm.remaining == 960 * channels)
+    }
+  }
+
+  private def receive(listener: ToxAvEventListener[Unit]): Unit = {
+    usingToxAv(iterations1k) in {
+      case (sz, toxAv: ToxAvImpl[Unit]) =>
+        toxAv.callback(listener)
+        (0 until sz) foreach { _ =>
+          toxAv.invokeAudioReceiveFrame(1, pcm, 2, 48000)
+          toxAv.iterate(())
+        }
+    }
+  }
+
+  timing of classOf[ToxAv[Unit]] in {
+
+    measure method "audioReceiveFrame(Array[Short])" in {
+      receive(ArrayListener)
+    }
+
+    measure method "audioReceiveFrame(ShortBuffer)" in {
+      receive(BufferListener)
+    }
+
+  }
+
+}
@@ -0,0 +1,80 @@
+package im.tox.tox4j.av.bench
+
+import java.nio.ByteBuffer
+
+import im.tox.tox4j.av.ToxAv
+import im.tox.tox4j.av.enums.ToxavPixelFormat
+import im.tox.tox4j.av.exceptions.ToxavSendFrameException
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import org.scalameter.api._
+
+/**
+ * Measures the throughput of the native conversion of captured frames to I420 at common resolutions.
+ *
+ * The friend is not in a call, so every send fails in toxav after the frame has been converted. The failure costs the
+ * same for each format, so the differences between them are the costs of the conversions. Rows are padded to a
+ * multiple of 64 bytes, as capture devices commonly do, so strided I420 frames are packed before sending.
+ */
+final class VideoSendFrameTimingBench extends TimingReport {
+
+  private final case class Frame(width: Int, height: Int) {
+    private def stride(rowBytes: Int): Int = (rowBytes + 63) / 64 * 64
+
+    val rgbaStride = stride(width * 4)
+    val rgba = ByteBuffer.allocateDirect(rgbaStride * height)
+
+    val nv12Stride = stride(width)
+    val nv12 = ByteBuffer.allocateDirect(nv12Stride * (height + height / 2))
+
+    val yStride = stride(width)
+    val uvStride = stride(width / 2)
+    val y = ByteBuffer.allocateDirect(yStride * height)
+    val u = ByteBuffer.allocateDirect(uvStride * height / 2)
+    val v = ByteBuffer.allocateDirect(uvStride * height / 2)
+
+    override def toString: String = s"${width}x$height"
+  }
+
+  private val frames = Gen.enumeration("resolution")(Frame(640, 480), Frame(1280, 720), Frame(1920, 1080))
+
+  private def send(toxAv: ToxAv[Unit], sz: Int)(f: ToxAv[Unit] => Unit): Unit = {
+    (0 until sz) foreach { _ =>
+      try {
+        f(toxAv)
+      } catch {
+        case _: ToxavSendFrameException =>
+      }
+    }
+  }
+
+  timing of classOf[ToxAv[Unit]] in {
+
+    measure method "videoSendFrame(RGBA)" in {
+      usingToxAv(Gen.single("iterations")(100), frames) in {
+        case (sz, frame, toxAv) =>
+          send(toxAv, sz)(_.videoSendFrame(0, frame.width, frame.height, ToxavPixelFormat.RGBA, frame.rgba, frame.rgbaStride))
+      }
+    }
+
+    measure method "videoSendFrame(NV12)" in {
+      usingToxAv(Gen.single("iterations")(100), frames) in {
+        case (sz, frame, toxAv) =>
+          send(toxAv, sz)(_.videoSendFrame(0, frame.width, frame.height, ToxavPixelFormat.NV12, frame.nv12, frame.nv12Stride))
+      }
+    }
+
+    measure method "videoSendFrame(strided I420)" in {
+      usingToxAv(Gen.single("iterations")(100), frames) in {
+        case (sz, frame, toxAv) =>
+          send(toxAv, sz)(_.videoSendFrame(
+            0, frame.width, frame.height,
+            frame.y, frame.u, frame.v,
+            frame.yStride, frame.uvStride, frame.uvStride
+          ))
+      }
+    }
+
+  }
+
+}
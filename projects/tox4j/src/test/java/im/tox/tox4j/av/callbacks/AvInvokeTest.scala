@@ -1,9 +1,11 @@
 package im.tox.tox4j.av.callbacks
 
+import java.nio.{ByteBuffer, ShortBuffer}
 import java.util
 
 import im.tox.tox4j.ToxAvTestBase
 import im.tox.tox4j.av.callbacks.AvInvokeTest._
+import im.tox.tox4j.av.{VideoFrame, VideoFramePool}
 import im.tox.tox4j.av.enums.ToxavFriendCallState
 import im.tox.tox4j.core.SmallNat
 import im.tox.tox4j.core.callbacks.InvokeTest.{ByteArray, ShortArray}
@@ -34,12 +36,47 @@ final class AvInvokeTest extends FunSuite with PropertyChecks {
     // scalastyle:on line.size.limit
   }
 
-  def callbackTest(invoke: ToxAvImpl[Event] => Unit, expected: Event): Unit = {
+  final class TestBufferEventListener extends ToxAvEventAdapter[Event] with AudioReceiveFrameBufferCallback[Event] {
+    override def audioReceiveFrame(friendNumber: Int, pcm: ShortBuffer, channels: Int, samplingRate: Int)(state: Event): Event = {
+      assert(state == null)
+      assert(pcm.isReadOnly)
+      val samples = Array.ofDim[Short](pcm.remaining)
+      pcm.get(samples)
+      AudioReceiveFrame(friendNumber, samples, channels, samplingRate)
+    }
+  }
+
+  final class TestVideoBufferEventListener extends ToxAvEventAdapter[Event] with VideoReceiveFrameBufferCallback[Event] {
+    override val videoFramePool = new VideoFramePool
+
+    private def bytes(plane: ByteBuffer): Array[Byte] = {
+      val array = Array.ofDim[Byte](plane.remaining)
+      plane.duplicate.get(array)
+      array
+    }
+
+    override def videoReceiveFrame(frame: VideoFrame)(state: Event): Event = {
+      assert(state == null)
+      val event = VideoReceiveFrame(
+        frame.friendNumber,
+        frame.getWidth, frame.getHeight,
+        bytes(frame.getY), bytes(frame.getU), bytes(frame.getV),
+        frame.getYStride, frame.getUStride, frame.getVStride
+      )
+      frame.release()
+      event
+    }
+  }
+
+  def callbackTest(
+    invoke: ToxAvImpl[Event] => Unit,
+    expected: Event,
+    listener: => ToxAvEventListener[Event] = new TestEventListener
+  ): Unit = {
     val tox = new ToxCoreImpl[Event](ToxOptions())
     val toxav = new ToxAvImpl[Event](tox)
 
     try {
-      val listener = new TestEventListener
       toxav.callback(listener)
       invoke(toxav)
       val event = toxav.iterate(null)
@@ -73,6 +110,18 @@ final class AvInvokeTest extends FunSuite with PropertyChecks {
     }
   }
 
+  test("AudioReceiveFrame (ShortBuffer)") {
+    assume(ToxAvTestBase.enabled)
+    forAll { (friendNumber: Int, pcm: Array[Short], samplingRate: Int) =>
+      val channels = if (pcm.length % 2 == 0) 2 else 1
+      callbackTest(
+        _.invokeAudioReceiveFrame(friendNumber, pcm, channels, samplingRate),
+        AudioReceiveFrame(friendNumber, pcm, channels, samplingRate),
+        new TestBufferEventListener
+      )
+    }
+  }
+
   test("BitRateStatus") {
     assume(ToxAvTestBase.enabled)
     forAll { (friendNumber: Int, audioBitRate: Int, videoBitRate: Int) =>
@@ -121,6 +170,46 @@ final class AvInvokeTest extends FunSuite with PropertyChecks {
     }
   }
 
+  test("VideoReceiveFrame (VideoFrame)") {
+    assume(ToxAvTestBase.enabled)
+    forAll { (friendNumber: Int, width: SmallNat, height: SmallNat, yStride: SmallNat, uStride: SmallNat, vStride: SmallNat) =>
+      whenever(width > 0 && height > 0) {
+        val y = Array.ofDim[Byte]((width max yStride) * height)
+        val u = Array.ofDim[Byte](((width / 2) max Math.abs(uStride)) * (height / 2))
+        val v = Array.ofDim[Byte](((width / 2) max Math.abs(vStride)) * (height / 2))
+        random.nextBytes(y)
+        random.nextBytes(u)
+        random.nextBytes(v)
+        callbackTest(
+          _.invokeVideoReceiveFrame(friendNumber, width, height, y, u, v, yStride, uStride, vStride),
+          VideoReceiveFrame(friendNumber, width, height, y, u, v, yStride, uStride, vStride),
+          new TestVideoBufferEventListener
+        )
+      }
+    }
+  }
+
+  test("ending a call frees its pooled frames when the listener ignores call states") {
+    assume(ToxAvTestBase.enabled)
+    val listener = new TestVideoBufferEventListener
+    val tox = new ToxCoreImpl[Event](ToxOptions())
+    val toxav = new ToxAvImpl[Event](tox)
+
+    try {
+      toxav.callback(listener)
+      toxav.invokeVideoReceiveFrame(1, 2, 2, Array.ofDim[Byte](4), Array.ofDim[Byte](1), Array.ofDim[Byte](1), 2, 1, 1)
+      assert(toxav.iterate(null) != null)
+      assert(listener.videoFramePool.size == 1)
+
+      toxav.invokeCallState(1, util.EnumSet.of(ToxavFriendCallState.FINISHED))
+      assert(toxav.iterate(null) == null)
+      assert(listener.videoFramePool.size == 0)
+    } finally {
+      toxav.close()
+      tox.close()
+    }
+  }
+
 }
 
 object AvInvokeTest {
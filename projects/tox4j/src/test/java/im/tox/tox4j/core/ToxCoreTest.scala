@@ -3,7 +3,9 @@ package im.tox.tox4j.core
 import im.tox.tox4j.core.SmallNat._
 import im.tox.tox4j.core.ToxCoreFactory.withTox
 import im.tox.tox4j.core.callbacks.ToxEventListener
-import im.tox.tox4j.core.enums.ToxConnection
+import im.tox.tox4j.core.enums.{ToxConnection, ToxMessageType}
+import im.tox.tox4j.core.exceptions._
+import im.tox.tox4j.core.options.{SaveDataOptions, ToxOptions}
 import im.tox.tox4j.impl.jni.ToxCoreImpl
 import org.scalatest.FlatSpec
 import org.scalatest.prop.PropertyChecks
@@ -26,6 +28,98 @@ final class ToxCoreTest extends FlatSpec with PropertyChecks {
     }
   }
 
+  "addFriendsNorequest" should "add each key and report an error for each bad key" in {
+    withTox { tox =>
+      val keys = (0 until 3).map(_ => withTox(_.getPublicKey)).toArray
+      val result = tox.addFriendsNorequest(keys :+ keys(0) :+ tox.getPublicKey)
+
+      assert(result.values.take(3) == Seq(0, 1, 2))
+      assert(result.failures == Seq(
+        3 -> ToxFriendAddException.Code.ALREADY_SENT,
+        4 -> ToxFriendAddException.Code.OWN_KEY
+      ))
+      assert(tox.getFriendList.length == 3)
+    }
+  }
+
+  "deleteFriends" should "delete existing friends and report missing ones" in {
+    withTox { tox =>
+      val friendNumbers = (0 until 3).map(_ => tox.addFriendNorequest(withTox(_.getPublicKey))).toArray
+      val result = tox.deleteFriends(friendNumbers :+ friendNumbers(0))
+
+      assert(result.failures == Seq(3 -> ToxFriendDeleteException.Code.FRIEND_NOT_FOUND))
+      assert(tox.getFriendList.isEmpty)
+    }
+  }
+
+  "getFriendPublicKeys" should "return the same keys as getFriendPublicKey" in {
+    withTox { tox =>
+      val friendNumbers = (0 until 3).map(_ => tox.addFriendNorequest(withTox(_.getPublicKey))).toArray
+      val result = tox.getFriendPublicKeys(friendNumbers :+ 3)
+
+      friendNumbers foreach { friendNumber =>
+        assert(result(friendNumber).right.map(_.toSeq) == Right(tox.getFriendPublicKey(friendNumber).toSeq))
+      }
+      assert(result(3) == Left(ToxFriendGetPublicKeyException.Code.FRIEND_NOT_FOUND))
+    }
+  }
+
+  "friendSendMessageBroadcast" should "report the error of each friend" in {
+    withTox { tox =>
+      tox.addFriendNorequest(withTox(_.getPublicKey))
+      val result = tox.friendSendMessageBroadcast(Array(0, 1, 0), ToxMessageType.NORMAL, 0, "hello".getBytes)
+
+      assert(result.failures == Seq(
+        0 -> ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED,
+        1 -> ToxFriendSendMessageException.Code.FRIEND_NOT_FOUND,
+        2 -> ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED
+      ))
+    }
+  }
+
+  "friendSnapshot" should "contain the state of each friend" in {
+    withTox { tox =>
+      val publicKeys = (0 until 3).map(_ => withTox(_.getPublicKey))
+      publicKeys foreach tox.addFriendNorequest
+      val snapshot = tox.friendSnapshot
+
+      assert(snapshot.size == 3)
+      assert(snapshot.friendNumbers.toSeq == tox.getFriendList.toSeq)
+      (0 until snapshot.size) foreach { i =>
+        assert(snapshot.publicKey(i).toSeq == tox.getFriendPublicKey(snapshot.friendNumbers(i)).toSeq)
+        assert(snapshot.connectionStatus(i) == ToxConnection.NONE)
+      }
+    }
+  }
+
+  "friendByPublicKey" should "find friends in the friend key index after adding and deleting friends" in {
+    withTox(ToxOptions(friendKeyIndex = true)) { tox =>
+      val publicKeys = (0 until 3).map(_ => withTox(_.getPublicKey)).toArray
+      publicKeys foreach tox.addFriendNorequest
+      tox.deleteFriend(1)
+      assert(tox.friendByPublicKey(publicKeys(0)) == 0)
+      assert(tox.friendByPublicKey(publicKeys(2)) == 2)
+      intercept[ToxFriendByPublicKeyException] {
+        tox.friendByPublicKey(publicKeys(1))
+      }
+      assert(tox.addFriendsNorequest(Array(publicKeys(1))).values == Seq(1))
+      assert(tox.friendByPublicKey(publicKeys(1)) == 1)
+    }
+  }
+
+  it should "find the friends of loaded save data in the friend key index" in {
+    withTox { tox =>
+      val publicKeys = (0 until 3).map(_ => withTox(_.getPublicKey))
+      publicKeys foreach tox.addFriendNorequest
+      withTox(ToxOptions(friendKeyIndex = true, saveData = SaveDataOptions.ToxSave(tox.getSavedata))) { loaded =>
+        publicKeys.zipWithIndex foreach {
+          case (publicKey, friendNumber) =>
+            assert(loaded.friendByPublicKey(publicKey) == friendNumber)
+        }
+      }
+    }
+  }
+
   "iterate" should "not be stopped by exceptions" in {
     withTox(fatalErrors = false) { tox =>
       tox.callback(new ToxEventListener[Unit] {
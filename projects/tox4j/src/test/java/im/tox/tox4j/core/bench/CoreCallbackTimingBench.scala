@@ -3,14 +3,23 @@ package im.tox.tox4j.core.bench
 import im.tox.tox4j.bench.PerformanceReportBase._
 import im.tox.tox4j.bench.TimingReport
 import im.tox.tox4j.core.enums.{ToxConnection, ToxFileControl, ToxMessageType, ToxUserStatus}
+import im.tox.tox4j.core.options.ToxOptions
 import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
 import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalameter.api._
 
 final class CoreCallbackTimingBench extends TimingReport {
 
   val publicKey = Array.ofDim[Byte](ToxCoreConstants.PublicKeySize)
   val data = Array.ofDim[Byte](ToxCoreConstants.MaxCustomPacketSize)
 
+  /**
+   * The same as [[toxInstance]], but receiving events through the flat event buffer instead of protobuf.
+   */
+  val flatToxInstance = Gen.single("tox")(classOf[ToxCoreImpl[Unit]]).map { _ =>
+    new ToxCoreImpl[Unit](ToxOptions(startPort = 30000, flatEvents = true))
+  }.cached
+
   def invokePerformance(method: String, f: ToxCoreImpl[Unit] => Unit): Unit = {
     performance of method in {
       usingTox(iterations1k) in {
@@ -80,6 +89,16 @@ final class CoreCallbackTimingBench extends TimingReport {
       }
     }
 
+    performance of "call all callbacks (flat events)" in {
+      using(iterations1k, flatToxInstance) in {
+        case (sz, tox) =>
+          (0 until sz) foreach { _ =>
+            invokeAllCallbacks(tox)
+            tox.iterate(())
+          }
+      }
+    }
+
     invokePerformance("invokeFileChunkRequest", _.invokeFileChunkRequest(1, 2, 3, 4))
     invokePerformance("invokeFileRecv", _.invokeFileRecv(1, 2, 3, 4, data))
     invokePerformance("invokeFileRecvChunk", _.invokeFileRecvChunk(1, 2, 3, data))
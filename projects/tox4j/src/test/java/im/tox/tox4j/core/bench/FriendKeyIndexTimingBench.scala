@@ -0,0 +1,45 @@
+package im.tox.tox4j.core.bench
+
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.core.{ToxCore, ToxCoreFactory}
+import org.scalameter.api._
+
+/**
+ * Compares looking up friends by Public Key in the native friend list with looking them up in the friend key index
+ * enabled by [[ToxOptions.friendKeyIndex]]. The native lookup scans the friend list, so its cost grows with the number
+ * of friends. The index lookup costs the same at any size.
+ */
+final class FriendKeyIndexTimingBench extends TimingReport {
+
+  private val friendCount = Gen.single("friends")(10000)
+
+  private def makeToxWithIndexedFriends(friendCount: Int): ToxCore[Unit] = {
+    val tox = ToxCoreFactory.make[Unit](ToxOptions(startPort = 30000, friendKeyIndex = true))
+    tox.addFriendsNorequest(friendKeys(friendCount).toArray)
+    tox
+  }
+
+  private val nativeLookup = friendCount.map(makeToxWithFriends).map(toxAndFriendKeys(limit = 1000)).cached
+  private val indexLookup = friendCount.map(makeToxWithIndexedFriends).map(toxAndFriendKeys(limit = 1000)).cached
+
+  timing of classOf[ToxCore[Unit]] in {
+
+    measure method "friendByPublicKey (native)" in {
+      using(nativeLookup) in {
+        case (friendList, tox) =>
+          friendList foreach (key => tox.friendByPublicKey(key))
+      }
+    }
+
+    measure method "friendByPublicKey (friendKeyIndex)" in {
+      using(indexLookup) in {
+        case (friendList, tox) =>
+          friendList foreach (key => tox.friendByPublicKey(key))
+      }
+    }
+
+  }
+
+}
@@ -42,6 +42,13 @@ final class FriendListTimingBench extends TimingReport {
       }
     }
 
+    measure method "addFriendsNorequest" in {
+      using(friends(100) map friendKeys, toxInstance.cached) tearDown clearFriendList in {
+        case (friendList, tox) =>
+          tox.addFriendsNorequest(friendList.toArray)
+      }
+    }
+
     performance of "deleting all friends" in {
       using(friends1k.map(makeToxWithFriends).map(toxAndFriendNumbers())) tearDown refillFriendList config (Confidence.high: _*) in {
         case (friendList, tox) =>
@@ -52,6 +59,16 @@ final class FriendListTimingBench extends TimingReport {
       }
     }
 
+    performance of "deleting all friends in one call" in {
+      using(friends1k.map(makeToxWithFriends).map(toxAndFriendNumbers())) tearDown refillFriendList config (Confidence.high: _*) in {
+        case (friendList, tox) =>
+          assert(friendList.length >= 100)
+          assert(friendList.length <= 1000)
+          assert(friendList.length % 100 == 0)
+          tox.deleteFriends(friendList.toArray)
+      }
+    }
+
     measure method "getFriendList" in {
       using(toxWithFriends1k, Gen.single("iterations")(100)) in {
         case (tox, sz) =>
@@ -83,6 +100,17 @@ final class FriendListTimingBench extends TimingReport {
       }
     }
 
+    measure method "getFriendPublicKeys" in {
+      using(toxWithFriends1k map toxAndFriendNumbers(100), Gen.single("iterations")(100000)) in {
+        case ((friendNumbers, tox), iterations) =>
+          // Look up the same friends as in getFriendPublicKey, all of them in each call.
+          val friendNumberArray = friendNumbers.toArray
+          (0 until iterations / friendNumbers.length) foreach { _ =>
+            tox.getFriendPublicKeys(friendNumberArray)
+          }
+      }
+    }
+
     measure method "getFriendByPublicKey" in {
       using(toxWithFriends1k map toxAndFriendKeys(limit = 100), Gen.single("iterations")(100)) in {
         case ((friendList, tox), iterations) =>
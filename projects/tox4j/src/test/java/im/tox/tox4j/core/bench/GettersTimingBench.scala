@@ -6,6 +6,14 @@ import im.tox.tox4j.core.ToxCore
 
 final class GettersTimingBench extends TimingReport {
 
+  /**
+   * Reads what [[ToxCore.friendSnapshot]] returns, with one call per friend. Only the Public Key getter is exposed for
+   * single friends, so this is a lower bound on reading the full state one friend at a time.
+   */
+  private def readFriendsOneByOne(tox: ToxCore[Unit]): Unit = {
+    tox.getFriendList foreach tox.getFriendPublicKey
+  }
+
   timing of classOf[ToxCore[Unit]] in {
 
     measure method "getAddress" in {
@@ -92,6 +100,22 @@ final class GettersTimingBench extends TimingReport {
       }
     }
 
+    measure method "getFriendList + getFriendPublicKey (1k)" in {
+      using(toxWithFriends1k) in readFriendsOneByOne
+    }
+
+    measure method "friendSnapshot (1k)" in {
+      using(toxWithFriends1k) in (_.friendSnapshot)
+    }
+
+    measure method "getFriendList + getFriendPublicKey (10k)" in {
+      using(toxWithFriends10k) in readFriendsOneByOne
+    }
+
+    measure method "friendSnapshot (10k)" in {
+      using(toxWithFriends10k) in (_.friendSnapshot)
+    }
+
   }
 
 }
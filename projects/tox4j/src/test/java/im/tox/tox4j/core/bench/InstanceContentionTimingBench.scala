@@ -0,0 +1,39 @@
+package im.tox.tox4j.core.bench
+
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.core.ToxCore
+import org.scalameter.api._
+
+/**
+ * Calls a cheap native method on separate instances from several threads at once. Each thread owns its instance, so
+ * the only shared state on the native side is the instance lookup. With a global lock around the lookup, the time per
+ * run grows with the number of threads. Without one, it stays flat up to the number of cores.
+ */
+final class InstanceContentionTimingBench extends TimingReport {
+
+  private val callsPerThread = 100000
+
+  private val threads = Gen.range("threads")(1, Runtime.getRuntime.availableProcessors * 2, 1)
+
+  private val toxesPerThread = threads.map(sz => (0 until sz).map(_ => makeTox())).cached
+
+  private def callConcurrently(toxes: Seq[ToxCore[Unit]]): Unit = {
+    val workers = toxes.map { tox =>
+      new Thread(new Runnable {
+        override def run(): Unit = (0 until callsPerThread) foreach (_ => tox.getNospam)
+      })
+    }
+    workers.foreach(_.start())
+    workers.foreach(_.join())
+  }
+
+  timing of classOf[ToxCore[Unit]] in {
+
+    measure method "getNospam (one instance per thread)" in {
+      using(toxesPerThread) in callConcurrently
+    }
+
+  }
+
+}
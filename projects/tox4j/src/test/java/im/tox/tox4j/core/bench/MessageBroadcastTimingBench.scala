@@ -0,0 +1,44 @@
+package im.tox.tox4j.core.bench
+
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.core.enums.ToxMessageType
+import im.tox.tox4j.core.exceptions.ToxFriendSendMessageException
+import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
+
+/**
+ * Compares sending a message to every friend with one [[ToxCore.friendSendMessage]] call per friend against a single
+ * [[ToxCore.friendSendMessageBroadcast]] call.
+ *
+ * The friends are never connected, so every send fails. The per-friend variant pays for a thrown exception on each
+ * failure, the broadcast variant only stores the error code.
+ */
+final class MessageBroadcastTimingBench extends TimingReport {
+
+  private val message = Array.fill[Byte](ToxCoreConstants.MaxMessageLength)('a'.toByte)
+
+  timing of classOf[ToxCore[Unit]] in {
+
+    measure method "friendSendMessage (one call per friend)" in {
+      using(toxWithFriends1k map toxAndFriendNumbers()) in {
+        case (friendNumbers, tox) =>
+          friendNumbers foreach { friendNumber =>
+            try {
+              tox.friendSendMessage(friendNumber, ToxMessageType.NORMAL, 0, message)
+            } catch {
+              case _: ToxFriendSendMessageException =>
+            }
+          }
+      }
+    }
+
+    measure method "friendSendMessageBroadcast" in {
+      using(toxWithFriends1k map toxAndFriendNumbers()) in {
+        case (friendNumbers, tox) =>
+          tox.friendSendMessageBroadcast(friendNumbers.toArray, ToxMessageType.NORMAL, 0, message)
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,64 @@
+package im.tox.tox4j.core.bench
+
+import java.nio.ByteBuffer
+
+import im.tox.tox4j.bench.PerformanceReportBase._
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.core.exceptions.ToxFriendCustomPacketException
+import im.tox.tox4j.core.{ToxCore, ToxCoreConstants}
+
+/**
+ * Compares sending a custom packet from a byte array with sending it from a direct [[ByteBuffer]], which is passed to
+ * toxcore without copying, and from a slice of a heap buffer, which is copied into a new array.
+ *
+ * The friend is never connected, so every send fails after the packet data has been passed to toxcore. The failure
+ * costs the same for each variant, so the differences between them are the costs of getting the data into native code.
+ */
+final class SendBufferTimingBench extends TimingReport {
+
+  private val packet = 160.toByte +: Array.ofDim[Byte](ToxCoreConstants.MaxCustomPacketSize - 1)
+
+  private val directPacket = {
+    val buffer = ByteBuffer.allocateDirect(packet.length)
+    buffer.put(packet).flip()
+    buffer
+  }
+
+  private val heapPacket = ByteBuffer.wrap(Array.ofDim[Byte](1) ++ packet, 1, packet.length)
+
+  private def send(tox: ToxCore[Unit], sz: Int)(f: ToxCore[Unit] => Unit): Unit = {
+    (0 until sz) foreach { _ =>
+      try {
+        f(tox)
+      } catch {
+        case _: ToxFriendCustomPacketException =>
+      }
+    }
+  }
+
+  timing of classOf[ToxCore[Unit]] in {
+
+    measure method "friendSendLosslessPacket(Array[Byte])" in {
+      usingTox(iterations10k) in {
+        case (sz, tox) =>
+          send(tox, sz)(_.friendSendLosslessPacket(0, packet))
+      }
+    }
+
+    measure method "friendSendLosslessPacket(direct ByteBuffer)" in {
+      usingTox(iterations10k) in {
+        case (sz, tox) =>
+          send(tox, sz)(_.friendSendLosslessPacket(0, directPacket.duplicate))
+      }
+    }
+
+    measure method "friendSendLosslessPacket(heap ByteBuffer)" in {
+      usingTox(iterations10k) in {
+        case (sz, tox) =>
+          send(tox, sz)(_.friendSendLosslessPacket(0, heapPacket.duplicate))
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,119 @@
+package im.tox.tox4j.core.callbacks
+
+import im.tox.tox4j.core.callbacks.ToxCoreEvent._
+import im.tox.tox4j.core.enums.{ToxConnection, ToxMessageType}
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+final class CoalescingTest extends FunSuite {
+
+  private type State = List[ToxCoreEvent]
+
+  private object RecordingListener extends ToxCoreEvent.Collector[State] {
+    private var events = List.empty[ToxCoreEvent] // scalastyle:ignore var.field
+    protected override def handle(event: ToxCoreEvent): Unit = events ::= event
+    def take(): State = {
+      val result = events.reverse
+      events = Nil
+      result
+    }
+  }
+
+  /**
+   * Name and message events with their byte arrays as sequences, so they can be compared by value.
+   */
+  private def namesAndMessages(events: State): List[(String, Int, Seq[Byte])] = events collect {
+    case FriendName(friendNumber, name)             => ("name", friendNumber, name.toSeq)
+    case FriendMessage(friendNumber, _, _, message) => ("message", friendNumber, message.toSeq)
+  }
+
+  private def callbackTest(coalesceWindow: Int)(f: ToxCoreImpl[Unit] => Unit): Unit = {
+    for (flatEvents <- Seq(false, true)) {
+      val tox = new ToxCoreImpl[Unit](ToxOptions(flatEvents = flatEvents, coalesceWindow = coalesceWindow))
+      try {
+        tox.callback(RecordingListener)
+        RecordingListener.take()
+        f(tox)
+      } finally {
+        tox.close()
+      }
+    }
+  }
+
+  test("only the latest state update per friend is delivered") {
+    callbackTest(1) { tox =>
+      tox.invokeFriendConnectionStatus(1, ToxConnection.TCP)
+      tox.invokeFriendConnectionStatus(2, ToxConnection.TCP)
+      tox.invokeFriendConnectionStatus(1, ToxConnection.NONE)
+      tox.invokeFriendConnectionStatus(1, ToxConnection.UDP)
+      tox.invokeFriendTyping(1, isTyping = true)
+      tox.invokeFriendTyping(1, isTyping = false)
+      tox.iterate(())
+      assert(RecordingListener.take().toSet == Set(
+        FriendConnectionStatus(2, ToxConnection.TCP),
+        FriendConnectionStatus(1, ToxConnection.UDP),
+        FriendTyping(1, isTyping = false)
+      ))
+    }
+  }
+
+  test("other events deliver the friend's pending updates first and are never coalesced") {
+    callbackTest(1) { tox =>
+      tox.invokeFriendName(1, Array[Byte](1))
+      tox.invokeFriendName(1, Array[Byte](2))
+      tox.invokeFriendMessage(1, ToxMessageType.NORMAL, 0, Array[Byte](3))
+      tox.invokeFriendMessage(1, ToxMessageType.NORMAL, 0, Array[Byte](3))
+      tox.iterate(())
+      assert(namesAndMessages(RecordingListener.take()) == List(
+        ("name", 1, Seq[Byte](2)),
+        ("message", 1, Seq[Byte](3)),
+        ("message", 1, Seq[Byte](3))
+      ))
+    }
+  }
+
+  test("updates are held back for the whole window") {
+    callbackTest(3) { tox =>
+      tox.invokeFriendTyping(1, isTyping = true)
+      tox.iterate(())
+      tox.invokeFriendTyping(1, isTyping = false)
+      tox.iterate(())
+      assert(RecordingListener.take().isEmpty)
+      tox.iterate(())
+      assert(RecordingListener.take() == List(FriendTyping(1, isTyping = false)))
+    }
+  }
+
+  test("updates held back for a deleted friend are dropped") {
+    val friend = new ToxCoreImpl[Unit](ToxOptions())
+    try {
+      callbackTest(3) { tox =>
+        val friendNumber = tox.addFriendNorequest(friend.getPublicKey)
+        tox.invokeFriendName(friendNumber, Array[Byte](1))
+        tox.invokeFriendConnectionStatus(friendNumber, ToxConnection.TCP)
+        tox.deleteFriend(friendNumber)
+
+        // A new friend may get the deleted friend's number.
+        val batchFriendNumber = tox.addFriendNorequest(friend.getPublicKey)
+        tox.invokeFriendTyping(batchFriendNumber, isTyping = true)
+        assert(tox.deleteFriends(Array(batchFriendNumber)).isSuccess)
+
+        (0 until 3).foreach(_ => tox.iterate(()))
+        assert(RecordingListener.take().isEmpty)
+      }
+    } finally {
+      friend.close()
+    }
+  }
+
+  test("without a window, every update is delivered") {
+    callbackTest(0) { tox =>
+      tox.invokeFriendTyping(1, isTyping = true)
+      tox.invokeFriendTyping(1, isTyping = false)
+      tox.iterate(())
+      assert(RecordingListener.take() == List(FriendTyping(1, isTyping = true), FriendTyping(1, isTyping = false)))
+    }
+  }
+
+}
@@ -1,5 +1,7 @@
 package im.tox.tox4j.core.callbacks
 
+import java.nio.ByteBuffer
+
 import im.tox.tox4j.core.ToxCoreConstants
 import im.tox.tox4j.core.callbacks.CoreInvokeTest._
 import im.tox.tox4j.core.callbacks.InvokeTest.ByteArray
@@ -42,17 +44,33 @@ final class CoreInvokeTest extends FunSuite with PropertyChecks {
     // scalastyle:on line.size.limit
   }
 
-  def callbackTest(invoke: ToxCoreImpl[Event] => Unit, expected: Event): Unit = {
-    val tox = new ToxCoreImpl[Event](ToxOptions())
+  final class TestBufferEventListener extends ToxEventAdapter[Event] with FileRecvChunkBufferCallback[Event] {
+    override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer)(state: Event): Event = {
+      assert(state == null)
+      assert(data.isReadOnly)
+      val bytes = Array.ofDim[Byte](data.remaining)
+      data.get(bytes)
+      FileRecvChunk(friendNumber, fileNumber, position, bytes)
+    }
+  }
+
+  def callbackTest(
+    invoke: ToxCoreImpl[Event] => Unit,
+    expected: Event,
+    listener: => ToxEventListener[Event] = new TestEventListener
+  ): Unit = {
+    // Check both the protobuf and the flat event transport.
+    for (flatEvents <- Seq(false, true)) {
+      val tox = new ToxCoreImpl[Event](ToxOptions(flatEvents = flatEvents))
 
-    try {
-      val listener = new TestEventListener
-      tox.callback(listener)
-      invoke(tox)
-      val event = tox.iterate(null)
-      assert(event == expected)
-    } finally {
-      tox.close()
+      try {
+        tox.callback(listener)
+        invoke(tox)
+        val event = tox.iterate(null)
+        assert(event == expected)
+      } finally {
+        tox.close()
+      }
     }
   }
 
@@ -122,6 +140,16 @@ final class CoreInvokeTest extends FunSuite with PropertyChecks {
     }
   }
 
+  test("FileRecvChunk (ByteBuffer)") {
+    forAll { (friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte]) =>
+      callbackTest(
+        _.invokeFileRecvChunk(friendNumber, fileNumber, position, data),
+        FileRecvChunk(friendNumber, fileNumber, position, data),
+        new TestBufferEventListener
+      )
+    }
+  }
+
   test("FriendConnectionStatus") {
     forAll { (friendNumber: Int, connectionStatus: ToxConnection) =>
       callbackTest(
@@ -0,0 +1,63 @@
+package im.tox.tox4j.core.callbacks
+
+import im.tox.tox4j.core.enums.ToxConnection
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+final class ShardedEventListenerTest extends FunSuite {
+
+  private type State = List[ToxCoreEvent]
+
+  private object RecordingListener extends ToxEventListener[State] {
+    override def friendReadReceipt(friendNumber: Int, messageId: Int)(state: State): State = {
+      ToxCoreEvent.FriendReadReceipt(friendNumber, messageId) :: state
+    }
+    override def selfConnectionStatus(connectionStatus: ToxConnection)(state: State): State = {
+      ToxCoreEvent.SelfConnectionStatus(connectionStatus) :: state
+    }
+  }
+
+  private def withSharded(friendLanes: Int)(f: (ToxCoreImpl[Unit], ShardedEventListener[State]) => Unit): Unit = {
+    val tox = new ToxCoreImpl[Unit](ToxOptions(flatEvents = true))
+    val sharded = new ShardedEventListener[State](RecordingListener, friendLanes, _ => Nil)
+    try {
+      tox.callback(sharded)
+      f(tox, sharded)
+    } finally {
+      sharded.close()
+      tox.close()
+    }
+  }
+
+  test("friend events are sharded by friend number and keep their order") {
+    val friendLanes = 4
+    withSharded(friendLanes) { (tox, sharded) =>
+      for (messageId <- 0 until 20; friendNumber <- 0 until 10) {
+        tox.invokeFriendReadReceipt(friendNumber, messageId)
+      }
+      tox.iterate(())
+
+      val states = sharded.states.map(_.reverse)
+      assert(sharded.eventCount == 200)
+      assert(states.last.isEmpty)
+      states.init.zipWithIndex.foreach {
+        case (events, lane) =>
+          val receipts = events collect { case ToxCoreEvent.FriendReadReceipt(friendNumber, messageId) => (friendNumber, messageId) }
+          assert(receipts.forall { case (friendNumber, _) => sharded.laneOf(friendNumber) == lane })
+          receipts.groupBy(_._1).values.foreach { perFriend =>
+            assert(perFriend.map(_._2) == (0 until 20))
+          }
+      }
+    }
+  }
+
+  test("global events go to the global lane") {
+    withSharded(2) { (tox, sharded) =>
+      tox.invokeSelfConnectionStatus(ToxConnection.UDP)
+      tox.iterate(())
+      assert(sharded.states == Seq(Nil, Nil, List(ToxCoreEvent.SelfConnectionStatus(ToxConnection.UDP))))
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package im.tox.tox4j.core.callbacks
+
+import java.nio.ByteBuffer
+
+import im.tox.tox4j.core.enums.ToxConnection
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+final class ToxEventMaskTest extends FunSuite {
+
+  private final class NameListener extends ToxEventAdapter[Int] {
+    override def friendName(friendNumber: Int, name: Array[Byte])(state: Int): Int = state + 1
+  }
+
+  test("ToxEventAdapter handles no events") {
+    assert(ToxEventMask.of(new ToxEventAdapter[Unit]) == ToxEventMask.Empty)
+  }
+
+  test("overridden callbacks are included in the mask") {
+    assert(ToxEventMask.of(new NameListener) == ToxEventMask.FriendName)
+  }
+
+  test("the ByteBuffer file chunk callback counts as FileRecvChunk") {
+    val listener = new ToxEventAdapter[Unit] with FileRecvChunkBufferCallback[Unit] {
+      override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer)(state: Unit): Unit = ()
+    }
+    assert(ToxEventMask.of(listener) == ToxEventMask.FileRecvChunk)
+  }
+
+  test("mixing in the ByteBuffer file chunk callback without overriding it does not count") {
+    val listener = new NameListener with FileRecvChunkBufferCallback[Int]
+    assert(ToxEventMask.of(listener) == ToxEventMask.FriendName)
+  }
+
+  test("an overridden ByteBuffer file chunk callback counts for subclasses") {
+    class ChunkListener extends ToxEventAdapter[Unit] with FileRecvChunkBufferCallback[Unit] {
+      override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer)(state: Unit): Unit = ()
+    }
+    assert(ToxEventMask.of(new ChunkListener {}) == ToxEventMask.FileRecvChunk)
+  }
+
+  test("direct ToxEventListener implementations handle all events") {
+    assert(ToxEventMask.of(new ToxEventListener[Unit] {}) == ToxEventMask.All)
+  }
+
+  test("masked out events are not dispatched") {
+    for (flatEvents <- Seq(false, true)) {
+      val tox = new ToxCoreImpl[Int](ToxOptions(flatEvents = flatEvents))
+      try {
+        tox.callback(new NameListener)
+        tox.invokeFriendName(0, Array.ofDim[Byte](1))
+        tox.invokeFriendConnectionStatus(0, ToxConnection.TCP)
+        assert(tox.iterate(0) == 1)
+
+        tox.setEventMask(ToxEventMask.Empty)
+        tox.invokeFriendName(0, Array.ofDim[Byte](1))
+        assert(tox.iterate(0) == 0)
+
+        tox.setEventMask(ToxEventMask.All)
+        tox.invokeFriendName(0, Array.ofDim[Byte](1))
+        assert(tox.iterate(0) == 1)
+      } finally {
+        tox.close()
+      }
+    }
+  }
+
+}
@@ -1,5 +1,7 @@
 package im.tox.tox4j.core.exceptions
 
+import java.nio.ByteBuffer
+
 import im.tox.tox4j.core.ToxCoreConstants
 import im.tox.tox4j.testing.ToxTestMixin
 import org.scalatest.FunSuite
@@ -56,13 +58,13 @@ final class ToxFriendCustomPacketExceptionTest extends FunSuite with ToxTestMixi
 
   test("SendLosslessPacketNull") {
     interceptWithTox(ToxFriendCustomPacketException.Code.NULL)(
-      _.friendSendLosslessPacket(1, null)
+      _.friendSendLosslessPacket(1, null: Array[Byte])
     )
   }
 
   test("SendLossyPacketNull") {
     interceptWithTox(ToxFriendCustomPacketException.Code.NULL)(
-      _.friendSendLossyPacket(1, null)
+      _.friendSendLossyPacket(1, null: Array[Byte])
     )
   }
 
@@ -78,4 +80,54 @@ final class ToxFriendCustomPacketExceptionTest extends FunSuite with ToxTestMixi
     )
   }
 
+  private def directBuffer(bytes: Byte*): ByteBuffer = {
+    val buffer = ByteBuffer.allocateDirect(ToxCoreConstants.MaxCustomPacketSize * 2)
+    buffer.put(bytes.toArray).flip()
+    buffer
+  }
+
+  test("SendLosslessPacketDirectBufferNotConnected") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.FRIEND_NOT_CONNECTED)(
+      _.friendSendLosslessPacket(0, directBuffer(160.toByte, 0, 1, 2, 3))
+    )
+  }
+
+  test("SendLossyPacketDirectBufferNotConnected") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.FRIEND_NOT_CONNECTED)(
+      _.friendSendLossyPacket(0, directBuffer(200.toByte, 0, 1, 2, 3))
+    )
+  }
+
+  test("SendLossyPacketDirectBufferSliceInvalid") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.INVALID) { tox =>
+      val buffer = directBuffer(200.toByte, 199.toByte, 0, 1)
+      buffer.position(1)
+      tox.friendSendLossyPacket(0, buffer)
+    }
+  }
+
+  test("SendLosslessPacketHeapBufferSliceNotConnected") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.FRIEND_NOT_CONNECTED)(
+      _.friendSendLosslessPacket(0, ByteBuffer.wrap(Array[Byte](0, 160.toByte, 0, 1, 2, 3), 1, 5))
+    )
+  }
+
+  test("SendLosslessPacketBufferNull") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.NULL)(
+      _.friendSendLosslessPacket(1, null: ByteBuffer)
+    )
+  }
+
+  test("SendLossyPacketBufferNull") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.NULL)(
+      _.friendSendLossyPacket(1, null: ByteBuffer)
+    )
+  }
+
+  test("SendLossyPacketDirectBufferTooLong") {
+    interceptWithTox(ToxFriendCustomPacketException.Code.TOO_LONG)(
+      _.friendSendLossyPacket(0, directBuffer(200.toByte +: Array.ofDim[Byte](ToxCoreConstants.MaxCustomPacketSize): _*))
+    )
+  }
+
 }
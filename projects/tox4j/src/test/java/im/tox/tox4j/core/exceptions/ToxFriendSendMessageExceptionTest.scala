@@ -1,5 +1,7 @@
 package im.tox.tox4j.core.exceptions
 
+import java.nio.ByteBuffer
+
 import im.tox.tox4j.core.enums.ToxMessageType
 import im.tox.tox4j.testing.ToxTestMixin
 import org.scalatest.FunSuite
@@ -20,7 +22,7 @@ final class ToxFriendSendMessageExceptionTest extends FunSuite with ToxTestMixin
 
   test("SendMessageNull") {
     interceptWithTox(ToxFriendSendMessageException.Code.NULL)(
-      _.friendSendMessage(0, ToxMessageType.NORMAL, 0, null)
+      _.friendSendMessage(0, ToxMessageType.NORMAL, 0, null: Array[Byte])
     )
   }
 
@@ -30,4 +32,38 @@ final class ToxFriendSendMessageExceptionTest extends FunSuite with ToxTestMixin
     )
   }
 
+  test("SendMessageDirectBufferNotConnected") {
+    interceptWithTox(ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED) { tox =>
+      val buffer = ByteBuffer.allocateDirect(16)
+      buffer.put("hello".getBytes).flip()
+      tox.friendSendMessage(0, ToxMessageType.NORMAL, 0, buffer)
+    }
+  }
+
+  test("SendMessageHeapBufferNotConnected") {
+    interceptWithTox(ToxFriendSendMessageException.Code.FRIEND_NOT_CONNECTED)(
+      _.friendSendMessage(0, ToxMessageType.NORMAL, 0, ByteBuffer.wrap("hello".getBytes))
+    )
+  }
+
+  test("SendMessageBufferNull") {
+    interceptWithTox(ToxFriendSendMessageException.Code.NULL)(
+      _.friendSendMessage(0, ToxMessageType.NORMAL, 0, null: ByteBuffer)
+    )
+  }
+
+  test("SendMessageDirectBufferEmpty") {
+    interceptWithTox(ToxFriendSendMessageException.Code.EMPTY) { tox =>
+      val buffer = ByteBuffer.allocateDirect(16)
+      buffer.position(buffer.limit)
+      tox.friendSendMessage(0, ToxMessageType.NORMAL, 0, buffer)
+    }
+  }
+
+  test("SendMessageHeapBufferEmpty") {
+    interceptWithTox(ToxFriendSendMessageException.Code.EMPTY)(
+      _.friendSendMessage(0, ToxMessageType.NORMAL, 0, ByteBuffer.wrap("hello".getBytes, 5, 0))
+    )
+  }
+
 }
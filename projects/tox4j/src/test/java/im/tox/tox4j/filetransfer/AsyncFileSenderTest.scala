@@ -0,0 +1,54 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+import im.tox.tox4j.core.ToxCore
+
+import scala.annotation.tailrec
+
+final class AsyncFileSenderTest extends FileTransferTestBase {
+
+  protected override type Sender = AsyncFileSender[ChatState]
+
+  protected override def newSender(tox: ToxCore[ChatState]): Sender = {
+    new AsyncFileSender(tox, readAhead = 4, maxReadsInFlight = 8)
+  }
+
+  protected override def hasPendingChunks(sender: Sender): Boolean = sender.metrics.pendingRequests > 0
+
+  protected override def transferComplete(sender: Sender): Unit = {
+    assert(sender.metrics.readAheadHits > 0)
+  }
+
+  /**
+   * Flush until the condition holds, giving the I/O threads time to complete their reads.
+   */
+  @tailrec
+  private def flushUntil(sender: AsyncFileSender[Unit], deadline: Long = System.currentTimeMillis + 10000)(condition: => Boolean): Unit = {
+    sender.flush()
+    if (!condition) {
+      assert(System.currentTimeMillis < deadline, "Timed out waiting for condition")
+      Thread.sleep(10)
+      flushUntil(sender, deadline)(condition)
+    }
+  }
+
+  test("a chunk rejected with SENDQ is sent again on the next flush") {
+    val recorder = new ChunkRecorder(rejections = 1)
+    val sender = new AsyncFileSender(recorder.tox, readAhead = 0)
+    sender.register(0, 0, FileChannel.open(file, StandardOpenOption.READ))
+
+    assert(sender.fileChunkRequest(0, 0, 0, 1000))
+    flushUntil(sender)(sender.metrics.retries == 1)
+    assert(recorder.sent.isEmpty)
+    assert(sender.metrics.pendingRequests == 1)
+
+    sender.flush()
+    assert(sender.metrics.pendingRequests == 0)
+    assert(recorder.sent.map(_._1) == Seq(0L))
+    assert(recorder.sentData == fileData.take(1000).toSeq)
+    sender.close()
+  }
+
+}
@@ -0,0 +1,62 @@
+package im.tox.tox4j.filetransfer
+
+import java.lang.reflect.{InvocationHandler, Method, Proxy}
+import java.nio.ByteBuffer
+
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.exceptions.ToxFileSendChunkException
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * A stand-in for a Tox instance that records the chunks sent with [[ToxCore.fileSendChunk]], for testing senders
+ * without a network. The first `rejections` chunks are rejected with [[ToxFileSendChunkException.Code.SENDQ]], as
+ * toxcore does when its send queue is full. Iterating returns the state unchanged, and file control and seek requests
+ * are ignored, so that receivers can be tested with it, too. All other methods throw.
+ */
+final class ChunkRecorder(rejections: Int = 0) {
+
+  private var remainingRejections = rejections // scalastyle:ignore var.field
+
+  /**
+   * The position and data of each accepted chunk, in the order they were sent.
+   */
+  val sent = new ArrayBuffer[(Long, Array[Byte])]
+
+  val tox: ToxCore[Unit] = Proxy.newProxyInstance(
+    getClass.getClassLoader,
+    Array(classOf[ToxCore[_]]),
+    new InvocationHandler {
+      override def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+        method.getName match {
+          case "fileSendChunk"            => sendChunk(args(2).asInstanceOf[Long], args(3))
+          case "iterate"                  => args(0)
+          case "fileControl" | "fileSeek" => null // scalastyle:ignore null
+          case name                       => throw new UnsupportedOperationException(name)
+        }
+      }
+    }
+  ).asInstanceOf[ToxCore[Unit]]
+
+  private def sendChunk(position: Long, data: AnyRef): AnyRef = synchronized {
+    if (remainingRejections > 0) {
+      remainingRejections -= 1
+      throw new ToxFileSendChunkException(ToxFileSendChunkException.Code.SENDQ)
+    }
+    val bytes = data match {
+      case array: Array[Byte] => array.clone()
+      case buffer: ByteBuffer =>
+        val array = Array.ofDim[Byte](buffer.remaining)
+        buffer.get(array)
+        array
+    }
+    sent += ((position, bytes))
+    null // scalastyle:ignore null
+  }
+
+  /**
+   * The sent chunks, concatenated.
+   */
+  def sentData: Seq[Byte] = synchronized(sent.flatMap(_._2))
+
+}
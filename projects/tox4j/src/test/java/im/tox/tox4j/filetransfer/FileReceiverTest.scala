@@ -0,0 +1,80 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.ByteBuffer
+import java.nio.file.{Files, Path}
+
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.callbacks.FileRecvChunkBufferCallback
+
+import scala.concurrent.{Await, Future}
+import scala.concurrent.duration._
+
+final class FileReceiverTest extends FileTransferTestBase {
+
+  protected override type Sender = FileSender[ChatState]
+
+  protected override def newSender(tox: ToxCore[ChatState]): Sender = new FileSender(tox)
+
+  protected override def hasPendingChunks(sender: Sender): Boolean = sender.pendingChunks > 0
+
+  /**
+   * Receive a file shorter than the existing file at the target path.
+   *
+   * @param fileSize The file size the transfer announces.
+   */
+  private def receiveOverLongerFile(fileSize: Long): Unit = {
+    val path = Files.write(tempFile(), fileData)
+    val data = fileData.take(1000).reverse
+    val receiver = new FileReceiver(new ChunkRecorder().tox)
+    val received = receiver.accept(0, 0, path, fileSize)
+    assert(receiver.fileRecvChunk(0, 0, 0, data))
+    assert(receiver.fileRecvChunk(0, 0, data.length, Array.ofDim[Byte](0)))
+    assert(Files.readAllBytes(Await.result(received, 10.seconds)) sameElements data)
+    receiver.close()
+  }
+
+  test("a file received over a longer existing file replaces it") {
+    receiveOverLongerFile(1000)
+  }
+
+  test("a file of unknown size received over a longer existing file replaces it") {
+    receiveOverLongerFile(-1)
+  }
+
+  protected override def newChatClient(name: String, expectedFriendName: String): ChatClient = {
+    new Receiver(name, expectedFriendName)
+  }
+
+  final class Receiver(name: String, expectedFriendName: String)
+      extends Alice(name, expectedFriendName) with FileRecvChunkBufferCallback[ChatState] {
+
+    /**
+     * Bob's receiver and the future of the received file, once he accepted the transfer.
+     */
+    private var receiver: Option[FileReceiver[ChatState]] = None
+    private var received: Option[Future[Path]] = None
+
+    protected override def accept(friendNumber: Int, fileNumber: Int, fileSize: Long)(tox: ToxCore[ChatState], state: ChatState): ChatState = {
+      // A small batch size, so that the file is written in several batches.
+      val fileReceiver = new FileReceiver(tox, batchSize = 8192)
+      received = Some(fileReceiver.accept(friendNumber, fileNumber, tempFile(), fileSize))
+      receiver = Some(fileReceiver)
+      state
+    }
+
+    override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: ByteBuffer)(state: ChatState): ChatState = {
+      assert(isBob)
+      val complete = !data.hasRemaining
+      assert(receiver.get.fileRecvChunk(friendNumber, fileNumber, position, data))
+      if (complete) {
+        val path = Await.result(received.get, 10.seconds)
+        assert(Files.readAllBytes(path) sameElements fileData)
+        receiver.get.close()
+        state.finish
+      } else {
+        state
+      }
+    }
+  }
+
+}
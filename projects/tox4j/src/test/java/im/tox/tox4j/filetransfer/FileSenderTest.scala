@@ -0,0 +1,38 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+import im.tox.tox4j.core.ToxCore
+
+final class FileSenderTest extends FileTransferTestBase {
+
+  protected override type Sender = FileSender[ChatState]
+
+  /**
+   * The smallest mapping size, so that the transfer moves the mapping many times.
+   */
+  private val mappingSize = 2 * 4096
+
+  protected override def newSender(tox: ToxCore[ChatState]): Sender = new FileSender(tox, mappingSize)
+
+  protected override def hasPendingChunks(sender: Sender): Boolean = sender.pendingChunks > 0
+
+  test("a chunk rejected with SENDQ is sent again on the next flush") {
+    val recorder = new ChunkRecorder(rejections = 1)
+    val sender = new FileSender(recorder.tox, mappingSize)
+    sender.register(0, 0, FileChannel.open(file, StandardOpenOption.READ))
+
+    assert(sender.fileChunkRequest(0, 0, 0, 1000))
+    assert(recorder.sent.isEmpty)
+    assert(sender.pendingChunks == 1)
+
+    sender.flush()
+    assert(sender.pendingChunks == 0)
+    assert(sender.fileChunkRequest(0, 0, 1000, 1000))
+    assert(recorder.sent.map(_._1) == Seq(0L, 1000L))
+    assert(recorder.sentData == fileData.take(2000).toSeq)
+    sender.close()
+  }
+
+}
@@ -0,0 +1,131 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.file.{Files, Path}
+import java.util.Random
+
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.enums.{ToxConnection, ToxFileControl, ToxFileKind}
+import im.tox.tox4j.testing.autotest.{AliceBobTest, AliceBobTestBase}
+
+/**
+ * Alice sends a file to Bob with the sender under test. She forwards Bob's chunk requests to the sender and flushes it
+ * until it has no chunks left, and the test finishes when the sender has released the transfer. By default, Bob
+ * accepts the file and collects the chunks in memory. Suites testing the receiving side override [[Alice.accept]] and
+ * the chunk event.
+ */
+abstract class FileTransferTestBase extends AliceBobTest {
+
+  protected type Sender <: OutgoingTransferRegistry[ChatState, _]
+
+  protected val fileData = new Array[Byte](100000)
+  new Random().nextBytes(fileData)
+
+  protected def tempFile(): Path = {
+    val path = Files.createTempFile(getClass.getSimpleName, ".bin")
+    path.toFile.deleteOnExit()
+    path
+  }
+
+  protected val file = Files.write(tempFile(), fileData)
+
+  /**
+   * Create the sender on Alice's side.
+   */
+  protected def newSender(tox: ToxCore[ChatState]): Sender
+
+  /**
+   * Whether the sender holds chunks to send on a later flush.
+   */
+  protected def hasPendingChunks(sender: Sender): Boolean
+
+  /**
+   * Checks on the sender after it released the transfer, before it is closed.
+   */
+  protected def transferComplete(sender: Sender): Unit = ()
+
+  sealed case class State(
+      sender: Option[Sender] = None,
+      receivedData: Array[Byte] = Array.ofDim[Byte](fileData.length),
+      position: Long = 0L
+  )
+
+  override def initialState: State = State()
+
+  protected override def newChatClient(name: String, expectedFriendName: String): ChatClient = {
+    new Alice(name, expectedFriendName)
+  }
+
+  class Alice(name: String, expectedFriendName: String) extends ChatClient(name, expectedFriendName) {
+
+    override def friendConnectionStatus(friendNumber: Int, connectionStatus: ToxConnection)(state: ChatState): ChatState = {
+      super.friendConnectionStatus(friendNumber, connectionStatus)(state)
+      if (connectionStatus != ToxConnection.NONE && isAlice) {
+        state.addTask { (tox, state) =>
+          val sender = newSender(tox)
+          sender.send(friendNumber, ToxFileKind.DATA, file, Array.ofDim[Byte](0), "file.bin".getBytes)
+          state.set(state.get.copy(sender = Some(sender)))
+        }
+      } else {
+        state
+      }
+    }
+
+    /**
+     * Accept the file on Bob's side.
+     */
+    protected def accept(friendNumber: Int, fileNumber: Int, fileSize: Long)(tox: ToxCore[ChatState], state: ChatState): ChatState = {
+      tox.fileControl(friendNumber, fileNumber, ToxFileControl.RESUME)
+      state
+    }
+
+    override def fileRecv(friendNumber: Int, fileNumber: Int, kind: Int, fileSize: Long, filename: Array[Byte])(state: ChatState): ChatState = {
+      assert(isBob)
+      assert(fileSize == fileData.length)
+      state.addTask(accept(friendNumber, fileNumber, fileSize))
+    }
+
+    /**
+     * Send the chunks the sender holds, and do it again on the next iteration while chunks are pending.
+     */
+    private def flush(tox: ToxCore[ChatState], state: ChatState): ChatState = {
+      val sender = state.get.sender.get
+      sender.flush()
+      if (hasPendingChunks(sender)) {
+        state.addTask(flush)
+      } else {
+        state
+      }
+    }
+
+    override def fileChunkRequest(friendNumber: Int, fileNumber: Int, position: Long, length: Int)(state: ChatState): ChatState = {
+      assert(isAlice)
+      state.addTask { (tox, state) =>
+        val sender = state.get.sender.get
+        assert(sender.fileChunkRequest(friendNumber, fileNumber, position, length))
+        if (length == 0) {
+          assert(sender.size == 0)
+          transferComplete(sender)
+          sender.close()
+          state.finish
+        } else {
+          flush(tox, state)
+        }
+      }
+    }
+
+    override def fileRecvChunk(friendNumber: Int, fileNumber: Int, position: Long, data: Array[Byte])(state: ChatState): ChatState = {
+      assert(isBob)
+      assert(friendNumber == AliceBobTestBase.FriendNumber)
+      assert(position == state.get.position)
+      if (state.get.position == fileData.length) {
+        assert(data.isEmpty)
+        assert(state.get.receivedData sameElements fileData)
+        state.finish
+      } else {
+        System.arraycopy(data, 0, state.get.receivedData, position.toInt, data.length)
+        state.set(state.get.copy(position = position + data.length))
+      }
+    }
+  }
+
+}
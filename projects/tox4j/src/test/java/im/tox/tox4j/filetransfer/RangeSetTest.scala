@@ -0,0 +1,46 @@
+package im.tox.tox4j.filetransfer
+
+import org.scalacheck.Gen
+import org.scalatest.FunSuite
+import org.scalatest.prop.PropertyChecks
+
+final class RangeSetTest extends FunSuite with PropertyChecks {
+
+  private val range = for {
+    start <- Gen.choose(0L, 200L)
+    length <- Gen.choose(0L, 20L)
+  } yield (start, start + length)
+
+  test("consecutive ranges merge into one") {
+    val set = new RangeSet
+    (0 until 100) foreach (i => set.add(i * 10L, i * 10L + 10))
+    assert(set.ranges == Seq((0L, 1000L)))
+    assert(set.firstMissing == 1000)
+  }
+
+  test("firstMissing is 0 without a range at the start") {
+    val set = new RangeSet
+    assert(set.firstMissing == 0)
+    set.add(10, 20)
+    assert(set.firstMissing == 0)
+    set.add(0, 5)
+    assert(set.firstMissing == 5)
+    set.add(5, 10)
+    assert(set.firstMissing == 20)
+  }
+
+  test("the ranges contain exactly the added positions and stay sorted and disjoint") {
+    forAll(Gen.listOf(range)) { added =>
+      val set = new RangeSet
+      added foreach { case (start, end) => set.add(start, end) }
+
+      val expected = added.flatMap { case (start, end) => start until end }.toSet
+      assert(set.ranges.flatMap { case (start, end) => start until end }.toSet == expected)
+      set.ranges.sliding(2).filter(_.size == 2) foreach {
+        case Seq((_, end), (start, _)) => assert(end < start)
+      }
+      set.ranges foreach { case (start, end) => assert(start < end) }
+    }
+  }
+
+}
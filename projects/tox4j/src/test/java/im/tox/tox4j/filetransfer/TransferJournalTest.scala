@@ -0,0 +1,90 @@
+package im.tox.tox4j.filetransfer
+
+import java.nio.file.{Files, Path, StandardOpenOption}
+
+import org.scalatest.FlatSpec
+
+import scala.collection.JavaConverters._
+
+final class TransferJournalTest extends FlatSpec {
+
+  private val fileId = Array.tabulate[Byte](32)(_.toByte)
+
+  private def withJournal(test: (Path, TransferJournal) => Unit): Unit = {
+    val directory = Files.createTempDirectory("TransferJournalTest")
+    val journal = new TransferJournal(directory)
+    try {
+      test(directory, journal)
+    } finally {
+      journal.close()
+      Files.list(directory).iterator.asScala.foreach(Files.delete)
+      Files.delete(directory)
+    }
+  }
+
+  private def reopen[A](directory: Path)(read: TransferJournal => A): A = {
+    val journal = new TransferJournal(directory)
+    try {
+      read(journal)
+    } finally {
+      journal.close()
+    }
+  }
+
+  "resumePosition" should "be 0 for unknown files" in {
+    withJournal { (_, journal) =>
+      assert(journal.resumePosition(fileId) == 0)
+    }
+  }
+
+  it should "be the end of the received prefix" in {
+    withJournal { (_, journal) =>
+      journal.record(fileId, 0, 100)
+      journal.record(fileId, 200, 300)
+      journal.record(fileId, 100, 150)
+      assert(journal.resumePosition(fileId) == 150)
+      assert(journal.receivedRanges(fileId) == Seq((0L, 150L), (200L, 300L)))
+    }
+  }
+
+  "record" should "persist ranges across journal instances" in {
+    withJournal { (directory, journal) =>
+      journal.record(fileId, 0, 100)
+      journal.record(fileId, 100, 200)
+      journal.close()
+      assert(reopen(directory)(_.resumePosition(fileId)) == 200)
+    }
+  }
+
+  it should "compact the log to the merged ranges" in {
+    withJournal { (directory, journal) =>
+      (0 until 1000) foreach (i => journal.record(fileId, i * 10L, i * 10L + 10))
+      assert(Files.size(directory.resolve(TransferJournal.fileName(fileId))) < 1000 * 16)
+      journal.close()
+      assert(reopen(directory)(_.resumePosition(fileId)) == 10000)
+    }
+  }
+
+  "loading" should "ignore a partially written last record" in {
+    withJournal { (directory, journal) =>
+      journal.record(fileId, 0, 100)
+      journal.close()
+      Files.write(directory.resolve(TransferJournal.fileName(fileId)), Array.ofDim[Byte](7), StandardOpenOption.APPEND)
+
+      assert(journal.resumePosition(fileId) == 100)
+      journal.record(fileId, 100, 200)
+      journal.close()
+      assert(reopen(directory)(_.receivedRanges(fileId)) == Seq((0L, 200L)))
+    }
+  }
+
+  "remove" should "delete the journal of a file" in {
+    withJournal { (directory, journal) =>
+      journal.record(fileId, 0, 100)
+      journal.remove(fileId)
+      assert(!Files.exists(directory.resolve(TransferJournal.fileName(fileId))))
+      assert(journal.resumePosition(fileId) == 0)
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+package im.tox.tox4j.impl.jni
+
+import im.tox.tox4j.core.options.ToxOptions
+import org.scalatest.FunSuite
+
+final class AudioMixerTest extends FunSuite {
+
+  private def withAv(f: ToxAvImpl[Unit] => Unit): Unit = {
+    val tox = new ToxCoreImpl[Unit](ToxOptions())
+    val av = new ToxAvImpl[Unit](tox)
+    try {
+      f(av)
+    } finally {
+      av.close()
+      tox.close()
+    }
+  }
+
+  test("an attached mixer accepts participants") {
+    withAv { av =>
+      val mixer = new AudioMixer(av)
+      mixer.addParticipant(0)
+      assert(mixer.metrics.participants == 1)
+      mixer.removeParticipant(0)
+      assert(mixer.metrics.participants == 0)
+      mixer.close()
+    }
+  }
+
+  test("closing a replaced mixer leaves its successor attached") {
+    withAv { av =>
+      val replaced = new AudioMixer(av)
+      val mixer = new AudioMixer(av)
+      replaced.close()
+
+      mixer.addParticipant(0)
+      assert(mixer.metrics.participants == 1)
+      assert(replaced.metrics.participants == 0)
+      intercept[IllegalStateException] {
+        replaced.addParticipant(1)
+      }
+      assert(mixer.metrics.participants == 1)
+      mixer.close()
+    }
+  }
+
+  test("a closed mixer rejects participants") {
+    withAv { av =>
+      val mixer = new AudioMixer(av)
+      mixer.close()
+      intercept[IllegalStateException] {
+        mixer.addParticipant(0)
+      }
+    }
+  }
+
+}
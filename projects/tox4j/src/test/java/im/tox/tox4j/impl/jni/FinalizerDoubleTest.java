@@ -33,7 +33,9 @@ public class FinalizerDoubleTest extends JUnitSuite {
       ToxCoreConstants.DefaultEndPort(),
       ToxCoreConstants.DefaultTcpPort(),
       SaveDataOptions.None$.MODULE$,
-      true
+      true,
+      false,
+      0
   );
 
   @Before
@@ -0,0 +1,97 @@
+package im.tox.tox4j.impl.jni
+
+import im.tox.tox4j.core.callbacks.ToxEventAdapter
+import im.tox.tox4j.core.options.ToxOptions
+import org.scalatest.FunSuite
+
+final class ToxCoreGroupTest extends FunSuite {
+
+  private final class TypingListener(id: Int) extends ToxEventAdapter[List[(Int, Int)]] {
+    override def friendTyping(friendNumber: Int, isTyping: Boolean)(state: List[(Int, Int)]): List[(Int, Int)] = {
+      (id, friendNumber) :: state
+    }
+  }
+
+  private def withGroup(count: Int)(f: (ToxCoreGroup[List[(Int, Int)]], Seq[ToxCoreImpl[List[(Int, Int)]]]) => Unit): Unit = {
+    val toxes = (0 until count) map { id =>
+      val tox = new ToxCoreImpl[List[(Int, Int)]](ToxOptions(flatEvents = true))
+      tox.callback(new TypingListener(id))
+      tox
+    }
+
+    try {
+      val group = new ToxCoreGroup[List[(Int, Int)]]
+      toxes.foreach(group.add)
+      f(group, toxes)
+    } finally {
+      toxes.foreach(_.close())
+    }
+  }
+
+  test("events of all members are dispatched in member order") {
+    withGroup(3) { (group, toxes) =>
+      toxes.zipWithIndex.foreach {
+        case (tox, id) =>
+          tox.invokeFriendTyping(id * 10, isTyping = true)
+          tox.invokeFriendTyping(id * 10 + 1, isTyping = true)
+      }
+      val events = group.iterate(Nil).reverse
+      assert(events == List((0, 0), (0, 1), (1, 10), (1, 11), (2, 20), (2, 21)))
+      assert(group.iterate(Nil).isEmpty)
+    }
+  }
+
+  test("iteration interval is the minimum of all members") {
+    withGroup(2) { (group, toxes) =>
+      group.iterate(Nil)
+      assert(group.iterationInterval == toxes.map(_.iterationInterval).min)
+    }
+  }
+
+  test("closed members are removed from the group") {
+    withGroup(2) { (group, toxes) =>
+      toxes.head.close()
+      assert(group.size == 1)
+      toxes(1).invokeFriendTyping(1, isTyping = false)
+      assert(group.iterate(Nil) == List((1, 1)))
+    }
+  }
+
+  test("events of other members are dispatched when a member was killed") {
+    withGroup(3) { (group, toxes) =>
+      toxes.zipWithIndex.foreach {
+        case (tox, id) =>
+          tox.invokeFriendTyping(id * 10, isTyping = true)
+      }
+      // Kill the instance without closing it, so it stays in the group.
+      ToxCoreJni.toxKill(toxes(1).instanceNumber)
+      assert(group.size == 3)
+      assert(group.iterate(Nil).reverse == List((0, 0), (2, 20)))
+      toxes(2).invokeFriendTyping(21, isTyping = true)
+      assert(group.iterate(Nil) == List((2, 21)))
+    }
+  }
+
+  test("records that do not fit are delivered in the next iteration") {
+    withGroup(2) { (group, toxes) =>
+      val count = 10000
+      toxes.foreach { tox =>
+        (0 until count).foreach(tox.invokeFriendTyping(_, isTyping = true))
+      }
+      val events = Stream.iterate(group.iterate(Nil))(_ => group.iterate(Nil)).take(10).flatten
+      assert(events.size == count * 2)
+    }
+  }
+
+  test("instances without flat events are rejected") {
+    val tox = new ToxCoreImpl[List[(Int, Int)]](ToxOptions())
+    try {
+      intercept[IllegalArgumentException] {
+        new ToxCoreGroup[List[(Int, Int)]].add(tox)
+      }
+    } finally {
+      tox.close()
+    }
+  }
+
+}
@@ -52,4 +52,23 @@ class EventTest extends FlatSpec {
     assert(called == 2)
   }
 
+  it should "not affect the callbacks of a running event" in {
+    val event = new Event
+    var called = List.empty[Int]
+
+    var ids = List.empty[Event.Id]
+
+    val id1 = event += { () =>
+      called ::= 1
+      ids.foreach(event -= _)
+    }
+    val id2 = event += (() => called ::= 2)
+    ids = List(id1, id2)
+
+    event()
+    assert(called == List(2, 1))
+    event()
+    assert(called == List(2, 1))
+  }
+
 }
@@ -0,0 +1,60 @@
+package im.tox.tox4j.impl.jni.internal
+
+import im.tox.tox4j.core.ToxCoreConstants
+import org.scalatest.FlatSpec
+
+final class FriendKeyIndexTest extends FlatSpec {
+
+  /**
+   * Keys that differ only in their last byte, so they all have the same hash code and collide in the table.
+   */
+  private def collidingKey(i: Int): Array[Byte] = {
+    val key = Array.ofDim[Byte](ToxCoreConstants.PublicKeySize)
+    key(key.length - 1) = i.toByte
+    key
+  }
+
+  "get" should "return the friend number of each key that was put" in {
+    val index = new FriendKeyIndex
+    (0 until 100) foreach (i => index.put(collidingKey(i), 0, i))
+    (0 until 100) foreach (i => assert(index.get(collidingKey(i)) == i))
+    assert(index.size == 100)
+  }
+
+  it should "return NotFound for missing and invalid keys" in {
+    val index = new FriendKeyIndex
+    index.put(collidingKey(1), 0, 0)
+    assert(index.get(collidingKey(2)) == FriendKeyIndex.NotFound)
+    assert(index.get(Array.ofDim(ToxCoreConstants.PublicKeySize - 1)) == FriendKeyIndex.NotFound)
+    assert(index.get(null) == FriendKeyIndex.NotFound)
+  }
+
+  "put" should "read the key at the given offset" in {
+    val index = new FriendKeyIndex
+    val packed = collidingKey(1) ++ collidingKey(2)
+    index.put(packed, ToxCoreConstants.PublicKeySize, 7)
+    assert(index.get(collidingKey(2)) == 7)
+    assert(index.get(collidingKey(1)) == FriendKeyIndex.NotFound)
+  }
+
+  "remove" should "keep the other colliding keys reachable" in {
+    val index = new FriendKeyIndex
+    (0 until 10) foreach (i => index.put(collidingKey(i), 0, i))
+    Seq(0, 4, 9) foreach index.remove
+    (0 until 10) foreach { i =>
+      val expected = if (Seq(0, 4, 9).contains(i)) FriendKeyIndex.NotFound else i
+      assert(index.get(collidingKey(i)) == expected)
+    }
+    assert(index.size == 7)
+  }
+
+  it should "ignore unknown friend numbers" in {
+    val index = new FriendKeyIndex
+    index.put(collidingKey(1), 0, 0)
+    index.remove(1)
+    index.remove(-1)
+    index.remove(Int.MaxValue)
+    assert(index.size == 1)
+  }
+
+}
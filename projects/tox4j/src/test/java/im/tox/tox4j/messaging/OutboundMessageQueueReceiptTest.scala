@@ -0,0 +1,74 @@
+package im.tox.tox4j.messaging
+
+import java.util.concurrent.atomic.AtomicLong
+
+import im.tox.tox4j.core.ToxCoreConstants
+import im.tox.tox4j.core.enums.{ToxConnection, ToxMessageType}
+import im.tox.tox4j.testing.autotest.{AliceBobTest, AliceBobTestBase}
+
+/**
+ * Alice sends a message of two pieces to Bob through the queue and forwards her read receipts to it. The queue's clock
+ * advances by one millisecond on each reading, so each receipt takes a known positive time.
+ */
+final class OutboundMessageQueueReceiptTest extends AliceBobTest {
+
+  private val Step = 1000000L
+  private val message = Array.fill[Byte](ToxCoreConstants.MaxMessageLength + 1)('a'.toByte)
+
+  override type State = Option[OutboundMessageQueue[ChatState]]
+  override def initialState: State = None
+
+  protected override def newChatClient(name: String, expectedFriendName: String) = new ChatClient(name, expectedFriendName) {
+
+    private var received = 0 // scalastyle:ignore var.field
+
+    override def friendConnectionStatus(friendNumber: Int, connectionStatus: ToxConnection)(state: ChatState): ChatState = {
+      super.friendConnectionStatus(friendNumber, connectionStatus)(state)
+      state.get.foreach(_.friendConnectionStatus(friendNumber, connectionStatus))
+      if (connectionStatus != ToxConnection.NONE && isAlice && state.get.isEmpty) {
+        state.addTask { (tox, state) =>
+          val clock = new AtomicLong
+          val queue = new OutboundMessageQueue(tox, () => clock.addAndGet(Step))
+          queue.send(friendNumber, ToxMessageType.NORMAL, 0, message)
+          queue.flush()
+          assert(queue.metrics.sentMessages == 2)
+          assert(queue.metrics.awaitingReceipt == 2)
+          state.set(Some(queue))
+        }
+      } else {
+        state
+      }
+    }
+
+    override def friendMessage(friendNumber: Int, messageType: ToxMessageType, timeDelta: Int, message: Array[Byte])(state: ChatState): ChatState = {
+      assert(isBob)
+      received += message.length
+      if (received == OutboundMessageQueueReceiptTest.this.message.length) {
+        state.finish
+      } else {
+        state
+      }
+    }
+
+    override def friendReadReceipt(friendNumber: Int, messageId: Int)(state: ChatState): ChatState = {
+      assert(isAlice)
+      assert(friendNumber == AliceBobTestBase.FriendNumber)
+      val queue = state.get.get
+      assert(queue.friendReadReceipt(friendNumber, messageId))
+      assert(!queue.friendReadReceipt(friendNumber, messageId))
+
+      val metrics = queue.metrics
+      if (metrics.receipts == 2) {
+        assert(metrics.awaitingReceipt == 0)
+        assert(metrics.totalReceiptNanos >= 2 * Step)
+        assert(metrics.maxReceiptNanos >= Step)
+        assert(metrics.meanReceiptNanos == metrics.totalReceiptNanos / 2)
+        state.finish
+      } else {
+        state
+      }
+    }
+
+  }
+
+}
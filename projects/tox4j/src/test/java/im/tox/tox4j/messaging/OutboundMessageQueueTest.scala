@@ -0,0 +1,69 @@
+package im.tox.tox4j.messaging
+
+import im.tox.tox4j.core.ToxCoreConstants
+import im.tox.tox4j.core.ToxCoreFactory.withTox
+import im.tox.tox4j.core.enums.{ToxConnection, ToxMessageType}
+import org.scalacheck.Gen
+import org.scalatest.FunSuite
+import org.scalatest.prop.PropertyChecks
+
+final class OutboundMessageQueueTest extends FunSuite with PropertyChecks {
+
+  test("split keeps messages up to the maximum length in one piece") {
+    val message = Array.fill[Byte](ToxCoreConstants.MaxMessageLength)('a'.toByte)
+    assert(OutboundMessageQueue.split(message).map(_.toSeq) == Seq(message.toSeq))
+  }
+
+  test("split does not cut UTF-8 sequences apart") {
+    forAll(Gen.alphaStr, Gen.choose(4, 20)) { (prefix, maxLength) =>
+      val message = (prefix + "ä€😀" * 10).getBytes("UTF-8")
+      val pieces = OutboundMessageQueue.split(message, maxLength)
+      assert(pieces.forall(_.length <= maxLength))
+      assert(pieces.flatten == message.toSeq)
+      assert(pieces.map(new String(_, "UTF-8")).mkString == new String(message, "UTF-8"))
+    }
+  }
+
+  test("pieces for an offline friend stay queued until its connection status changes") {
+    withTox { tox =>
+      tox.addFriendNorequest(withTox(_.getPublicKey))
+      val queue = new OutboundMessageQueue(tox)
+      queue.send(0, ToxMessageType.NORMAL, 0, Array.fill[Byte](ToxCoreConstants.MaxMessageLength + 1)('a'.toByte))
+      assert(queue.metrics.queuedMessages == 2)
+
+      queue.flush()
+      queue.flush()
+      val parked = queue.metrics
+      assert(parked.queuedMessages == 2)
+      assert(parked.offlineSends == 1)
+      assert(parked.parkedFriends == 1)
+      assert(parked.retries == 0)
+      assert(parked.sentMessages == 0)
+
+      queue.friendConnectionStatus(0, ToxConnection.UDP)
+      assert(queue.metrics.parkedFriends == 0)
+      queue.flush()
+      assert(queue.metrics.offlineSends == 2)
+      assert(queue.metrics.parkedFriends == 1)
+    }
+  }
+
+  test("pieces for a missing friend are dropped") {
+    withTox { tox =>
+      val queue = new OutboundMessageQueue(tox)
+      queue.send(0, ToxMessageType.NORMAL, 0, "hello".getBytes)
+      queue.flush()
+      assert(queue.metrics.queuedMessages == 0)
+      assert(queue.metrics.failedMessages == 1)
+    }
+  }
+
+  test("read receipts for unknown messages are ignored") {
+    withTox { tox =>
+      val queue = new OutboundMessageQueue(tox)
+      assert(!queue.friendReadReceipt(0, 0))
+      assert(queue.metrics.receipts == 0)
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+package im.tox.tox4j.scheduler
+
+import org.scalacheck.Gen
+import org.scalatest.FunSuite
+import org.scalatest.prop.PropertyChecks
+
+final class HashedTimerWheelTest extends FunSuite with PropertyChecks {
+
+  private val TickNanos = 1000L
+  private val WheelSize = 8
+
+  private def newWheel = new HashedTimerWheel[Int](TickNanos, WheelSize, 0)
+
+  test("timeouts expire in the tick containing their deadline") {
+    val wheel = newWheel
+    wheel.add(2500, 1)
+    assert(wheel.advance(2000).isEmpty)
+    assert(wheel.advance(2999).isEmpty)
+    assert(wheel.advance(3000) == Seq(1))
+    assert(wheel.size == 0)
+  }
+
+  test("timeouts further away than one revolution wait for their round") {
+    val wheel = newWheel
+    wheel.add(TickNanos * (WheelSize + 1), 1)
+    wheel.add(TickNanos * 1, 2)
+    assert(wheel.advance(TickNanos * WheelSize) == Seq(2))
+    assert(wheel.size == 1)
+    assert(wheel.advance(TickNanos * (WheelSize + 1)) == Seq(1))
+  }
+
+  test("timeouts in the past expire on the next advance") {
+    val wheel = newWheel
+    wheel.advance(TickNanos * 5)
+    wheel.add(0, 1)
+    assert(wheel.advance(TickNanos * 5) == Seq(1))
+  }
+
+  test("all timeouts expire exactly once, ordered by deadline tick") {
+    forAll(Gen.listOf(Gen.choose(0L, TickNanos * WheelSize * 4))) { deadlines =>
+      val wheel = newWheel
+      deadlines.zipWithIndex.foreach { case (deadline, index) => wheel.add(deadline, index) }
+      val expired = (0L to WheelSize * 4 + 1).flatMap(tick => wheel.advance(tick * TickNanos))
+      assert(expired.sorted == deadlines.indices)
+      val ticks = expired.map(index => (deadlines(index) + TickNanos - 1) / TickNanos)
+      assert(ticks == ticks.sorted)
+      assert(wheel.size == 0)
+    }
+  }
+
+  test("wheel size must be a power of two") {
+    intercept[IllegalArgumentException] {
+      new HashedTimerWheel[Int](TickNanos, 6, 0)
+    }
+  }
+
+}
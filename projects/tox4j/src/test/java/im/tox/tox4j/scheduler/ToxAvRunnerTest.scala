@@ -0,0 +1,84 @@
+package im.tox.tox4j.scheduler
+
+import im.tox.tox4j.av.callbacks.ToxAvEventAdapter
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.{ToxAvImpl, ToxCoreImpl}
+import org.scalatest.FunSuite
+
+import scala.annotation.tailrec
+
+final class ToxAvRunnerTest extends FunSuite {
+
+  private val Timeout = 10000
+
+  @tailrec
+  private def await(deadline: Long)(condition: => Boolean): Unit = {
+    if (!condition) {
+      assert(System.currentTimeMillis < deadline, "Timed out waiting for condition")
+      Thread.sleep(10)
+      await(deadline)(condition)
+    }
+  }
+
+  private def await(condition: => Boolean): Unit = await(System.currentTimeMillis + Timeout)(condition)
+
+  private def withRunner(f: (ToxAvRunner[Unit], ToxCoreImpl[Unit], ToxAvImpl[Unit]) => Unit): Unit = {
+    val tox = new ToxCoreImpl[Unit](ToxOptions())
+    val av = new ToxAvImpl[Unit](tox)
+    val runner = new ToxAvRunner(av, new ToxAvEventAdapter[Unit], ())
+    try {
+      f(runner, tox, av)
+    } finally {
+      runner.close()
+      av.close()
+      tox.close()
+    }
+  }
+
+  test("the A/V session is iterated repeatedly") {
+    withRunner { (runner, _, _) =>
+      await(runner.metrics.iterations >= 3)
+      assert(runner.isRunning)
+    }
+  }
+
+  test("the A/V session is iterated while its Tox instance is iterated on another thread") {
+    withRunner { (runner, tox, _) =>
+      val scheduler = new ToxEventLoopRunner(ToxEventLoopRunner.platformThreadFactory, 0)
+      try {
+        val task = scheduler.add(tox, ())
+        await(runner.metrics.iterations >= 10 && task.metrics.iterations >= 10)
+      } finally {
+        scheduler.close()
+      }
+    }
+  }
+
+  test("closing the A/V session stops the runner") {
+    withRunner { (runner, _, av) =>
+      av.close()
+      await(!runner.isRunning)
+    }
+  }
+
+  test("closing the Tox instance stops the runner") {
+    withRunner { (runner, tox, _) =>
+      tox.close()
+      await(!runner.isRunning)
+      val iterations = runner.metrics.iterations
+      Thread.sleep(100)
+      assert(runner.metrics.iterations == iterations)
+    }
+  }
+
+  test("closing the runner stops iterating") {
+    withRunner { (runner, _, _) =>
+      runner.close()
+      assert(!runner.isRunning)
+      val iterations = runner.metrics.iterations
+      Thread.sleep(100)
+      assert(runner.metrics.iterations == iterations)
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+package im.tox.tox4j.scheduler
+
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+import scala.annotation.tailrec
+
+final class ToxEventLoopRunnerTest extends FunSuite {
+
+  private val Timeout = 10000
+
+  @tailrec
+  private def await(deadline: Long)(condition: => Boolean): Unit = {
+    if (!condition) {
+      assert(System.currentTimeMillis < deadline, "Timed out waiting for condition")
+      Thread.sleep(10)
+      await(deadline)(condition)
+    }
+  }
+
+  private def await(condition: => Boolean): Unit = await(System.currentTimeMillis + Timeout)(condition)
+
+  private def withRunner(count: Int, nativeThreads: Int)(f: (ToxEventLoopRunner, Seq[ToxCoreImpl[Unit]]) => Unit): Unit = {
+    val runner = new ToxEventLoopRunner(ToxEventLoopRunner.platformThreadFactory, nativeThreads)
+    val toxes = (0 until count) map (_ => new ToxCoreImpl[Unit](ToxOptions()))
+    try {
+      f(runner, toxes)
+    } finally {
+      runner.close()
+      toxes.foreach(_.close())
+    }
+  }
+
+  for (nativeThreads <- Seq(0, 2)) {
+    test(s"all instances are iterated repeatedly (native threads: $nativeThreads)") {
+      withRunner(5, nativeThreads) { (runner, toxes) =>
+        val tasks = toxes.map(runner.add(_, ()))
+        await(tasks.forall(_.metrics.iterations >= 3))
+        assert(runner.metrics.iterations >= 15)
+      }
+    }
+
+    test(s"closing an instance stops its loop (native threads: $nativeThreads)") {
+      withRunner(2, nativeThreads) { (runner, toxes) =>
+        toxes.foreach(runner.add(_, ()))
+        assert(runner.size == 2)
+        toxes.head.close()
+        await(runner.size == 1)
+      }
+    }
+  }
+
+  test("closing the runner stops all loops") {
+    withRunner(3, 1) { (runner, toxes) =>
+      val tasks = toxes.map(runner.add(_, ()))
+      runner.close()
+      assert(runner.size == 0)
+      val iterations = tasks.map(_.metrics.iterations)
+      Thread.sleep(100)
+      assert(tasks.map(_.metrics.iterations) == iterations)
+    }
+  }
+
+  test("an instance can be added again after its loop ended") {
+    withRunner(1, 0) { (runner, toxes) =>
+      (0 until 5) foreach { _ =>
+        runner.add(toxes.head, ()).cancel()
+        await(runner.size == 0)
+      }
+      runner.add(toxes.head, ())
+      toxes.head.close()
+      await(runner.size == 0)
+    }
+  }
+
+  test("adding an instance twice fails") {
+    withRunner(1, 0) { (runner, toxes) =>
+      runner.add(toxes.head, ())
+      intercept[IllegalArgumentException] {
+        runner.add(toxes.head, ())
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package im.tox.tox4j.scheduler
+
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+
+import im.tox.tox4j.core.callbacks.ToxEventAdapter
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+import scala.annotation.tailrec
+
+final class ToxSchedulerTest extends FunSuite {
+
+  private val Timeout = 10000
+
+  @tailrec
+  private def await(deadline: Long)(condition: => Boolean): Unit = {
+    if (!condition) {
+      assert(System.currentTimeMillis < deadline, "Timed out waiting for condition")
+      Thread.sleep(10)
+      await(deadline)(condition)
+    }
+  }
+
+  private def await(condition: => Boolean): Unit = await(System.currentTimeMillis + Timeout)(condition)
+
+  private def withScheduler(count: Int)(f: (ToxScheduler, Seq[ToxCoreImpl[Unit]]) => Unit): Unit = {
+    val scheduler = new ToxScheduler(threads = 2)
+    val toxes = (0 until count) map (_ => new ToxCoreImpl[Unit](ToxOptions()))
+    try {
+      f(scheduler, toxes)
+    } finally {
+      scheduler.close()
+      toxes.foreach(_.close())
+    }
+  }
+
+  test("all instances are iterated repeatedly") {
+    withScheduler(10) { (scheduler, toxes) =>
+      val tasks = toxes.map(scheduler.add(_, ()))
+      await(tasks.forall(_.metrics.iterations >= 3))
+      assert(scheduler.metrics.iterations >= 30)
+      assert(scheduler.metrics.totalCostNanos > 0)
+    }
+  }
+
+  test("an instance is never iterated concurrently with itself") {
+    withScheduler(1) { (scheduler, toxes) =>
+      val tox = toxes.head
+      val running = new AtomicInteger
+      val iterations = new AtomicInteger
+      val overlapped = new AtomicBoolean
+      tox.callback(new ToxEventAdapter[Unit] {
+        override def friendTyping(friendNumber: Int, isTyping: Boolean)(state: Unit): Unit = {
+          // Exceptions in listeners are only logged, so record the failure instead of asserting here.
+          if (running.incrementAndGet() != 1) {
+            overlapped.set(true)
+          }
+          Thread.sleep(1)
+          tox.invokeFriendTyping(friendNumber, isTyping)
+          iterations.incrementAndGet()
+          running.decrementAndGet()
+        }
+      })
+      tox.invokeFriendTyping(0, isTyping = true)
+      scheduler.add(tox, ())
+      await(iterations.get >= 20)
+      assert(!overlapped.get)
+    }
+  }
+
+  test("adding an instance twice fails") {
+    withScheduler(1) { (scheduler, toxes) =>
+      scheduler.add(toxes.head, ())
+      intercept[IllegalArgumentException] {
+        scheduler.add(toxes.head, ())
+      }
+    }
+  }
+
+  test("cancelled and closed instances are released") {
+    withScheduler(2) { (scheduler, toxes) =>
+      val task = scheduler.add(toxes(0), ())
+      scheduler.add(toxes(1), ())
+      assert(scheduler.size == 2)
+
+      task.cancel()
+      toxes(1).close()
+      await(scheduler.size == 0)
+
+      val iterations = task.metrics.iterations
+      scheduler.add(toxes(0), ())
+      Thread.sleep(100)
+      assert(task.metrics.iterations == iterations)
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+package im.tox.tox4j.scheduler.bench
+
+import im.tox.tox4j.bench.TimingReport
+import im.tox.tox4j.core.ToxCore
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import im.tox.tox4j.scheduler.{ToxEventLoopRunner, ToxScheduler}
+import org.scalameter.KeyValue
+import org.scalameter.api._
+
+import scala.annotation.tailrec
+
+/**
+ * Compares a hand-written platform thread per instance with [[ToxEventLoopRunner]], which uses virtual threads and a
+ * bounded native pool on JVMs that support them. Each run drives every instance through a few iterations.
+ *
+ * The instances are TCP-only, so they don't need a UDP port each, but 10k instances still need a few GB of memory.
+ */
+final class EventLoopTimingBench extends TimingReport {
+
+  protected override def confidence = Seq[KeyValue](exec.benchRuns -> 5)
+
+  private val iterations = 3
+
+  val toxInstances = Gen.enumeration("instances")(1000, 10000).map { count =>
+    (0 until count) map (_ => new ToxCoreImpl[Unit](ToxOptions(udpEnabled = false)): ToxCore[Unit])
+  }.cached
+
+  @tailrec
+  private def runLoop(tox: ToxCore[Unit], remaining: Int): Unit = {
+    if (remaining > 0) {
+      tox.iterate(())
+      Thread.sleep(tox.iterationInterval)
+      runLoop(tox, remaining - 1)
+    }
+  }
+
+  @tailrec
+  private def awaitIterations(tasks: Seq[ToxScheduler.Task]): Unit = {
+    if (!tasks.forall(_.metrics.iterations >= iterations)) {
+      Thread.sleep(1)
+      awaitIterations(tasks)
+    }
+  }
+
+  timing of classOf[ToxEventLoopRunner] in {
+
+    measure method "platform threads" in {
+      using(toxInstances) in { toxes =>
+        val threads = toxes map { tox =>
+          new Thread(new Runnable {
+            override def run(): Unit = runLoop(tox, iterations)
+          })
+        }
+        threads.foreach(_.start())
+        threads.foreach(_.join())
+      }
+    }
+
+    measure method "runner" in {
+      using(toxInstances) in { toxes =>
+        val runner = new ToxEventLoopRunner
+        try {
+          awaitIterations(toxes.map(runner.add(_, ())))
+        } finally {
+          runner.close()
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,119 @@
+package im.tox.tox4j.stream
+
+import java.util.concurrent.{ConcurrentLinkedQueue, Executor}
+
+import im.tox.tox4j.core.callbacks.ToxCoreEvent
+import im.tox.tox4j.core.callbacks.ToxCoreEvent.FriendTyping
+import im.tox.tox4j.core.options.ToxOptions
+import im.tox.tox4j.impl.jni.ToxCoreImpl
+import org.scalatest.FunSuite
+
+import scala.collection.JavaConverters._
+
+final class ToxEventPublisherTest extends FunSuite {
+
+  /**
+   * Runs deliveries on the calling thread, which makes the tests deterministic.
+   */
+  private object DirectExecutor extends Executor {
+    override def execute(command: Runnable): Unit = command.run()
+  }
+
+  private final class TestSubscriber(initialDemand: Long) extends Flow.Subscriber[ToxCoreEvent] {
+    val events = new ConcurrentLinkedQueue[ToxCoreEvent]
+    var subscription: Option[Flow.Subscription] = None // scalastyle:ignore var.field
+    var completed = false // scalastyle:ignore var.field
+    var error: Option[Throwable] = None // scalastyle:ignore var.field
+
+    override def onSubscribe(subscription: Flow.Subscription): Unit = {
+      this.subscription = Some(subscription)
+      if (initialDemand > 0) {
+        subscription.request(initialDemand)
+      }
+    }
+    override def onNext(item: ToxCoreEvent): Unit = events.add(item)
+    override def onError(throwable: Throwable): Unit = error = Some(throwable)
+    override def onComplete(): Unit = completed = true
+
+    def received: List[ToxCoreEvent] = events.asScala.toList
+    def request(n: Long): Unit = subscription.foreach(_.request(n))
+  }
+
+  private def withPublisher(bufferSize: Int, overflow: OverflowPolicy)(f: (ToxCoreImpl[Unit], ToxEventPublisher[Unit]) => Unit): Unit = {
+    val tox = new ToxCoreImpl[Unit](ToxOptions())
+    val publisher = new ToxEventPublisher[Unit](DirectExecutor, bufferSize, overflow)
+    try {
+      tox.callback(publisher)
+      f(tox, publisher)
+    } finally {
+      publisher.close()
+      tox.close()
+    }
+  }
+
+  private def typing(tox: ToxCoreImpl[Unit], friendNumbers: Range): Unit = {
+    friendNumbers.foreach(tox.invokeFriendTyping(_, isTyping = true))
+    tox.iterate(())
+  }
+
+  test("events are delivered in order up to the requested number") {
+    withPublisher(16, OverflowPolicy.Block) { (tox, publisher) =>
+      val subscriber = new TestSubscriber(3)
+      publisher.subscribe(subscriber)
+      typing(tox, 0 until 5)
+      assert(subscriber.received == (0 until 3).map(FriendTyping(_, isTyping = true)))
+      subscriber.request(Long.MaxValue)
+      assert(subscriber.received == (0 until 5).map(FriendTyping(_, isTyping = true)))
+    }
+  }
+
+  test("drop-oldest keeps the newest events") {
+    withPublisher(2, OverflowPolicy.DropOldest) { (tox, publisher) =>
+      val subscriber = new TestSubscriber(0)
+      publisher.subscribe(subscriber)
+      typing(tox, 0 until 5)
+      subscriber.request(10)
+      assert(subscriber.received == (3 until 5).map(FriendTyping(_, isTyping = true)))
+      assert(publisher.dropped == 3)
+    }
+  }
+
+  test("drop-lossy only drops lossy events") {
+    withPublisher(1, OverflowPolicy.DropLossy) { (tox, publisher) =>
+      val subscriber = new TestSubscriber(0)
+      publisher.subscribe(subscriber)
+      tox.invokeFriendTyping(1, isTyping = true)
+      tox.invokeFriendLossyPacket(1, Array[Byte](-56))
+      tox.iterate(())
+      assert(publisher.dropped == 1)
+      subscriber.request(10)
+      assert(subscriber.received == List(FriendTyping(1, isTyping = true)))
+    }
+  }
+
+  test("closing completes subscribers after delivering buffered events") {
+    withPublisher(16, OverflowPolicy.Block) { (tox, publisher) =>
+      val subscriber = new TestSubscriber(0)
+      publisher.subscribe(subscriber)
+      typing(tox, 0 until 2)
+      publisher.close()
+      assert(!subscriber.completed)
+      subscriber.request(10)
+      assert(subscriber.received.size == 2)
+      assert(subscriber.completed)
+    }
+  }
+
+  test("non-positive requests fail the subscription") {
+    withPublisher(16, OverflowPolicy.Block) { (tox, publisher) =>
+      val subscriber = new TestSubscriber(0)
+      publisher.subscribe(subscriber)
+      subscriber.request(0)
+      assert(subscriber.error.exists {
+        case _: IllegalArgumentException => true
+        case _                           => false
+      })
+    }
+  }
+
+}